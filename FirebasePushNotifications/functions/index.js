@@ -93,3 +93,278 @@ exports.sendNotification = functions.firestore
         return false;
     }
 });
+
+// The ID of a username's reservation document, the same as DatabaseAdapter.usernameKey
+function usernameKey(username) {
+    return username.trim().toLowerCase()
+        .replace(/%/g, '%25')
+        .replace(/\//g, '%2F')
+        .replace(/\./g, '%2E')
+        .replace(/_/g, '%5F');
+}
+
+// Reserves the usernames of users who signed up before reservations existed. Safe to run again.
+exports.backfillUsernames = functions.https.onRequest((req, res) => {
+    const db = admin.firestore();
+
+    return db.collection('users').get()
+        .then(users => {
+            const reservations = [];
+
+            users.forEach(user => {
+                const username = user.data().username;
+
+                if (username) {
+                    const reservation = db.collection('usernames').doc(usernameKey(username));
+
+                    reservations.push(db.runTransaction(transaction => {
+                        return transaction.get(reservation).then(existing => {
+                            if (!existing.exists) {
+                                transaction.set(reservation, { uid: user.id });
+                            }
+                            return existing.exists;
+                        });
+                    }));
+                }
+            });
+
+            return Promise.all(reservations);
+        })
+        .then(results => {
+            const created = results.filter(existed => !existed).length;
+            console.log('Reserved usernames:', created);
+            return res.send('Reserved ' + created + ' usernames');
+        });
+});
+
+// How long a tombstone is kept, the same as RideArchive.TOMBSTONE_TTL
+const TOMBSTONE_TTL = 30 * 24 * 60 * 60 * 1000;
+
+// The history partition of the rides that finished at a time, the same as RideArchive.partition
+function historyPartition(millis) {
+    return new Date(millis).toISOString().slice(0, 7);
+}
+
+// Moves the completed rides written before the ride history existed into it. A ride its rider
+// has not seen yet leaves a tombstone, like RideArchive. Safe to run again.
+exports.archiveCompletedRides = functions.https.onRequest((req, res) => {
+    const db = admin.firestore();
+
+    return db.collection('rideRequests').where('status', '==', 'COMPLETED').get()
+        .then(requests => {
+            const moves = [];
+
+            requests.forEach(request => {
+                const data = request.data();
+
+                if ('archivedIn' in data) {
+                    return;
+                }
+
+                const completedAt = request.updateTime.toMillis();
+                const partition = historyPartition(completedAt);
+                const history = db.collection('rideHistory').doc(partition)
+                    .collection('rides').doc(request.id);
+
+                moves.push(db.collection('users').doc(data.rider).get().then(rider => {
+                    const batch = db.batch();
+                    batch.set(history, Object.assign({}, data, {
+                        completedAt: admin.firestore.Timestamp.fromMillis(completedAt)
+                    }));
+
+                    if (rider.exists && rider.data().currentRequestId === request.id) {
+                        batch.set(request.ref, {
+                            requestId: request.id,
+                            status: data.status,
+                            rider: data.rider,
+                            driver: data.driver,
+                            cost: data.cost,
+                            version: data.version || 0,
+                            archivedIn: partition,
+                            expireAt: new Date(completedAt + TOMBSTONE_TTL)
+                        });
+                    } else {
+                        batch.delete(request.ref);
+                    }
+
+                    return batch.commit();
+                }));
+            });
+
+            return Promise.all(moves);
+        })
+        .then(moved => {
+            console.log('Archived rides:', moved.length);
+            return res.send('Archived ' + moved.length + ' rides');
+        });
+});
+
+// The most writes Firestore takes in one batch
+const MAX_BATCH_WRITES = 500;
+
+// Deletes the tombstones of riders who never came back to see their ride was completed, in case
+// no TTL policy is set on expireAt
+exports.sweepTombstones = functions.pubsub.schedule('every 24 hours').onRun(context => {
+    const db = admin.firestore();
+
+    return db.collection('rideRequests').where('expireAt', '<', new Date()).get()
+        .then(tombstones => {
+            const commits = [];
+
+            for (let i = 0; i < tombstones.docs.length; i += MAX_BATCH_WRITES) {
+                const batch = db.batch();
+
+                tombstones.docs.slice(i, i + MAX_BATCH_WRITES).forEach(tombstone => {
+                    batch.delete(tombstone.ref);
+                });
+                commits.push(batch.commit());
+            }
+
+            console.log('Expired tombstones:', tombstones.size);
+            return Promise.all(commits);
+        });
+});
+
+// How long a ride request waits for a driver before it is cancelled, and an offer waits for the
+// rider before the driver is released. Both count from statusChangedAt, which the app sets on
+// the server every time the status of a request changes.
+const PENDING_TTL = 15 * 60 * 1000;
+const OFFER_TIMEOUT = 2 * 60 * 1000;
+
+// Ends one ride request that waited too long, unless it was written since the query read it.
+// A pending request is cancelled and moved to the ride history, like RideTransition.cancel. An
+// offered request is pending again without its driver, like RideTransition.release.
+function expireRideRequest(db, request, now) {
+    const version = request.data().version || 0;
+
+    return db.runTransaction(transaction => {
+        return transaction.get(request.ref).then(current => {
+            if (!current.exists || (current.data().version || 0) !== version
+                    || current.data().status !== request.data().status) {
+                return false;
+            }
+
+            const data = current.data();
+            const user = data.status === 'PENDING' ? data.rider : data.driver;
+            const userRef = user ? db.collection('users').doc(user) : null;
+
+            return (userRef ? transaction.get(userRef) : Promise.resolve(null)).then(owner => {
+                if (data.status === 'PENDING') {
+                    const history = db.collection('rideHistory').doc(historyPartition(now))
+                        .collection('rides').doc(request.id);
+
+                    const archived = Object.assign({}, data, {
+                        status: 'CANCELLED',
+                        version: version + 1,
+                        completedAt: admin.firestore.FieldValue.serverTimestamp()
+                    });
+                    delete archived.statusChangedAt;
+
+                    transaction.set(history, archived);
+                    transaction.delete(request.ref);
+                } else {
+                    transaction.update(request.ref, {
+                        status: 'PENDING',
+                        driver: null,
+                        version: version + 1,
+                        statusChangedAt: admin.firestore.FieldValue.serverTimestamp()
+                    });
+                }
+
+                // Only clear the user's current request if it is still this one
+                if (owner && owner.exists && owner.data().currentRequestId === request.id) {
+                    transaction.update(userRef, { currentRequestId: '' });
+                }
+                return true;
+            });
+        });
+    });
+}
+
+// How many ride requests the expiry and the backfill read at a time. A page is done before the
+// next one is read, so this is also the most transactions they run at once.
+const PAGE_SIZE = 50;
+
+// Reads a query a page at a time, passing each page to run, and resolves with everything run
+// resolved with. The query must be ordered, since the next page starts after the last document.
+function forEachPage(query, run) {
+    const readPage = (after, results) => {
+        const page = after ? query.startAfter(after) : query;
+
+        return page.limit(PAGE_SIZE).get().then(snapshot => {
+            return run(snapshot.docs).then(pageResults => {
+                const all = results.concat(pageResults);
+
+                if (snapshot.size < PAGE_SIZE) {
+                    return all;
+                }
+                return readPage(snapshot.docs[snapshot.size - 1], all);
+            });
+        });
+    };
+
+    return readPage(null, []);
+}
+
+// Ends the ride requests whose deadlines passed at a time, so the deadlines can be tested without
+// waiting for them. Resolves with whether each stale request was ended.
+function expireRideRequests(db, now) {
+    const stale = (status, timeout) => db.collection('rideRequests')
+        .where('status', '==', status)
+        .where('statusChangedAt', '<', admin.firestore.Timestamp.fromMillis(now - timeout))
+        .orderBy('statusChangedAt');
+
+    const expire = requests => Promise.all(requests.map(request => expireRideRequest(db, request, now)));
+
+    return forEachPage(stale('PENDING', PENDING_TTL), expire)
+        .then(cancelled => forEachPage(stale('OFFERED', OFFER_TIMEOUT), expire)
+            .then(released => cancelled.concat(released)))
+        .then(ended => {
+            console.log('Expired ride requests:', ended.filter(done => done).length);
+            return ended;
+        });
+}
+
+exports.expireRideRequestsAt = expireRideRequests;
+
+// Requests no driver took are cancelled, so they stop showing up in every driver's search, and
+// offers the rider did not answer are released, so the request is pending again and the driver
+// is free. Runs on the server, so it does not depend on anyone having the app open.
+exports.expireRideRequests = functions.pubsub.schedule('every 1 minutes').onRun(context => {
+    return expireRideRequests(admin.firestore(), Date.now());
+});
+
+// Sets statusChangedAt on the waiting ride requests written before the app set it, so the expiry
+// finds them. The time they were last written is used, since their status has not changed since.
+// Safe to run again.
+exports.backfillStatusChangedAt = functions.https.onRequest((req, res) => {
+    const db = admin.firestore();
+
+    const missing = status => db.collection('rideRequests')
+        .where('status', '==', status)
+        .orderBy(admin.firestore.FieldPath.documentId());
+
+    const backfill = requests => Promise.all(requests.map(request => {
+        return db.runTransaction(transaction => {
+            return transaction.get(request.ref).then(current => {
+                // The app may have changed the status and set the time since the query read it
+                if (!current.exists || current.data().status !== request.data().status
+                        || 'statusChangedAt' in current.data()) {
+                    return false;
+                }
+
+                transaction.update(request.ref, { statusChangedAt: current.updateTime });
+                return true;
+            });
+        });
+    }));
+
+    return forEachPage(missing('PENDING'), backfill)
+        .then(pending => forEachPage(missing('OFFERED'), backfill)
+            .then(offered => pending.concat(offered)))
+        .then(results => {
+            const set = results.filter(done => done).length;
+            console.log('Backfilled statusChangedAt:', set);
+            return res.send('Set statusChangedAt on ' + set + ' ride requests');
+        });
+});
@@ -0,0 +1,195 @@
+'use-strict'
+
+const admin = require('firebase-admin');
+
+// Compares two field values the way Firestore orders them, for the values the functions query on
+function compare(a, b) {
+    const value = v => (v && typeof v.toMillis === 'function') ? v.toMillis() : v;
+    const x = value(a);
+    const y = value(b);
+    return x < y ? -1 : (x > y ? 1 : 0);
+}
+
+function matches(value, op, expected) {
+    const order = compare(value, expected);
+
+    switch (op) {
+        case '==': return order === 0;
+        case '<': return order < 0;
+        case '<=': return order <= 0;
+        case '>': return order > 0;
+        case '>=': return order >= 0;
+        default: throw new Error('Unsupported operator ' + op);
+    }
+}
+
+// A document in a FakeFirestore
+class FakeDocumentReference {
+    constructor(db, path) {
+        this.db = db;
+        this.path = path;
+        this.id = path.split('/').pop();
+    }
+
+    collection(name) {
+        return new FakeQuery(this.db, this.path + '/' + name, [], null, null, null);
+    }
+
+    get() {
+        return Promise.resolve(this.db.snapshot(this.path));
+    }
+}
+
+// A collection or a query on one, supporting what the functions use
+class FakeQuery {
+    constructor(db, collection, filters, order, size, after) {
+        this.db = db;
+        this.collection = collection;
+        this.filters = filters;
+        this.order = order;
+        this.size = size;
+        this.after = after;
+    }
+
+    doc(id) {
+        return new FakeDocumentReference(this.db, this.collection + '/' + id);
+    }
+
+    where(field, op, value) {
+        return new FakeQuery(this.db, this.collection, this.filters.concat([{ field, op, value }]),
+            this.order, this.size, this.after);
+    }
+
+    orderBy(field) {
+        return new FakeQuery(this.db, this.collection, this.filters, field, this.size, this.after);
+    }
+
+    limit(size) {
+        return new FakeQuery(this.db, this.collection, this.filters, this.order, size, this.after);
+    }
+
+    startAfter(snapshot) {
+        return new FakeQuery(this.db, this.collection, this.filters, this.order, this.size, snapshot);
+    }
+
+    get() {
+        // Ordering by anything but a field name, like FieldPath.documentId(), orders by ID
+        const key = snapshot => typeof this.order === 'string' ? snapshot.data()[this.order] : snapshot.id;
+        const byKey = (a, b) => compare(key(a), key(b)) || compare(a.id, b.id);
+
+        let docs = this.db.list(this.collection)
+            .filter(snapshot => this.filters.every(filter => {
+                const data = snapshot.data();
+                return filter.field in data && matches(data[filter.field], filter.op, filter.value);
+            }))
+            .sort(byKey);
+
+        if (this.after) {
+            docs = docs.filter(snapshot => byKey(snapshot, this.after) > 0);
+        }
+        if (this.size !== null) {
+            docs = docs.slice(0, this.size);
+        }
+
+        const result = { docs, size: docs.length, empty: docs.length === 0, forEach: f => docs.forEach(f) };
+
+        if (this.db.afterQuery) {
+            this.db.afterQuery(result);
+        }
+        return Promise.resolve(result);
+    }
+}
+
+// An in-memory Firestore with the calls the functions make, writing server timestamps as the
+// time it was made with
+class FakeFirestore {
+    constructor(now) {
+        this.now = now;
+        this.documents = new Map();
+        this.activeTransactions = 0;
+        this.maxActiveTransactions = 0;
+        // Called with each query's result before it is returned, to write in between
+        this.afterQuery = null;
+    }
+
+    collection(name) {
+        return new FakeQuery(this, name, [], null, null, null);
+    }
+
+    doc(path) {
+        return new FakeDocumentReference(this, path);
+    }
+
+    set(path, data) {
+        const resolved = {};
+        Object.keys(data).forEach(field => {
+            const value = data[field];
+            const isServerTimestamp = value && typeof value.isEqual === 'function'
+                && value.isEqual(admin.firestore.FieldValue.serverTimestamp());
+            resolved[field] = isServerTimestamp ? admin.firestore.Timestamp.fromMillis(this.now) : value;
+        });
+
+        this.documents.set(path, { data: resolved, updateTime: admin.firestore.Timestamp.fromMillis(this.now) });
+    }
+
+    update(path, data) {
+        const stored = this.documents.get(path);
+
+        if (!stored) {
+            throw new Error('No document to update: ' + path);
+        }
+        this.set(path, Object.assign({}, stored.data, data));
+    }
+
+    delete(path) {
+        this.documents.delete(path);
+    }
+
+    data(path) {
+        const stored = this.documents.get(path);
+        return stored ? Object.assign({}, stored.data) : undefined;
+    }
+
+    snapshot(path) {
+        const stored = this.documents.get(path);
+
+        return {
+            id: path.split('/').pop(),
+            ref: new FakeDocumentReference(this, path),
+            exists: stored !== undefined,
+            updateTime: stored ? stored.updateTime : undefined,
+            data: () => stored ? Object.assign({}, stored.data) : undefined
+        };
+    }
+
+    list(collection) {
+        return Array.from(this.documents.keys())
+            .filter(path => path.slice(0, path.lastIndexOf('/')) === collection)
+            .map(path => this.snapshot(path));
+    }
+
+    // Writes once the update function resolves. Does not retry, the tests write in between
+    // through afterQuery instead.
+    runTransaction(updateFunction) {
+        const writes = [];
+        const transaction = {
+            get: ref => ref.get(),
+            set: (ref, data) => writes.push(() => this.set(ref.path, data)),
+            update: (ref, data) => writes.push(() => this.update(ref.path, data)),
+            delete: ref => writes.push(() => this.delete(ref.path))
+        };
+
+        this.activeTransactions++;
+        this.maxActiveTransactions = Math.max(this.maxActiveTransactions, this.activeTransactions);
+
+        return Promise.resolve()
+            .then(() => updateFunction(transaction))
+            .then(result => {
+                writes.forEach(write => write());
+                this.activeTransactions--;
+                return result;
+            });
+    }
+}
+
+module.exports = FakeFirestore;
@@ -0,0 +1,132 @@
+'use-strict'
+
+const assert = require('assert');
+const test = require('firebase-functions-test')();
+const admin = require('firebase-admin');
+const FakeFirestore = require('./fakeFirestore');
+
+const NOW = Date.UTC(2020, 2, 15, 12, 0, 0);
+const MINUTE = 60 * 1000;
+
+describe('expireRideRequests', () => {
+    let myFunctions;
+    let db;
+
+    before(() => {
+        test.mockConfig({});
+        myFunctions = require('../index.js');
+    });
+
+    after(() => {
+        test.cleanup();
+    });
+
+    beforeEach(() => {
+        db = new FakeFirestore(NOW);
+    });
+
+    // Stores a ride request whose status last changed some minutes before NOW, and its rider and
+    // driver with it as their current request
+    const rideRequest = (requestId, status, minutesAgo) => {
+        const rider = 'rider-' + requestId;
+        const driver = status === 'OFFERED' ? 'driver-' + requestId : null;
+
+        db.set('rideRequests/' + requestId, {
+            requestId,
+            status,
+            rider,
+            driver,
+            version: 1,
+            statusChangedAt: admin.firestore.Timestamp.fromMillis(NOW - minutesAgo * MINUTE)
+        });
+        db.set('users/' + rider, { uid: rider, currentRequestId: requestId });
+
+        if (driver) {
+            db.set('users/' + driver, { uid: driver, currentRequestId: requestId });
+        }
+    };
+
+    it('cancels pending requests no driver took in time', () => {
+        rideRequest('stale', 'PENDING', 16);
+        rideRequest('fresh', 'PENDING', 14);
+
+        return myFunctions.expireRideRequestsAt(db, NOW).then(ended => {
+            assert.deepStrictEqual(ended, [true]);
+            assert.strictEqual(db.data('rideRequests/stale'), undefined);
+
+            const archived = db.data('rideHistory/2020-03/rides/stale');
+            assert.strictEqual(archived.status, 'CANCELLED');
+            assert.strictEqual(archived.version, 2);
+            assert.strictEqual(archived.completedAt.toMillis(), NOW);
+            assert.ok(!('statusChangedAt' in archived));
+            assert.strictEqual(db.data('users/rider-stale').currentRequestId, '');
+
+            assert.strictEqual(db.data('rideRequests/fresh').status, 'PENDING');
+            assert.strictEqual(db.data('users/rider-fresh').currentRequestId, 'fresh');
+        });
+    });
+
+    it('releases offers the rider did not answer in time', () => {
+        rideRequest('stale', 'OFFERED', 3);
+        rideRequest('fresh', 'OFFERED', 1);
+
+        return myFunctions.expireRideRequestsAt(db, NOW).then(ended => {
+            assert.deepStrictEqual(ended, [true]);
+
+            const released = db.data('rideRequests/stale');
+            assert.strictEqual(released.status, 'PENDING');
+            assert.strictEqual(released.driver, null);
+            assert.strictEqual(released.version, 2);
+            assert.strictEqual(released.statusChangedAt.toMillis(), NOW);
+            assert.strictEqual(db.data('users/driver-stale').currentRequestId, '');
+            assert.strictEqual(db.data('users/rider-stale').currentRequestId, 'stale');
+
+            assert.strictEqual(db.data('rideRequests/fresh').status, 'OFFERED');
+            assert.strictEqual(db.data('users/driver-fresh').currentRequestId, 'fresh');
+        });
+    });
+
+    it('skips requests written since they were read', () => {
+        rideRequest('accepted', 'OFFERED', 3);
+        rideRequest('updated', 'PENDING', 16);
+
+        // The rider accepts one offer, and the other request is written, between the query and
+        // the transactions
+        db.afterQuery = () => {
+            db.afterQuery = null;
+            db.update('rideRequests/accepted', { status: 'ACCEPTED', version: 2 });
+            db.update('rideRequests/updated', { version: 2 });
+        };
+
+        return myFunctions.expireRideRequestsAt(db, NOW).then(ended => {
+            assert.ok(ended.every(done => !done));
+            assert.strictEqual(db.data('rideRequests/accepted').status, 'ACCEPTED');
+            assert.strictEqual(db.data('rideRequests/accepted').driver, 'driver-accepted');
+            assert.strictEqual(db.data('rideRequests/updated').status, 'PENDING');
+            assert.strictEqual(db.data('users/rider-updated').currentRequestId, 'updated');
+        });
+    });
+
+    it('only clears the current request if it is still the expired one', () => {
+        rideRequest('old', 'PENDING', 16);
+        db.set('users/rider-old', { uid: 'rider-old', currentRequestId: 'newer' });
+
+        return myFunctions.expireRideRequestsAt(db, NOW).then(ended => {
+            assert.deepStrictEqual(ended, [true]);
+            assert.strictEqual(db.data('rideRequests/old'), undefined);
+            assert.strictEqual(db.data('users/rider-old').currentRequestId, 'newer');
+        });
+    });
+
+    it('expires a backlog a page at a time', () => {
+        for (let i = 0; i < 120; i++) {
+            rideRequest('request' + i, 'PENDING', 16 + i);
+        }
+
+        return myFunctions.expireRideRequestsAt(db, NOW).then(ended => {
+            assert.strictEqual(ended.filter(done => done).length, 120);
+            assert.strictEqual(db.list('rideRequests').length, 0);
+            assert.ok(db.maxActiveTransactions <= 50);
+        });
+    });
+});
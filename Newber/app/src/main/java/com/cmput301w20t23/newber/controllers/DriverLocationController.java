@@ -0,0 +1,109 @@
+package com.cmput301w20t23.newber.controllers;
+
+import com.cmput301w20t23.newber.database.DatabaseAdapter;
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.DriverLocationCache;
+import com.cmput301w20t23.newber.helpers.GeoHash;
+import com.cmput301w20t23.newber.helpers.ServerClock;
+import com.cmput301w20t23.newber.models.DriverLocation;
+import com.cmput301w20t23.newber.models.Location;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is the Driver Location Controller, which answers which drivers are online near a location.
+ * Lookups are served from a cache of geohash cells, and only cells that are missing or expired
+ * are fetched from Firestore. If the fetch fails, only the drivers already cached are returned.
+ *
+ * Drivers are left out once their location is too old on the server's clock, which is sampled
+ * before the first lookup, so a device whose clock is off neither hides every driver nor counts
+ * stale ones.
+ */
+public class DriverLocationController {
+    //The radius a rider sees drivers in around their pick-up location, 3 Km
+    public static final double NEARBY_RADIUS = 3000;
+
+    private DatabaseAdapter databaseAdapter;
+    private final DriverLocationCache cache;
+    private final ServerClock serverClock = new ServerClock();
+
+    //The server clock is sampled once, a failed sample falls back to the device's clock
+    private boolean serverClockSampled = false;
+
+    public DriverLocationController() {
+        this.databaseAdapter = DatabaseAdapter.getInstance();
+        this.cache = new DriverLocationCache();
+    }
+
+    /**
+     * Finds the online drivers within a radius of a pick-up location
+     * @param pickup The pick-up location
+     * @param radius The radius in metres
+     * @param callback The callback that will be returned to the activity
+     */
+    public void getNearbyDrivers(final Location pickup, final double radius,
+                                 final Callback<ArrayList<DriverLocation>> callback) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+
+        if (!serverClockSampled && user != null) {
+            serverClockSampled = true;
+            databaseAdapter.sampleServerClock(user.getUid(), serverClock, new Callback<Boolean>() {
+                @Override
+                public void myResponseCallback(Boolean sampled) {
+                    getNearbyDrivers(pickup, radius, callback);
+                }
+            });
+            return;
+        }
+
+        final double latitude = pickup.getLatitude();
+        final double longitude = pickup.getLongitude();
+        int precision = GeoHash.precisionForRadius(radius, latitude);
+
+        // The centre cell and its neighbours cover the whole radius
+        final List<String> cells = new ArrayList<>(GeoHash.ring(latitude, longitude, precision, 0));
+        cells.addAll(GeoHash.ring(latitude, longitude, precision, 1));
+
+        final List<String> missing = cache.missingCells(cells, System.currentTimeMillis());
+
+        if (missing.isEmpty()) {
+            callback.myResponseCallback(cache.nearby(latitude, longitude, radius, cells,
+                    serverClock.toServerTime(System.currentTimeMillis())));
+            return;
+        }
+
+        databaseAdapter.getOnlineDriverLocations(GeoHash.toRanges(missing),
+                new Callback<ArrayList<DriverLocation>>() {
+            @Override
+            public void myResponseCallback(ArrayList<DriverLocation> driverLocations) {
+                long now = System.currentTimeMillis();
+
+                // A failed read is not cached as empty cells, so they are fetched again next time
+                if (driverLocations != null) {
+                    cache.put(missing, driverLocations, now);
+                }
+
+                callback.myResponseCallback(cache.nearby(latitude, longitude, radius, cells,
+                        serverClock.toServerTime(now)));
+            }
+        });
+    }
+
+    /**
+     * Counts the online drivers within a radius of a pick-up location
+     * @param pickup The pick-up location
+     * @param radius The radius in metres
+     * @param callback The callback that will be returned to the activity
+     */
+    public void getNearbyDriverCount(Location pickup, double radius, final Callback<Integer> callback) {
+        getNearbyDrivers(pickup, radius, new Callback<ArrayList<DriverLocation>>() {
+            @Override
+            public void myResponseCallback(ArrayList<DriverLocation> driverLocations) {
+                callback.myResponseCallback(driverLocations.size());
+            }
+        });
+    }
+}
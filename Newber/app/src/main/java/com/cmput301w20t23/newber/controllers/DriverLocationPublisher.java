@@ -0,0 +1,136 @@
+package com.cmput301w20t23.newber.controllers;
+
+import com.cmput301w20t23.newber.database.DatabaseAdapter;
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.GeoMath;
+import com.cmput301w20t23.newber.models.DriverLocation;
+
+/**
+ * Publishes a driver's location to Firestore while they are online. Location fixes arrive far more
+ * often than riders need them, so a fix is only written once the driver has moved MIN_DISTANCE
+ * and MIN_INTERVAL has passed since the last write. Fixes in between are coalesced, and only the
+ * newest one is written. A driver who is not moving is still written every MAX_INTERVAL, so they
+ * do not look stale to riders. The newest fix is flushed when the driver leaves the screen.
+ *
+ * The publisher is not thread-safe, location fixes are delivered on the main thread.
+ */
+public class DriverLocationPublisher {
+    //The distance a driver has to move before a new location is written, 50 m
+    public static final double MIN_DISTANCE = 50;
+
+    //The shortest time between two writes, 5 seconds
+    public static final long MIN_INTERVAL = 5 * 1000;
+
+    //The longest time between two writes while online, 60 seconds
+    public static final long MAX_INTERVAL = 60 * 1000;
+
+    private final String uid;
+    private final Callback<DriverLocation> writer;
+
+    private DriverLocation lastWritten;
+    private DriverLocation pending;
+    private int writes = 0;
+
+    /**
+     * Instantiates a new DriverLocationPublisher that writes to Firestore.
+     *
+     * @param uid the UID of the driver
+     */
+    public DriverLocationPublisher(String uid) {
+        this(uid, new Callback<DriverLocation>() {
+            @Override
+            public void myResponseCallback(DriverLocation driverLocation) {
+                DatabaseAdapter.getInstance().setDriverLocation(driverLocation);
+            }
+        });
+    }
+
+    /**
+     * Instantiates a new DriverLocationPublisher.
+     *
+     * @param uid    the UID of the driver
+     * @param writer receives each location to write
+     */
+    public DriverLocationPublisher(String uid, Callback<DriverLocation> writer) {
+        this.uid = uid;
+        this.writer = writer;
+    }
+
+    /**
+     * Records a new location fix, and writes it if the driver has moved far enough or has not been
+     * written for too long
+     * @param latitude the latitude of the fix
+     * @param longitude the longitude of the fix
+     * @param time the time of the fix in milliseconds
+     * @return true if a location was written
+     */
+    public boolean onLocationChanged(double latitude, double longitude, long time) {
+        pending = new DriverLocation(uid, latitude, longitude, true, time);
+
+        if (!shouldWrite(pending)) {
+            return false;
+        }
+
+        write(pending);
+        return true;
+    }
+
+    /**
+     * Writes the newest fix, if it has not been written yet, whether or not the driver has moved
+     * far enough. Used e.g. before the app goes to the background.
+     * @return true if a location was written
+     */
+    public boolean flush() {
+        if (pending == null || pending == lastWritten) {
+            return false;
+        }
+
+        write(pending);
+        return true;
+    }
+
+    /**
+     * Marks the driver as offline at their last known location, so riders stop seeing them
+     * @param time the current time in milliseconds
+     */
+    public void goOffline(long time) {
+        DriverLocation last = pending != null ? pending : lastWritten;
+
+        if (last == null) {
+            return;
+        }
+
+        write(new DriverLocation(uid, last.getLatitude(), last.getLongitude(), false, time));
+        pending = null;
+    }
+
+    /**
+     * Gets the number of writes made, to check how well fixes are being throttled
+     * @return the number of writes
+     */
+    public int getWriteCount() {
+        return writes;
+    }
+
+    private boolean shouldWrite(DriverLocation location) {
+        if (lastWritten == null || !lastWritten.isOnline()) {
+            return true;
+        }
+
+        long elapsed = location.getUpdatedAt() - lastWritten.getUpdatedAt();
+
+        if (elapsed >= MAX_INTERVAL) {
+            return true;
+        }
+
+        return elapsed >= MIN_INTERVAL
+                && GeoMath.distance(lastWritten.getLatitude(), lastWritten.getLongitude(),
+                        location.getLatitude(), location.getLongitude()) >= MIN_DISTANCE;
+    }
+
+    private void write(DriverLocation location) {
+        writer.myResponseCallback(location);
+        lastWritten = location;
+        writes++;
+    }
+}
@@ -1,15 +1,33 @@
 package com.cmput301w20t23.newber.controllers;
 
+import androidx.annotation.Nullable;
+
+import com.cmput301w20t23.newber.database.ClaimMetrics;
+import com.cmput301w20t23.newber.database.ClaimResult;
 import com.cmput301w20t23.newber.database.DatabaseAdapter;
+import com.cmput301w20t23.newber.database.RideHistoryPage;
+import com.cmput301w20t23.newber.database.RideRepository;
+import com.cmput301w20t23.newber.database.RideTransition;
+import com.cmput301w20t23.newber.dispatch.Assignment;
+import com.cmput301w20t23.newber.dispatch.DispatchEngine;
+import com.cmput301w20t23.newber.dispatch.DispatchPoint;
 import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.GeoHash;
+import com.cmput301w20t23.newber.helpers.GeoMath;
+import com.cmput301w20t23.newber.helpers.RideRequestChangeListener;
+import com.cmput301w20t23.newber.helpers.SubscriptionRegistry;
 import com.cmput301w20t23.newber.models.Location;
 import com.cmput301w20t23.newber.models.RequestStatus;
 import com.cmput301w20t23.newber.models.RideRequest;
 import com.cmput301w20t23.newber.models.User;
-import com.google.firebase.auth.FirebaseAuth;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.firebase.firestore.ListenerRegistration;
 
 import java.util.ArrayList;
-import java.util.Observer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * This is the Ride Controller, which is responsible for the Ride Requests Logic
@@ -17,12 +35,26 @@ import java.util.Observer;
  * @author Ibrahim Aly
  */
 public class RideController {
-    private final FirebaseAuth mAuth;
-    private DatabaseAdapter databaseAdapter;
+    //How many rings of geohash cells a listener in a sparse area can widen to
+    private static final int MAX_SEARCH_RINGS = 3;
+
+    private RideRepository rideRepository;
 
+    /**
+     * Instantiates a new RideController that keeps ride requests in Firestore.
+     */
     public RideController() {
-        this.mAuth = FirebaseAuth.getInstance();
-        this.databaseAdapter = DatabaseAdapter.getInstance();
+        this(DatabaseAdapter.getInstance());
+    }
+
+    /**
+     * Instantiates a new RideController that keeps ride requests in the given repository, e.g. an
+     * InMemoryBackend off the device.
+     *
+     * @param rideRepository where ride requests are kept
+     */
+    public RideController(RideRepository rideRepository) {
+        this.rideRepository = rideRepository;
     }
 
     /**
@@ -31,7 +63,7 @@ public class RideController {
      * @param callback The Callback that will be returned to the Activity
      */
     public void getRideRequest(String requestId, Callback<RideRequest> callback) {
-        this.databaseAdapter.getRideRequest(requestId, callback);
+        this.rideRepository.getRideRequest(requestId, callback);
     }
 
     /**
@@ -42,17 +74,75 @@ public class RideController {
      * @param rider The UID of the Rider who requested the Ride Request
      */
     public void createRideRequest(final Location startLocation, final Location endLocation, double cost, String rider) {
-        RideRequest rideRequest = new RideRequest(startLocation, endLocation, rider, cost);
-        this.databaseAdapter.createRideRequest(rider, rideRequest);
+        createRideRequest(UUID.randomUUID().toString(), startLocation, endLocation, cost, rider);
     }
 
     /**
-     * Cancels a Ride Request that the Rider just requested
+     * Creates a new Ride Request in Firestore with a given ID. Creating the same ID again does not
+     * write a second ride request, so a screen can generate the ID once and ignore repeated taps.
+     * @param requestId The ID of the new ride request
+     * @param startLocation The start location of the ride request
+     * @param endLocation The end location of the ride request
+     * @param cost The cost of the ride request
+     * @param rider The UID of the Rider who requested the Ride Request
+     */
+    public void createRideRequest(String requestId, Location startLocation, Location endLocation,
+                                  double cost, String rider) {
+        RideRequest rideRequest = new RideRequest(requestId, startLocation, endLocation,
+                RequestStatus.PENDING, rider, null, cost);
+        this.rideRepository.commitRideTransition(RideTransition.create(rideRequest), null);
+    }
+
+    /**
+     * Cancels a Ride Request that the Rider just requested, removing it from Firestore and clearing
+     * the rider's current request together
      * @param rideRequest The ride request to be cancelled and removed from Firestore
      */
     public void removeRideRequest(RideRequest rideRequest) {
-        // Remove request from firebase requests table
-        this.databaseAdapter.removeRideRequest(rideRequest);
+        this.rideRepository.commitRideTransition(RideTransition.cancel(rideRequest), null);
+    }
+
+    /**
+     * Claims a pending ride request for a driver, so it is offered to them. If other drivers claim
+     * the same request at the same time only one of them wins, and the others learn right away
+     * that they lost it.
+     * @param rideRequest The pending ride request, updated to OFFERED if the claim is won
+     * @param driverId The UID of the driver
+     * @param callback Receives whether the claim was won, lost or failed
+     */
+    public void claimRideRequest(final RideRequest rideRequest, final String driverId,
+                                 final Callback<ClaimResult> callback) {
+        rideRepository.claimRideRequest(rideRequest.getRequestId(), driverId, new Callback<ClaimResult>() {
+            @Override
+            public void myResponseCallback(ClaimResult result) {
+                if (result == ClaimResult.WON) {
+                    // The claim wrote these fields and bumped the version already
+                    rideRequest.setDriver(driverId);
+                    rideRequest.setStatus(RequestStatus.OFFERED);
+                    rideRequest.setVersion(rideRequest.getVersion() + 1);
+                    rideRequest.clearChanges();
+                }
+
+                callback.myResponseCallback(result);
+            }
+        });
+    }
+
+    /**
+     * Gets the counters of ride request claims, e.g. to log how contended requests are
+     * @return the claim metrics
+     */
+    public ClaimMetrics getClaimMetrics() {
+        return rideRepository.getClaimMetrics();
+    }
+
+    /**
+     * Removes the driver from a ride request, so other drivers can offer to take it again, and
+     * clears the driver's current request
+     * @param rideRequest The offered or accepted ride request
+     */
+    public void releaseRideRequest(RideRequest rideRequest) {
+        this.rideRepository.commitRideTransition(RideTransition.release(rideRequest), null);
     }
 
     /**
@@ -60,52 +150,269 @@ public class RideController {
      * @param request The ride request to be updated in Firestore
      */
     public void updateRideRequest(RideRequest request) {
-        databaseAdapter.updateRideRequest(request);
+        rideRepository.updateRideRequest(request, null);
     }
 
     /**
-     * Get all pending ride requests from Firestore
-     * @param callback The callback that will be returned to the activity
+     * Listens to the pending ride requests within a radius of a location, e.g. the area shown on
+     * the map, to keep a RideRequestIndex up to date. Requests a little outside the radius may also
+     * be delivered, as whole geohash cells are listened to.
+     *
+     * If fewer than minResults requests are found in the first update, the listener widens one
+     * ring of cells at a time (up to MAX_SEARCH_RINGS) and the radius grows with it, so drivers in
+     * sparse areas still see the closest requests. The requests are only reported synced once the
+     * listener stopped widening.
+     * @param center The centre of the area to listen to
+     * @param radius The radius of the area in metres
+     * @param minResults The number of requests to find before the listener stops widening
+     * @param listener The listener that will receive every added, modified and removed request
+     * @return The registration to stop listening with
      */
-    public void getPendingRideRequests(Callback<ArrayList<RideRequest>> callback) {
-        databaseAdapter.getPendingRideRequests(callback);
+    public ListenerRegistration addPendingRideRequestsListener(LatLng center, double radius, int minResults,
+                                                               RideRequestChangeListener listener) {
+        int precision = GeoHash.precisionForRadius(radius, center.latitude);
+
+        // The centre cell and its neighbours cover the whole circle
+        List<String> cells = new ArrayList<>(GeoHash.ring(center.latitude, center.longitude, precision, 0));
+        cells.addAll(GeoHash.ring(center.latitude, center.longitude, precision, 1));
+
+        WideningListener widening = new WideningListener(center, radius, precision, minResults, listener);
+        widening.listen(1, cells);
+        return widening;
     }
 
     /**
-     * Completes a ride request
+     * Listens to one more ring of cells each time the rings listened to so far have too few
+     * requests in them
+     */
+    private class WideningListener implements ListenerRegistration {
+        private final LatLng center;
+        private final double radius;
+        private final int precision;
+        private final int minResults;
+        private final RideRequestChangeListener listener;
+        private final List<ListenerRegistration> registrations = new ArrayList<>();
+
+        //The requests found in every ring, and how many ring listeners have each one. A request
+        //whose start location moved to another ring is briefly in two of them.
+        private final Map<String, RideRequest> found = new HashMap<>();
+        private final Map<String, Integer> holders = new HashMap<>();
+
+        //The outermost ring listened to
+        private int ring = 0;
+        private boolean widening = true;
+        private boolean removed = false;
+
+        WideningListener(LatLng center, double radius, int precision, int minResults,
+                         RideRequestChangeListener listener) {
+            this.center = center;
+            this.radius = radius;
+            this.precision = precision;
+            this.minResults = minResults;
+            this.listener = listener;
+        }
+
+        /**
+         * Listens to the cells of the next ring
+         * @param ring The outermost ring of cells that is listened to after this
+         * @param cells The cells that are not listened to yet
+         */
+        void listen(final int ring, List<String> cells) {
+            this.ring = ring;
+
+            ListenerRegistration registration = rideRepository.addPendingRideRequestsListener(
+                    GeoHash.toRanges(cells), new RideRequestChangeListener() {
+                @Override
+                public void onRideRequestAdded(RideRequest rideRequest) {
+                    String requestId = rideRequest.getRequestId();
+                    Integer count = holders.get(requestId);
+                    holders.put(requestId, count == null ? 1 : count + 1);
+                    found.put(requestId, rideRequest);
+
+                    if (count == null) {
+                        listener.onRideRequestAdded(rideRequest);
+                    } else {
+                        listener.onRideRequestModified(rideRequest);
+                    }
+                }
+
+                @Override
+                public void onRideRequestModified(RideRequest rideRequest) {
+                    found.put(rideRequest.getRequestId(), rideRequest);
+                    listener.onRideRequestModified(rideRequest);
+                }
+
+                @Override
+                public void onRideRequestRemoved(RideRequest rideRequest) {
+                    String requestId = rideRequest.getRequestId();
+                    Integer count = holders.get(requestId);
+
+                    if (count == null) {
+                        return;
+                    } else if (count > 1) {
+                        holders.put(requestId, count - 1);
+                        return;
+                    }
+
+                    holders.remove(requestId);
+                    found.remove(requestId);
+                    listener.onRideRequestRemoved(rideRequest);
+                }
+
+                @Override
+                public void onRideRequestsSynced() {
+                    synced(ring);
+                }
+            });
+
+            registrations.add(registration);
+            if (removed) {
+                registration.remove();
+            }
+        }
+
+        private void synced(int syncedRing) {
+            if (!widening) {
+                listener.onRideRequestsSynced();
+                return;
+            }
+
+            // Only the first update of the outermost ring completes the set
+            if (syncedRing != ring || removed) {
+                return;
+            }
+
+            if (countNearby() < minResults && ring < MAX_SEARCH_RINGS) {
+                listen(ring + 1, GeoHash.ring(center.latitude, center.longitude, precision, ring + 1));
+            } else {
+                widening = false;
+                listener.onRideRequestsSynced();
+            }
+        }
+
+        /**
+         * Counts the requests that are close enough to be sure to be in the rings listened to
+         */
+        private int countNearby() {
+            double searchRadius = Math.max(radius, GeoHash.coveredRadius(precision, center.latitude, ring));
+            int nearby = 0;
+
+            for (RideRequest rideRequest : found.values()) {
+                Location start = rideRequest.getStartLocation();
+
+                if (start != null && GeoMath.distance(center.latitude, center.longitude,
+                        start.getLatitude(), start.getLongitude()) <= searchRadius) {
+                    nearby++;
+                }
+            }
+
+            return nearby;
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+
+            for (ListenerRegistration registration : registrations) {
+                registration.remove();
+            }
+        }
+    }
+
+    /**
+     * Matches pending ride requests to available drivers with the dispatch engine, and offers each
+     * matched request to its driver
+     * @param engine The engine that finds the assignments
+     * @param pendingRequests The ride requests waiting for a driver
+     * @param drivers The available drivers and their locations
+     * @return The assignments that were offered
+     */
+    public List<Assignment> dispatch(DispatchEngine engine, List<RideRequest> pendingRequests,
+                                     List<DispatchPoint> drivers) {
+        List<DispatchPoint> requests = new ArrayList<>();
+
+        for (RideRequest rideRequest : pendingRequests) {
+            if (rideRequest.getStartLocation() != null) {
+                requests.add(DispatchPoint.fromRideRequest(rideRequest));
+            }
+        }
+
+        List<Assignment> assignments = engine.solve(requests, drivers);
+        applyAssignments(assignments);
+
+        return assignments;
+    }
+
+    /**
+     * Claims each assigned ride request for its driver, moving it to OFFERED. A request a driver
+     * took in the meantime is left to them.
+     * @param assignments The assignments found by the dispatch engine
+     */
+    public void applyAssignments(List<Assignment> assignments) {
+        for (final Assignment assignment : assignments) {
+            rideRepository.claimRideRequest(assignment.getRequestId(), assignment.getDriverId(),
+                    new Callback<ClaimResult>() {
+                @Override
+                public void myResponseCallback(ClaimResult result) {
+                    System.out.println("Dispatch of " + assignment.getRequestId() + " to "
+                            + assignment.getDriverId() + ": " + result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Completes a ride request, paying the driver the fare from the rider's balance
      * @param driver The driver that is completing the ride request
      * @param rideRequest The ride request to be completed
      */
     public void finishRideRequest(User driver, RideRequest rideRequest) {
         //Clear the current request Id field in the driver
         driver.setCurrentRequestId("");
-        databaseAdapter.setUserCurrentRequestId(driver.getUid(), "");
 
-        //Set the status of the ride request to COMPLETED and update it in Firestore
-        rideRequest.setStatus(RequestStatus.COMPLETED);
-        updateRideRequest(rideRequest);
+        //Complete the ride request, clear the driver's request and transfer the fare in one batch
+        rideRepository.commitRideTransition(RideTransition.finish(rideRequest), null);
     }
 
     /**
-     * Add an activity as an observer to updates to a ride request in Firestore
-     * @param observer An activity that will be listening to updates in Firestore
-     * @param requestId The ID of the ride request that will be listened on
+     * Removes the tombstone of a completed ride request once the rider has seen that the ride is
+     * over, so only rides that are still going on are left in the live ride requests
+     * @param rideRequest The completed ride request
+     */
+    public void removeTombstone(RideRequest rideRequest) {
+        this.rideRepository.removeTombstone(rideRequest.getRequestId());
+    }
+
+    /**
+     * Gets a page of the finished rides of a user, newest first
+     * @param uid The UID of the user
+     * @param role Whether the user took the rides as "Rider" or gave them as "Driver"
+     * @param pageSize The most rides to return
+     * @param cursor The next cursor of the previous page, or null for the first page
+     * @param callback Receives the page, or null if it could not be read
      */
-    public void addListenerToRideRequest(Observer observer, String requestId) {
-        databaseAdapter.addListenerToRideRequest(requestId);
-        this.databaseAdapter.addObserver(observer);
+    public void getRideHistory(String uid, String role, int pageSize, @Nullable RideHistoryPage.Cursor cursor,
+                               Callback<RideHistoryPage> callback) {
+        this.rideRepository.getRideHistory(uid, role, pageSize, cursor, callback);
     }
 
     /**
-     * Removes all observers/listeners
-     * @param observer The observers to be removed
-     * @param requestId The ID of the ride request to stop listening on
+     * Subscribe an activity to updates to a ride request in Firestore
+     * @param subscriber Receives the ride request when it changes, or null once it is deleted
+     * @param requestId The ID of the ride request that will be listened on
+     * @return The subscription, to be passed to removeListeners
      */
-    public void removeListeners(Observer observer, String requestId) {
-        this.databaseAdapter.deleteObserver(observer);
+    public SubscriptionRegistry.Subscription addListenerToRideRequest(Callback<RideRequest> subscriber, String requestId) {
+        return this.rideRepository.subscribeToRideRequest(requestId, subscriber);
+    }
 
-        if (requestId != null && !requestId.isEmpty()) {
-            this.databaseAdapter.rideRequestListener.remove();
+    /**
+     * Removes a subscription to a ride request
+     * @param subscription The subscription to be removed, may be null
+     */
+    public void removeListeners(SubscriptionRegistry.Subscription subscription) {
+        if (subscription != null) {
+            subscription.unsubscribe();
         }
     }
 }
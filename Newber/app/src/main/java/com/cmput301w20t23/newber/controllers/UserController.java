@@ -7,7 +7,10 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 
+import com.cmput301w20t23.newber.database.ClaimResult;
 import com.cmput301w20t23.newber.database.DatabaseAdapter;
+import com.cmput301w20t23.newber.database.RatingRepository;
+import com.cmput301w20t23.newber.database.UserRepository;
 import com.cmput301w20t23.newber.helpers.Callback;
 import com.cmput301w20t23.newber.models.Rating;
 import com.cmput301w20t23.newber.models.RideRequest;
@@ -37,17 +40,34 @@ import java.util.Map;
 public class UserController {
     private Context context;
     private FirebaseAuth mAuth;
-    private DatabaseAdapter databaseAdapter;
+    private UserRepository userRepository;
+    private RatingRepository ratingRepository;
 
     /**
-     * Instantiates a new UserController.
+     * Instantiates a new UserController that keeps users and ratings in Firestore.
      *
      * @param context the Android context
      */
     public UserController(Context context) {
+        this(context, FirebaseAuth.getInstance(), DatabaseAdapter.getInstance(), DatabaseAdapter.getInstance());
+    }
+
+    /**
+     * Instantiates a new UserController that keeps users and ratings in the given repositories,
+     * e.g. an InMemoryBackend off the device. Without a context or Firebase Auth, only the methods
+     * that are given a user ID can be used.
+     *
+     * @param context          the Android context, may be null
+     * @param mAuth            the Firebase Auth of the signed in user, may be null
+     * @param userRepository   where users are kept
+     * @param ratingRepository where ratings are kept
+     */
+    public UserController(Context context, FirebaseAuth mAuth, UserRepository userRepository,
+                          RatingRepository ratingRepository) {
         this.context = context;
-        this.mAuth = FirebaseAuth.getInstance();
-        this.databaseAdapter = DatabaseAdapter.getInstance();
+        this.mAuth = mAuth;
+        this.userRepository = userRepository;
+        this.ratingRepository = ratingRepository;
     }
 
     /**
@@ -136,7 +156,7 @@ public class UserController {
                            final String email,
                            final String password)
     {
-        databaseAdapter.checkUserName(username, new Callback<Boolean>() {
+        userRepository.checkUserName(username, new Callback<Boolean>() {
             @Override
             public void myResponseCallback(Boolean result) {
                 if (result) {
@@ -147,21 +167,36 @@ public class UserController {
                                 @Override
                                 public void onComplete(@NonNull Task<AuthResult> task) {
                                     if (task.isSuccessful()) {
+                                        final FirebaseUser firebaseUser = task.getResult().getUser();
                                         User newUser = new User(firstName,
                                                 lastName,
                                                 username,
                                                 phone,
                                                 email,
-                                                task.getResult().getUser().getUid());
-
-                                        databaseAdapter.createUser(newUser, role);
-                                        registerUserToken();
-
-                                        Intent signedUpIntent = new Intent(UserController.this.context,
-                                                MainActivity.class);
-
-                                        signedUpIntent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
-                                        UserController.this.context.startActivity(signedUpIntent);
+                                                firebaseUser.getUid());
+
+                                        userRepository.createUser(newUser, role, new Callback<ClaimResult>() {
+                                            @Override
+                                            public void myResponseCallback(ClaimResult result) {
+                                                if (result == ClaimResult.WON) {
+                                                    registerUserToken();
+
+                                                    Intent signedUpIntent = new Intent(UserController.this.context,
+                                                            MainActivity.class);
+
+                                                    signedUpIntent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+                                                    UserController.this.context.startActivity(signedUpIntent);
+                                                    return;
+                                                }
+
+                                                // Remove the account again so the user can sign up with the same email
+                                                firebaseUser.delete();
+                                                Toast.makeText(context, result == ClaimResult.LOST
+                                                                ? "Username has already been taken"
+                                                                : "Could not create your account, please try again",
+                                                        Toast.LENGTH_LONG).show();
+                                            }
+                                        });
                                     } else {
                                         Toast.makeText(UserController.this.context,
                                                 task.getException().toString(),
@@ -175,6 +210,31 @@ public class UserController {
         });
     }
 
+    /**
+     * Checks if a username is available while it is being typed. A username recently seen to be
+     * taken is reported at once, then every answer is confirmed with Firestore.
+     *
+     * @param username the username to check
+     * @param callback receives true if the username is taken, possibly twice if the first answer
+     *                 was wrong
+     */
+    public void checkUsernameTaken(String username, final Callback<Boolean> callback) {
+        final boolean recentlyTaken = userRepository.isUsernameRecentlyTaken(username);
+
+        if (recentlyTaken) {
+            callback.myResponseCallback(true);
+        }
+
+        userRepository.checkUserName(username, new Callback<Boolean>() {
+            @Override
+            public void myResponseCallback(Boolean taken) {
+                if (!recentlyTaken || !taken) {
+                    callback.myResponseCallback(taken);
+                }
+            }
+        });
+    }
+
     /**
      * Checks if the contact info fields are valid, i.e. nonempty and having proper format.
      *
@@ -213,7 +273,7 @@ public class UserController {
 
         final FirebaseUser firebaseUser = mAuth.getCurrentUser();
 
-        databaseAdapter.getUser(mAuth.getCurrentUser().getUid(), new Callback<Map<String, Object>>() {
+        userRepository.getUser(mAuth.getCurrentUser().getUid(), new Callback<Map<String, Object>>() {
             @Override
             public void myResponseCallback(Map<String, Object> result) {
                 final User user = (User) result.get("user");
@@ -227,7 +287,7 @@ public class UserController {
                             @Override
                             public void onSuccess(Void aVoid) {
                                 firebaseUser.updateEmail(email);
-                                databaseAdapter.updateUserInfo(user.getUid(), email, phone);
+                                userRepository.updateUserInfo(user.getUid(), email, phone);
                                 //TO DO: Change
                                 ((ProfileActivity) context).updatePhoneEmailText(phone, email);
                             }
@@ -251,7 +311,7 @@ public class UserController {
      * @param requestId ride request id
      */
     public void updateUserCurrentRequestId(String uid, String requestId) {
-        databaseAdapter.setUserCurrentRequestId(uid, requestId);
+        userRepository.setUserCurrentRequestId(uid, requestId);
     }
 
     /**
@@ -259,7 +319,7 @@ public class UserController {
      * @param uid user id
      */
     public void removeUserCurrentRequestId(String uid) {
-        databaseAdapter.setUserCurrentRequestId(uid, "");
+        userRepository.setUserCurrentRequestId(uid, "");
     }
 
     /**
@@ -268,7 +328,7 @@ public class UserController {
      */
     public void getUser(Callback<Map<String, Object>> callback) {
         String uid = mAuth.getCurrentUser().getUid();
-        databaseAdapter.getUser(uid, callback);
+        userRepository.getUser(uid, callback);
     }
 
     /**
@@ -277,7 +337,7 @@ public class UserController {
      * @param callback   The callback function that contains the information of the user
      */
     public void getUser(String uid, Callback<Map<String, Object>> callback) {
-        databaseAdapter.getUser(uid, callback);
+        userRepository.getUser(uid, callback);
     }
 
     /**
@@ -286,7 +346,7 @@ public class UserController {
      * @param callback The callback function that contains the information of the Rating
      */
     public void getRating(String uid, Callback<Rating> callback) {
-        databaseAdapter.getRating(uid ,callback);
+        ratingRepository.getRating(uid ,callback);
     }
 
     /**
@@ -307,7 +367,7 @@ public class UserController {
 
                     String uid = mAuth.getCurrentUser().getUid();
                     String token = task.getResult().getToken();
-                    databaseAdapter.setUserToken(uid, token);
+                    userRepository.setUserToken(uid, token);
                 }
             });
     }
@@ -317,7 +377,7 @@ public class UserController {
      */
     public void removeUserToken() {
         String uid = getCurrentUserId() ;
-        databaseAdapter.setUserToken(uid, null);
+        userRepository.setUserToken(uid, null);
     }
 
     /**
@@ -334,7 +394,7 @@ public class UserController {
      * @param cost Value to increment the balance with
      */
     public void addToBalance(String uid, double cost) {
-        this.databaseAdapter.incrementUserBalance(uid, cost);
+        this.userRepository.incrementUserBalance(uid, cost);
     }
 
     /**
@@ -349,11 +409,18 @@ public class UserController {
     }
 
     /**
-     * Update the Rating of the Driver
+     * Upvote the Driver, without reading their Rating first
+     * @param uid ID of the Driver
+     */
+    public void upvote(String uid) {
+        this.ratingRepository.recordVote(uid, true, null);
+    }
+
+    /**
+     * Downvote the Driver, without reading their Rating first
      * @param uid ID of the Driver
-     * @param rating New Rating
      */
-    public void updateRating(String uid, final Rating rating) {
-        this.databaseAdapter.updateRating(uid, rating);
+    public void downvote(String uid) {
+        this.ratingRepository.recordVote(uid, false, null);
     }
 }
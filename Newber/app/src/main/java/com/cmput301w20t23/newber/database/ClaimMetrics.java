@@ -0,0 +1,83 @@
+package com.cmput301w20t23.newber.database;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for ride request claims, to see how contended requests are, e.g. when many drivers
+ * tap accept on the same request at rush hour. The counters are updated from Firestore callbacks
+ * and can be read from any thread.
+ */
+public class ClaimMetrics {
+    //Claims started, each counted once however often it is retried
+    private final AtomicLong claims = new AtomicLong();
+    private final AtomicLong wins = new AtomicLong();
+    private final AtomicLong losses = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    //Times a claim's transaction had to run again because the request changed underneath it
+    private final AtomicLong conflicts = new AtomicLong();
+
+    //Times a whole claim was retried after a backoff
+    private final AtomicLong retries = new AtomicLong();
+
+    public void recordClaim() {
+        claims.incrementAndGet();
+    }
+
+    public void recordConflicts(long count) {
+        conflicts.addAndGet(count);
+    }
+
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * Records how a claim ended
+     * @param result the final result of the claim
+     */
+    public void recordResult(ClaimResult result) {
+        switch (result) {
+            case WON:
+                wins.incrementAndGet();
+                break;
+            case LOST:
+                losses.incrementAndGet();
+                break;
+            default:
+                failures.incrementAndGet();
+                break;
+        }
+    }
+
+    public long getClaims() {
+        return claims.get();
+    }
+
+    public long getWins() {
+        return wins.get();
+    }
+
+    public long getLosses() {
+        return losses.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "claims=%d won=%d lost=%d failed=%d conflicts=%d retries=%d",
+                getClaims(), getWins(), getLosses(), getFailures(), getConflicts(), getRetries());
+    }
+}
@@ -0,0 +1,22 @@
+package com.cmput301w20t23.newber.database;
+
+/**
+ * The outcome of claiming something other users may claim at the same time, a driver claiming a
+ * pending ride request or a new user claiming a username.
+ */
+public enum ClaimResult {
+    /**
+     * The claim succeeded, e.g. the ride request is now offered to the driver.
+     */
+    WON,
+    /**
+     * Someone else got it first, e.g. the ride request was no longer pending or the username was
+     * already reserved.
+     */
+    LOST,
+    /**
+     * The claim could not be written, e.g. the device is offline. What was claimed may still be
+     * free.
+     */
+    FAILED
+}
@@ -1,17 +1,30 @@
 package com.cmput301w20t23.newber.database;
 
+import android.os.Handler;
+import android.os.Looper;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.cmput301w20t23.newber.helpers.Backoff;
+import com.cmput301w20t23.newber.helpers.BloomFilter;
 import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.ExpiringLruCache;
+import com.cmput301w20t23.newber.helpers.RideRequestChangeListener;
+import com.cmput301w20t23.newber.helpers.ServerClock;
+import com.cmput301w20t23.newber.helpers.SubscriptionRegistry;
+import com.cmput301w20t23.newber.models.DriverLocation;
 import com.cmput301w20t23.newber.models.Rating;
+import com.cmput301w20t23.newber.models.RequestStatus;
 import com.cmput301w20t23.newber.models.RideRequest;
 import com.cmput301w20t23.newber.models.User;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
@@ -19,20 +32,31 @@ import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Observable;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Singleton class for accessing the Firestore database across the entire app
+ * Singleton class for accessing the Firestore database across the entire app. It is the Firestore
+ * backend of the ride, user and rating repositories, InMemoryBackend is the other one.
  * @author Ibrahim Aly
  */
-public class DatabaseAdapter extends Observable {
+public class DatabaseAdapter implements RideRepository, UserRepository, RatingRepository {
     private FirebaseFirestore db = null;
 
     //A reference to the users collection
@@ -44,8 +68,67 @@ public class DatabaseAdapter extends Observable {
     //A reference to the ratings collection
     private CollectionReference ratings = null;
 
-    //A listener that can listen to updates of the ride request
-    public ListenerRegistration rideRequestListener = null;
+    //A reference to the driver locations collection
+    private CollectionReference driverLocations = null;
+
+    //A reference to the username reservations, each document ID is a username
+    private CollectionReference usernames = null;
+
+    //How many user and rating documents are cached, each keeps a snapshot listener attached
+    private static final int PROFILE_CACHE_SIZE = 50;
+
+    //Cached profiles are read again after 10 minutes without a change
+    private static final long PROFILE_CACHE_TTL = 10 * 60 * 1000;
+
+    //User and rating documents, kept current by their snapshot listeners
+    private final DocumentCache userCache = new DocumentCache(PROFILE_CACHE_SIZE, PROFILE_CACHE_TTL);
+    private final DocumentCache ratingCache = new DocumentCache(PROFILE_CACHE_SIZE, PROFILE_CACHE_TTL);
+
+    //When the status of a ride request last changed, set by Firestore on every status change. The
+    //backend ends requests left waiting in PENDING or OFFERED from it, see expireRideRequests
+    private static final String STATUS_CHANGED_AT = "statusChangedAt";
+
+    //The time on the server a user last sampled the server's clock at, see sampleServerClock
+    private static final String LAST_SEEN_AT = "lastSeenAt";
+
+    //The shards subcollection of a rating, and the rating field holding how many shards votes go to
+    private static final String RATING_SHARDS = "shards";
+    private static final String RATING_SHARD_COUNT = "shardCount";
+
+    //Totals of sharded ratings are summed again after a minute, or after a vote from this device
+    private static final long RATING_TOTAL_TTL = 60 * 1000;
+    private final ExpiringLruCache<Rating> ratingTotals =
+            new ExpiringLruCache<>(PROFILE_CACHE_SIZE, RATING_TOTAL_TTL, null);
+    private final Random shardPicker = new Random();
+
+    //Usernames seen to be taken, for instant feedback while signing up
+    private final BloomFilter takenUsernames = new BloomFilter(1000, 0.01);
+
+    //Subscribers to ride requests by request ID, each request shares one snapshot listener
+    private final SubscriptionRegistry<RideRequest> rideRequestSubscriptions;
+
+    //How many committed ride transition keys are remembered to ignore repeated commits
+    private static final int MAX_COMMITTED_TRANSITIONS = 64;
+
+    //Callbacks waiting on the ride transitions being committed, by transition key
+    private final Map<String, List<Callback<Boolean>>> pendingTransitions = new HashMap<>();
+
+    //The keys of the most recently committed ride transitions
+    private final Map<String, Boolean> committedTransitions =
+            new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_COMMITTED_TRANSITIONS;
+                }
+            };
+
+    //How many times a claim is tried before it fails
+    private static final int MAX_CLAIM_ATTEMPTS = 4;
+
+    //Retries of contended claims wait 100 ms, 200 ms, 400 ms, with jitter
+    private final Backoff claimBackoff = new Backoff(100, 1000);
+    private final ClaimMetrics claimMetrics = new ClaimMetrics();
+    private final Handler retryHandler = new Handler(Looper.getMainLooper());
 
     private static DatabaseAdapter databaseAdapter = null;
 
@@ -54,6 +137,15 @@ public class DatabaseAdapter extends Observable {
         users = db.collection("users");
         rideRequests = db.collection("rideRequests");
         ratings = db.collection("ratings");
+        driverLocations = db.collection("driverLocations");
+        usernames = db.collection("usernames");
+
+        rideRequestSubscriptions = new SubscriptionRegistry<>(new SubscriptionRegistry.Connector() {
+            @Override
+            public SubscriptionRegistry.Connection connect(String requestId) {
+                return listenToRideRequest(requestId);
+            }
+        });
     }
 
     /**
@@ -92,168 +184,667 @@ public class DatabaseAdapter extends Observable {
     }
 
     /**
-     * Creates a new ride request in Firestore
+     * Creates a new ride request in Firestore and sets it as the rider's current ride request, in
+     * one transaction
      * @param rider The ID of the rider that created this ride request
      * @param rideRequest The new Ride Request to be saved in Firestore
      */
     public void createRideRequest(String rider, final RideRequest rideRequest) {
-        //Create the ride request
-        rideRequests.document(rideRequest.getRequestId())
-                .set(rideRequest)
-                .addOnSuccessListener(new OnSuccessListener<Void>() {
-                    @Override
-                    public void onSuccess(Void aVoid) {
-                        System.out.println("Creating Ride Request successfully written!");
-                        setChanged();
-                        notifyObservers(rideRequest);
+        rideRequest.setRider(rider);
+        commitRideTransition(RideTransition.create(rideRequest), null);
+    }
+
+    /**
+     * Commits every write of a ride transition in a single transaction, so either all the documents
+     * of the step are written or none are. Like updateRideRequest, a step other than a create is
+     * rejected if the stored request is no longer at the version it was read at. A transition whose
+     * key is already being committed, or was committed recently, is not written again; its callback
+     * gets the result of the first commit.
+     * @param transition The lifecycle step to commit
+     * @param callback Receives true once the step is committed, false if it was stale or failed,
+     *                 may be null
+     */
+    @Override
+    public void commitRideTransition(final RideTransition transition, @Nullable Callback<Boolean> callback) {
+        final String key = transition.getKey();
+
+        if (committedTransitions.containsKey(key)) {
+            if (callback != null) {
+                callback.myResponseCallback(true);
+            }
+            return;
+        }
+
+        List<Callback<Boolean>> waiting = pendingTransitions.get(key);
+
+        if (waiting != null) {
+            if (callback != null) {
+                waiting.add(callback);
+            }
+            return;
+        }
+
+        waiting = new ArrayList<>();
+        if (callback != null) {
+            waiting.add(callback);
+        }
+        pendingTransitions.put(key, waiting);
+
+        final RideRequest rideRequest = transition.getRideRequest();
+        final DocumentReference requestRef = rideRequests.document(rideRequest.getRequestId());
+        final Map<String, Object> requestChanges = rideRequest.getChangedFields();
+        final long version = rideRequest.getVersion();
+
+        // Each user gets one update, even if both their request and balance change
+        final Map<String, Map<String, Object>> userUpdates = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> entry : transition.getCurrentRequestIds().entrySet()) {
+            userUpdate(userUpdates, entry.getKey()).put("currentRequestId", entry.getValue());
+        }
+        for (Map.Entry<String, Double> entry : transition.getBalanceIncrements().entrySet()) {
+            userUpdate(userUpdates, entry.getKey()).put("balance", FieldValue.increment(entry.getValue()));
+        }
+
+        //Set when the request of a create was already written, e.g. by a retry after a restart
+        final AtomicBoolean alreadyCreated = new AtomicBoolean();
+
+        db.runTransaction(new Transaction.Function<Boolean>() {
+            @Override
+            public Boolean apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
+                if (transition.getType() == RideTransition.Type.CREATE) {
+                    // The request ID is the idempotency key, a create that was already written is
+                    // done, writing it again would undo whatever happened to the request since
+                    boolean exists = transaction.get(requestRef).exists();
+                    alreadyCreated.set(exists);
+
+                    if (exists) {
+                        return true;
                     }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        System.out.println("Error while creating ride request: " + e);
-                        clearChanged();
+
+                    transaction.set(requestRef, rideRequest);
+                    transaction.update(requestRef, STATUS_CHANGED_AT, FieldValue.serverTimestamp());
+                } else {
+                    // A step taken from an old copy of the request would undo what happened since
+                    DocumentSnapshot snapshot = transaction.get(requestRef);
+
+                    if (!snapshot.exists() || storedVersion(snapshot) != version) {
+                        return false;
                     }
-                });
 
-        //Set the rider's current ride request field to this ride request
-        users.document(rider)
-                .update("currentRequestId", rideRequest.getRequestId())
-                .addOnSuccessListener(new OnSuccessListener<Void>() {
-                    @Override
-                    public void onSuccess(Void aVoid) {
-                        System.out.println("Updating user requestId successfully written!");
-                        setChanged();
+                    if (transition.archivesRideRequest()) {
+                        // The finished request moves to the history partition of this month. The month
+                        // is read off this device's clock, but the history is ordered by the server's
+                        long now = System.currentTimeMillis();
+                        String partition = RideArchive.partition(now);
+                        DocumentReference historyRef = history(partition).document(rideRequest.getRequestId());
+
+                        transaction.set(historyRef, rideRequest);
+                        transaction.update(historyRef, "version", version + 1,
+                                RideArchive.COMPLETED_AT, FieldValue.serverTimestamp());
+
+                        if (transition.leavesTombstone()) {
+                            transaction.set(requestRef, RideArchive.tombstone(rideRequest, partition, now));
+                        } else {
+                            transaction.delete(requestRef);
+                        }
+                    } else {
+                        // Only the fields the step changed
+                        Map<String, Object> update = new HashMap<>(requestChanges);
+                        update.put("version", version + 1);
+                        update.put(STATUS_CHANGED_AT, FieldValue.serverTimestamp());
+                        transaction.update(requestRef, update);
                     }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        System.out.println("Error while updating user requestId: " + e);
-                        clearChanged();
+                }
+
+                for (Map.Entry<String, Map<String, Object>> entry : userUpdates.entrySet()) {
+                    transaction.update(users.document(entry.getKey()), entry.getValue());
+                }
+                return true;
+            }
+        }).addOnCompleteListener(new OnCompleteListener<Boolean>() {
+            @Override
+            public void onComplete(@NonNull Task<Boolean> task) {
+                List<Callback<Boolean>> callbacks = pendingTransitions.remove(key);
+                boolean committed = task.isSuccessful() && Boolean.TRUE.equals(task.getResult());
+
+                if (committed) {
+                    System.out.println("Ride transition " + key + " successfully written!");
+
+                    if (transition.getType() == RideTransition.Type.CREATE) {
+                        rideRequest.clearChanges();
+                    } else if (!transition.deletesRideRequest()) {
+                        rideRequest.setVersion(version + 1);
+                        rideRequest.markWritten(requestChanges);
                     }
-                });
 
+                    committedTransitions.put(key, Boolean.TRUE);
+
+                    // The stored request of a repeated create is newer than this copy, the
+                    // listener delivers it
+                    if (!alreadyCreated.get()) {
+                        rideRequestSubscriptions.publish(rideRequest.getRequestId(),
+                                transition.deletesRideRequest() ? null : rideRequest);
+                    }
+                } else if (task.isSuccessful()) {
+                    System.out.println("Rejected stale ride transition " + key);
+                } else {
+                    System.out.println("Error while committing ride transition " + key + ": "
+                            + task.getException());
+                }
+
+                for (Callback<Boolean> waitingCallback : callbacks) {
+                    waitingCallback.myResponseCallback(committed);
+                }
+            }
+        });
+    }
+
+    private static Map<String, Object> userUpdate(Map<String, Map<String, Object>> userUpdates, String uid) {
+        Map<String, Object> fields = userUpdates.get(uid);
+
+        if (fields == null) {
+            fields = new HashMap<>();
+            userUpdates.put(uid, fields);
+        }
+
+        return fields;
     }
 
     /**
-     * Deletes a ride request from Firestore when the rider cancels it (when it's pending)
-     * @param rideRequest The ride request to be deleted
+     * Cancels a pending ride request, moving it to the ride history and clearing the rider's
+     * current request in one transaction
+     * @param rideRequest The ride request to be cancelled
      */
     public void removeRideRequest(RideRequest rideRequest) {
-        rideRequests.document(rideRequest.getRequestId())
-                .delete()
-                .addOnSuccessListener(new OnSuccessListener<Void>() {
-                    @Override
-                    public void onSuccess(Void aVoid) {
-                        System.out.println("Deleting Ride Request successfully written!");
-                        setChanged();
-                        notifyObservers(null);
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        System.out.println("Error while deleting ride request: " + e);
-                        clearChanged();
-                    }
-                });
-
+        commitRideTransition(RideTransition.cancel(rideRequest), null);
     }
 
     /**
      * Updates a ride request with updated data fields
      * @param rideRequest The updated ride request, its ID is still the same
      */
-    public void updateRideRequest(final RideRequest rideRequest) {
-        rideRequests.document(rideRequest.getRequestId())
-                .set(rideRequest)
-                .addOnSuccessListener(new OnSuccessListener<Void>() {
-                    @Override
-                    public void onSuccess(Void aVoid) {
-                        System.out.println("Updating Ride Request successfully written!");
-                        setChanged();
-                        notifyObservers(rideRequest);
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        System.out.println("Error while updating ride request: " + e);
-                        clearChanged();
-                    }
-                });
+    public void updateRideRequest(RideRequest rideRequest) {
+        updateRideRequest(rideRequest, null);
+    }
+
+    /**
+     * Writes only the fields of a ride request that changed since it was read, and bumps its
+     * version. A transaction checks that the stored version is the one the request was read at, so
+     * an update made from an old copy, e.g. after the other user changed the request, is rejected
+     * instead of overwriting their change. The live listener delivers the current request then.
+     * @param rideRequest The updated ride request, its ID is still the same
+     * @param callback Receives true once the update is written, false if it was stale or failed,
+     *                 may be null
+     */
+    @Override
+    public void updateRideRequest(final RideRequest rideRequest, @Nullable final Callback<Boolean> callback) {
+        final Map<String, Object> changes = rideRequest.getChangedFields();
+
+        if (changes.isEmpty()) {
+            if (callback != null) {
+                callback.myResponseCallback(true);
+            }
+            return;
+        }
+
+        final long version = rideRequest.getVersion();
+        final DocumentReference requestRef = rideRequests.document(rideRequest.getRequestId());
+
+        db.runTransaction(new Transaction.Function<Boolean>() {
+            @Override
+            public Boolean apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
+                DocumentSnapshot snapshot = transaction.get(requestRef);
+
+                if (!snapshot.exists() || storedVersion(snapshot) != version) {
+                    return false;
+                }
+
+                Map<String, Object> update = new HashMap<>(changes);
+                update.put("version", version + 1);
 
+                // A new fare keeps the deadline of the status, a new status gets its own
+                if (changes.containsKey("status")) {
+                    update.put(STATUS_CHANGED_AT, FieldValue.serverTimestamp());
+                }
+                transaction.update(requestRef, update);
+                return true;
+            }
+        }).addOnCompleteListener(new OnCompleteListener<Boolean>() {
+            @Override
+            public void onComplete(@NonNull Task<Boolean> task) {
+                boolean updated = task.isSuccessful() && Boolean.TRUE.equals(task.getResult());
+
+                if (updated) {
+                    System.out.println("Updating Ride Request successfully written!");
+                    rideRequest.setVersion(version + 1);
+                    rideRequest.markWritten(changes);
+                    rideRequestSubscriptions.publish(rideRequest.getRequestId(), rideRequest);
+                } else if (task.isSuccessful()) {
+                    System.out.println("Rejected stale update of ride request " + rideRequest.getRequestId()
+                            + " at version " + version);
+                } else {
+                    System.out.println("Error while updating ride request: " + task.getException());
+                }
+
+                if (callback != null) {
+                    callback.myResponseCallback(updated);
+                }
+            }
+        });
     }
 
     /**
-     * Returns all ride requests that have a status of PENDING in the call back function
-     * @param callback The callback function, which holds the list of ride requests, that will be returned to the views
+     * The rides of a month in the ride history, see RideArchive
      */
-    public void getPendingRideRequests(final Callback<ArrayList<RideRequest>> callback) {
-        rideRequests.whereEqualTo("driver", null)
-                .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-                    @Override
-                    public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                        ArrayList<RideRequest> rideRequests = new ArrayList<>();
+    private CollectionReference history(String partition) {
+        return db.collection(RideArchive.HISTORY).document(partition).collection(RideArchive.RIDES);
+    }
 
-                        if (task.isSuccessful()) {
-                            for (QueryDocumentSnapshot document : task.getResult()) {
-                                rideRequests.add(document.toObject(RideRequest.class));
+    /**
+     * Reads a ride request from a document, with no fields marked as changed
+     */
+    private static RideRequest toRideRequest(DocumentSnapshot snapshot) {
+        RideRequest rideRequest = snapshot.toObject(RideRequest.class);
+
+        if (rideRequest != null) {
+            rideRequest.clearChanges();
+        }
+
+        return rideRequest;
+    }
+
+    /**
+     * The version of a stored ride request, requests written before versions existed are 0
+     */
+    private static long storedVersion(DocumentSnapshot snapshot) {
+        Long version = snapshot.getLong("version");
+        return version != null ? version : 0;
+    }
+
+    /**
+     * Adds a Firestore listener to the ride requests that have a status of PENDING and a geohash
+     * inside one of the given ranges, and passes every added, modified and removed request to the
+     * change listener as it happens. Only the changed documents are delivered after the first update.
+     * @param geohashRanges The {start, end} geohash ranges to listen to, see GeoHash.toRanges
+     * @param listener The listener that will receive the changes
+     * @return The registration that removes the listeners of every range
+     */
+    @Override
+    public ListenerRegistration addPendingRideRequestsListener(List<String[]> geohashRanges,
+                                                               final RideRequestChangeListener listener) {
+        final List<ListenerRegistration> registrations = new ArrayList<>();
+
+        //The range each request was last seen in, so a request moving between ranges is not lost
+        final Map<String, Integer> owners = new HashMap<>();
+        final boolean[] received = new boolean[geohashRanges.size()];
+
+        for (int i = 0; i < geohashRanges.size(); i++) {
+            final int range = i;
+            String[] bounds = geohashRanges.get(i);
+
+            registrations.add(rideRequests.whereEqualTo("driver", null)
+                    .orderBy("geohash")
+                    .startAt(bounds[0])
+                    .endAt(bounds[1])
+                    .addSnapshotListener(new EventListener<QuerySnapshot>() {
+                        @Override
+                        public void onEvent(@Nullable QuerySnapshot snapshots, @Nullable FirebaseFirestoreException e) {
+                            if (e != null || snapshots == null) {
+                                System.out.println("Error while listening to pending ride requests: " + e);
+                                return;
+                            }
+
+                            for (DocumentChange change : snapshots.getDocumentChanges()) {
+                                RideRequest rideRequest = toRideRequest(change.getDocument());
+                                String requestId = rideRequest.getRequestId();
+
+                                switch (change.getType()) {
+                                    case ADDED:
+                                        if (owners.put(requestId, range) == null) {
+                                            listener.onRideRequestAdded(rideRequest);
+                                        } else {
+                                            listener.onRideRequestModified(rideRequest);
+                                        }
+                                        break;
+                                    case MODIFIED:
+                                        listener.onRideRequestModified(rideRequest);
+                                        break;
+                                    case REMOVED:
+                                        // Ignore the removal if the request has already been added by another range
+                                        Integer owner = owners.get(requestId);
+                                        if (owner != null && owner == range) {
+                                            owners.remove(requestId);
+                                            listener.onRideRequestRemoved(rideRequest);
+                                        }
+                                        break;
+                                }
+                            }
+
+                            received[range] = true;
+
+                            // Wait for the first update of every range before the set is complete
+                            for (boolean rangeReceived : received) {
+                                if (!rangeReceived) {
+                                    return;
+                                }
                             }
+
+                            listener.onRideRequestsSynced();
                         }
+                    }));
+        }
 
-                        callback.myResponseCallback(rideRequests);
-                    }
-                });
+        return new ListenerRegistration() {
+            @Override
+            public void remove() {
+                for (ListenerRegistration registration : registrations) {
+                    registration.remove();
+                }
+            }
+        };
     }
 
     /**
-     * Creates a new user with the specified role
-     * @param user New User object that will created in Firestore
-     * @param role The role of the user
+     * Claims a pending ride request for a driver. A transaction checks that the request is still
+     * PENDING with no driver before setting the driver, the OFFERED status and the driver's
+     * current request, so when several drivers claim the same request exactly one of them wins.
+     * Contended or failed claims are retried with a jittered backoff, up to MAX_CLAIM_ATTEMPTS.
+     * @param requestId The ID of the ride request to claim
+     * @param driverId The UID of the driver claiming the ride request
+     * @param callback Receives whether the driver won or lost the request, or the claim failed
      */
-    public void createUser(User user, String role) {
-        Map<String, Object> roleData = new HashMap<>();
-        roleData.put("role", role);
+    @Override
+    public void claimRideRequest(String requestId, String driverId, Callback<ClaimResult> callback) {
+        claimMetrics.recordClaim();
+        attemptClaim(requestId, driverId, 0, callback);
+    }
 
-        // First, set the entire user in the document with the UID as the document key
-        this.users.document(user.getUid())
-                .set(user)
-                .addOnSuccessListener(new OnSuccessListener<Void>() {
-                    @Override
-                    public void onSuccess(Void aVoid) {
-                        System.out.println("Adding user successfully written!");
-                    }
-                })
+    private void attemptClaim(final String requestId, final String driverId, final int attempt,
+                              final Callback<ClaimResult> callback) {
+        final DocumentReference requestRef = rideRequests.document(requestId);
+
+        //Firestore runs the function again each time the request changes before the commit
+        final AtomicInteger runs = new AtomicInteger();
+
+        db.runTransaction(new Transaction.Function<Boolean>() {
+            @Override
+            public Boolean apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
+                runs.incrementAndGet();
+                DocumentSnapshot snapshot = transaction.get(requestRef);
+
+                if (!snapshot.exists()
+                        || !RequestStatus.PENDING.name().equals(snapshot.getString("status"))) {
+                    return false;
+                }
+
+                String currentDriver = snapshot.getString("driver");
+                if (currentDriver != null && !currentDriver.isEmpty()) {
+                    return false;
+                }
+
+                transaction.update(requestRef,
+                        "driver", driverId,
+                        "status", RequestStatus.OFFERED.name(),
+                        "version", storedVersion(snapshot) + 1,
+                        STATUS_CHANGED_AT, FieldValue.serverTimestamp());
+                transaction.update(users.document(driverId), "currentRequestId", requestId);
+                return true;
+            }
+        }).addOnCompleteListener(new OnCompleteListener<Boolean>() {
+            @Override
+            public void onComplete(@NonNull Task<Boolean> task) {
+                claimMetrics.recordConflicts(Math.max(0, runs.get() - 1));
+
+                if (task.isSuccessful()) {
+                    finishClaim(requestId, Boolean.TRUE.equals(task.getResult())
+                            ? ClaimResult.WON : ClaimResult.LOST, callback);
+                    return;
+                }
+
+                Exception e = task.getException();
+                System.out.println("Error while claiming ride request " + requestId + ": " + e);
+
+                if (attempt + 1 < MAX_CLAIM_ATTEMPTS && isRetryable(e)) {
+                    claimMetrics.recordRetry();
+                    retryHandler.postDelayed(new Runnable() {
+                        @Override
+                        public void run() {
+                            attemptClaim(requestId, driverId, attempt + 1, callback);
+                        }
+                    }, claimBackoff.delay(attempt));
+                } else {
+                    finishClaim(requestId, ClaimResult.FAILED, callback);
+                }
+            }
+        });
+    }
+
+    private void finishClaim(String requestId, ClaimResult result, Callback<ClaimResult> callback) {
+        claimMetrics.recordResult(result);
+        System.out.println("Claim of ride request " + requestId + ": " + result + " (" + claimMetrics + ")");
+        callback.myResponseCallback(result);
+    }
+
+    private static boolean isRetryable(Exception e) {
+        if (!(e instanceof FirebaseFirestoreException)) {
+            return false;
+        }
+
+        switch (((FirebaseFirestoreException) e).getCode()) {
+            case ABORTED:
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Gets the counters of ride request claims made from this device
+     * @return the claim metrics
+     */
+    @Override
+    public ClaimMetrics getClaimMetrics() {
+        return claimMetrics;
+    }
+
+    /**
+     * Writes a driver's location and online status. The time of the write is set by Firestore, so
+     * riders judge how fresh it is by the server's clock rather than the driver's.
+     * @param driverLocation The location of the driver, stored under the driver's UID
+     */
+    public void setDriverLocation(DriverLocation driverLocation) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("uid", driverLocation.getUid());
+        fields.put("latitude", driverLocation.getLatitude());
+        fields.put("longitude", driverLocation.getLongitude());
+        fields.put("online", driverLocation.isOnline());
+        fields.put("geohash", driverLocation.getGeohash());
+        fields.put("updatedAt", FieldValue.serverTimestamp());
+
+        driverLocations.document(driverLocation.getUid())
+                .set(fields)
                 .addOnFailureListener(new OnFailureListener() {
                     @Override
                     public void onFailure(@NonNull Exception e) {
-                        System.out.println("Error while adding user: " + e);
+                        System.out.println("Error while writing driver location: " + e);
                     }
                 });
+    }
 
-        // To set the role of the user
-        this.users.document(user.getUid())
-                .set(roleData, SetOptions.merge())
-                .addOnSuccessListener(new OnSuccessListener<Void>() {
+    /**
+     * Reads a driver location, with the time Firestore wrote it
+     */
+    private static DriverLocation toDriverLocation(DocumentSnapshot snapshot) {
+        Double latitude = snapshot.getDouble("latitude");
+        Double longitude = snapshot.getDouble("longitude");
+
+        return new DriverLocation(snapshot.getId(),
+                latitude != null ? latitude : 0,
+                longitude != null ? longitude : 0,
+                Boolean.TRUE.equals(snapshot.getBoolean("online")),
+                timestampMillis(snapshot, "updatedAt"));
+    }
+
+    /**
+     * Writes the server's time to the user's lastSeenAt and reads it back, to see how far the
+     * server's clock is from this device's. Times Firestore wrote, e.g. of driver locations, are
+     * then compared with the server's time now instead of the device's.
+     * @param uid The UID of the signed in user
+     * @param serverClock Takes the sample
+     * @param callback Receives whether a sample was taken
+     */
+    public void sampleServerClock(String uid, final ServerClock serverClock, final Callback<Boolean> callback) {
+        final DocumentReference userRef = users.document(uid);
+        final long sentAt = System.currentTimeMillis();
+
+        userRef.update(LAST_SEEN_AT, FieldValue.serverTimestamp())
+                .addOnCompleteListener(new OnCompleteListener<Void>() {
                     @Override
-                    public void onSuccess(Void aVoid) {
-                        System.out.println("Adding role data written!");
+                    public void onComplete(@NonNull Task<Void> task) {
+                        final long receivedAt = System.currentTimeMillis();
+
+                        if (!task.isSuccessful()) {
+                            System.out.println("Error while sampling the server clock: " + task.getException());
+                            callback.myResponseCallback(false);
+                            return;
+                        }
+
+                        // The write was acknowledged, so the cached user holds the time the server set
+                        userRef.get(Source.CACHE).addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
+                            @Override
+                            public void onComplete(@NonNull Task<DocumentSnapshot> read) {
+                                long serverTime = read.isSuccessful() && read.getResult() != null
+                                        ? timestampMillis(read.getResult(), LAST_SEEN_AT) : 0;
+
+                                if (serverTime == 0) {
+                                    System.out.println("Error while reading the server clock: " + read.getException());
+                                    callback.myResponseCallback(false);
+                                    return;
+                                }
+
+                                serverClock.addSample(sentAt, serverTime, receivedAt);
+                                callback.myResponseCallback(true);
+                            }
+                        });
                     }
-                })
-                .addOnFailureListener(new OnFailureListener() {
+                });
+    }
+
+    /**
+     * Reads a time written with FieldValue.serverTimestamp, in milliseconds since the epoch. Times
+     * written as numbers by older versions of the app are read as they are, and a time that is
+     * missing, or still pending on this device, is 0.
+     */
+    private static long timestampMillis(DocumentSnapshot snapshot, String field) {
+        Object value = snapshot.get(field);
+
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        Date date = value != null ? snapshot.getDate(field) : null;
+        return date != null ? date.getTime() : 0;
+    }
+
+    /**
+     * Returns the locations of the online drivers with a geohash inside one of the given ranges
+     * in the call back function
+     * @param geohashRanges The {start, end} geohash ranges to search, see GeoHash.toRanges
+     * @param callback The callback function, which holds the list of driver locations, or null if
+     *                 any of the ranges could not be read
+     */
+    public void getOnlineDriverLocations(List<String[]> geohashRanges,
+                                         final Callback<ArrayList<DriverLocation>> callback) {
+        List<Task<QuerySnapshot>> tasks = new ArrayList<>();
+
+        for (String[] range : geohashRanges) {
+            tasks.add(driverLocations.whereEqualTo("online", true)
+                    .orderBy("geohash")
+                    .startAt(range[0])
+                    .endAt(range[1])
+                    .get());
+        }
+
+        Tasks.whenAllComplete(tasks)
+                .addOnCompleteListener(new OnCompleteListener<List<Task<?>>>() {
                     @Override
-                    public void onFailure(@NonNull Exception e) {
-                        System.out.println("Error while adding user: " + e);
+                    public void onComplete(@NonNull Task<List<Task<?>>> task) {
+                        ArrayList<DriverLocation> found = new ArrayList<>();
+
+                        for (Task<?> rangeTask : task.getResult()) {
+                            if (!rangeTask.isSuccessful()) {
+                                System.out.println("Error while querying driver locations: " + rangeTask.getException());
+                                callback.myResponseCallback(null);
+                                return;
+                            }
+
+                            for (QueryDocumentSnapshot document : (QuerySnapshot) rangeTask.getResult()) {
+                                found.add(toDriverLocation(document));
+                            }
+                        }
+
+                        callback.myResponseCallback(found);
                     }
                 });
+    }
 
-        // if the user to be created is a driver, create Rating in database
-        if (role.equals("Driver")) {
-            this.createRating(user.getUid());
-        }
+    /**
+     * Creates a new user, reserving their username in the same transaction as the user document,
+     * their role and, for a driver, their rating. If another user reserved the username first,
+     * nothing is written.
+     * @param user The new user, stored under their UID
+     * @param role The role of the user, Rider or Driver
+     * @param callback Receives WON once the user is created, LOST if the username was taken, or
+     *                 FAILED if the transaction could not be written
+     */
+    @Override
+    public void createUser(final User user, final String role, final Callback<ClaimResult> callback) {
+        final String usernameKey = usernameKey(user.getUsername());
+        final DocumentReference usernameRef = usernames.document(usernameKey);
+        final DocumentReference userRef = users.document(user.getUid());
+
+        db.runTransaction(new Transaction.Function<Boolean>() {
+            @Override
+            public Boolean apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
+                DocumentSnapshot reservation = transaction.get(usernameRef);
+
+                if (reservation.exists() && !user.getUid().equals(reservation.getString("uid"))) {
+                    return false;
+                }
+
+                Map<String, Object> reservationData = new HashMap<>();
+                reservationData.put("uid", user.getUid());
+                transaction.set(usernameRef, reservationData);
+
+                transaction.set(userRef, user);
+                transaction.update(userRef, "role", role);
+
+                // if the user to be created is a driver, create their Rating too
+                if (role.equals("Driver")) {
+                    transaction.set(ratings.document(user.getUid()), new Rating(0, 0));
+                }
+                return true;
+            }
+        }).addOnCompleteListener(new OnCompleteListener<Boolean>() {
+            @Override
+            public void onComplete(@NonNull Task<Boolean> task) {
+                if (!task.isSuccessful()) {
+                    // Nothing may have been reserved, so the username is not marked as taken
+                    System.out.println("Error while adding user: " + task.getException());
+                    callback.myResponseCallback(ClaimResult.FAILED);
+                } else if (Boolean.TRUE.equals(task.getResult())) {
+                    System.out.println("Adding user successfully written!");
+                    takenUsernames.add(usernameKey);
+                    callback.myResponseCallback(ClaimResult.WON);
+                } else {
+                    System.out.println("Username " + user.getUsername() + " was taken during sign-up");
+                    takenUsernames.add(usernameKey);
+                    callback.myResponseCallback(ClaimResult.LOST);
+                }
+            }
+        });
     }
 
     /**
@@ -261,6 +852,7 @@ public class DatabaseAdapter extends Observable {
      * @param uid the ID of the user
      * @param currentRequestId The ID of the ride request
      */
+    @Override
     public void setUserCurrentRequestId(String uid, String currentRequestId) {
         this.users.document(uid)
                 .update("currentRequestId", currentRequestId)
@@ -279,17 +871,26 @@ public class DatabaseAdapter extends Observable {
     }
 
     /**
-     * Returns the User object from the ID
+     * Returns the User object from the ID. Users read recently are served from a cache that their
+     * snapshot listeners keep current, so repeated reads of the same user cost nothing
      * @param uid ID of the user
      * @param callback Callback function that will contain the User details
      */
+    @Override
     public void getUser(String uid, final Callback<Map<String, Object>> callback) {
-        DocumentReference docRef = users.document(uid);
-
-        docRef.get().addOnSuccessListener(new OnSuccessListener<DocumentSnapshot>() {
+        userCache.get(users.document(uid), new Callback<DocumentSnapshot>() {
             @Override
-            public void onSuccess(DocumentSnapshot documentSnapshot) {
+            public void myResponseCallback(DocumentSnapshot documentSnapshot) {
+                if (documentSnapshot == null) {
+                    return;
+                }
+
                 User user = documentSnapshot.toObject(User.class);
+
+                if (user != null && user.getUsername() != null) {
+                    takenUsernames.add(usernameKey(user.getUsername()));
+                }
+
                 Map<String, Object> map = new HashMap<>();
                 map.put("user", user);
                 map.put("role", documentSnapshot.get("role"));
@@ -300,120 +901,419 @@ public class DatabaseAdapter extends Observable {
     }
 
     /**
-     * Checks if the username (during sign-up) is unique or not, and returns a boolean in the callback
+     * Checks if the username (during sign-up) is unique or not, and returns a boolean in the callback.
+     * Usernames are reserved in the usernames collection, so this is a single document read.
+     * Usernames are compared ignoring case and surrounding spaces.
      * @param username The username
-     * @param callback The callback function that will be returned to handle async calls
+     * @param callback Receives true if the username is taken, or false if it could not be read, as
+     *                 createUser still refuses a taken username
      */
+    @Override
     public void checkUserName(String username, final Callback<Boolean> callback) {
-        users.whereEqualTo("username", username)
+        final String usernameKey = usernameKey(username);
+
+        usernames.document(usernameKey)
                 .get()
-                .addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
+                .addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
                     @Override
-                    public void onComplete(@NonNull Task<QuerySnapshot> task) {
+                    public void onComplete(@NonNull Task<DocumentSnapshot> task) {
                         if (task.isSuccessful()) {
-                            if (task.getResult().size() > 0) {
-                                for (QueryDocumentSnapshot document : task.getResult()) {
-                                    System.out.println("Username received:" + document.getData());
-                                }
+                            boolean taken = task.getResult().exists();
 
-                                callback.myResponseCallback(true);
-                            } else {
-                                callback.myResponseCallback(false);
+                            if (taken) {
+                                takenUsernames.add(usernameKey);
                             }
+
+                            callback.myResponseCallback(taken);
+                        } else {
+                            System.out.println("Error while checking username: " + task.getException());
+                            callback.myResponseCallback(false);
                         }
                     }
                 });
     }
 
     /**
-     * Retrieves the Rating object of the current Driver, and sends it through the callback
+     * Checks, without going to Firestore, if a username was recently seen to be taken. There are
+     * no false negatives but there are rare false positives, so a true result should still be
+     * confirmed with checkUserName.
+     * @param username The username
+     * @return true if the username may be taken
+     */
+    @Override
+    public boolean isUsernameRecentlyTaken(String username) {
+        return takenUsernames.mightContain(usernameKey(username));
+    }
+
+    /**
+     * The ID of a username's reservation document. Document IDs cannot contain "/", be "." or ".."
+     * or look like __name__, so those characters are escaped. functions/index.js builds the same IDs.
+     */
+    static String usernameKey(String username) {
+        return username.trim().toLowerCase(Locale.ROOT)
+                .replace("%", "%25")
+                .replace("/", "%2F")
+                .replace(".", "%2E")
+                .replace("_", "%5F");
+    }
+
+    /**
+     * Retrieves the Rating object of the current Driver, and sends it through the callback. Ratings
+     * are cached like users. The votes of a sharded rating are the rating document's own votes plus
+     * those of every shard, the total is cached for a minute
      * @param uid ID of the driver
      * @param callback Callback function that will hold the Rating object
      */
-    public void getRating(String uid, final Callback<Rating> callback) {
-        DocumentReference docRef = ratings.document(uid);
+    @Override
+    public void getRating(final String uid, final Callback<Rating> callback) {
+        ratingCache.get(ratings.document(uid), new Callback<DocumentSnapshot>() {
+            @Override
+            public void myResponseCallback(DocumentSnapshot documentSnapshot) {
+                if (documentSnapshot == null || !documentSnapshot.exists()) {
+                    callback.myResponseCallback(null);
+                    return;
+                }
+
+                final Rating rating = documentSnapshot.toObject(Rating.class);
+
+                if (shardCount(documentSnapshot) == 0) {
+                    callback.myResponseCallback(rating);
+                    return;
+                }
+
+                Rating total = ratingTotals.get(uid, System.currentTimeMillis());
+                if (total != null) {
+                    callback.myResponseCallback(total);
+                    return;
+                }
+
+                if (!ratingTotals.beginLoad(uid, callback)) {
+                    return;
+                }
+
+                ratings.document(uid).collection(RATING_SHARDS).get()
+                        .addOnSuccessListener(new OnSuccessListener<QuerySnapshot>() {
+                            @Override
+                            public void onSuccess(QuerySnapshot shards) {
+                                // Every shard is summed, not only the first shardCount, so votes
+                                // are never lost if the count changes
+                                for (QueryDocumentSnapshot shard : shards) {
+                                    rating.add(shard.toObject(Rating.class));
+                                }
+
+                                ratingTotals.put(uid, rating, System.currentTimeMillis());
+                            }
+                        })
+                        .addOnFailureListener(new OnFailureListener() {
+                            @Override
+                            public void onFailure(@NonNull Exception e) {
+                                System.out.println("Error while summing rating shards: " + e);
+                                ratingTotals.failLoad(uid, null);
+                            }
+                        });
+            }
+        });
+    }
+
+    /**
+     * Records a vote for a driver with a server-side increment, so concurrent votes are never lost
+     * and the rating does not have to be read first. A sharded rating gets the vote in a random
+     * shard, otherwise it goes to the rating document itself
+     * @param uid ID of the driver
+     * @param upvote true for an upvote, false for a downvote
+     * @param callback receives true once the vote is written, false if it failed, may be null
+     */
+    @Override
+    public void recordVote(final String uid, final boolean upvote, @Nullable final Callback<Boolean> callback) {
+        // The rating is usually cached already, from showing it before the vote
+        ratingCache.get(ratings.document(uid), new Callback<DocumentSnapshot>() {
+            @Override
+            public void myResponseCallback(DocumentSnapshot documentSnapshot) {
+                int shards = documentSnapshot != null ? shardCount(documentSnapshot) : 0;
+
+                // The rating document counts towards the total too, so it is a safe target if
+                // the shard count could not be read
+                DocumentReference target = shards == 0
+                        ? ratings.document(uid)
+                        : ratings.document(uid).collection(RATING_SHARDS)
+                                .document(Integer.toString(shardPicker.nextInt(shards)));
+
+                target.update(upvote ? "upvotes" : "downvotes", FieldValue.increment(1))
+                        .addOnCompleteListener(new OnCompleteListener<Void>() {
+                            @Override
+                            public void onComplete(@NonNull Task<Void> task) {
+                                if (task.isSuccessful()) {
+                                    ratingTotals.invalidate(uid);
+                                } else {
+                                    System.out.println("Error while recording vote: " + task.getException());
+                                }
+
+                                if (callback != null) {
+                                    callback.myResponseCallback(task.isSuccessful());
+                                }
+                            }
+                        });
+            }
+        });
+    }
+
+    /**
+     * Spreads the future votes for a driver over several shard documents, for drivers rated too
+     * often for a single document's write rate. Votes already recorded stay where they are, and
+     * existing shards keep their votes if this is called again
+     * @param uid ID of the driver
+     * @param shardCount how many shards new votes go to
+     * @param callback receives true once the shards are created, false if it failed, may be null
+     */
+    public void shardRating(String uid, int shardCount, @Nullable final Callback<Boolean> callback) {
+        WriteBatch batch = db.batch();
+        DocumentReference rating = ratings.document(uid);
+
+        for (int i = 0; i < shardCount; i++) {
+            // Incrementing by 0 creates missing fields as 0 without resetting existing votes
+            Map<String, Object> shard = new HashMap<>();
+            shard.put("upvotes", FieldValue.increment(0));
+            shard.put("downvotes", FieldValue.increment(0));
+            batch.set(rating.collection(RATING_SHARDS).document(Integer.toString(i)), shard, SetOptions.merge());
+        }
+
+        batch.update(rating, RATING_SHARD_COUNT, shardCount);
+        batch.commit().addOnCompleteListener(new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull Task<Void> task) {
+                if (!task.isSuccessful()) {
+                    System.out.println("Error while sharding rating: " + task.getException());
+                }
+
+                if (callback != null) {
+                    callback.myResponseCallback(task.isSuccessful());
+                }
+            }
+        });
+    }
+
+    /**
+     * The number of shards a rating's votes go to, 0 if it is not sharded
+     */
+    private static int shardCount(DocumentSnapshot rating) {
+        Long shards = rating.getLong(RATING_SHARD_COUNT);
+        return shards != null ? shards.intValue() : 0;
+    }
+
+    /**
+     * Gets the hit and miss counters of the user and rating caches, e.g. for logging
+     * @return the counters of both caches
+     */
+    public String getCacheStats() {
+        return "users: " + userCache + ", ratings: " + ratingCache;
+    }
+
+    /**
+     * Gets the share of user reads served from the cache
+     * @return the hit rate between 0 and 1
+     */
+    public double getUserCacheHitRate() {
+        return userCache.getHitRate();
+    }
+
+    /**
+     * Gets the share of rating reads served from the cache
+     * @return the hit rate between 0 and 1
+     */
+    public double getRatingCacheHitRate() {
+        return ratingCache.getHitRate();
+    }
+
+    /**
+     * Gets a ride request from its ID, and returns it in the callback. A finished ride request is
+     * read from the ride history instead, through its tombstone if it left one
+     * @param requestId the ID of the ride request
+     * @param callback The callback function that holds the returned ride request
+     */
+    @Override
+    public void getRideRequest(final String requestId, final Callback<RideRequest> callback) {
+        DocumentReference docRef = rideRequests.document(requestId);
 
         docRef.get()
                 .addOnSuccessListener(new OnSuccessListener<DocumentSnapshot>() {
                     @Override
                     public void onSuccess(DocumentSnapshot documentSnapshot) {
-                        Rating rating = documentSnapshot.toObject(Rating.class);
-                        callback.myResponseCallback(rating);
+                        if (documentSnapshot == null || !documentSnapshot.exists()) {
+                            getArchivedRideRequest(requestId, callback);
+                        } else if (documentSnapshot.contains(RideArchive.ARCHIVED_IN)) {
+                            getArchivedRideRequest(documentSnapshot.getString(RideArchive.ARCHIVED_IN),
+                                    requestId, callback);
+                        } else {
+                            callback.myResponseCallback(toRideRequest(documentSnapshot));
+                        }
                     }
-                })
-                .addOnFailureListener(new OnFailureListener() {
+                });
+    }
+
+    /**
+     * Reads a ride request from its partition of the ride history
+     */
+    private void getArchivedRideRequest(String partition, String requestId, final Callback<RideRequest> callback) {
+        history(partition).document(requestId)
+                .get()
+                .addOnSuccessListener(new OnSuccessListener<DocumentSnapshot>() {
                     @Override
-                    public void onFailure(@NonNull Exception e) {
-                        callback.myResponseCallback(null);
+                    public void onSuccess(DocumentSnapshot documentSnapshot) {
+                        if (documentSnapshot != null && documentSnapshot.exists()) {
+                            callback.myResponseCallback(toRideRequest(documentSnapshot));
+                        }
                     }
                 });
     }
 
     /**
-     * Updates the rating of a driver in Firestore
-     * @param uid ID of the driver
-     * @param rating New Rating object that will be saved
+     * Finds a ride request in every partition of the ride history, for a request that left no
+     * tombstone or whose tombstone was removed
      */
-    public void updateRating(String uid, final Rating rating) {
-        DocumentReference docRef = ratings.document(uid);
-        docRef.set(rating)
-                .addOnSuccessListener(new OnSuccessListener<Void>() {
+    private void getArchivedRideRequest(String requestId, final Callback<RideRequest> callback) {
+        db.collectionGroup(RideArchive.RIDES)
+                .whereEqualTo("requestId", requestId)
+                .limit(1)
+                .get()
+                .addOnSuccessListener(new OnSuccessListener<QuerySnapshot>() {
                     @Override
-                    public void onSuccess(Void aVoid) {
-                        System.out.println("Update rating successful");
-                        setChanged();
-                        notifyObservers(rating);
+                    public void onSuccess(QuerySnapshot snapshots) {
+                        for (QueryDocumentSnapshot document : snapshots) {
+                            callback.myResponseCallback(toRideRequest(document));
+                        }
                     }
                 })
                 .addOnFailureListener(new OnFailureListener() {
                     @Override
                     public void onFailure(@NonNull Exception e) {
-                        System.out.println("Error while updating rating: " + e);
-                        clearChanged();
+                        System.out.println("Error while finding archived ride request: " + e);
                     }
                 });
     }
 
     /**
-     * Gets A ride request from its ID, and returns it in the callback
-     * @param requestId the ID of the ride request
-     * @param callback The callback function that holds the returned ride request
+     * Removes the tombstone of a completed ride request, once the rider has seen that the ride is
+     * over. A live ride request with the same ID is left alone.
+     * @param requestId the ID of the completed ride request
      */
-    public void getRideRequest(String requestId, final Callback<RideRequest> callback) {
-        DocumentReference docRef = rideRequests.document(requestId);
+    @Override
+    public void removeTombstone(String requestId) {
+        final DocumentReference requestRef = rideRequests.document(requestId);
 
-        docRef.get()
-                .addOnSuccessListener(new OnSuccessListener<DocumentSnapshot>() {
+        db.runTransaction(new Transaction.Function<Void>() {
+            @Override
+            public Void apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
+                DocumentSnapshot snapshot = transaction.get(requestRef);
+
+                if (snapshot.exists() && snapshot.contains(RideArchive.ARCHIVED_IN)) {
+                    transaction.delete(requestRef);
+                }
+                return null;
+            }
+        }).addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(@NonNull Exception e) {
+                System.out.println("Error while removing tombstone: " + e);
+            }
+        });
+    }
+
+    /**
+     * Gets a page of the finished ride requests of a user from every partition of the ride history,
+     * newest first. The query is served by the composite index on the participant and completion
+     * time in firestore.indexes.json, and continues after the cursor instead of skipping an offset,
+     * so each page reads only its own documents. One extra document is read to know if there is
+     * a next page.
+     * @param uid The UID of the user
+     * @param role Whether the user took the rides as "Rider" or gave them as "Driver"
+     * @param pageSize The most ride requests to return
+     * @param cursor Where the previous page ended, or null for the first page
+     * @param callback Receives the page, or null if it could not be read
+     */
+    @Override
+    public void getRideHistory(String uid, String role, final int pageSize,
+                               @Nullable RideHistoryPage.Cursor cursor,
+                               final Callback<RideHistoryPage> callback) {
+        Query query = db.collectionGroup(RideArchive.RIDES)
+                .whereEqualTo(RideArchive.participantField(role), uid)
+                .orderBy(RideArchive.COMPLETED_AT, Query.Direction.DESCENDING)
+                .orderBy("requestId", Query.Direction.DESCENDING);
+
+        // The document keeps the whole completion time, the cursor's milliseconds could skip rides
+        // that finished later in the same millisecond
+        if (cursor != null && cursor.getDocument() != null) {
+            query = query.startAfter(cursor.getDocument());
+        } else if (cursor != null) {
+            query = query.startAfter(new Date(cursor.getCompletedAt()), cursor.getRequestId());
+        }
+
+        query.limit(pageSize + 1)
+                .get()
+                .addOnSuccessListener(new OnSuccessListener<QuerySnapshot>() {
                     @Override
-                    public void onSuccess(DocumentSnapshot documentSnapshot) {
-                        if (documentSnapshot != null && documentSnapshot.exists()) {
-                            RideRequest rideRequest = documentSnapshot.toObject(RideRequest.class);
+                    public void onSuccess(QuerySnapshot snapshots) {
+                        List<RideHistoryPage.Entry> entries = new ArrayList<>();
 
-                            callback.myResponseCallback(rideRequest);
+                        for (QueryDocumentSnapshot document : snapshots) {
+                            if (entries.size() == pageSize) {
+                                break;
+                            }
+                            entries.add(new RideHistoryPage.Entry(toRideRequest(document),
+                                    timestampMillis(document, RideArchive.COMPLETED_AT), document));
                         }
+
+                        callback.myResponseCallback(new RideHistoryPage(entries, snapshots.size() > pageSize));
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        System.out.println("Error while getting ride history: " + e);
+                        callback.myResponseCallback(null);
                     }
                 });
     }
 
     /**
-     * Adds a Firestore listener to a ride request to handle live updates
+     * Subscribes to the live updates of a ride request. Every subscriber of the same request shares
+     * one Firestore listener, which is removed once the last subscriber unsubscribes
      * @param requestId The ID of the ride request that will be listened on
+     * @param subscriber Receives the ride request every time it changes, or null once it is deleted
+     * @return The subscription, which should be kept until the updates are no longer wanted
      */
-    public void addListenerToRideRequest(String requestId) {
-        DocumentReference docRef = rideRequests.document(requestId);
+    @Override
+    public SubscriptionRegistry.Subscription subscribeToRideRequest(String requestId, Callback<RideRequest> subscriber) {
+        return rideRequestSubscriptions.subscribe(requestId, subscriber);
+    }
 
-        rideRequestListener = docRef.addSnapshotListener(new EventListener<DocumentSnapshot>() {
-            @Override
-            public void onEvent(@Nullable DocumentSnapshot documentSnapshot, @Nullable FirebaseFirestoreException e) {
-                if (documentSnapshot != null && documentSnapshot.exists()) {
-                    RideRequest rideRequest = documentSnapshot.toObject(RideRequest.class);
+    /**
+     * Adds a Firestore listener to a ride request, publishing its updates to its subscribers
+     */
+    private SubscriptionRegistry.Connection listenToRideRequest(final String requestId) {
+        final ListenerRegistration registration = rideRequests.document(requestId)
+                .addSnapshotListener(new EventListener<DocumentSnapshot>() {
+                    @Override
+                    public void onEvent(@Nullable DocumentSnapshot documentSnapshot, @Nullable FirebaseFirestoreException e) {
+                        if (documentSnapshot == null) {
+                            return;
+                        }
 
-                    //Once it has changed, notify the observers with the updated Ride request
-                    setChanged();
-                    notifyObservers(rideRequest);
-                }
+                        if (documentSnapshot.exists()) {
+                            //Once it has changed, notify the subscribers with the updated Ride request
+                            rideRequestSubscriptions.publish(requestId, toRideRequest(documentSnapshot));
+                        } else {
+                            //Deleted, possibly by the server when the request expired
+                            rideRequestSubscriptions.publish(requestId, null);
+                        }
+                    }
+                });
+
+        return new SubscriptionRegistry.Connection() {
+            @Override
+            public void close() {
+                registration.remove();
             }
-        });
+        };
     }
 
     /**
@@ -422,6 +1322,7 @@ public class DatabaseAdapter extends Observable {
      * @param newEmail New email address
      * @param newPhone New phone number
      */
+    @Override
     public void updateUserInfo(String uid, String newEmail, String newPhone) {
         Map<String, Object> newData = new HashMap<>();
         newData.put("phone", newPhone);
@@ -448,6 +1349,7 @@ public class DatabaseAdapter extends Observable {
      * @param uid The ID of the User
      * @param increment The increment to be incremented with
      */
+    @Override
     public void incrementUserBalance(String uid, double increment) {
         users.document(uid)
                 .update("balance", FieldValue.increment(increment))
@@ -470,6 +1372,7 @@ public class DatabaseAdapter extends Observable {
      * @param uid The ID of the user
      * @param token The token
      */
+    @Override
     public void setUserToken(String uid, String token) {
         Map<String, Object> newData = new HashMap<>();
 
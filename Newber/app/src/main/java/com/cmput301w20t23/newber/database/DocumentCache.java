@@ -0,0 +1,108 @@
+package com.cmput301w20t23.newber.database;
+
+import androidx.annotation.Nullable;
+
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.ExpiringLruCache;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-through cache of Firestore documents, e.g. the user profiles shown on every ride screen.
+ * A document is read with a snapshot listener rather than a one-off get, and the listener stays
+ * attached while the document is cached, so every change to it replaces the cached copy. The
+ * listener is removed when the document is evicted or expires.
+ */
+class DocumentCache {
+    private final ExpiringLruCache<DocumentSnapshot> cache;
+
+    //The listener keeping each cached document current, by document path
+    private final Map<String, ListenerRegistration> listeners = new HashMap<>();
+
+    /**
+     * Instantiates a new DocumentCache.
+     *
+     * @param maxSize the most documents kept, and so the most listeners attached
+     * @param ttl     how long a document is used without a change before it is read again, in milliseconds
+     */
+    DocumentCache(int maxSize, long ttl) {
+        this.cache = new ExpiringLruCache<>(maxSize, ttl, new Callback<String>() {
+            @Override
+            public void myResponseCallback(String path) {
+                ListenerRegistration registration = listeners.remove(path);
+
+                if (registration != null) {
+                    registration.remove();
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets a document from the cache, or reads it if it is not cached. Concurrent reads of the
+     * same document share one listener.
+     * @param reference the document to get
+     * @param callback receives the document, or null if it could not be read
+     */
+    void get(DocumentReference reference, Callback<DocumentSnapshot> callback) {
+        final String path = reference.getPath();
+        DocumentSnapshot cached = cache.get(path, System.currentTimeMillis());
+
+        if (cached != null) {
+            callback.myResponseCallback(cached);
+            return;
+        }
+
+        if (!cache.beginLoad(path, callback)) {
+            return;
+        }
+
+        // A listener from an expired entry that was not cleaned up yet would be replaced
+        ListenerRegistration previous = listeners.remove(path);
+        if (previous != null) {
+            previous.remove();
+        }
+
+        listeners.put(path, reference.addSnapshotListener(new EventListener<DocumentSnapshot>() {
+            @Override
+            public void onEvent(@Nullable DocumentSnapshot snapshot, @Nullable FirebaseFirestoreException e) {
+                if (e != null || snapshot == null) {
+                    System.out.println("Error while listening to " + path + ": " + e);
+                    cache.invalidate(path);
+                    cache.failLoad(path, null);
+
+                    ListenerRegistration registration = listeners.remove(path);
+                    if (registration != null) {
+                        registration.remove();
+                    }
+                    return;
+                }
+
+                cache.put(path, snapshot, System.currentTimeMillis());
+            }
+        }));
+    }
+
+    long getHits() {
+        return cache.getHits();
+    }
+
+    long getMisses() {
+        return cache.getMisses();
+    }
+
+    double getHitRate() {
+        return cache.getHitRate();
+    }
+
+    @Override
+    public String toString() {
+        return cache.toString();
+    }
+}
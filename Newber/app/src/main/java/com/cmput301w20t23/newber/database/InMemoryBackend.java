@@ -0,0 +1,843 @@
+package com.cmput301w20t23.newber.database;
+
+import androidx.annotation.Nullable;
+
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.RideRequestChangeListener;
+import com.cmput301w20t23.newber.helpers.SubscriptionRegistry;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.Rating;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.cmput301w20t23.newber.models.User;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps ride requests, users and ratings in memory instead of Firestore, so the controllers can be
+ * run off the device, e.g. to drive thousands of ride lifecycles in a JUnit test. It follows the
+ * rules of DatabaseAdapter: a transition or a claim writes all its documents or none, stale
+ * updates are rejected and writes to a missing user fail.
+ *
+ * Stored documents are never changed, every write stores a new copy while holding one lock, so
+ * reads don't wait. Each call runs on the calling thread, or on an executor after a fixed latency,
+ * and a share of the writes can be made to fail.
+ */
+public class InMemoryBackend implements RideRepository, UserRepository, RatingRepository {
+    //How many times a claim is tried before it fails, as in DatabaseAdapter
+    private static final int MAX_CLAIM_ATTEMPTS = 4;
+
+    private final ConcurrentHashMap<String, RideRequest> rideRequests = new ConcurrentHashMap<>();
+
+    //Finished ride requests by ID, the ride history of RideArchive
+    private final ConcurrentHashMap<String, ArchivedRide> archivedRides = new ConcurrentHashMap<>();
+
+    //The IDs of the tombstones in rideRequests, to the partition their request was moved to
+    private final ConcurrentHashMap<String, String> tombstones = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, StoredUser> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, StoredRating> ratings = new ConcurrentHashMap<>();
+
+    //Username reservations, from the username key to the UID of the user
+    private final ConcurrentHashMap<String, String> usernames = new ConcurrentHashMap<>();
+
+    //The keys of every committed ride transition, kept for the life of the backend
+    private final ConcurrentHashMap<String, Boolean> committedTransitions = new ConcurrentHashMap<>();
+
+    //Held by every write, so the documents of a transition or claim change together
+    private final Object writeLock = new Object();
+
+    private final SubscriptionRegistry<RideRequest> rideRequestSubscriptions;
+    private final List<PendingListener> pendingListeners = new CopyOnWriteArrayList<>();
+    private final ClaimMetrics claimMetrics = new ClaimMetrics();
+
+    //Runs the calls after the latency, or null to run them on the calling thread
+    private final ScheduledExecutorService executor;
+    private final long latency;
+
+    private volatile double failureRate = 0;
+    private final Random random = new Random();
+    private final AtomicLong injectedFailures = new AtomicLong();
+
+    /**
+     * A user document, with the fields that are not part of User
+     */
+    private static class StoredUser {
+        final User user;
+        final String role;
+        String token;
+
+        StoredUser(User user, String role, String token) {
+            this.user = user;
+            this.role = role;
+            this.token = token;
+        }
+
+        StoredUser copy() {
+            return new StoredUser(copy(user), role, token);
+        }
+
+        static User copy(User user) {
+            User copy = new User(user.getFirstName(), user.getLastName(), user.getUsername(),
+                    user.getPhone(), user.getEmail(), user.getUid(), user.getBalance());
+            copy.setCurrentRequestId(user.getCurrentRequestId());
+            return copy;
+        }
+    }
+
+    /**
+     * A ride request in the ride history
+     */
+    private static class ArchivedRide {
+        final RideRequest rideRequest;
+        final long completedAt;
+
+        ArchivedRide(RideRequest rideRequest, long completedAt) {
+            this.rideRequest = rideRequest;
+            this.completedAt = completedAt;
+        }
+    }
+
+    /**
+     * A rating document, votes are counted like FieldValue.increment
+     */
+    private static class StoredRating {
+        final AtomicInteger upvotes = new AtomicInteger();
+        final AtomicInteger downvotes = new AtomicInteger();
+    }
+
+    /**
+     * A change to a user document, applied to a copy of it
+     */
+    private interface UserUpdate {
+        void apply(StoredUser user);
+    }
+
+    /**
+     * A listener to the ride requests with no driver in some geohash ranges
+     */
+    private static class PendingListener {
+        final List<String[]> geohashRanges;
+        final RideRequestChangeListener listener;
+
+        PendingListener(List<String[]> geohashRanges, RideRequestChangeListener listener) {
+            this.geohashRanges = geohashRanges;
+            this.listener = listener;
+        }
+
+        void onChange(RideRequest before, RideRequest after) {
+            boolean was = isPending(before, geohashRanges);
+            boolean is = isPending(after, geohashRanges);
+
+            if (!was && !is) {
+                return;
+            }
+
+            if (!was) {
+                listener.onRideRequestAdded(copy(after));
+            } else if (is) {
+                listener.onRideRequestModified(copy(after));
+            } else {
+                listener.onRideRequestRemoved(copy(before));
+            }
+
+            listener.onRideRequestsSynced();
+        }
+    }
+
+    /**
+     * Instantiates an InMemoryBackend that runs every call on the calling thread, before it returns
+     */
+    public InMemoryBackend() {
+        this(null, 0);
+    }
+
+    /**
+     * Instantiates an InMemoryBackend that runs every call on an executor, like a round trip to
+     * Firestore
+     * @param executor runs the calls
+     * @param latency how long each call waits before it runs, in milliseconds
+     */
+    public InMemoryBackend(@Nullable ScheduledExecutorService executor, long latency) {
+        this.executor = executor;
+        this.latency = latency;
+
+        rideRequestSubscriptions = new SubscriptionRegistry<>(new SubscriptionRegistry.Connector() {
+            @Override
+            public SubscriptionRegistry.Connection connect(final String requestId) {
+                // Like a snapshot listener, the first update is the request as it is now
+                run(new Runnable() {
+                    @Override
+                    public void run() {
+                        RideRequest stored = rideRequests.get(requestId);
+                        rideRequestSubscriptions.publish(requestId, stored == null ? null : copy(stored));
+                    }
+                });
+
+                return new SubscriptionRegistry.Connection() {
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Makes a share of the writes fail from now on. Failed claims are retried like in
+     * DatabaseAdapter, reads never fail.
+     * @param failureRate the chance of each write failing, between 0 and 1
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Forgets the keys of the committed transitions, like DatabaseAdapter does once the app
+     * restarts or the keys are evicted, so only the stored documents tell a repeated transition
+     */
+    public void forgetCommittedTransitions() {
+        committedTransitions.clear();
+    }
+
+    /**
+     * Deletes a ride request without a transition, like the server does once a request expires
+     * @param requestId the ID of the ride request to delete
+     */
+    public void deleteRideRequestOutsideApp(final String requestId) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (writeLock) {
+                    RideRequest removed = rideRequests.remove(requestId);
+
+                    if (removed != null) {
+                        rideRequestChanged(requestId, removed, null);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets how many writes were made to fail
+     * @return the number of injected failures
+     */
+    public long getInjectedFailures() {
+        return injectedFailures.get();
+    }
+
+    /**
+     * Gets how many documents are in the live ride requests, tombstones included
+     * @return the number of live ride requests
+     */
+    public int getLiveRideRequestCount() {
+        return rideRequests.size();
+    }
+
+    @Override
+    public void getRideRequest(final String requestId, final Callback<RideRequest> callback) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                RideRequest stored = rideRequests.get(requestId);
+
+                if (stored != null && !tombstones.containsKey(requestId)) {
+                    callback.myResponseCallback(copy(stored));
+                    return;
+                }
+
+                ArchivedRide archived = archivedRides.get(requestId);
+                if (archived != null) {
+                    callback.myResponseCallback(copy(archived.rideRequest));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void removeTombstone(final String requestId) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (writeLock) {
+                    if (tombstones.containsKey(requestId)) {
+                        rideRequests.remove(requestId);
+                        tombstones.remove(requestId);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void getRideHistory(final String uid, final String role, final int pageSize,
+                               @Nullable final RideHistoryPage.Cursor cursor,
+                               final Callback<RideHistoryPage> callback) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                boolean driver = "driver".equals(RideArchive.participantField(role));
+                List<RideHistoryPage.Entry> found = new ArrayList<>();
+
+                for (ArchivedRide archived : archivedRides.values()) {
+                    RideRequest rideRequest = archived.rideRequest;
+                    String participant = driver ? rideRequest.getDriver() : rideRequest.getRider();
+
+                    if (uid.equals(participant) && (cursor == null
+                            || cursor.isBefore(archived.completedAt, rideRequest.getRequestId()))) {
+                        found.add(new RideHistoryPage.Entry(copy(rideRequest), archived.completedAt));
+                    }
+                }
+
+                // Newest first, as the history query orders them
+                Collections.sort(found, new Comparator<RideHistoryPage.Entry>() {
+                    @Override
+                    public int compare(RideHistoryPage.Entry a, RideHistoryPage.Entry b) {
+                        if (a.getCompletedAt() != b.getCompletedAt()) {
+                            return a.getCompletedAt() > b.getCompletedAt() ? -1 : 1;
+                        }
+                        return b.getRideRequest().getRequestId().compareTo(a.getRideRequest().getRequestId());
+                    }
+                });
+
+                boolean hasMore = found.size() > pageSize;
+                callback.myResponseCallback(new RideHistoryPage(
+                        hasMore ? found.subList(0, pageSize) : found, hasMore));
+            }
+        });
+    }
+
+    @Override
+    public void commitRideTransition(final RideTransition transition, @Nullable final Callback<Boolean> callback) {
+        final Map<String, Object> changes = transition.getRideRequest().getChangedFields();
+        final long version = transition.getRideRequest().getVersion();
+
+        run(new Runnable() {
+            @Override
+            public void run() {
+                boolean committed = applyTransition(transition, changes, version);
+
+                if (callback != null) {
+                    callback.myResponseCallback(committed);
+                }
+            }
+        });
+    }
+
+    private boolean applyTransition(RideTransition transition, Map<String, Object> changes, long version) {
+        RideRequest rideRequest = transition.getRideRequest();
+        String requestId = rideRequest.getRequestId();
+        boolean creates = transition.getType() == RideTransition.Type.CREATE;
+
+        synchronized (writeLock) {
+            if (committedTransitions.containsKey(transition.getKey())) {
+                return true;
+            }
+
+            if (injectFailure("ride transition " + transition.getKey())) {
+                return false;
+            }
+
+            RideRequest stored = rideRequests.get(requestId);
+
+            // Like the transaction, a create of a request that is already stored is done
+            if (creates && stored != null) {
+                committedTransitions.put(transition.getKey(), Boolean.TRUE);
+                rideRequest.clearChanges();
+                return true;
+            }
+
+            // Like the transaction, any step but a create needs the request at the version it was read at
+            if (!creates && (stored == null || stored.getVersion() != version)) {
+                System.out.println("Rejected stale ride transition " + transition.getKey());
+                return false;
+            }
+            if (!usersExist(transition.getCurrentRequestIds().keySet())
+                    || !usersExist(transition.getBalanceIncrements().keySet())) {
+                return false;
+            }
+
+            RideRequest written = null;
+
+            if (creates) {
+                written = copy(rideRequest);
+            } else {
+                written = copy(stored);
+                applyFields(written, changes);
+                written.setVersion(stored.getVersion() + 1);
+                written.clearChanges();
+            }
+
+            if (!transition.archivesRideRequest()) {
+                rideRequests.put(requestId, written);
+            } else {
+                long now = System.currentTimeMillis();
+                archivedRides.put(requestId, new ArchivedRide(written, now));
+
+                if (transition.leavesTombstone()) {
+                    RideRequest tombstone = new RideRequest(requestId, null, null, written.getStatus(),
+                            written.getRider(), written.getDriver(), written.getCost());
+                    tombstone.setVersion(written.getVersion());
+                    tombstones.put(requestId, RideArchive.partition(now));
+                    rideRequests.put(requestId, tombstone);
+                    written = tombstone;
+                } else {
+                    rideRequests.remove(requestId);
+                    written = null;
+                }
+            }
+
+            Map<String, StoredUser> updated = new HashMap<>();
+
+            for (Map.Entry<String, String> entry : transition.getCurrentRequestIds().entrySet()) {
+                updatedUser(updated, entry.getKey()).user.setCurrentRequestId(entry.getValue());
+            }
+            for (Map.Entry<String, Double> entry : transition.getBalanceIncrements().entrySet()) {
+                updatedUser(updated, entry.getKey()).user.addToBalance(entry.getValue());
+            }
+            users.putAll(updated);
+
+            committedTransitions.put(transition.getKey(), Boolean.TRUE);
+
+            if (creates) {
+                rideRequest.clearChanges();
+            } else if (!transition.deletesRideRequest()) {
+                rideRequest.setVersion(version + 1);
+                rideRequest.markWritten(changes);
+            }
+
+            rideRequestChanged(requestId, stored, written);
+            return true;
+        }
+    }
+
+    private boolean usersExist(Iterable<String> uids) {
+        for (String uid : uids) {
+            if (!users.containsKey(uid)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private StoredUser updatedUser(Map<String, StoredUser> updated, String uid) {
+        StoredUser user = updated.get(uid);
+
+        if (user == null) {
+            user = users.get(uid).copy();
+            updated.put(uid, user);
+        }
+
+        return user;
+    }
+
+    @Override
+    public void updateRideRequest(final RideRequest rideRequest, @Nullable final Callback<Boolean> callback) {
+        final Map<String, Object> changes = rideRequest.getChangedFields();
+
+        if (changes.isEmpty()) {
+            if (callback != null) {
+                callback.myResponseCallback(true);
+            }
+            return;
+        }
+
+        final long version = rideRequest.getVersion();
+
+        run(new Runnable() {
+            @Override
+            public void run() {
+                boolean updated = false;
+
+                synchronized (writeLock) {
+                    RideRequest stored = rideRequests.get(rideRequest.getRequestId());
+
+                    if (!injectFailure("update of ride request " + rideRequest.getRequestId())
+                            && stored != null && stored.getVersion() == version) {
+                        RideRequest written = copy(stored);
+                        applyFields(written, changes);
+                        written.setVersion(version + 1);
+                        written.clearChanges();
+                        rideRequests.put(rideRequest.getRequestId(), written);
+
+                        rideRequest.setVersion(version + 1);
+                        rideRequest.markWritten(changes);
+                        rideRequestChanged(rideRequest.getRequestId(), stored, written);
+                        updated = true;
+                    }
+                }
+
+                if (callback != null) {
+                    callback.myResponseCallback(updated);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void claimRideRequest(final String requestId, final String driverId, final Callback<ClaimResult> callback) {
+        claimMetrics.recordClaim();
+
+        run(new Runnable() {
+            @Override
+            public void run() {
+                ClaimResult result = attemptClaim(requestId, driverId);
+
+                for (int attempt = 1; attempt < MAX_CLAIM_ATTEMPTS && result == ClaimResult.FAILED; attempt++) {
+                    claimMetrics.recordRetry();
+                    result = attemptClaim(requestId, driverId);
+                }
+
+                claimMetrics.recordResult(result);
+                callback.myResponseCallback(result);
+            }
+        });
+    }
+
+    private ClaimResult attemptClaim(String requestId, String driverId) {
+        synchronized (writeLock) {
+            if (injectFailure("claim of ride request " + requestId)) {
+                return ClaimResult.FAILED;
+            }
+
+            RideRequest stored = rideRequests.get(requestId);
+
+            if (stored == null || stored.getStatus() != RequestStatus.PENDING
+                    || (stored.getDriver() != null && !stored.getDriver().isEmpty())) {
+                return ClaimResult.LOST;
+            }
+
+            StoredUser driver = users.get(driverId);
+            if (driver == null) {
+                return ClaimResult.FAILED;
+            }
+
+            RideRequest written = copy(stored);
+            written.setDriver(driverId);
+            written.setStatus(RequestStatus.OFFERED);
+            written.setVersion(stored.getVersion() + 1);
+            written.clearChanges();
+            rideRequests.put(requestId, written);
+
+            StoredUser updatedDriver = driver.copy();
+            updatedDriver.user.setCurrentRequestId(requestId);
+            users.put(driverId, updatedDriver);
+
+            rideRequestChanged(requestId, stored, written);
+            return ClaimResult.WON;
+        }
+    }
+
+    @Override
+    public ClaimMetrics getClaimMetrics() {
+        return claimMetrics;
+    }
+
+    @Override
+    public ListenerRegistration addPendingRideRequestsListener(List<String[]> geohashRanges,
+                                                               RideRequestChangeListener listener) {
+        final PendingListener pendingListener = new PendingListener(geohashRanges, listener);
+
+        // No write can come between the first update and the listener being added
+        synchronized (writeLock) {
+            for (RideRequest stored : rideRequests.values()) {
+                if (isPending(stored, geohashRanges)) {
+                    listener.onRideRequestAdded(copy(stored));
+                }
+            }
+
+            listener.onRideRequestsSynced();
+            pendingListeners.add(pendingListener);
+        }
+
+        return new ListenerRegistration() {
+            @Override
+            public void remove() {
+                pendingListeners.remove(pendingListener);
+            }
+        };
+    }
+
+    @Override
+    public SubscriptionRegistry.Subscription subscribeToRideRequest(String requestId, Callback<RideRequest> subscriber) {
+        return rideRequestSubscriptions.subscribe(requestId, subscriber);
+    }
+
+    /**
+     * Passes a written ride request to its subscribers and the pending request listeners, while
+     * the write lock is held so they see the writes in order
+     */
+    private void rideRequestChanged(String requestId, RideRequest before, RideRequest after) {
+        rideRequestSubscriptions.publish(requestId, after == null ? null : copy(after));
+
+        for (PendingListener listener : pendingListeners) {
+            listener.onChange(before, after);
+        }
+    }
+
+    @Override
+    public void createUser(final User user, final String role, final Callback<ClaimResult> callback) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                String usernameKey = DatabaseAdapter.usernameKey(user.getUsername());
+                ClaimResult result;
+
+                synchronized (writeLock) {
+                    String owner = usernames.get(usernameKey);
+
+                    if (injectFailure("creation of user " + user.getUid())) {
+                        result = ClaimResult.FAILED;
+                    } else if (owner != null && !owner.equals(user.getUid())) {
+                        result = ClaimResult.LOST;
+                    } else {
+                        usernames.put(usernameKey, user.getUid());
+                        users.put(user.getUid(), new StoredUser(StoredUser.copy(user), role, null));
+
+                        if (role.equals("Driver")) {
+                            ratings.put(user.getUid(), new StoredRating());
+                        }
+                        result = ClaimResult.WON;
+                    }
+                }
+
+                callback.myResponseCallback(result);
+            }
+        });
+    }
+
+    @Override
+    public void getUser(final String uid, final Callback<Map<String, Object>> callback) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                StoredUser stored = users.get(uid);
+
+                Map<String, Object> map = new HashMap<>();
+                map.put("user", stored != null ? StoredUser.copy(stored.user) : null);
+                map.put("role", stored != null ? stored.role : null);
+
+                callback.myResponseCallback(map);
+            }
+        });
+    }
+
+    @Override
+    public void checkUserName(final String username, final Callback<Boolean> callback) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                callback.myResponseCallback(usernames.containsKey(DatabaseAdapter.usernameKey(username)));
+            }
+        });
+    }
+
+    @Override
+    public boolean isUsernameRecentlyTaken(String username) {
+        return usernames.containsKey(DatabaseAdapter.usernameKey(username));
+    }
+
+    @Override
+    public void setUserCurrentRequestId(String uid, final String currentRequestId) {
+        updateUser(uid, "currentRequestId", new UserUpdate() {
+            @Override
+            public void apply(StoredUser user) {
+                user.user.setCurrentRequestId(currentRequestId);
+            }
+        });
+    }
+
+    @Override
+    public void updateUserInfo(String uid, final String newEmail, final String newPhone) {
+        updateUser(uid, "user", new UserUpdate() {
+            @Override
+            public void apply(StoredUser user) {
+                user.user.setEmail(newEmail);
+                user.user.setPhone(newPhone);
+            }
+        });
+    }
+
+    @Override
+    public void incrementUserBalance(String uid, final double increment) {
+        updateUser(uid, "balance", new UserUpdate() {
+            @Override
+            public void apply(StoredUser user) {
+                user.user.addToBalance(increment);
+            }
+        });
+    }
+
+    @Override
+    public void setUserToken(String uid, final String token) {
+        updateUser(uid, "token", new UserUpdate() {
+            @Override
+            public void apply(StoredUser user) {
+                user.token = token;
+            }
+        });
+    }
+
+    private void updateUser(final String uid, final String field, final UserUpdate update) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (writeLock) {
+                    StoredUser stored = users.get(uid);
+
+                    if (injectFailure("update of " + field)) {
+                        return;
+                    }
+                    if (stored == null) {
+                        System.out.println("Error while updating " + field + ": no user " + uid);
+                        return;
+                    }
+
+                    StoredUser updated = stored.copy();
+                    update.apply(updated);
+                    users.put(uid, updated);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void getRating(final String uid, final Callback<Rating> callback) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                StoredRating stored = ratings.get(uid);
+
+                callback.myResponseCallback(stored == null ? null
+                        : new Rating(stored.upvotes.get(), stored.downvotes.get()));
+            }
+        });
+    }
+
+    @Override
+    public void recordVote(final String uid, final boolean upvote, @Nullable final Callback<Boolean> callback) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                StoredRating stored = ratings.get(uid);
+                boolean recorded = false;
+
+                // Votes are increments, they don't need the write lock
+                if (!injectFailure("vote for " + uid) && stored != null) {
+                    (upvote ? stored.upvotes : stored.downvotes).incrementAndGet();
+                    recorded = true;
+                }
+
+                if (callback != null) {
+                    callback.myResponseCallback(recorded);
+                }
+            }
+        });
+    }
+
+    private void run(Runnable call) {
+        if (executor == null) {
+            call.run();
+        } else {
+            executor.schedule(call, latency, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean injectFailure(String write) {
+        if (failureRate <= 0 || random.nextDouble() >= failureRate) {
+            return false;
+        }
+
+        injectedFailures.incrementAndGet();
+        System.out.println("Error while writing " + write + ": injected failure");
+        return true;
+    }
+
+    /**
+     * Checks if a ride request would be found by the pending query of DatabaseAdapter, which
+     * matches requests with no driver by geohash
+     */
+    private static boolean isPending(RideRequest rideRequest, List<String[]> geohashRanges) {
+        if (rideRequest == null || rideRequest.getDriver() != null || rideRequest.getGeohash() == null) {
+            return false;
+        }
+
+        String geohash = rideRequest.getGeohash();
+
+        for (String[] range : geohashRanges) {
+            if (geohash.compareTo(range[0]) >= 0 && geohash.compareTo(range[1]) <= 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sets the fields DatabaseAdapter would write to a stored ride request, the geohash is derived
+     * from the start location
+     */
+    private static void applyFields(RideRequest rideRequest, Map<String, Object> fields) {
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            Object value = field.getValue();
+
+            switch (field.getKey()) {
+                case "startLocation":
+                    rideRequest.setStartLocation(copy((Location) value));
+                    break;
+                case "endLocation":
+                    rideRequest.setEndLocation(copy((Location) value));
+                    break;
+                case "status":
+                    rideRequest.setStatus(value == null ? null : RequestStatus.valueOf((String) value));
+                    break;
+                case "driver":
+                    rideRequest.setDriver((String) value);
+                    break;
+                case "rider":
+                    rideRequest.setRider((String) value);
+                    break;
+                case "cost":
+                    rideRequest.setCost((Double) value);
+                    break;
+            }
+        }
+    }
+
+    private static RideRequest copy(RideRequest rideRequest) {
+        RideRequest copy = new RideRequest(rideRequest.getRequestId(),
+                copy(rideRequest.getStartLocation()), copy(rideRequest.getEndLocation()),
+                rideRequest.getStatus(), rideRequest.getRider(), rideRequest.getDriver(),
+                rideRequest.getCost());
+        copy.setVersion(rideRequest.getVersion());
+        copy.clearChanges();
+        return copy;
+    }
+
+    private static Location copy(Location location) {
+        if (location == null) {
+            return null;
+        }
+
+        Location copy = new Location();
+        copy.setName(location.getName());
+        copy.setLatitude(location.getLatitude());
+        copy.setLongitude(location.getLongitude());
+        return copy;
+    }
+}
@@ -0,0 +1,384 @@
+package com.cmput301w20t23.newber.database;
+
+import android.content.Context;
+
+import com.cmput301w20t23.newber.models.Driver;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.Rating;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.cmput301w20t23.newber.models.Rider;
+import com.cmput301w20t23.newber.models.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the signed in user, their role and rating and their current ride request in a small file
+ * on the device, so the main screen can be shown from it right away and then brought up to date
+ * once Firestore answers. The state is kept in memory too, only writes touch the file, on a
+ * background thread.
+ */
+public class LocalStateStore {
+    //Bumped whenever the file layout changes, older files are ignored
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String FILE_NAME = "local_state.bin";
+
+    private static LocalStateStore localStateStore = null;
+
+    private final File file;
+    private final Executor writer;
+
+    //The encoded state, as it is in the file, or null before it is read
+    private byte[] contents = null;
+
+    /**
+     * The state kept on the device. Every read gets new copies, so they can be changed freely.
+     */
+    public static class State {
+        private User user;
+        private String role;
+        private Rating rating;
+        private RideRequest rideRequest;
+
+        /**
+         * Gets the signed in user, a Rider or a Driver.
+         *
+         * @return the user, or null if none is kept
+         */
+        public User getUser() {
+            return user;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        /**
+         * Gets the rating of the signed in driver.
+         *
+         * @return the rating, or null if none is kept
+         */
+        public Rating getRating() {
+            return rating;
+        }
+
+        /**
+         * Gets the user's current ride request.
+         *
+         * @return the ride request, or null if they have none
+         */
+        public RideRequest getRideRequest() {
+            return rideRequest;
+        }
+    }
+
+    /**
+     * Instantiates a new LocalStateStore.
+     *
+     * @param file   the file the state is kept in
+     * @param writer runs the writes to the file, in order
+     */
+    public LocalStateStore(File file, Executor writer) {
+        this.file = file;
+        this.writer = writer;
+    }
+
+    /**
+     * Returns 1 global instance, kept in the app's files directory
+     * @param context any context of the app
+     * @return the store
+     */
+    public static synchronized LocalStateStore getInstance(Context context) {
+        if (localStateStore == null) {
+            File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+            localStateStore = new LocalStateStore(file, Executors.newSingleThreadExecutor());
+        }
+
+        return localStateStore;
+    }
+
+    /**
+     * Reads the kept state, from the file the first time
+     * @return the state, with every part null if nothing is kept or the file can't be read
+     */
+    public synchronized State read() {
+        if (contents == null) {
+            contents = readFile();
+        }
+
+        try {
+            return decode(contents);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Ignoring unreadable local state: " + e);
+            contents = new byte[0];
+            return new State();
+        }
+    }
+
+    /**
+     * Keeps the signed in user and their role
+     * @param user the user
+     * @param role the user's role
+     */
+    public synchronized void saveUser(User user, String role) {
+        State state = read();
+        state.user = user;
+        state.role = role;
+        write(state);
+    }
+
+    /**
+     * Keeps the signed in driver's rating
+     * @param rating the rating
+     */
+    public synchronized void saveRating(Rating rating) {
+        State state = read();
+        state.rating = rating;
+        write(state);
+    }
+
+    /**
+     * Keeps the user's current ride request
+     * @param rideRequest the ride request, or null if they have none anymore
+     */
+    public synchronized void saveRideRequest(RideRequest rideRequest) {
+        State state = read();
+        state.rideRequest = rideRequest;
+        write(state);
+    }
+
+    /**
+     * Forgets everything, e.g. when the user logs out
+     */
+    public synchronized void clear() {
+        contents = new byte[0];
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (file.exists() && !file.delete()) {
+                    System.out.println("Error while deleting local state");
+                }
+            }
+        });
+    }
+
+    private void write(State state) {
+        final byte[] encoded;
+
+        try {
+            encoded = encode(state);
+        } catch (IOException e) {
+            System.out.println("Error while encoding local state: " + e);
+            return;
+        }
+
+        // Duplicate snapshots are common, they don't need to touch the file
+        if (Arrays.equals(encoded, contents)) {
+            return;
+        }
+
+        contents = encoded;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeFile(encoded);
+            }
+        });
+    }
+
+    private byte[] readFile() {
+        if (!file.exists()) {
+            return new byte[0];
+        }
+
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            in.readFully(bytes);
+            return bytes;
+        } catch (IOException e) {
+            System.out.println("Error while reading local state: " + e);
+            return new byte[0];
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Writes the state to a temporary file and renames it over the old one, so a crash while
+     * writing never leaves a half written file
+     */
+    private void writeFile(byte[] bytes) {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+
+        try {
+            out = new FileOutputStream(temp);
+            out.write(bytes);
+            out.getFD().sync();
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file)) {
+                System.out.println("Error while replacing local state");
+            }
+        } catch (IOException e) {
+            System.out.println("Error while writing local state: " + e);
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            System.out.println("Error while closing local state: " + e);
+        }
+    }
+
+    private static byte[] encode(State state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(FORMAT_VERSION);
+
+        out.writeBoolean(state.user != null);
+        if (state.user != null) {
+            User user = state.user;
+            writeString(out, state.role);
+            writeString(out, user.getFirstName());
+            writeString(out, user.getLastName());
+            writeString(out, user.getUsername());
+            writeString(out, user.getPhone());
+            writeString(out, user.getEmail());
+            writeString(out, user.getUid());
+            writeString(out, user.getCurrentRequestId());
+            out.writeDouble(user.getBalance());
+        }
+
+        out.writeBoolean(state.rating != null);
+        if (state.rating != null) {
+            out.writeInt(state.rating.getUpvotes());
+            out.writeInt(state.rating.getDownvotes());
+        }
+
+        out.writeBoolean(state.rideRequest != null);
+        if (state.rideRequest != null) {
+            RideRequest request = state.rideRequest;
+            writeString(out, request.getRequestId());
+            writeLocation(out, request.getStartLocation());
+            writeLocation(out, request.getEndLocation());
+            writeString(out, request.getStatus() == null ? null : request.getStatus().name());
+            writeString(out, request.getRider());
+            writeString(out, request.getDriver());
+            out.writeDouble(request.getCost());
+            out.writeLong(request.getVersion());
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static State decode(byte[] contents) throws IOException {
+        State state = new State();
+
+        if (contents.length == 0) {
+            return state;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents));
+        if (in.readInt() != FORMAT_VERSION) {
+            return state;
+        }
+
+        if (in.readBoolean()) {
+            String role = readString(in);
+            String firstName = readString(in);
+            String lastName = readString(in);
+            String username = readString(in);
+            String phone = readString(in);
+            String email = readString(in);
+            String uid = readString(in);
+            String currentRequestId = readString(in);
+            double balance = in.readDouble();
+
+            state.role = role;
+            state.user = "Driver".equals(role)
+                    ? new Driver(firstName, lastName, username, phone, email, uid, currentRequestId, null, balance)
+                    : new Rider(firstName, lastName, username, phone, email, uid, currentRequestId, balance);
+        }
+
+        if (in.readBoolean()) {
+            state.rating = new Rating(in.readInt(), in.readInt());
+        }
+
+        if (in.readBoolean()) {
+            String requestId = readString(in);
+            Location start = readLocation(in);
+            Location end = readLocation(in);
+            String status = readString(in);
+            String rider = readString(in);
+            String driver = readString(in);
+            double cost = in.readDouble();
+
+            RideRequest request = new RideRequest(requestId, start, end,
+                    status == null ? null : RequestStatus.valueOf(status), rider, driver, cost);
+            request.setVersion(in.readLong());
+            state.rideRequest = request;
+        }
+
+        return state;
+    }
+
+    private static void writeLocation(DataOutputStream out, Location location) throws IOException {
+        out.writeBoolean(location != null);
+
+        if (location != null) {
+            writeString(out, location.getName());
+            out.writeDouble(location.getLatitude());
+            out.writeDouble(location.getLongitude());
+        }
+    }
+
+    private static Location readLocation(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        Location location = new Location();
+        location.setName(readString(in));
+        location.setLatitude(in.readDouble());
+        location.setLongitude(in.readDouble());
+        return location;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
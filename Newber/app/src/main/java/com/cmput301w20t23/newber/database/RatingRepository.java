@@ -0,0 +1,28 @@
+package com.cmput301w20t23.newber.database;
+
+import androidx.annotation.Nullable;
+
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.models.Rating;
+
+/**
+ * Where the ratings of drivers are stored. DatabaseAdapter keeps them in Firestore,
+ * InMemoryBackend keeps them in memory so the controllers can be run off the device.
+ */
+public interface RatingRepository {
+    /**
+     * Gets the rating of a driver
+     * @param uid the ID of the driver
+     * @param callback receives the rating, or null if the driver has none
+     */
+    void getRating(String uid, Callback<Rating> callback);
+
+    /**
+     * Records a vote for a driver without reading their rating first, so concurrent votes are
+     * never lost
+     * @param uid the ID of the driver
+     * @param upvote true for an upvote, false for a downvote
+     * @param callback receives true once the vote is written, false if it failed, may be null
+     */
+    void recordVote(String uid, boolean upvote, @Nullable Callback<Boolean> callback);
+}
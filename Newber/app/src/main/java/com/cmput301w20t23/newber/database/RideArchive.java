@@ -0,0 +1,82 @@
+package com.cmput301w20t23.newber.database;
+
+import com.cmput301w20t23.newber.models.RideRequest;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Where finished ride requests are kept. Completed and cancelled requests are moved out of the
+ * live rideRequests collection into rideHistory/{month}/rides, one partition per month they
+ * finished in, so the live collection and its listeners only hold rides that are still going on.
+ *
+ * A completed request leaves a tombstone in rideRequests: a small document with what the rider's
+ * screen needs to end the ride and rate the driver, and the partition the request was moved to.
+ * The rider removes it once they have seen it, otherwise it expires after TOMBSTONE_TTL.
+ * functions/index.js uses the same layout.
+ */
+public final class RideArchive {
+    //The collection of monthly partitions, and the collection of rides in each partition
+    public static final String HISTORY = "rideHistory";
+    public static final String RIDES = "rides";
+
+    //The field of a tombstone holding the partition its ride request was moved to
+    public static final String ARCHIVED_IN = "archivedIn";
+
+    //When an archived ride request finished, a server timestamp so the history is in the order rides finished
+    public static final String COMPLETED_AT = "completedAt";
+
+    //When a tombstone may be deleted, a Firestore TTL policy can be set on this field
+    public static final String EXPIRE_AT = "expireAt";
+
+    //How long a tombstone is kept if the rider never opens the app again
+    public static final long TOMBSTONE_TTL = 30L * 24 * 60 * 60 * 1000;
+
+    private RideArchive() {
+    }
+
+    /**
+     * Gets the partition of the ride requests that finished at a time, e.g. 2020-03
+     * @param time the time in milliseconds
+     * @return the year and month in UTC
+     */
+    public static String partition(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(time));
+    }
+
+    /**
+     * Gets the field of an archived ride request that holds the user in a role, the ride history
+     * of a user is queried on it across every partition
+     * @param role "Rider" or "Driver"
+     * @return "driver" for a driver, "rider" otherwise
+     */
+    public static String participantField(String role) {
+        return "Driver".equals(role) ? "driver" : "rider";
+    }
+
+    /**
+     * Gets the fields of the tombstone a completed ride request leaves behind
+     * @param rideRequest the completed ride request, before its version is bumped
+     * @param partition the partition the ride request is moved to
+     * @param time when the ride request was completed, in milliseconds
+     * @return the fields of the tombstone
+     */
+    public static Map<String, Object> tombstone(RideRequest rideRequest, String partition, long time) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("requestId", rideRequest.getRequestId());
+        fields.put("status", rideRequest.getStatus().name());
+        fields.put("rider", rideRequest.getRider());
+        fields.put("driver", rideRequest.getDriver());
+        fields.put("cost", rideRequest.getCost());
+        fields.put("version", rideRequest.getVersion() + 1);
+        fields.put(ARCHIVED_IN, partition);
+        fields.put(EXPIRE_AT, new Date(time + TOMBSTONE_TTL));
+        return fields;
+    }
+}
@@ -0,0 +1,135 @@
+package com.cmput301w20t23.newber.database;
+
+import androidx.annotation.Nullable;
+
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a user's ride history, newest first. The cursor of the last entry is passed back to
+ * get the next page, so a page never skips or repeats a ride when rides are archived in between.
+ */
+public class RideHistoryPage {
+    /**
+     * Where a page of the ride history ends: the completion time of its last ride, and its ID to
+     * order rides that finished in the same millisecond. Firestore keeps completion times in
+     * microseconds, so a page read from it also keeps the document of its last ride, and the next
+     * page starts after that instead of after the time cut to milliseconds.
+     */
+    public static class Cursor {
+        private final long completedAt;
+        private final String requestId;
+        private final DocumentSnapshot document;
+
+        public Cursor(long completedAt, String requestId) {
+            this(completedAt, requestId, null);
+        }
+
+        public Cursor(long completedAt, String requestId, @Nullable DocumentSnapshot document) {
+            this.completedAt = completedAt;
+            this.requestId = requestId;
+            this.document = document;
+        }
+
+        public long getCompletedAt() {
+            return completedAt;
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        /**
+         * Gets the document of the last ride of the page
+         * @return the document, or null if the page was not read from Firestore
+         */
+        @Nullable
+        public DocumentSnapshot getDocument() {
+            return document;
+        }
+
+        /**
+         * Checks if a ride comes after this cursor in the ride history
+         * @param completedAt when the ride finished, in milliseconds
+         * @param requestId the ID of the ride request
+         * @return true if the ride is older than the cursor
+         */
+        public boolean isBefore(long completedAt, String requestId) {
+            if (completedAt != this.completedAt) {
+                return completedAt < this.completedAt;
+            }
+            return requestId.compareTo(this.requestId) < 0;
+        }
+    }
+
+    /**
+     * A finished ride request and when it finished
+     */
+    public static class Entry {
+        private final RideRequest rideRequest;
+        private final long completedAt;
+        private final DocumentSnapshot document;
+
+        public Entry(RideRequest rideRequest, long completedAt) {
+            this(rideRequest, completedAt, null);
+        }
+
+        public Entry(RideRequest rideRequest, long completedAt, @Nullable DocumentSnapshot document) {
+            this.rideRequest = rideRequest;
+            this.completedAt = completedAt;
+            this.document = document;
+        }
+
+        public RideRequest getRideRequest() {
+            return rideRequest;
+        }
+
+        public long getCompletedAt() {
+            return completedAt;
+        }
+
+        public Cursor getCursor() {
+            return new Cursor(completedAt, rideRequest.getRequestId(), document);
+        }
+    }
+
+    private final List<Entry> entries;
+    private final boolean hasMore;
+
+    /**
+     * Creates a page of the ride history
+     * @param entries the rides of the page, newest first
+     * @param hasMore whether there are older rides after this page
+     */
+    public RideHistoryPage(List<Entry> entries, boolean hasMore) {
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        this.hasMore = hasMore;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Checks if there are older rides after this page
+     * @return true if the next page is not empty
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Gets the cursor to get the next page with
+     * @return the cursor of the last entry, or null if there is no next page
+     */
+    public Cursor getNextCursor() {
+        if (!hasMore || entries.isEmpty()) {
+            return null;
+        }
+        return entries.get(entries.size() - 1).getCursor();
+    }
+}
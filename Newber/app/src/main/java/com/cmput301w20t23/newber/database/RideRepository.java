@@ -0,0 +1,89 @@
+package com.cmput301w20t23.newber.database;
+
+import androidx.annotation.Nullable;
+
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.RideRequestChangeListener;
+import com.cmput301w20t23.newber.helpers.SubscriptionRegistry;
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.List;
+
+/**
+ * Where ride requests are stored. DatabaseAdapter keeps them in Firestore, InMemoryBackend keeps
+ * them in memory so the controllers can be run off the device.
+ */
+public interface RideRepository {
+    /**
+     * Gets a ride request from its ID, live or finished, see RideArchive
+     * @param requestId the ID of the ride request
+     * @param callback receives the ride request, not called if it does not exist
+     */
+    void getRideRequest(String requestId, Callback<RideRequest> callback);
+
+    /**
+     * Removes the tombstone a completed ride request left in the live ride requests, once the
+     * rider has seen that the ride is over
+     * @param requestId the ID of the completed ride request
+     */
+    void removeTombstone(String requestId);
+
+    /**
+     * Gets a page of the finished ride requests of a user, newest first
+     * @param uid the UID of the user
+     * @param role whether the user took the rides as "Rider" or gave them as "Driver"
+     * @param pageSize the most ride requests to return
+     * @param cursor where the previous page ended, or null for the first page
+     * @param callback receives the page, or null if it could not be read
+     */
+    void getRideHistory(String uid, String role, int pageSize, @Nullable RideHistoryPage.Cursor cursor,
+                        Callback<RideHistoryPage> callback);
+
+    /**
+     * Writes every document of a ride transition together, see DatabaseAdapter.commitRideTransition
+     * @param transition the lifecycle step to commit
+     * @param callback receives true once the step is committed, false if it failed, may be null
+     */
+    void commitRideTransition(RideTransition transition, @Nullable Callback<Boolean> callback);
+
+    /**
+     * Writes the changed fields of a ride request if it is still at the version it was read at
+     * @param rideRequest the updated ride request
+     * @param callback receives true once the update is written, false if it was stale or failed,
+     *                 may be null
+     */
+    void updateRideRequest(RideRequest rideRequest, @Nullable Callback<Boolean> callback);
+
+    /**
+     * Claims a pending ride request for a driver, only one of several drivers claiming the same
+     * request wins it
+     * @param requestId the ID of the ride request
+     * @param driverId the UID of the driver
+     * @param callback receives whether the claim was won, lost or failed
+     */
+    void claimRideRequest(String requestId, String driverId, Callback<ClaimResult> callback);
+
+    /**
+     * Gets the counters of the claims made through this repository
+     * @return the claim metrics
+     */
+    ClaimMetrics getClaimMetrics();
+
+    /**
+     * Listens to the ride requests with no driver and a geohash inside one of the given ranges
+     * @param geohashRanges the {start, end} geohash ranges to listen to, see GeoHash.toRanges
+     * @param listener receives every added, modified and removed request
+     * @return the registration to stop listening with
+     */
+    ListenerRegistration addPendingRideRequestsListener(List<String[]> geohashRanges,
+                                                        RideRequestChangeListener listener);
+
+    /**
+     * Subscribes to the updates of a ride request
+     * @param requestId the ID of the ride request
+     * @param subscriber receives the ride request every time it changes, or null once it is deleted
+     * @return the subscription, which should be kept until the updates are no longer wanted
+     */
+    SubscriptionRegistry.Subscription subscribeToRideRequest(String requestId, Callback<RideRequest> subscriber);
+}
@@ -0,0 +1,178 @@
+package com.cmput301w20t23.newber.database;
+
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * One step in the lifecycle of a ride request, with every document write the step needs: the
+ * ride request itself, the currentRequestId of the users involved and, when a ride is finished,
+ * their balances and its copy in the ride history. DatabaseAdapter.commitRideTransition writes all
+ * of them in a single transaction, so a step is applied completely or not at all.
+ *
+ * The factory methods also update the given ride request, so the caller's copy matches what will
+ * be written. Each transition has a key, and committing the same key twice only writes once. A
+ * create is keyed by its request ID, every other step gets a new key each time it is made, so
+ * retrying one transition writes it once but releasing the same request again writes again.
+ */
+public class RideTransition {
+    /**
+     * The lifecycle steps that touch more than one document
+     */
+    public enum Type {
+        //A rider creates a new pending ride request
+        CREATE,
+        //The driver is removed and the ride request is pending again, e.g. the rider declines.
+        //Offering a request to a driver is a claim, see RideRepository.claimRideRequest
+        RELEASE,
+        //A rider cancels a pending ride request, which is deleted
+        CANCEL,
+        //The ride is paid for and completed
+        FINISH
+    }
+
+    private final Type type;
+    private final RideRequest rideRequest;
+    private final String key;
+    private final Map<String, String> currentRequestIds = new LinkedHashMap<>();
+    private final Map<String, Double> balanceIncrements = new LinkedHashMap<>();
+
+    private RideTransition(Type type, RideRequest rideRequest) {
+        this.type = type;
+        this.rideRequest = rideRequest;
+
+        // A repeated create is the same ride request, any other step can happen more than once
+        this.key = type == Type.CREATE
+                ? rideRequest.getRequestId() + "/" + type.name()
+                : rideRequest.getRequestId() + "/" + type.name() + "/" + UUID.randomUUID();
+    }
+
+    /**
+     * Creates a new pending ride request and makes it the rider's current request. The request ID
+     * doubles as the idempotency key, so it should be generated once per confirmation, not per tap.
+     * @param rideRequest the new ride request
+     * @return the transition
+     */
+    public static RideTransition create(RideRequest rideRequest) {
+        RideTransition transition = new RideTransition(Type.CREATE, rideRequest);
+        rideRequest.setStatus(RequestStatus.PENDING);
+        rideRequest.setDriver(null);
+
+        transition.currentRequestIds.put(rideRequest.getRider(), rideRequest.getRequestId());
+        return transition;
+    }
+
+    /**
+     * Removes the driver from a ride request, so it is pending again, and clears the driver's
+     * current request
+     * @param rideRequest the offered or accepted ride request
+     * @return the transition
+     */
+    public static RideTransition release(RideRequest rideRequest) {
+        RideTransition transition = new RideTransition(Type.RELEASE, rideRequest);
+        String driverId = rideRequest.getDriver();
+
+        rideRequest.setDriver(null);
+        rideRequest.setStatus(RequestStatus.PENDING);
+
+        if (driverId != null && !driverId.isEmpty()) {
+            transition.currentRequestIds.put(driverId, "");
+        }
+        return transition;
+    }
+
+    /**
+     * Deletes a pending ride request and clears the rider's current request
+     * @param rideRequest the pending ride request
+     * @return the transition
+     */
+    public static RideTransition cancel(RideRequest rideRequest) {
+        RideTransition transition = new RideTransition(Type.CANCEL, rideRequest);
+        rideRequest.setStatus(RequestStatus.CANCELLED);
+
+        transition.currentRequestIds.put(rideRequest.getRider(), "");
+        return transition;
+    }
+
+    /**
+     * Completes a ride request, moves the fare from the rider to the driver and clears the
+     * driver's current request
+     * @param rideRequest the ride request being paid for
+     * @return the transition
+     */
+    public static RideTransition finish(RideRequest rideRequest) {
+        RideTransition transition = new RideTransition(Type.FINISH, rideRequest);
+        rideRequest.setStatus(RequestStatus.COMPLETED);
+
+        transition.currentRequestIds.put(rideRequest.getDriver(), "");
+        transition.balanceIncrements.put(rideRequest.getRider(), -rideRequest.getCost());
+        transition.balanceIncrements.put(rideRequest.getDriver(), rideRequest.getCost());
+        return transition;
+    }
+
+    /**
+     * Gets the key that identifies this transition
+     * @return the idempotency key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the ride request as it will be written
+     * @return the ride request
+     */
+    public RideRequest getRideRequest() {
+        return rideRequest;
+    }
+
+    /**
+     * Checks whether the ride request document is deleted instead of written
+     * @return true for a cancelled ride request
+     */
+    public boolean deletesRideRequest() {
+        return type == Type.CANCEL;
+    }
+
+    /**
+     * Checks whether the ride request is finished by this step and moved to the ride history, see
+     * RideArchive
+     * @return true for a cancelled or completed ride request
+     */
+    public boolean archivesRideRequest() {
+        return type == Type.CANCEL || type == Type.FINISH;
+    }
+
+    /**
+     * Checks whether the ride request leaves a tombstone in the live collection when it is
+     * archived, so the rider still sees that their ride was completed
+     * @return true for a completed ride request
+     */
+    public boolean leavesTombstone() {
+        return type == Type.FINISH;
+    }
+
+    /**
+     * Gets the new currentRequestId of each user involved, "" to clear it
+     * @return the currentRequestIds by UID
+     */
+    public Map<String, String> getCurrentRequestIds() {
+        return Collections.unmodifiableMap(currentRequestIds);
+    }
+
+    /**
+     * Gets the amount each user's balance changes by
+     * @return the balance increments by UID
+     */
+    public Map<String, Double> getBalanceIncrements() {
+        return Collections.unmodifiableMap(balanceIncrements);
+    }
+}
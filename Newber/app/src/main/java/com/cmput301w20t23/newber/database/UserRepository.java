@@ -0,0 +1,73 @@
+package com.cmput301w20t23.newber.database;
+
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.models.User;
+
+import java.util.Map;
+
+/**
+ * Where users and their usernames are stored. DatabaseAdapter keeps them in Firestore,
+ * InMemoryBackend keeps them in memory so the controllers can be run off the device.
+ */
+public interface UserRepository {
+    /**
+     * Creates a user, reserving their username at the same time
+     * @param user the new user
+     * @param role the role of the user, Rider or Driver
+     * @param callback receives WON once the user is created, LOST if the username was taken, or
+     *                 FAILED if it could not be written
+     */
+    void createUser(User user, String role, Callback<ClaimResult> callback);
+
+    /**
+     * Gets a user from their ID
+     * @param uid the ID of the user
+     * @param callback receives a map with the "user" and their "role"
+     */
+    void getUser(String uid, Callback<Map<String, Object>> callback);
+
+    /**
+     * Checks if a username is taken, ignoring case and surrounding spaces
+     * @param username the username
+     * @param callback receives true if the username is taken, and is called even if the check
+     *                 fails
+     */
+    void checkUserName(String username, Callback<Boolean> callback);
+
+    /**
+     * Checks, without waiting for an answer, if a username was recently seen to be taken. There may
+     * be false positives but no false negatives
+     * @param username the username
+     * @return true if the username may be taken
+     */
+    boolean isUsernameRecentlyTaken(String username);
+
+    /**
+     * Sets the current ride request ID of a user
+     * @param uid the ID of the user
+     * @param currentRequestId the ID of the ride request, "" to clear it
+     */
+    void setUserCurrentRequestId(String uid, String currentRequestId);
+
+    /**
+     * Updates the contact details of a user
+     * @param uid the ID of the user
+     * @param newEmail the new email address
+     * @param newPhone the new phone number
+     */
+    void updateUserInfo(String uid, String newEmail, String newPhone);
+
+    /**
+     * Adds to the balance of a user
+     * @param uid the ID of the user
+     * @param increment the amount to add, negative to subtract
+     */
+    void incrementUserBalance(String uid, double increment);
+
+    /**
+     * Sets the push notification token of a user
+     * @param uid the ID of the user
+     * @param token the token, or null to remove it
+     */
+    void setUserToken(String uid, String token);
+}
@@ -0,0 +1,35 @@
+package com.cmput301w20t23.newber.dispatch;
+
+/**
+ * A driver that the dispatch engine has picked to be offered a ride request.
+ */
+public final class Assignment {
+    private final String requestId;
+    private final String driverId;
+    private final double distance;
+
+    /**
+     * Instantiates a new Assignment.
+     *
+     * @param requestId the ID of the ride request
+     * @param driverId  the UID of the driver
+     * @param distance  the distance from the driver to the pick-up location in metres
+     */
+    public Assignment(String requestId, String driverId, double distance) {
+        this.requestId = requestId;
+        this.driverId = driverId;
+        this.distance = distance;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+}
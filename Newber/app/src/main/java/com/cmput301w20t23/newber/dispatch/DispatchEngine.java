@@ -0,0 +1,497 @@
+package com.cmput301w20t23.newber.dispatch;
+
+import com.cmput301w20t23.newber.helpers.GeoHash;
+import com.cmput301w20t23.newber.helpers.GeoMath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Matches pending ride requests to available drivers in batches, keeping the total pick-up
+ * distance low. This replaces the first driver to accept a request winning it.
+ *
+ * The pool is split into geohash cells that each hold at most MAX_CELL_SIZE requests and drivers,
+ * and the cells are solved in parallel on a ForkJoinPool. Each cell is matched greedily, closest
+ * pair first, and then improved by moving requests to closer free drivers and swapping drivers
+ * between pairs of requests. Whatever is left unmatched in a cell, e.g. a request whose closest
+ * driver is just across the cell's edge, is merged into the parent cell and solved again, up to
+ * cells of MIN_PRECISION characters. Anything still unmatched waits for the next tick.
+ */
+public class DispatchEngine {
+    //Requests are only offered to drivers within this distance, 10 Km
+    public static final double DEFAULT_MAX_PICKUP_DISTANCE = 10000;
+
+    //The largest number of requests and drivers in a cell before it is split
+    private static final int MAX_CELL_SIZE = 256;
+
+    //Leftovers are merged up to cells of this size, roughly 156 Km across
+    private static final int MIN_PRECISION = 3;
+    private static final int MAX_PRECISION = 8;
+
+    private static final int MAX_IMPROVEMENT_PASSES = 4;
+
+    //The number of cells a single ForkJoin task solves without splitting further
+    private static final int CELLS_PER_TASK = 4;
+
+    private final ForkJoinPool pool;
+    private final double maxPickupDistance;
+
+    public DispatchEngine() {
+        this(new ForkJoinPool(), DEFAULT_MAX_PICKUP_DISTANCE);
+    }
+
+    /**
+     * Instantiates a new DispatchEngine.
+     *
+     * @param pool              the pool to solve the cells on
+     * @param maxPickupDistance the furthest a driver can be from a pick-up location, in metres
+     */
+    public DispatchEngine(ForkJoinPool pool, double maxPickupDistance) {
+        this.pool = pool;
+        this.maxPickupDistance = maxPickupDistance;
+    }
+
+    /**
+     * Stops the threads of the engine's pool
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * A ride request or driver with its geohash, which decides the cells it is solved in
+     */
+    private static class Entry {
+        final DispatchPoint point;
+        final String hash;
+
+        Entry(DispatchPoint point) {
+            this.point = point;
+            this.hash = GeoHash.encode(point.getLatitude(), point.getLongitude(), MAX_PRECISION);
+        }
+    }
+
+    /**
+     * The requests and drivers of one geohash cell. After the cell is solved, they only hold the
+     * ones that were left unmatched.
+     */
+    private static class Cell {
+        final String prefix;
+        List<Entry> requests = new ArrayList<>();
+        List<Entry> drivers = new ArrayList<>();
+        final List<Assignment> assignments = new ArrayList<>();
+
+        Cell(String prefix) {
+            this.prefix = prefix;
+        }
+
+        boolean hasLeftovers() {
+            return !requests.isEmpty() || !drivers.isEmpty();
+        }
+    }
+
+    /**
+     * Finds an assignment of drivers to ride requests. Every request and driver is used at most
+     * once, and no driver is further than the max pick-up distance from its request.
+     * @param requests the pending ride requests
+     * @param drivers the available drivers
+     * @return the assignments found
+     */
+    public List<Assignment> solve(List<DispatchPoint> requests, List<DispatchPoint> drivers) {
+        List<Cell> cells = partition(requests, drivers);
+        List<Assignment> assignments = new ArrayList<>();
+
+        solveAll(cells);
+
+        while (true) {
+            int longest = 0;
+
+            for (Cell cell : cells) {
+                assignments.addAll(cell.assignments);
+                cell.assignments.clear();
+
+                if (cell.hasLeftovers()) {
+                    longest = Math.max(longest, cell.prefix.length());
+                }
+            }
+
+            if (longest <= MIN_PRECISION) {
+                solveLeftovers(cells, assignments);
+                break;
+            }
+
+            // Merge the leftovers of the smallest cells into their parents. Leaf cells never
+            // overlap, so a parent can't also be a leaf that already has leftovers of its own.
+            Map<String, Cell> parents = new LinkedHashMap<>();
+            List<Cell> next = new ArrayList<>();
+
+            for (Cell cell : cells) {
+                if (!cell.hasLeftovers()) {
+                    continue;
+                }
+
+                if (cell.prefix.length() < longest) {
+                    next.add(cell);
+                    continue;
+                }
+
+                String parentPrefix = cell.prefix.substring(0, longest - 1);
+                Cell parent = parents.get(parentPrefix);
+
+                if (parent == null) {
+                    parent = new Cell(parentPrefix);
+                    parents.put(parentPrefix, parent);
+                }
+
+                parent.requests.addAll(cell.requests);
+                parent.drivers.addAll(cell.drivers);
+            }
+
+            List<Cell> merged = new ArrayList<>(parents.values());
+            solveAll(merged);
+
+            next.addAll(merged);
+            cells = next;
+        }
+
+        return assignments;
+    }
+
+    /**
+     * Solves whatever is left in the largest cells as one last cell, for requests and drivers that
+     * are close but in different top-level cells, e.g. either side of the equator
+     */
+    private void solveLeftovers(List<Cell> cells, List<Assignment> assignments) {
+        Cell leftovers = new Cell("");
+
+        for (Cell cell : cells) {
+            leftovers.requests.addAll(cell.requests);
+            leftovers.drivers.addAll(cell.drivers);
+        }
+
+        solveCell(leftovers, maxPickupDistance);
+        assignments.addAll(leftovers.assignments);
+    }
+
+    /**
+     * Splits the requests and drivers into cells of at most MAX_CELL_SIZE, where possible
+     */
+    private List<Cell> partition(List<DispatchPoint> requests, List<DispatchPoint> drivers) {
+        Map<String, Cell> top = new LinkedHashMap<>();
+
+        for (DispatchPoint request : requests) {
+            Entry entry = new Entry(request);
+            cellFor(top, entry.hash.substring(0, MIN_PRECISION)).requests.add(entry);
+        }
+
+        for (DispatchPoint driver : drivers) {
+            Entry entry = new Entry(driver);
+            cellFor(top, entry.hash.substring(0, MIN_PRECISION)).drivers.add(entry);
+        }
+
+        List<Cell> leaves = new ArrayList<>();
+        for (Cell cell : top.values()) {
+            split(cell, leaves);
+        }
+
+        return leaves;
+    }
+
+    private static void split(Cell cell, List<Cell> leaves) {
+        // A cell with only requests or only drivers can't be matched at any size
+        if (cell.requests.size() + cell.drivers.size() <= MAX_CELL_SIZE
+                || cell.requests.isEmpty() || cell.drivers.isEmpty()
+                || cell.prefix.length() >= MAX_PRECISION) {
+            leaves.add(cell);
+            return;
+        }
+
+        int length = cell.prefix.length() + 1;
+        Map<String, Cell> children = new LinkedHashMap<>();
+
+        for (Entry request : cell.requests) {
+            cellFor(children, request.hash.substring(0, length)).requests.add(request);
+        }
+
+        for (Entry driver : cell.drivers) {
+            cellFor(children, driver.hash.substring(0, length)).drivers.add(driver);
+        }
+
+        for (Cell child : children.values()) {
+            split(child, leaves);
+        }
+    }
+
+    private static Cell cellFor(Map<String, Cell> cells, String prefix) {
+        Cell cell = cells.get(prefix);
+
+        if (cell == null) {
+            cell = new Cell(prefix);
+            cells.put(prefix, cell);
+        }
+
+        return cell;
+    }
+
+    /**
+     * Solves every cell on the pool and waits for them to finish
+     */
+    private void solveAll(List<Cell> cells) {
+        if (!cells.isEmpty()) {
+            pool.invoke(new SolveTask(cells, 0, cells.size(), maxPickupDistance));
+        }
+    }
+
+    /**
+     * Solves a range of cells, splitting the range in half until it is small enough
+     */
+    private static class SolveTask extends RecursiveAction {
+        private final List<Cell> cells;
+        private final int start;
+        private final int end;
+        private final double maxPickupDistance;
+
+        SolveTask(List<Cell> cells, int start, int end, double maxPickupDistance) {
+            this.cells = cells;
+            this.start = start;
+            this.end = end;
+            this.maxPickupDistance = maxPickupDistance;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= CELLS_PER_TASK) {
+                for (int i = start; i < end; i++) {
+                    solveCell(cells.get(i), maxPickupDistance);
+                }
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new SolveTask(cells, start, middle, maxPickupDistance),
+                    new SolveTask(cells, middle, end, maxPickupDistance));
+        }
+    }
+
+    /**
+     * The distances between the requests and drivers of a cell. Small cells, i.e. every cell before
+     * leftovers are merged, have them all worked out once up front, as the matching looks each one
+     * up several times. The distances of bigger cells are worked out when needed.
+     */
+    private static class Distances {
+        //The most distances kept in a table, a cell of MAX_CELL_SIZE needs at most a quarter of this
+        private static final int MAX_TABLE_SIZE = MAX_CELL_SIZE * MAX_CELL_SIZE;
+
+        private final List<Entry> requests;
+        private final List<Entry> drivers;
+        private final double[] table;
+
+        Distances(List<Entry> requests, List<Entry> drivers) {
+            this.requests = requests;
+            this.drivers = drivers;
+
+            long size = (long) requests.size() * drivers.size();
+            if (size > MAX_TABLE_SIZE) {
+                table = null;
+                return;
+            }
+
+            table = new double[(int) size];
+            for (int r = 0; r < requests.size(); r++) {
+                for (int d = 0; d < drivers.size(); d++) {
+                    table[r * drivers.size() + d] = compute(r, d);
+                }
+            }
+        }
+
+        double get(int r, int d) {
+            return table != null ? table[r * drivers.size() + d] : compute(r, d);
+        }
+
+        private double compute(int r, int d) {
+            DispatchPoint request = requests.get(r).point;
+            DispatchPoint driver = drivers.get(d).point;
+
+            return GeoMath.distance(request.getLatitude(), request.getLongitude(),
+                    driver.getLatitude(), driver.getLongitude());
+        }
+    }
+
+    /**
+     * Matches the requests and drivers of one cell, leaving only the unmatched ones in the cell
+     */
+    private static void solveCell(Cell cell, double maxPickupDistance) {
+        List<Entry> requests = cell.requests;
+        List<Entry> drivers = cell.drivers;
+
+        if (requests.isEmpty() || drivers.isEmpty()) {
+            return;
+        }
+
+        int[] driverOf = new int[requests.size()];
+        int[] requestOf = new int[drivers.size()];
+        Arrays.fill(driverOf, -1);
+        Arrays.fill(requestOf, -1);
+
+        Distances distances = new Distances(requests, drivers);
+        matchGreedily(requests, drivers, distances, driverOf, requestOf, maxPickupDistance);
+        improve(distances, driverOf, requestOf, maxPickupDistance);
+
+        List<Entry> leftoverRequests = new ArrayList<>();
+        for (int r = 0; r < requests.size(); r++) {
+            if (driverOf[r] < 0) {
+                leftoverRequests.add(requests.get(r));
+            } else {
+                cell.assignments.add(new Assignment(requests.get(r).point.getId(),
+                        drivers.get(driverOf[r]).point.getId(), distances.get(r, driverOf[r])));
+            }
+        }
+
+        List<Entry> leftoverDrivers = new ArrayList<>();
+        for (int d = 0; d < drivers.size(); d++) {
+            if (requestOf[d] < 0) {
+                leftoverDrivers.add(drivers.get(d));
+            }
+        }
+
+        cell.requests = leftoverRequests;
+        cell.drivers = leftoverDrivers;
+    }
+
+    /**
+     * Matches the closest request and driver, then the next closest pair that are both free, etc.
+     */
+    private static void matchGreedily(List<Entry> requests, List<Entry> drivers, Distances distances,
+                                      int[] driverOf, int[] requestOf, double maxPickupDistance) {
+        double maxLatitudeDelta = GeoMath.latitudeSpan(maxPickupDistance);
+
+        // Each pair is sorted as one long, the distance as a float in the high bits and the
+        // pair's position in the low bits. Non-negative floats sort the same as their bits.
+        int capacity = (int) Math.min((long) requests.size() * drivers.size(), 1 << 16);
+        int[] pairRequests = new int[capacity];
+        int[] pairDrivers = new int[capacity];
+        long[] keys = new long[capacity];
+        int pairs = 0;
+
+        for (int r = 0; r < requests.size(); r++) {
+            double latitude = requests.get(r).point.getLatitude();
+
+            for (int d = 0; d < drivers.size(); d++) {
+                if (Math.abs(latitude - drivers.get(d).point.getLatitude()) > maxLatitudeDelta) {
+                    continue;
+                }
+
+                double distance = distances.get(r, d);
+                if (distance > maxPickupDistance) {
+                    continue;
+                }
+
+                if (pairs == keys.length) {
+                    pairRequests = Arrays.copyOf(pairRequests, pairs * 2);
+                    pairDrivers = Arrays.copyOf(pairDrivers, pairs * 2);
+                    keys = Arrays.copyOf(keys, pairs * 2);
+                }
+
+                pairRequests[pairs] = r;
+                pairDrivers[pairs] = d;
+                keys[pairs] = ((long) Float.floatToIntBits((float) distance) << 32) | pairs;
+                pairs++;
+            }
+        }
+
+        Arrays.sort(keys, 0, pairs);
+
+        for (int i = 0; i < pairs; i++) {
+            int pair = (int) keys[i];
+            int r = pairRequests[pair];
+            int d = pairDrivers[pair];
+
+            if (driverOf[r] < 0 && requestOf[d] < 0) {
+                driverOf[r] = d;
+                requestOf[d] = r;
+            }
+        }
+    }
+
+    /**
+     * Improves a matching until no single move or swap makes the total pick-up distance shorter
+     */
+    private static void improve(Distances distances, int[] driverOf, int[] requestOf,
+                                double maxPickupDistance) {
+        for (int pass = 0; pass < MAX_IMPROVEMENT_PASSES; pass++) {
+            boolean improved = false;
+
+            // Only the matched requests and the free drivers take part, a cell of leftovers can
+            // have many requests and very few drivers
+            int[] matched = new int[driverOf.length];
+            int matchedCount = 0;
+            for (int r = 0; r < driverOf.length; r++) {
+                if (driverOf[r] >= 0) {
+                    matched[matchedCount++] = r;
+                }
+            }
+
+            int[] free = new int[requestOf.length];
+            int freeCount = 0;
+            for (int d = 0; d < requestOf.length; d++) {
+                if (requestOf[d] < 0) {
+                    free[freeCount++] = d;
+                }
+            }
+
+            // Move a request to a closer free driver, freeing its old driver
+            for (int i = 0; i < matchedCount; i++) {
+                int r = matched[i];
+                double current = distances.get(r, driverOf[r]);
+
+                for (int j = 0; j < freeCount; j++) {
+                    int d = free[j];
+                    double distance = distances.get(r, d);
+
+                    if (distance < current) {
+                        free[j] = driverOf[r];
+                        requestOf[driverOf[r]] = -1;
+                        driverOf[r] = d;
+                        requestOf[d] = r;
+                        current = distance;
+                        improved = true;
+                    }
+                }
+            }
+
+            // Swap the drivers of two requests
+            for (int i = 0; i < matchedCount; i++) {
+                for (int j = i + 1; j < matchedCount; j++) {
+                    int r1 = matched[i];
+                    int r2 = matched[j];
+                    int d1 = driverOf[r1];
+                    int d2 = driverOf[r2];
+
+                    double swapped1 = distances.get(r1, d2);
+                    double swapped2 = distances.get(r2, d1);
+
+                    if (swapped1 > maxPickupDistance || swapped2 > maxPickupDistance) {
+                        continue;
+                    }
+
+                    if (swapped1 + swapped2 < distances.get(r1, d1) + distances.get(r2, d2)) {
+                        driverOf[r1] = d2;
+                        driverOf[r2] = d1;
+                        requestOf[d2] = r1;
+                        requestOf[d1] = r2;
+                        improved = true;
+                    }
+                }
+            }
+
+            if (!improved) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.cmput301w20t23.newber.dispatch;
+
+import com.cmput301w20t23.newber.models.RideRequest;
+
+/**
+ * A ride request or a driver as the dispatch engine sees it, an ID and a position.
+ */
+public final class DispatchPoint {
+    private final String id;
+    private final double latitude;
+    private final double longitude;
+
+    /**
+     * Instantiates a new DispatchPoint.
+     *
+     * @param id        the ID of the ride request, or the UID of the driver
+     * @param latitude  the latitude in degrees
+     * @param longitude the longitude in degrees
+     */
+    public DispatchPoint(String id, double latitude, double longitude) {
+        this.id = id;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Creates the dispatch point of a ride request, at its start location
+     * @param rideRequest the ride request
+     * @return the dispatch point of the ride request
+     */
+    public static DispatchPoint fromRideRequest(RideRequest rideRequest) {
+        return new DispatchPoint(rideRequest.getRequestId(),
+                rideRequest.getStartLocation().getLatitude(),
+                rideRequest.getStartLocation().getLongitude());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+}
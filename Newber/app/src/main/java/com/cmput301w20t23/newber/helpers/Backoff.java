@@ -0,0 +1,49 @@
+package com.cmput301w20t23.newber.helpers;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter for retrying a contended write. The delay before a retry doubles
+ * with each attempt up to a cap, and a random half of it is jittered, so clients that collided once
+ * do not retry at the same moment and collide again.
+ */
+public class Backoff {
+    private final long baseDelay;
+    private final long maxDelay;
+    private final Random random;
+
+    /**
+     * Instantiates a new Backoff.
+     *
+     * @param baseDelay the delay before the first retry, in milliseconds
+     * @param maxDelay  the longest delay before any retry, in milliseconds
+     */
+    public Backoff(long baseDelay, long maxDelay) {
+        this(baseDelay, maxDelay, new Random());
+    }
+
+    /**
+     * Instantiates a new Backoff.
+     *
+     * @param baseDelay the delay before the first retry, in milliseconds
+     * @param maxDelay  the longest delay before any retry, in milliseconds
+     * @param random    the source of the jitter
+     */
+    public Backoff(long baseDelay, long maxDelay, Random random) {
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.random = random;
+    }
+
+    /**
+     * Gets how long to wait before a retry
+     * @param attempt the number of attempts that have failed so far, starting at 0
+     * @return a delay between half of and the whole capped exponential delay, in milliseconds
+     */
+    public long delay(int attempt) {
+        long ceiling = Math.min(maxDelay, baseDelay << Math.min(Math.max(attempt, 0), 30));
+        long half = ceiling / 2;
+
+        return half + (long) (random.nextDouble() * (ceiling - half));
+    }
+}
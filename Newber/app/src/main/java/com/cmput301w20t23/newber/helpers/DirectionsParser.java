@@ -0,0 +1,134 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.models.Route;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.PolyUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Reads the route out of a Directions API response as it is downloaded. Only the overview
+ * polyline and the distance of the first leg of the first route are kept, the steps and
+ * everything else are skipped by the JsonPullParser without being built, and the rest of the
+ * response after the first route is not read at all.
+ */
+public class DirectionsParser {
+    // private constructor to prevent instantiation
+    private DirectionsParser() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Parses a Directions API response, the caller closes the stream
+     * @param in the response body, as UTF-8
+     * @return the first route, or null if the response has no route
+     * @throws IOException if the response can't be read or is not a Directions response
+     */
+    public static Route parse(InputStream in) throws IOException {
+        return parse(new InputStreamReader(in, "UTF-8"));
+    }
+
+    /**
+     * Parses a Directions API response, the caller closes the reader
+     * @param in the response body
+     * @return the first route, or null if the response has no route
+     * @throws IOException if the response can't be read or is not a Directions response
+     */
+    public static Route parse(Reader in) throws IOException {
+        JsonPullParser parser = new JsonPullParser(in);
+
+        try {
+            parser.beginObject();
+            while (parser.hasNext()) {
+                if (parser.nextName().equals("routes")) {
+                    return parseRoutes(parser);
+                }
+                parser.skipValue();
+            }
+
+            // No routes, e.g. an error status
+            return null;
+        } catch (IllegalStateException e) {
+            throw new IOException("Unexpected Directions response: " + e.getMessage());
+        }
+    }
+
+    private static Route parseRoutes(JsonPullParser parser) throws IOException {
+        parser.beginArray();
+        if (!parser.hasNext()) {
+            return null;
+        }
+
+        String points = null;
+        double distance = -1;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+
+            if (name.equals("overview_polyline")) {
+                parser.beginObject();
+                while (parser.hasNext()) {
+                    if (parser.nextName().equals("points")) {
+                        points = parser.nextString();
+                    } else {
+                        parser.skipValue();
+                    }
+                }
+                parser.endObject();
+            } else if (name.equals("legs")) {
+                distance = parseDistance(parser);
+            } else {
+                parser.skipValue();
+            }
+        }
+
+        if (points == null || distance < 0) {
+            return null;
+        }
+
+        List<LatLng> routePoints = PolyUtil.decode(points);
+        return new Route(routePoints, distance);
+    }
+
+    /**
+     * Reads the distance of the first leg, skipping its steps
+     * @return the distance in metres, or -1 if there is no leg
+     */
+    private static double parseDistance(JsonPullParser parser) throws IOException {
+        double distance = -1;
+
+        parser.beginArray();
+        if (parser.hasNext()) {
+            parser.beginObject();
+            while (parser.hasNext()) {
+                if (parser.nextName().equals("distance")) {
+                    parser.beginObject();
+                    while (parser.hasNext()) {
+                        if (parser.nextName().equals("value")) {
+                            distance = parser.nextDouble();
+                        } else {
+                            parser.skipValue();
+                        }
+                    }
+                    parser.endObject();
+                } else {
+                    parser.skipValue();
+                }
+            }
+            parser.endObject();
+        }
+
+        // Only one leg is asked for, there are more with waypoints
+        while (parser.hasNext()) {
+            parser.skipValue();
+        }
+        parser.endArray();
+
+        return distance;
+    }
+}
@@ -0,0 +1,153 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.models.DriverLocation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the online drivers in geohash cells, so that repeated nearby-driver lookups around the
+ * same pick-up location only go to Firestore for cells that have not been fetched recently.
+ *
+ * The cache is not thread-safe, it is used on the main thread.
+ */
+public class DriverLocationCache {
+    //How long a fetched cell is used before it is fetched again, 30 seconds
+    public static final long DEFAULT_CELL_TTL = 30 * 1000;
+
+    //Drivers who have not reported a location for this long are treated as offline, 2 minutes
+    public static final long DEFAULT_STALE_AFTER = 2 * 60 * 1000;
+
+    private final long cellTtl;
+    private final long staleAfter;
+
+    private final Map<String, CachedCell> cells = new HashMap<>();
+
+    /**
+     * The drivers of one cell and when they were fetched
+     */
+    private static class CachedCell {
+        final long fetchedAt;
+        final List<DriverLocation> drivers = new ArrayList<>();
+
+        CachedCell(long fetchedAt) {
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    public DriverLocationCache() {
+        this(DEFAULT_CELL_TTL, DEFAULT_STALE_AFTER);
+    }
+
+    /**
+     * Instantiates a new DriverLocationCache.
+     *
+     * @param cellTtl    how long a fetched cell stays fresh, in milliseconds
+     * @param staleAfter how old a driver's location can be before the driver is left out, in milliseconds
+     */
+    public DriverLocationCache(long cellTtl, long staleAfter) {
+        this.cellTtl = cellTtl;
+        this.staleAfter = staleAfter;
+    }
+
+    /**
+     * Finds the cells that are not cached, or were fetched too long ago
+     * @param wantedCells the cells a lookup needs
+     * @param now the current time in milliseconds
+     * @return the cells that have to be fetched from Firestore
+     */
+    public List<String> missingCells(List<String> wantedCells, long now) {
+        List<String> missing = new ArrayList<>();
+
+        for (String cell : wantedCells) {
+            CachedCell cached = cells.get(cell);
+
+            if (cached == null || now - cached.fetchedAt >= cellTtl) {
+                missing.add(cell);
+            }
+        }
+
+        return missing;
+    }
+
+    /**
+     * Stores the drivers fetched for some cells, replacing what was cached for them. A cell with
+     * no drivers is cached as empty, so it is not fetched again until it expires.
+     * @param fetchedCells the cells that were fetched, all of the same precision
+     * @param drivers the online drivers found in those cells
+     * @param now the current time in milliseconds
+     */
+    public void put(List<String> fetchedCells, List<DriverLocation> drivers, long now) {
+        if (fetchedCells.isEmpty()) {
+            return;
+        }
+
+        // Drop expired cells so the cache does not grow as the rider moves around
+        for (Iterator<CachedCell> iterator = cells.values().iterator(); iterator.hasNext(); ) {
+            if (now - iterator.next().fetchedAt >= cellTtl) {
+                iterator.remove();
+            }
+        }
+
+        Map<String, CachedCell> fetched = new HashMap<>();
+        for (String cell : fetchedCells) {
+            fetched.put(cell, new CachedCell(now));
+        }
+
+        int precision = fetchedCells.get(0).length();
+
+        for (DriverLocation driver : drivers) {
+            CachedCell cached = fetched.get(driver.getGeohash().substring(0, precision));
+
+            if (cached != null) {
+                cached.drivers.add(driver);
+            }
+        }
+
+        cells.putAll(fetched);
+    }
+
+    /**
+     * Finds the cached online drivers within a radius of a location
+     * @param latitude the latitude of the location
+     * @param longitude the longitude of the location
+     * @param radius the radius in metres
+     * @param searchCells the cells that cover the radius
+     * @param now the current time on the server's clock in milliseconds, see ServerClock. It is
+     *            compared with the time Firestore wrote each location, so neither the driver's
+     *            clock nor the rider's matters
+     * @return the drivers within the radius that reported a location recently
+     */
+    public ArrayList<DriverLocation> nearby(double latitude, double longitude, double radius,
+                                            List<String> searchCells, long now) {
+        ArrayList<DriverLocation> found = new ArrayList<>();
+        GeoMath.Circle circle = GeoMath.circle(latitude, longitude, radius);
+
+        for (String cell : searchCells) {
+            CachedCell cached = cells.get(cell);
+
+            if (cached == null) {
+                continue;
+            }
+
+            for (DriverLocation driver : cached.drivers) {
+                if (driver.isOnline() && now - driver.getUpdatedAt() < staleAfter
+                        && circle.contains(driver.getLatitude(), driver.getLongitude())) {
+                    found.add(driver);
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Removes every cached cell
+     */
+    public void clear() {
+        cells.clear();
+    }
+}
@@ -0,0 +1,219 @@
+package com.cmput301w20t23.newber.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A bounded cache that evicts the least recently used entry when it is full, and drops entries
+ * that were stored longer than the TTL ago. Misses for a key that is already being loaded are
+ * coalesced: only the first caller loads it, and every caller waiting on it gets the loaded value.
+ *
+ * The cache is not thread-safe, it is used on the main thread like the Firestore callbacks that
+ * fill it.
+ *
+ * @param <V> the type of the cached values
+ */
+public class ExpiringLruCache<V> {
+    private final int maxSize;
+    private final long ttl;
+    private final Callback<String> onEvicted;
+
+    //Entries in access order, the eldest is the least recently used
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    //The callers waiting on each key that is being loaded
+    private final Map<String, List<Callback<V>>> loading = new HashMap<>();
+
+    private long hits = 0;
+    private long misses = 0;
+    private long coalesced = 0;
+    private long evictions = 0;
+
+    private static class Entry<V> {
+        final V value;
+        final long storedAt;
+
+        Entry(V value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+
+    /**
+     * Instantiates a new ExpiringLruCache.
+     *
+     * @param maxSize   the most entries the cache holds
+     * @param ttl       how long an entry is used after it was stored, in milliseconds
+     * @param onEvicted receives the key of every entry that is evicted, expires or is invalidated,
+     *                  may be null
+     */
+    public ExpiringLruCache(int maxSize, long ttl, Callback<String> onEvicted) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.onEvicted = onEvicted;
+    }
+
+    /**
+     * Gets a value if it is cached and has not expired, counting a hit or a miss
+     * @param key the key
+     * @param now the current time in milliseconds
+     * @return the value, or null on a miss
+     */
+    public V get(String key, long now) {
+        Entry<V> entry = entries.get(key);
+
+        if (entry != null && now - entry.storedAt < ttl) {
+            hits++;
+            return entry.value;
+        }
+
+        if (entry != null) {
+            remove(key);
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * Registers a caller waiting for a key after a miss
+     * @param key the key
+     * @param waiter receives the value once it is loaded
+     * @return true if the caller should load the value, false if a load is already in flight
+     */
+    public boolean beginLoad(String key, Callback<V> waiter) {
+        List<Callback<V>> waiters = loading.get(key);
+
+        if (waiters != null) {
+            coalesced++;
+            waiters.add(waiter);
+            return false;
+        }
+
+        waiters = new ArrayList<>();
+        waiters.add(waiter);
+        loading.put(key, waiters);
+        return true;
+    }
+
+    /**
+     * Stores a value, e.g. when it is loaded or changes, and gives it to every waiting caller
+     * @param key the key
+     * @param value the value
+     * @param now the current time in milliseconds
+     */
+    public void put(String key, V value, long now) {
+        entries.put(key, new Entry<>(value, now));
+
+        // Evict the least recently used entries, as well as any expired ones in front of them
+        Iterator<Map.Entry<String, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry<V>> eldest = iterator.next();
+
+            if (entries.size() <= maxSize && now - eldest.getValue().storedAt < ttl) {
+                break;
+            }
+
+            iterator.remove();
+            evictions++;
+            if (onEvicted != null) {
+                onEvicted.myResponseCallback(eldest.getKey());
+            }
+        }
+
+        completeLoad(key, value);
+    }
+
+    /**
+     * Gives up a load, every waiting caller gets the fallback value
+     * @param key the key
+     * @param fallback the value for the waiting callers, e.g. null
+     */
+    public void failLoad(String key, V fallback) {
+        completeLoad(key, fallback);
+    }
+
+    /**
+     * Removes an entry
+     * @param key the key
+     */
+    public void invalidate(String key) {
+        if (entries.containsKey(key)) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Checks whether a key is cached, expired or not, without counting a hit or a miss
+     * @param key the key
+     * @return true if the key has an entry
+     */
+    public boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of misses that waited on a load already in flight instead of loading again
+     * @return the coalesced misses
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the share of lookups that were hits
+     * @return the hit rate between 0 and 1, 0 before any lookup
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "size=%d hits=%d misses=%d coalesced=%d evictions=%d hitRate=%.2f",
+                size(), hits, misses, coalesced, evictions, getHitRate());
+    }
+
+    private void remove(String key) {
+        entries.remove(key);
+        evictions++;
+
+        if (onEvicted != null) {
+            onEvicted.myResponseCallback(key);
+        }
+    }
+
+    private void completeLoad(String key, V value) {
+        List<Callback<V>> waiters = loading.remove(key);
+
+        if (waiters == null) {
+            return;
+        }
+
+        for (Callback<V> waiter : waiters) {
+            waiter.myResponseCallback(value);
+        }
+    }
+}
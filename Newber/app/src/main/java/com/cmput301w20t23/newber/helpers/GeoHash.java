@@ -0,0 +1,262 @@
+package com.cmput301w20t23.newber.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Utility class for encoding a latitude/longitude as a geohash cell key, and for finding the cells
+ * that cover a search area. Ride requests store their geohash so that Firestore can answer
+ * "what is near here" with range queries instead of a scan of the whole collection.
+ *
+ * https://en.wikipedia.org/wiki/Geohash
+ */
+public final class GeoHash {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    //Geohash characters sort before this one, so prefix + "~" is an upper bound for a prefix range
+    private static final String RANGE_END = "~";
+
+    public static final int MAX_PRECISION = 12;
+
+    //The precision stored on documents (cells of roughly 5m x 5m), any shorter prefix can be queried
+    public static final int DEFAULT_PRECISION = 9;
+
+    // private constructor to prevent instantiation
+    private GeoHash() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Encodes a latitude/longitude with the default precision
+     * @param latitude the latitude in degrees
+     * @param longitude the longitude in degrees
+     * @return the geohash of the point
+     */
+    public static String encode(double latitude, double longitude) {
+        return encode(latitude, longitude, DEFAULT_PRECISION);
+    }
+
+    /**
+     * Encodes a latitude/longitude as a geohash with the given number of characters
+     * @param latitude the latitude in degrees
+     * @param longitude the longitude in degrees
+     * @param precision the number of characters of the geohash
+     * @return the geohash of the point
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        checkPrecision(precision);
+        return toHash(longitudeIndex(longitude, precision), latitudeIndex(latitude, precision), precision);
+    }
+
+    /**
+     * Height of a cell in metres at the given precision
+     * @param precision the number of characters of the geohash
+     * @return the height of a cell in metres
+     */
+    public static double cellHeightInMetres(int precision) {
+        return 180.0 / (1L << latitudeBits(precision)) * GeoMath.METRES_PER_DEGREE;
+    }
+
+    /**
+     * Width of a cell in metres at the given precision and latitude, cells get narrower towards the poles
+     * @param precision the number of characters of the geohash
+     * @param latitude the latitude in degrees
+     * @return the width of a cell in metres
+     */
+    public static double cellWidthInMetres(int precision, double latitude) {
+        return 360.0 / (1L << longitudeBits(precision))
+                * GeoMath.METRES_PER_DEGREE * Math.cos(Math.toRadians(Math.min(Math.abs(latitude), 90.0)));
+    }
+
+    /**
+     * Smallest side of a cell around the given latitude, i.e. the distance a ring of cells is
+     * guaranteed to cover
+     * @param precision the number of characters of the geohash
+     * @param latitude the latitude in degrees
+     * @return the smallest side of a cell in metres
+     */
+    public static double minCellSizeInMetres(int precision, double latitude) {
+        return Math.min(cellHeightInMetres(precision), cellWidthInMetres(precision, latitude));
+    }
+
+    /**
+     * Distance from a point that is guaranteed to lie inside the given number of rings of cells
+     * around the point's own cell
+     * @param precision the number of characters of the geohash
+     * @param latitude the latitude of the point in degrees
+     * @param rings the number of rings around the centre cell
+     * @return the covered distance in metres
+     */
+    public static double coveredRadius(int precision, double latitude, int rings) {
+        // Cells are narrowest on the side closest to the pole
+        double ringHeight = rings * 180.0 / (1L << latitudeBits(precision));
+        double worstLatitude = Math.min(Math.abs(latitude) + ringHeight, 89.0);
+
+        return rings * minCellSizeInMetres(precision, worstLatitude);
+    }
+
+    /**
+     * Finds the longest precision whose cells are at least as big as the radius, so that the
+     * centre cell and its 8 neighbours cover the whole search circle
+     * @param radius the search radius in metres
+     * @param latitude the latitude of the search centre in degrees
+     * @return the precision to search with
+     */
+    public static int precisionForRadius(double radius, double latitude) {
+        for (int precision = MAX_PRECISION; precision > 1; precision--) {
+            if (coveredRadius(precision, latitude, 1) >= radius) {
+                return precision;
+            }
+        }
+
+        return 1;
+    }
+
+    /**
+     * Returns the cells that are exactly `ring` cells away from the cell holding the point.
+     * Ring 0 is the cell itself, ring 1 its 8 neighbours, ring 2 the 16 cells around those, etc.
+     * @param latitude the latitude in degrees
+     * @param longitude the longitude in degrees
+     * @param precision the number of characters of the geohash
+     * @param ring the distance in cells from the centre cell
+     * @return the geohashes of the cells in the ring
+     */
+    public static List<String> ring(double latitude, double longitude, int precision, int ring) {
+        checkPrecision(precision);
+
+        long x = longitudeIndex(longitude, precision);
+        long y = latitudeIndex(latitude, precision);
+        long columns = 1L << longitudeBits(precision);
+        long rows = 1L << latitudeBits(precision);
+
+        Set<String> cells = new LinkedHashSet<>();
+
+        for (long dy = -ring; dy <= ring; dy++) {
+            long row = y + dy;
+
+            // There is nothing past the poles
+            if (row < 0 || row >= rows) {
+                continue;
+            }
+
+            for (long dx = -ring; dx <= ring; dx++) {
+                if (Math.max(Math.abs(dx), Math.abs(dy)) != ring) {
+                    continue;
+                }
+
+                // Wrap around the antimeridian
+                long column = ((x + dx) % columns + columns) % columns;
+                cells.add(toHash(column, row, precision));
+            }
+        }
+
+        return new ArrayList<>(cells);
+    }
+
+    /**
+     * Merges cells of the same precision into as few [start, end] ranges as possible. Cells whose
+     * last character follows on from the previous cell are contiguous in geohash order, so one
+     * range query can cover all of them.
+     * @param cells the cells to cover
+     * @return a list of {start, end} pairs to use with startAt/endAt
+     */
+    public static List<String[]> toRanges(List<String> cells) {
+        List<String> sorted = new ArrayList<>(new LinkedHashSet<>(cells));
+        Collections.sort(sorted);
+
+        List<String[]> ranges = new ArrayList<>();
+        String start = null;
+        String previous = null;
+
+        for (String cell : sorted) {
+            if (previous != null && !follows(previous, cell)) {
+                ranges.add(new String[]{start, previous + RANGE_END});
+                start = null;
+            }
+
+            if (start == null) {
+                start = cell;
+            }
+
+            previous = cell;
+        }
+
+        if (start != null) {
+            ranges.add(new String[]{start, previous + RANGE_END});
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Checks if the cell comes directly after the previous cell in geohash order
+     */
+    private static boolean follows(String previous, String cell) {
+        int last = cell.length() - 1;
+
+        return previous.length() == cell.length()
+                && previous.regionMatches(0, cell, 0, last)
+                && BASE32.indexOf(cell.charAt(last)) == BASE32.indexOf(previous.charAt(last)) + 1;
+    }
+
+    /**
+     * Interleaves the column and row bits (longitude first) and writes them out in base 32
+     */
+    private static String toHash(long x, long y, int precision) {
+        int longitudeBit = longitudeBits(precision) - 1;
+        int latitudeBit = latitudeBits(precision) - 1;
+
+        char[] hash = new char[precision];
+        int bit = 0;
+
+        for (int i = 0; i < precision; i++) {
+            int value = 0;
+
+            for (int j = 0; j < 5; j++, bit++) {
+                value <<= 1;
+
+                if (bit % 2 == 0) {
+                    value |= (int) ((x >> longitudeBit--) & 1);
+                } else {
+                    value |= (int) ((y >> latitudeBit--) & 1);
+                }
+            }
+
+            hash[i] = BASE32.charAt(value);
+        }
+
+        return new String(hash);
+    }
+
+    private static long longitudeIndex(double longitude, int precision) {
+        return toIndex((longitude + 180.0) / 360.0, longitudeBits(precision));
+    }
+
+    private static long latitudeIndex(double latitude, int precision) {
+        return toIndex((latitude + 90.0) / 180.0, latitudeBits(precision));
+    }
+
+    private static long toIndex(double fraction, int bits) {
+        long cells = 1L << bits;
+        long index = (long) Math.floor(fraction * cells);
+
+        return Math.max(0, Math.min(cells - 1, index));
+    }
+
+    private static int longitudeBits(int precision) {
+        return (5 * precision + 1) / 2;
+    }
+
+    private static int latitudeBits(int precision) {
+        return 5 * precision / 2;
+    }
+
+    private static void checkPrecision(int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Geohash precision must be between 1 and " + MAX_PRECISION);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.cmput301w20t23.newber.helpers;
+
+/**
+ * Distances on the earth for the hot loops of ride request and driver searches. Everything works
+ * on primitive degrees, so no LatLng has to be allocated per comparison.
+ *
+ * The earth is treated as a sphere of radius EARTH_RADIUS, the same model SphericalUtil uses, so
+ * haversine() agrees with SphericalUtil.computeDistanceBetween() to rounding (relative error below
+ * 1e-9). Both differ from the true ellipsoidal distance by up to about 0.5%.
+ *
+ * distance() uses the equirectangular approximation for points less than SHORT_RANGE_DEGREES
+ * apart on both axes, below MAX_SHORT_RANGE_LATITUDE, and haversine() otherwise. Within that range
+ * its result is within MAX_RELATIVE_ERROR of haversine(), i.e. less than 3 m at 30 km and a few
+ * millimetres at city distances.
+ */
+public final class GeoMath {
+    //Mean radius of the earth in metres, the same as SphericalUtil
+    public static final double EARTH_RADIUS = 6371009;
+
+    //Length of one degree of latitude, or of longitude at the equator, in metres
+    public static final double METRES_PER_DEGREE = EARTH_RADIUS * Math.PI / 180.0;
+
+    //Points closer than this on both axes use the equirectangular approximation, about 22 Km
+    public static final double SHORT_RANGE_DEGREES = 0.2;
+
+    //Nearer the poles the meridians converge too fast for the approximation
+    public static final double MAX_SHORT_RANGE_LATITUDE = 80.0;
+
+    //Upper bound on |distance() - haversine()| / haversine()
+    public static final double MAX_RELATIVE_ERROR = 1e-4;
+
+    private GeoMath() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Distance between two points in metres, approximated for short ranges
+     * @param latitude1 the latitude of the first point
+     * @param longitude1 the longitude of the first point
+     * @param latitude2 the latitude of the second point
+     * @param longitude2 the longitude of the second point
+     * @return the distance in metres, within MAX_RELATIVE_ERROR of haversine()
+     */
+    public static double distance(double latitude1, double longitude1,
+                                  double latitude2, double longitude2) {
+        double latitudeDelta = latitude2 - latitude1;
+        double longitudeDelta = wrapLongitude(longitude2 - longitude1);
+        double meanLatitude = (latitude1 + latitude2) / 2;
+
+        if (Math.abs(latitudeDelta) > SHORT_RANGE_DEGREES
+                || Math.abs(meanLatitude) > MAX_SHORT_RANGE_LATITUDE) {
+            return haversine(latitude1, longitude1, latitude2, longitude2);
+        }
+
+        double x = longitudeDelta * Math.cos(Math.toRadians(meanLatitude));
+
+        if (Math.abs(x) > SHORT_RANGE_DEGREES) {
+            return haversine(latitude1, longitude1, latitude2, longitude2);
+        }
+
+        return Math.sqrt(x * x + latitudeDelta * latitudeDelta) * METRES_PER_DEGREE;
+    }
+
+    /**
+     * Great-circle distance between two points in metres, using the haversine formula
+     * @param latitude1 the latitude of the first point
+     * @param longitude1 the longitude of the first point
+     * @param latitude2 the latitude of the second point
+     * @param longitude2 the longitude of the second point
+     * @return the distance in metres
+     */
+    public static double haversine(double latitude1, double longitude1,
+                                   double latitude2, double longitude2) {
+        double lat1 = Math.toRadians(latitude1);
+        double lat2 = Math.toRadians(latitude2);
+        double sinLat = Math.sin((lat2 - lat1) / 2);
+        double sinLng = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+
+        double h = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+    }
+
+    /**
+     * Checks whether two points are within a distance of each other. For more than a few checks
+     * around the same centre, circle() is cheaper.
+     * @param latitude1 the latitude of the first point
+     * @param longitude1 the longitude of the first point
+     * @param latitude2 the latitude of the second point
+     * @param longitude2 the longitude of the second point
+     * @param radius the distance in metres
+     * @return true if haversine() of the points is at most the radius
+     */
+    public static boolean withinDistance(double latitude1, double longitude1,
+                                         double latitude2, double longitude2, double radius) {
+        return circle(latitude1, longitude1, radius).contains(latitude2, longitude2);
+    }
+
+    /**
+     * Creates a circle to test many points against
+     * @param latitude the latitude of the centre
+     * @param longitude the longitude of the centre
+     * @param radius the radius in metres
+     * @return the circle
+     */
+    public static Circle circle(double latitude, double longitude, double radius) {
+        return new Circle(latitude, longitude, radius);
+    }
+
+    /**
+     * Half the height of the bounding box of a circle, in degrees of latitude
+     * @param radius the radius of the circle in metres
+     * @return the latitude span
+     */
+    public static double latitudeSpan(double radius) {
+        return radius / METRES_PER_DEGREE;
+    }
+
+    /**
+     * Half the width of the bounding box of a circle, in degrees of longitude. This is exact on
+     * the sphere, the widest point of the circle is poleward of its centre.
+     * @param latitude the latitude of the centre
+     * @param radius the radius of the circle in metres
+     * @return the longitude span, 180 if the circle covers a pole
+     */
+    public static double longitudeSpan(double latitude, double radius) {
+        double angle = radius / EARTH_RADIUS;
+
+        if (Math.abs(latitude) + Math.toDegrees(angle) >= 90.0) {
+            return 180.0;
+        }
+
+        return Math.toDegrees(Math.asin(Math.sin(angle) / Math.cos(Math.toRadians(latitude))));
+    }
+
+    private static double wrapLongitude(double longitudeDelta) {
+        if (longitudeDelta > 180.0) {
+            return longitudeDelta - 360.0;
+        }
+        if (longitudeDelta < -180.0) {
+            return longitudeDelta + 360.0;
+        }
+        return longitudeDelta;
+    }
+
+    /**
+     * A circle on the earth with its bounding box precomputed. Points outside the box are rejected
+     * without any trigonometry, points inside are measured with distance(), and only points so
+     * close to the edge that the approximation could be wrong are measured with haversine(). So
+     * contains() gives the same answer as haversine() <= radius.
+     */
+    public static final class Circle {
+        private final double latitude;
+        private final double longitude;
+        private final double radius;
+        private final double latitudeSpan;
+        private final double longitudeSpan;
+        private final double innerRadius;
+        private final double outerRadius;
+
+        private Circle(double latitude, double longitude, double radius) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radius = radius;
+            this.latitudeSpan = latitudeSpan(radius);
+            this.longitudeSpan = longitudeSpan(latitude, radius);
+            this.innerRadius = radius * (1 - MAX_RELATIVE_ERROR);
+            this.outerRadius = radius * (1 + MAX_RELATIVE_ERROR);
+        }
+
+        /**
+         * Checks whether a point is inside the circle
+         * @param pointLatitude the latitude of the point
+         * @param pointLongitude the longitude of the point
+         * @return true if the point is at most the radius from the centre
+         */
+        public boolean contains(double pointLatitude, double pointLongitude) {
+            if (Math.abs(pointLatitude - latitude) > latitudeSpan
+                    || Math.abs(wrapLongitude(pointLongitude - longitude)) > longitudeSpan) {
+                return false;
+            }
+
+            double distance = distance(latitude, longitude, pointLatitude, pointLongitude);
+
+            if (distance <= innerRadius) {
+                return true;
+            }
+            if (distance > outerRadius) {
+                return false;
+            }
+
+            return haversine(latitude, longitude, pointLatitude, pointLongitude) <= radius;
+        }
+
+        /**
+         * Gets the radius of the circle
+         * @return the radius in metres
+         */
+        public double getRadius() {
+            return radius;
+        }
+    }
+}
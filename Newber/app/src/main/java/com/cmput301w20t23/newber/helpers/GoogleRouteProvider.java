@@ -0,0 +1,70 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.models.Route;
+import com.google.android.gms.maps.model.LatLng;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Gets driving routes from the Google Directions API.
+ */
+public class GoogleRouteProvider implements RouteProvider {
+    public static final String DIRECTIONS_URL = "https://maps.googleapis.com/maps/api/directions/";
+
+    //Reads only the route out of a Directions response
+    private static final HttpTransport.BodyParser<Route> DIRECTIONS_PARSER = new HttpTransport.BodyParser<Route>() {
+        @Override
+        public Route parse(InputStream body) throws IOException {
+            return DirectionsParser.parse(body);
+        }
+    };
+
+    private final HttpTransport transport;
+    private final String baseUrl;
+    private final String apiKey;
+
+    /**
+     * Instantiates a new GoogleRouteProvider.
+     *
+     * @param transport makes the requests
+     * @param baseUrl   the Directions API URL, DIRECTIONS_URL unless it is stubbed
+     * @param apiKey    the Directions API key
+     */
+    public GoogleRouteProvider(HttpTransport transport, String baseUrl, String apiKey) {
+        this.transport = transport;
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+    }
+
+    @Override
+    public Route getRoute(LatLng origin, LatLng dest) throws IOException {
+        return transport.get(getUrl(origin, dest), DIRECTIONS_PARSER);
+    }
+
+    @Override
+    public String toString() {
+        return "Google Directions " + transport;
+    }
+
+    /**
+     * Builds the URL string
+     * @param origin    the start location
+     * @param dest      the end location
+     * @return the URL string
+     */
+    private String getUrl(LatLng origin, LatLng dest) {
+        String str_origin = "origin=" + origin.latitude + "," + origin.longitude;
+        String str_dest = "destination=" + dest.latitude + "," + dest.longitude;
+        String str_key = "key=" + apiKey;
+
+        // Building the parameters to the web service
+        String parameters = str_origin + "&" + str_dest + "&" + str_key;
+
+        // Output format
+        String output = "json";
+
+        // Building the url to the web service
+        return baseUrl + output + "?" + parameters;
+    }
+}
@@ -0,0 +1,354 @@
+package com.cmput301w20t23.newber.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Makes GET requests for RouteGetter, on the calling thread.
+ *
+ * Every response body is read to the end and closed, never disconnected, so HttpURLConnection
+ * keeps the connection alive and reuses it for the next request to the same host. Responses are
+ * asked for gzipped. Each attempt has connect and read timeouts, and all the attempts of a request
+ * together have a deadline. Failed attempts are retried with exponential backoff, unless the
+ * server refused the request itself.
+ *
+ * A request can also be hedged: if it has not finished after the hedge delay, the same request
+ * is sent again and whichever answers first is used, which cuts the slowest requests short at the
+ * cost of sending a few requests twice. Only use it for requests that are safe to repeat.
+ */
+public class HttpTransport {
+    //The most of a body left after parsing that is read so the connection can be reused
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final long deadline;
+    private final int maxAttempts;
+    private final Backoff backoff;
+    private final long hedgeDelay;
+    private final ExecutorService hedgeExecutor;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    /**
+     * Reads the body of a successful response
+     * @param <T> the type of what is read
+     */
+    public interface BodyParser<T> {
+        /**
+         * Reads the body, it is closed by the transport
+         * @param body the body, already decompressed
+         * @return what was read
+         * @throws IOException if the body can't be read
+         */
+        T parse(InputStream body) throws IOException;
+    }
+
+    /**
+     * Thrown when the server answers with a status other than 2xx
+     */
+    public static class HttpStatusException extends IOException {
+        private final int status;
+
+        public HttpStatusException(int status) {
+            super("HTTP status " + status);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Instantiates a new HttpTransport.
+     *
+     * @param connectTimeout the longest an attempt waits to connect, in milliseconds
+     * @param readTimeout    the longest an attempt waits for data, in milliseconds
+     * @param deadline       the longest all attempts of a request take together, in milliseconds
+     * @param maxAttempts    the most attempts per request, including the first
+     * @param backoff        the delays between attempts
+     * @param hedgeDelay     how long an attempt runs before it is sent again, 0 to never hedge
+     * @param hedgeExecutor  runs hedged attempts, null if hedgeDelay is 0
+     */
+    public HttpTransport(int connectTimeout, int readTimeout, long deadline, int maxAttempts,
+                         Backoff backoff, long hedgeDelay, ExecutorService hedgeExecutor) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("There must be at least 1 attempt");
+        }
+        if (hedgeDelay > 0 && hedgeExecutor == null) {
+            throw new IllegalArgumentException("Hedging needs an executor");
+        }
+
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.deadline = deadline;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.hedgeDelay = hedgeDelay;
+        this.hedgeExecutor = hedgeExecutor;
+    }
+
+    /**
+     * Gets a URL, retrying and hedging as configured
+     * @param url the URL
+     * @param parser reads the body of the response
+     * @param <T> the type of what is read
+     * @return what the parser read
+     * @throws IOException the failure of the last attempt, or an InterruptedIOException if the
+     *                     thread was interrupted
+     */
+    public <T> T get(String url, BodyParser<T> parser) throws IOException {
+        requests.incrementAndGet();
+        long end = System.currentTimeMillis() + deadline;
+        IOException failure;
+        int attempt = 0;
+
+        while (true) {
+            int timeout = (int) Math.min(readTimeout, end - System.currentTimeMillis());
+
+            try {
+                if (timeout <= 0) {
+                    throw new SocketTimeoutException("Deadline passed");
+                }
+                return hedgeDelay > 0 ? hedged(url, parser, timeout) : new Call<>(url, parser, timeout).call();
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            attempt++;
+            if (attempt == maxAttempts || !isRetryable(failure)) {
+                throw failure;
+            }
+
+            long delay = backoff.delay(attempt - 1);
+            if (System.currentTimeMillis() + delay >= end) {
+                throw failure;
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry");
+            }
+            retries.incrementAndGet();
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    /**
+     * Gets the number of hedged attempts that answered before the attempt they hedged
+     * @return the hedges that won
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "requests=%d retries=%d hedges=%d hedgeWins=%d",
+                getRequests(), getRetries(), getHedges(), getHedgeWins());
+    }
+
+    /**
+     * Runs an attempt, and the same attempt again if it takes longer than the hedge delay
+     */
+    private <T> T hedged(String url, BodyParser<T> parser, int timeout) throws IOException {
+        Call<T> first = new Call<>(url, parser, timeout);
+        Call<T> second = new Call<>(url, parser, timeout);
+        CompletionService<T> calls = new ExecutorCompletionService<>(hedgeExecutor);
+        Future<T> hedge = null;
+        int running = 1;
+
+        try {
+            calls.submit(first);
+        } catch (RejectedExecutionException e) {
+            // Every thread is busy, don't wait for one
+            return first.call();
+        }
+
+        try {
+            Future<T> done = calls.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+
+            if (done == null) {
+                try {
+                    hedge = calls.submit(second);
+                    hedges.incrementAndGet();
+                    running++;
+                } catch (RejectedExecutionException e) {
+                    System.out.println("Not hedging, no thread for it");
+                }
+                done = calls.take();
+            }
+
+            // The first one to succeed wins, a failure only counts if the other failed too
+            while (true) {
+                running--;
+
+                try {
+                    T result = done.get();
+                    if (done == hedge) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    return result;
+                } catch (ExecutionException e) {
+                    if (running == 0) {
+                        throw asIOException(e.getCause());
+                    }
+                }
+
+                done = calls.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a response");
+        } finally {
+            first.abort();
+            second.abort();
+        }
+    }
+
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof HttpStatusException) {
+            int status = ((HttpStatusException) e).getStatus();
+            return status >= 500 || status == 429;
+        }
+
+        // Timeouts are worth retrying, being cancelled is not
+        return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+    }
+
+    private static IOException asIOException(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * One attempt at a request, which can be aborted from another thread
+     */
+    private class Call<T> implements Callable<T> {
+        private final String url;
+        private final BodyParser<T> parser;
+        private final int timeout;
+
+        private volatile HttpURLConnection connection = null;
+        private volatile boolean finished = false;
+        private volatile boolean aborted = false;
+
+        Call(String url, BodyParser<T> parser, int timeout) {
+            this.url = url;
+            this.parser = parser;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public T call() throws IOException {
+            HttpURLConnection urlConnection = (HttpURLConnection) new URL(url).openConnection();
+            connection = urlConnection;
+            InputStream body = null;
+
+            try {
+                if (aborted) {
+                    throw new InterruptedIOException("Aborted");
+                }
+
+                urlConnection.setConnectTimeout(Math.min(connectTimeout, timeout));
+                urlConnection.setReadTimeout(timeout);
+
+                // Asked for explicitly, so it is decompressed here the same way on every platform
+                urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+
+                int status = urlConnection.getResponseCode();
+                if (status < 200 || status >= 300) {
+                    // Read the error too, so the connection can be reused
+                    InputStream error = urlConnection.getErrorStream();
+                    if (error != null) {
+                        drain(error);
+                        error.close();
+                    }
+                    throw new HttpStatusException(status);
+                }
+
+                body = urlConnection.getInputStream();
+                if ("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+                    body = new GZIPInputStream(body, BUFFER_SIZE);
+                }
+
+                T result = parser.parse(body);
+                drain(body);
+                return result;
+            } finally {
+                finished = true;
+
+                if (body != null) {
+                    try {
+                        body.close();
+                    } catch (IOException e) {
+                        System.out.println("Error while closing response: " + e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Stops the attempt if it is still running, dropping its connection
+         */
+        void abort() {
+            aborted = true;
+
+            HttpURLConnection urlConnection = connection;
+            if (!finished && urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+
+        /**
+         * Reads what the parser left of a body, unless there is too much of it
+         */
+        private void drain(InputStream in) throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int drained = 0;
+            int read;
+
+            while (drained < MAX_DRAIN_BYTES && (read = in.read(buffer)) != -1) {
+                drained += read;
+            }
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.cmput301w20t23.newber.helpers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads a JSON document one token at a time, like android.util.JsonReader, so a caller can pick
+ * the few values it needs out of a large response without building the whole tree. Skipped
+ * values are scanned in place without allocating anything, and the text of names and strings is
+ * read into one reused buffer.
+ *
+ * Malformed JSON throws an IOException, and reading a token of the wrong type throws an
+ * IllegalStateException, like JsonReader.
+ */
+public class JsonPullParser implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The kinds of token the parser can be at
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL,
+        END_DOCUMENT
+    }
+
+    //What the parser is inside of, and what it expects next there
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+
+    //The number of characters read before the buffer, for error messages
+    private long offset = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+
+    //The token peek() found, its first character is already read unless it is a literal
+    private Token peeked = null;
+
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Creates a parser at the start of a document
+     * @param in the JSON text, it is buffered by the parser
+     */
+    public JsonPullParser(Reader in) {
+        this.in = in;
+        push(EMPTY_DOCUMENT);
+    }
+
+    /**
+     * Gets the type of the next token without consuming it
+     * @return the next token
+     * @throws IOException if the JSON is malformed or can't be read
+     */
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = doPeek();
+        }
+
+        return peeked;
+    }
+
+    public void beginObject() throws IOException {
+        consume(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        consume(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    public void beginArray() throws IOException {
+        consume(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        consume(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    /**
+     * Checks if the current object or array has another element
+     * @return true if the next token is a name or a value
+     * @throws IOException if the JSON is malformed or can't be read
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        consume(Token.NAME);
+        readString(true);
+        return text.toString();
+    }
+
+    public String nextString() throws IOException {
+        consume(Token.STRING);
+        readString(true);
+        return text.toString();
+    }
+
+    public double nextDouble() throws IOException {
+        consume(Token.NUMBER);
+        readLiteral(true);
+
+        try {
+            return Double.parseDouble(text.toString());
+        } catch (NumberFormatException e) {
+            throw syntaxError("Malformed number " + text);
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        consume(Token.BOOLEAN);
+        readLiteral(true);
+
+        if ("true".contentEquals(text)) {
+            return true;
+        } else if ("false".contentEquals(text)) {
+            return false;
+        }
+        throw syntaxError("Malformed literal " + text);
+    }
+
+    public void nextNull() throws IOException {
+        consume(Token.NULL);
+        readLiteral(true);
+
+        if (!"null".contentEquals(text)) {
+            throw syntaxError("Malformed literal " + text);
+        }
+    }
+
+    /**
+     * Skips the next value, with everything nested in it, without keeping any of its text
+     * @throws IOException if the JSON is malformed or can't be read
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+
+        do {
+            Token token = peek();
+            peeked = null;
+
+            switch (token) {
+                case BEGIN_OBJECT:
+                    push(EMPTY_OBJECT);
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    push(EMPTY_ARRAY);
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    if (depth == 0) {
+                        throw new IllegalStateException("Expected a value but was " + token);
+                    }
+                    stackSize--;
+                    depth--;
+                    break;
+                case NAME:
+                case STRING:
+                    readString(false);
+                    break;
+                case END_DOCUMENT:
+                    throw new IllegalStateException("Expected a value but was " + token);
+                default:
+                    readLiteral(false);
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void consume(Token expected) throws IOException {
+        Token token = peek();
+
+        if (token != expected) {
+            throw new IllegalStateException("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    /**
+     * Reads up to the next token, consuming the separators before it
+     */
+    private Token doPeek() throws IOException {
+        int scope = stack[stackSize - 1];
+        int c;
+
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                } else if (c != -1) {
+                    pos--;
+                }
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                } else if (c != ',') {
+                    throw syntaxError("Expected , or ]");
+                }
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                stack[stackSize - 1] = DANGLING_NAME;
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    return Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected , or }");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                return Token.NAME;
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected :");
+                }
+                break;
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            default:
+                if (nextNonWhitespace() == -1) {
+                    return Token.END_DOCUMENT;
+                }
+                throw syntaxError("Expected the end of the document");
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                pos--;
+                return Token.BOOLEAN;
+            case 'n':
+                pos--;
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of the document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Reads the rest of a string after its opening quote
+     * @param keep true to read it into text, false to skip it
+     */
+    private void readString(boolean keep) throws IOException {
+        if (keep) {
+            text.setLength(0);
+        }
+
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+
+            // Copy everything up to the next quote or escape in one go
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"' || c == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            if (keep) {
+                text.append(buffer, start, pos - start);
+            }
+            if (pos == limit) {
+                continue;
+            }
+
+            if (buffer[pos++] == '"') {
+                return;
+            }
+
+            char escaped = readChar();
+            if (escaped == 'u') {
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(readChar(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Malformed unicode escape");
+                    }
+                    code = (code << 4) | digit;
+                }
+                escaped = (char) code;
+            } else {
+                escaped = unescape(escaped);
+            }
+
+            if (keep) {
+                text.append(escaped);
+            }
+        }
+    }
+
+    private char unescape(char c) throws IOException {
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                throw syntaxError("Malformed escape \\" + c);
+        }
+    }
+
+    /**
+     * Reads a number, true, false or null up to the character after it
+     * @param keep true to read it into text, false to skip it
+     */
+    private void readLiteral(boolean keep) throws IOException {
+        if (keep) {
+            text.setLength(0);
+        }
+
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || isWhitespace(c)) {
+                return;
+            }
+            if (keep) {
+                text.append(c);
+            }
+            pos++;
+        }
+    }
+
+    private char readChar() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of the document");
+        }
+        return buffer[pos++];
+    }
+
+    /**
+     * Reads the next character that is not whitespace
+     * @return the character, or -1 at the end of the document
+     */
+    private int nextNonWhitespace() throws IOException {
+        while (pos < limit || fill()) {
+            char c = buffer[pos++];
+            if (!isWhitespace(c)) {
+                return c;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Reads more of the document once the buffer is used up
+     * @return false at the end of the document
+     */
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+
+        int read = in.read(buffer, 0, buffer.length);
+        while (read == 0) {
+            read = in.read(buffer, 0, buffer.length);
+        }
+
+        if (read < 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at character " + (offset + pos));
+    }
+}
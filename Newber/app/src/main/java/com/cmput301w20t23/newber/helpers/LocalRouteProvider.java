@@ -0,0 +1,150 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.models.Route;
+import com.google.android.gms.maps.model.LatLng;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A stand-in for the Directions API that needs no network, for load tests, benchmarks and demos.
+ * Routes added as fixtures, e.g. recorded Directions responses, are served for their endpoints,
+ * and any other route is made up: it runs north or south from the origin and then east or west to
+ * the destination, like a drive across a grid of streets.
+ *
+ * Each route takes the configured latency, plus up to the jitter drawn from a seeded Random, so
+ * a run can be repeated exactly. Fixtures are added before the provider is used.
+ */
+public class LocalRouteProvider implements RouteProvider {
+    //Fixtures match endpoints a few metres apart, like the RouteCache
+    private static final int FIXTURE_PRECISION = 8;
+
+    //How far apart the points of a made up route are, in metres
+    private static final double POINT_SPACING = 100;
+
+    private final long latency;
+    private final long jitter;
+    private final Random random;
+
+    private final Map<String, Route> fixtures = new HashMap<>();
+
+    private long served = 0;
+
+    /**
+     * Instantiates a new LocalRouteProvider.
+     *
+     * @param latency how long every route takes, in milliseconds
+     * @param jitter  the most extra time a route takes, in milliseconds
+     * @param seed    the seed of the jitter
+     */
+    public LocalRouteProvider(long latency, long jitter, long seed) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Serves a route for its endpoints instead of making one up
+     * @param origin the start of the route
+     * @param dest the end of the route
+     * @param route the route
+     */
+    public void addFixture(LatLng origin, LatLng dest, Route route) {
+        fixtures.put(key(origin, dest), route);
+    }
+
+    /**
+     * Serves the route of a Directions response for its endpoints
+     * @param origin the start of the route
+     * @param dest the end of the route
+     * @param response the response body, closed by the caller
+     * @throws IOException if the response can't be read or has no route
+     */
+    public void addFixture(LatLng origin, LatLng dest, InputStream response) throws IOException {
+        Route route = DirectionsParser.parse(response);
+
+        if (route == null) {
+            throw new IOException("The response has no route");
+        }
+        addFixture(origin, dest, route);
+    }
+
+    @Override
+    public Route getRoute(LatLng origin, LatLng dest) throws IOException {
+        long delay;
+        synchronized (this) {
+            delay = latency + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+            served++;
+        }
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while getting a route");
+        }
+
+        Route fixture = fixtures.get(key(origin, dest));
+        return fixture != null ? fixture : makeRoute(origin, dest);
+    }
+
+    /**
+     * Gets the number of routes asked for so far
+     * @return the routes served
+     */
+    public synchronized long getServed() {
+        return served;
+    }
+
+    @Override
+    public String toString() {
+        return "Local routes served=" + getServed() + " fixtures=" + fixtures.size();
+    }
+
+    /**
+     * Makes up the route between two points, always the same one for the same points
+     * @param origin the start of the route
+     * @param dest the end of the route
+     * @return a route through the corner north or south of the origin and west or east of dest
+     */
+    public static Route makeRoute(LatLng origin, LatLng dest) {
+        List<LatLng> points = new ArrayList<>();
+        points.add(origin);
+
+        LatLng corner = new LatLng(dest.latitude, origin.longitude);
+        double distance = addLeg(points, origin, corner) + addLeg(points, corner, dest);
+
+        if (points.size() == 1) {
+            points.add(dest);
+        }
+        return new Route(points, distance);
+    }
+
+    /**
+     * Adds the points of a straight leg after its start
+     * @return the length of the leg in metres
+     */
+    private static double addLeg(List<LatLng> points, LatLng from, LatLng to) {
+        double length = GeoMath.haversine(from.latitude, from.longitude, to.latitude, to.longitude);
+        int segments = (int) Math.ceil(length / POINT_SPACING);
+
+        for (int i = 1; i <= segments; i++) {
+            double fraction = (double) i / segments;
+            points.add(new LatLng(from.latitude + (to.latitude - from.latitude) * fraction,
+                    from.longitude + (to.longitude - from.longitude) * fraction));
+        }
+
+        return length;
+    }
+
+    private static String key(LatLng origin, LatLng dest) {
+        return GeoHash.encode(origin.latitude, origin.longitude, FIXTURE_PRECISION)
+                + "_" + GeoHash.encode(dest.latitude, dest.longitude, FIXTURE_PRECISION);
+    }
+}
@@ -0,0 +1,105 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+
+/**
+ * A copy of the parts of a ride request that are on screen, taken when it is shown. Ride requests
+ * are changed in place before they are written, so the shown request can't be compared with an
+ * incoming one directly. The version is compared too, so the shown fragment always holds the
+ * latest written copy of the request, which its own writes are checked against.
+ */
+public final class RenderedRideRequest {
+    /**
+     * What has to be done to show an incoming ride request instead of the shown one.
+     */
+    public enum Change {
+        /**
+         * Nothing visible changed, e.g. a duplicate snapshot.
+         */
+        NONE,
+        /**
+         * The details changed, or the request was written since, the shown fragment can update
+         * them in place.
+         */
+        UPDATE,
+        /**
+         * The request or its status changed, a different fragment has to be shown.
+         */
+        REPLACE
+    }
+
+    private final String requestId;
+    private final RequestStatus status;
+    private final String pickup;
+    private final String dropoff;
+    private final double cost;
+    private final String rider;
+    private final String driver;
+    private final long version;
+
+    private RenderedRideRequest(RideRequest rideRequest) {
+        this.requestId = rideRequest.getRequestId();
+        this.status = rideRequest.getStatus();
+        this.pickup = name(rideRequest.getStartLocation());
+        this.dropoff = name(rideRequest.getEndLocation());
+        this.cost = rideRequest.getCost();
+        this.rider = rideRequest.getRider();
+        this.driver = rideRequest.getDriver();
+        this.version = rideRequest.getVersion();
+    }
+
+    /**
+     * Copies the visible parts of a ride request
+     * @param rideRequest the shown ride request, may be null if there is none
+     * @return the copy, or null if there is no ride request
+     */
+    public static RenderedRideRequest of(RideRequest rideRequest) {
+        return rideRequest == null ? null : new RenderedRideRequest(rideRequest);
+    }
+
+    /**
+     * Gets the user on the other side of the ride, the driver for a rider and the other way round
+     * @param role the role of the user the request is shown to, "Rider" or "Driver"
+     * @return the UID of the other user, or null if there is none
+     */
+    public String getOtherUid(String role) {
+        return role.equals("Rider") ? driver : rider;
+    }
+
+    /**
+     * Compares the shown ride request with an incoming one
+     * @param shown the shown ride request, null if none is shown
+     * @param incoming the incoming ride request, null if there is none anymore
+     * @return what has to be done to show the incoming ride request
+     */
+    public static Change changeFrom(RenderedRideRequest shown, RenderedRideRequest incoming) {
+        if (shown == null || incoming == null) {
+            return shown == incoming ? Change.NONE : Change.REPLACE;
+        }
+
+        if (!equal(shown.requestId, incoming.requestId) || shown.status != incoming.status) {
+            return Change.REPLACE;
+        }
+
+        if (equal(shown.pickup, incoming.pickup)
+                && equal(shown.dropoff, incoming.dropoff)
+                && Double.compare(shown.cost, incoming.cost) == 0
+                && equal(shown.rider, incoming.rider)
+                && equal(shown.driver, incoming.driver)
+                && shown.version == incoming.version) {
+            return Change.NONE;
+        }
+
+        return Change.UPDATE;
+    }
+
+    private static String name(Location location) {
+        return location == null ? null : location.getName();
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
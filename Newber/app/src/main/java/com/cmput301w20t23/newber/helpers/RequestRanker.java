@@ -0,0 +1,185 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.RideRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Ranks ride requests by the distance of their start location from a search location, one page at
+ * a time. Each distance is computed once up front, and a page is selected with a bounded heap of
+ * the page size instead of sorting every request, so showing the first page of a large result is
+ * O(n log k).
+ *
+ * Pages are taken in order with nextPage(), ties in distance are broken by the order the requests
+ * were given in.
+ */
+public class RequestRanker {
+    private final RideRequest[] requests;
+    private final double[] distances;
+    private final int size;
+
+    //The last request returned, every later page ranks strictly after it
+    private int lastIndex = -1;
+    private int ranked = 0;
+
+    /**
+     * Instantiates a new RequestRanker.
+     *
+     * @param latitude  the latitude of the search location
+     * @param longitude the longitude of the search location
+     * @param requests  the ride requests to rank, requests without a start location are skipped
+     */
+    public RequestRanker(double latitude, double longitude, Collection<RideRequest> requests) {
+        this.requests = new RideRequest[requests.size()];
+        this.distances = new double[requests.size()];
+
+        int count = 0;
+        for (RideRequest request : requests) {
+            Location start = request.getStartLocation();
+
+            if (start == null) {
+                continue;
+            }
+
+            this.requests[count] = request;
+            this.distances[count] = GeoMath.distance(latitude, longitude, start.getLatitude(), start.getLongitude());
+            count++;
+        }
+
+        this.size = count;
+    }
+
+    /**
+     * Gets the number of requests being ranked
+     * @return the number of requests
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if there are requests left that have not been returned by nextPage()
+     * @return true if there is another page
+     */
+    public boolean hasNextPage() {
+        return ranked < size;
+    }
+
+    /**
+     * Gets the next closest requests, after the ones returned by the previous pages
+     * @param pageSize the maximum number of requests to return
+     * @return up to pageSize requests, closest first
+     */
+    public ArrayList<RideRequest> nextPage(int pageSize) {
+        int[] page = select(pageSize);
+        ArrayList<RideRequest> found = new ArrayList<>(page.length);
+
+        for (int index : page) {
+            found.add(requests[index]);
+        }
+
+        if (page.length > 0) {
+            lastIndex = page[page.length - 1];
+            ranked += page.length;
+        }
+
+        return found;
+    }
+
+    /**
+     * Starts paging again from the closest request
+     */
+    public void reset() {
+        lastIndex = -1;
+        ranked = 0;
+    }
+
+    /**
+     * Selects the k closest requests that rank after the last returned request, using a max-heap
+     * of indices so the farthest of the k found so far is always at the top
+     */
+    private int[] select(int k) {
+        int count = Math.max(0, Math.min(k, size - ranked));
+        int[] heap = new int[count];
+
+        if (count == 0) {
+            return heap;
+        }
+
+        int heapSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (lastIndex >= 0 && !ranksBefore(lastIndex, i)) {
+                continue;
+            }
+
+            if (heapSize < count) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++);
+            } else if (ranksBefore(i, heap[0])) {
+                heap[0] = i;
+                siftDown(heap, 0, heapSize);
+            }
+        }
+
+        // Pop the farthest to the back to leave the page sorted closest first
+        for (int end = heapSize - 1; end > 0; end--) {
+            int top = heap[0];
+            heap[0] = heap[end];
+            heap[end] = top;
+            siftDown(heap, 0, end);
+        }
+
+        return heap;
+    }
+
+    /**
+     * Checks if request a is closer than request b, using the index to break ties
+     */
+    private boolean ranksBefore(int a, int b) {
+        return distances[a] < distances[b] || (distances[a] == distances[b] && a < b);
+    }
+
+    private void siftUp(int[] heap, int position) {
+        int item = heap[position];
+
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+
+            if (!ranksBefore(heap[parent], item)) {
+                break;
+            }
+
+            heap[position] = heap[parent];
+            position = parent;
+        }
+
+        heap[position] = item;
+    }
+
+    private void siftDown(int[] heap, int position, int heapSize) {
+        int item = heap[position];
+
+        while (true) {
+            int child = 2 * position + 1;
+
+            if (child >= heapSize) {
+                break;
+            }
+
+            if (child + 1 < heapSize && ranksBefore(heap[child], heap[child + 1])) {
+                child++;
+            }
+
+            if (!ranksBefore(item, heap[child])) {
+                break;
+            }
+
+            heap[position] = heap[child];
+            position = child;
+        }
+
+        heap[position] = item;
+    }
+}
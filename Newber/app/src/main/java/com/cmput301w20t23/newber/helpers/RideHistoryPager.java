@@ -0,0 +1,149 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.controllers.RideController;
+import com.cmput301w20t23.newber.database.RideHistoryPage;
+
+import java.util.List;
+
+/**
+ * Loads the ride history of a user one page at a time as its list is scrolled. The page after the
+ * shown ones is read ahead, so it can be shown as soon as the end of the list comes near instead
+ * of waiting on the database. Only one page is read at a time, and only one page is held ahead.
+ * If a page that is waited on can't be read, e.g. the first one, the pager says so and the page
+ * can be read again with retry.
+ *
+ * It is used from the main thread, which the database callbacks run on.
+ */
+public class RideHistoryPager {
+    private final RideController rideController;
+    private final String uid;
+    private final String role;
+    private final int pageSize;
+    private final int prefetchDistance;
+    private final Callback<List<RideHistoryPage.Entry>> onPage;
+
+    //Where the last read page ended, null before the first page
+    private RideHistoryPage.Cursor cursor = null;
+
+    //The page read ahead and not shown yet
+    private RideHistoryPage prefetched = null;
+
+    private boolean loading = false;
+    private boolean exhausted = false;
+
+    //Whether the end of the list came near while the next page was still being read
+    private boolean showWhenLoaded = false;
+
+    /**
+     * Creates a pager over the ride history of a user
+     * @param rideController reads the pages
+     * @param uid the UID of the user
+     * @param role whether the user took the rides as "Rider" or gave them as "Driver"
+     * @param pageSize how many rides are read at a time
+     * @param prefetchDistance how many rows from the end of the list the next page is shown
+     * @param onPage receives the rides of each page that is shown, to add to the end of the list,
+     *               or null if a page that was waited on could not be read
+     */
+    public RideHistoryPager(RideController rideController, String uid, String role, int pageSize,
+                            int prefetchDistance, Callback<List<RideHistoryPage.Entry>> onPage) {
+        this.rideController = rideController;
+        this.uid = uid;
+        this.role = role;
+        this.pageSize = pageSize;
+        this.prefetchDistance = prefetchDistance;
+        this.onPage = onPage;
+    }
+
+    /**
+     * Shows the first page, and reads the one after it
+     */
+    public void start() {
+        showWhenLoaded = true;
+        load();
+    }
+
+    /**
+     * Reads the page that could not be read again, and shows it once it is read
+     */
+    public void retry() {
+        showWhenLoaded = true;
+        load();
+    }
+
+    /**
+     * Called as the list scrolls, shows the next page once the end of the list is near
+     * @param lastVisible the position of the last visible row
+     * @param count how many rows the list holds
+     */
+    public void onScrolled(int lastVisible, int count) {
+        if (count - 1 - lastVisible > prefetchDistance) {
+            return;
+        }
+
+        if (prefetched != null) {
+            showPrefetched();
+        } else if (!exhausted) {
+            // The page is not read yet, or reading it failed, show it once it is read
+            showWhenLoaded = true;
+            load();
+        }
+    }
+
+    /**
+     * Checks if every ride of the history has been shown
+     * @return true if there are no more pages
+     */
+    public boolean isExhausted() {
+        return exhausted && prefetched == null;
+    }
+
+    /**
+     * Checks if a page is being read
+     * @return true while waiting on the database
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    private void load() {
+        if (loading || exhausted || prefetched != null) {
+            return;
+        }
+
+        loading = true;
+        rideController.getRideHistory(uid, role, pageSize, cursor, new Callback<RideHistoryPage>() {
+            @Override
+            public void myResponseCallback(RideHistoryPage page) {
+                loading = false;
+
+                // A failed read is tried again on the next scroll, or on retry if it was waited on
+                if (page == null) {
+                    if (showWhenLoaded) {
+                        showWhenLoaded = false;
+                        onPage.myResponseCallback(null);
+                    }
+                    return;
+                }
+
+                cursor = page.getNextCursor();
+                exhausted = !page.hasMore();
+                prefetched = page;
+
+                if (showWhenLoaded) {
+                    showPrefetched();
+                }
+            }
+        });
+    }
+
+    private void showPrefetched() {
+        RideHistoryPage page = prefetched;
+        prefetched = null;
+        showWhenLoaded = false;
+
+        onPage.myResponseCallback(page.getEntries());
+
+        // Read ahead the page after it
+        load();
+    }
+}
@@ -0,0 +1,32 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.models.RideRequest;
+
+/**
+ * An interface for receiving the changes to a live set of ride requests from Firestore, one request
+ * at a time, instead of re-reading the whole set every time it changes.
+ */
+public interface RideRequestChangeListener {
+    /**
+     * Called when a ride request enters the set
+     * @param rideRequest the new ride request
+     */
+    void onRideRequestAdded(RideRequest rideRequest);
+
+    /**
+     * Called when a ride request that is already in the set is updated
+     * @param rideRequest the updated ride request
+     */
+    void onRideRequestModified(RideRequest rideRequest);
+
+    /**
+     * Called when a ride request leaves the set, e.g. once a driver has offered to take it
+     * @param rideRequest the last known state of the ride request
+     */
+    void onRideRequestRemoved(RideRequest rideRequest);
+
+    /**
+     * Called once all the changes of one update from Firestore have been delivered
+     */
+    void onRideRequestsSynced();
+}
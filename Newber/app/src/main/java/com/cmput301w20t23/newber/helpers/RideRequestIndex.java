@@ -0,0 +1,333 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.models.RideRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * In-memory spatial index of ride requests, bucketed by the start location into a uniform grid of
+ * latitude/longitude cells. It is filled incrementally from a Firestore snapshot listener so a
+ * driver's search is answered locally instead of with a round trip.
+ *
+ * The index is not thread-safe, it is updated and queried on the main thread.
+ */
+public class RideRequestIndex implements RideRequestChangeListener {
+    //The default height of a cell, 1 Km
+    public static final double DEFAULT_CELL_SIZE = 1000;
+
+    private final double cellDegrees;
+    private final long columns;
+
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    //Bounds of the cells that have ever held a request, so nearest() knows when to stop searching
+    private long minRow = Long.MAX_VALUE;
+    private long maxRow = Long.MIN_VALUE;
+    private long minColumn = Long.MAX_VALUE;
+    private long maxColumn = Long.MIN_VALUE;
+
+    private boolean synced = false;
+
+    /**
+     * A ride request with its position, stored in a cell
+     */
+    private static class Entry {
+        final RideRequest rideRequest;
+        final double latitude;
+        final double longitude;
+        final long cell;
+
+        Entry(RideRequest rideRequest, long cell) {
+            this.rideRequest = rideRequest;
+            this.latitude = rideRequest.getStartLocation().getLatitude();
+            this.longitude = rideRequest.getStartLocation().getLongitude();
+            this.cell = cell;
+        }
+    }
+
+    /**
+     * A ride request found by a search, with its distance from the search location
+     */
+    private static class Candidate {
+        final RideRequest rideRequest;
+        final double distance;
+
+        Candidate(RideRequest rideRequest, double distance) {
+            this.rideRequest = rideRequest;
+            this.distance = distance;
+        }
+    }
+
+    private static final Comparator<Candidate> FARTHEST_FIRST = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate o1, Candidate o2) {
+            return Double.compare(o2.distance, o1.distance);
+        }
+    };
+
+    public RideRequestIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Instantiates a new RideRequestIndex.
+     *
+     * @param cellSize the height of a grid cell in metres
+     */
+    public RideRequestIndex(double cellSize) {
+        this.cellDegrees = cellSize / GeoMath.METRES_PER_DEGREE;
+        this.columns = (long) Math.ceil(360.0 / cellDegrees) + 1;
+    }
+
+    /**
+     * Adds a ride request to the index, or moves it if it is already indexed
+     * @param rideRequest the ride request to add
+     */
+    public void put(RideRequest rideRequest) {
+        if (rideRequest.getRequestId() == null || rideRequest.getStartLocation() == null) {
+            return;
+        }
+
+        remove(rideRequest.getRequestId());
+
+        double latitude = rideRequest.getStartLocation().getLatitude();
+        double longitude = rideRequest.getStartLocation().getLongitude();
+        long row = row(latitude);
+        long column = column(longitude);
+
+        Entry entry = new Entry(rideRequest, row * columns + column);
+        entries.put(rideRequest.getRequestId(), entry);
+
+        List<Entry> cell = cells.get(entry.cell);
+        if (cell == null) {
+            cell = new ArrayList<>();
+            cells.put(entry.cell, cell);
+        }
+        cell.add(entry);
+
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        minColumn = Math.min(minColumn, column);
+        maxColumn = Math.max(maxColumn, column);
+    }
+
+    /**
+     * Removes a ride request from the index
+     * @param requestId the ID of the ride request
+     * @return the removed ride request, or null if it was not indexed
+     */
+    public RideRequest remove(String requestId) {
+        Entry entry = entries.remove(requestId);
+
+        if (entry == null) {
+            return null;
+        }
+
+        List<Entry> cell = cells.get(entry.cell);
+        cell.remove(entry);
+
+        if (cell.isEmpty()) {
+            cells.remove(entry.cell);
+        }
+
+        return entry.rideRequest;
+    }
+
+    /**
+     * Gets an indexed ride request by its ID
+     * @param requestId the ID of the ride request
+     * @return the ride request, or null if it is not indexed
+     */
+    public RideRequest get(String requestId) {
+        Entry entry = entries.get(requestId);
+        return entry == null ? null : entry.rideRequest;
+    }
+
+    /**
+     * Gets the number of indexed ride requests
+     * @return the number of ride requests
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes every ride request from the index
+     */
+    public void clear() {
+        cells.clear();
+        entries.clear();
+        minRow = Long.MAX_VALUE;
+        maxRow = Long.MIN_VALUE;
+        minColumn = Long.MAX_VALUE;
+        maxColumn = Long.MIN_VALUE;
+        synced = false;
+    }
+
+    /**
+     * Checks if the index has received its first full set of ride requests from Firestore
+     * @return true once the first update has been applied
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Finds every ride request whose start location is within the radius, in no particular order
+     * @param latitude the latitude of the search location
+     * @param longitude the longitude of the search location
+     * @param radius the search radius in metres
+     * @return the ride requests within the radius
+     */
+    public ArrayList<RideRequest> withinRadius(double latitude, double longitude, double radius) {
+        ArrayList<RideRequest> found = new ArrayList<>();
+
+        GeoMath.Circle circle = GeoMath.circle(latitude, longitude, radius);
+        double latitudeSpan = GeoMath.latitudeSpan(radius);
+        double longitudeSpan = GeoMath.longitudeSpan(latitude, radius);
+
+        long firstRow = row(latitude - latitudeSpan);
+        long lastRow = row(latitude + latitudeSpan);
+        long firstColumn = column(longitude - longitudeSpan);
+        long lastColumn = column(longitude + longitudeSpan);
+
+        // When there are more cells to look up than requests, a scan of every request is cheaper
+        if ((lastRow - firstRow + 1) * (lastColumn - firstColumn + 1) > entries.size()) {
+            for (Entry entry : entries.values()) {
+                if (circle.contains(entry.latitude, entry.longitude)) {
+                    found.add(entry.rideRequest);
+                }
+            }
+
+            return found;
+        }
+
+        for (long row = firstRow; row <= lastRow; row++) {
+            for (long column = firstColumn; column <= lastColumn; column++) {
+                List<Entry> cell = cells.get(row * columns + column);
+
+                if (cell == null) {
+                    continue;
+                }
+
+                for (Entry entry : cell) {
+                    if (circle.contains(entry.latitude, entry.longitude)) {
+                        found.add(entry.rideRequest);
+                    }
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Finds the k ride requests closest to the search location, closest first. The search visits
+     * rings of cells outwards from the search location, and stops once no unvisited cell can hold
+     * anything closer than the k-th request found so far.
+     * @param latitude the latitude of the search location
+     * @param longitude the longitude of the search location
+     * @param k the number of ride requests to find
+     * @param maxRadius the distance in metres past which requests are ignored
+     * @return up to k ride requests, sorted by distance
+     */
+    public ArrayList<RideRequest> nearest(double latitude, double longitude, int k, double maxRadius) {
+        ArrayList<RideRequest> found = new ArrayList<>();
+
+        if (k <= 0 || entries.isEmpty()) {
+            return found;
+        }
+
+        PriorityQueue<Candidate> heap = new PriorityQueue<>(k, FARTHEST_FIRST);
+        long centerRow = row(latitude);
+        long centerColumn = column(longitude);
+
+        for (long ring = 0; ; ring++) {
+            // Anything in this ring is at least ring - 1 whole cells away
+            double lowerBound = Math.max(0, ring - 1) * cellDegrees * GeoMath.METRES_PER_DEGREE
+                    * Math.cos(Math.toRadians(Math.min(Math.abs(latitude) + ring * cellDegrees, 90.0)));
+
+            if (lowerBound > maxRadius || (heap.size() == k && lowerBound > heap.peek().distance)) {
+                break;
+            }
+
+            for (long row = centerRow - ring; row <= centerRow + ring; row++) {
+                boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                long step = edgeRow ? 1 : 2 * ring;
+
+                for (long column = centerColumn - ring; column <= centerColumn + ring; column += step) {
+                    List<Entry> cell = cells.get(row * columns + column);
+
+                    if (cell == null) {
+                        continue;
+                    }
+
+                    for (Entry entry : cell) {
+                        double distance = GeoMath.distance(latitude, longitude, entry.latitude, entry.longitude);
+
+                        if (distance > maxRadius) {
+                            continue;
+                        }
+
+                        if (heap.size() < k) {
+                            heap.add(new Candidate(entry.rideRequest, distance));
+                        } else if (distance < heap.peek().distance) {
+                            heap.poll();
+                            heap.add(new Candidate(entry.rideRequest, distance));
+                        }
+                    }
+                }
+            }
+
+            // Every occupied cell has been visited
+            if (centerRow - ring <= minRow && centerRow + ring >= maxRow
+                    && centerColumn - ring <= minColumn && centerColumn + ring >= maxColumn) {
+                break;
+            }
+        }
+
+        ArrayList<Candidate> sorted = new ArrayList<>(heap);
+        Collections.sort(sorted, Collections.reverseOrder(FARTHEST_FIRST));
+
+        for (Candidate candidate : sorted) {
+            found.add(candidate.rideRequest);
+        }
+
+        return found;
+    }
+
+    @Override
+    public void onRideRequestAdded(RideRequest rideRequest) {
+        put(rideRequest);
+    }
+
+    @Override
+    public void onRideRequestModified(RideRequest rideRequest) {
+        put(rideRequest);
+    }
+
+    @Override
+    public void onRideRequestRemoved(RideRequest rideRequest) {
+        remove(rideRequest.getRequestId());
+    }
+
+    @Override
+    public void onRideRequestsSynced() {
+        synced = true;
+    }
+
+    private long row(double latitude) {
+        return (long) Math.floor((Math.max(-90.0, Math.min(90.0, latitude)) + 90.0) / cellDegrees);
+    }
+
+    private long column(double longitude) {
+        return (long) Math.floor((Math.max(-180.0, Math.min(180.0, longitude)) + 180.0) / cellDegrees);
+    }
+}
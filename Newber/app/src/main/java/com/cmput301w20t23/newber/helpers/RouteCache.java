@@ -0,0 +1,391 @@
+package com.cmput301w20t23.newber.helpers;
+
+import android.content.Context;
+
+import com.cmput301w20t23.newber.models.Route;
+import com.google.android.gms.maps.model.LatLng;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the routes RouteGetter fetched, so moving a marker back or opening a request that was
+ * already routed does not call the Directions API again. Routes are keyed by their origin and
+ * destination snapped to geohash cells, so points a few metres apart share a route. The cell size
+ * is a trade off: larger cells hit more often, but the route drawn starts further from the point.
+ *
+ * There are two tiers. Recently used routes are kept in memory in an ExpiringLruCache, and every
+ * route is also written to a file in the app's cache directory, so it survives the app being
+ * closed. Both tiers drop routes after the TTL, and the files are trimmed, oldest first, to stay
+ * under a size cap. Files are written on a background thread, like LocalStateStore.
+ *
+ * The cache is used on the main thread, like the route callbacks, except for getFromDisk, which
+ * reads a file and is called on a background thread.
+ */
+public class RouteCache {
+    //Bumped whenever the file layout changes, older files are ignored
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String DIRECTORY_NAME = "routes";
+    private static final String FILE_SUFFIX = ".route";
+
+    //Cells of 8 characters are about 38 by 19 metres
+    public static final int DEFAULT_PRECISION = 8;
+
+    private static final int DEFAULT_MEMORY_SIZE = 32;
+
+    //Roads rarely change, but a day keeps closures from sticking around
+    private static final long DEFAULT_TTL = 24 * 60 * 60 * 1000;
+
+    private static final long DEFAULT_MAX_DISK_BYTES = 2 * 1024 * 1024;
+
+    private static RouteCache routeCache = null;
+
+    private final ExpiringLruCache<Route> memory;
+    private final File directory;
+    private final long ttl;
+    private final long maxDiskBytes;
+    private final int precision;
+    private final Executor writer;
+
+    //Counted by getFromDisk, on a background thread
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * A route read from its file, and when it was fetched
+     */
+    public static class StoredRoute {
+        private final Route route;
+        private final long storedAt;
+
+        StoredRoute(Route route, long storedAt) {
+            this.route = route;
+            this.storedAt = storedAt;
+        }
+
+        public Route getRoute() {
+            return route;
+        }
+
+        public long getStoredAt() {
+            return storedAt;
+        }
+    }
+
+    /**
+     * Instantiates a new RouteCache.
+     *
+     * @param memorySize   the most routes kept in memory
+     * @param ttl          how long a route is used after it was fetched, in milliseconds
+     * @param directory    the directory the route files are kept in, or null to keep routes in
+     *                     memory only
+     * @param maxDiskBytes the most bytes of route files kept
+     * @param precision    the length of the geohash cells origins and destinations are snapped to
+     * @param writer       runs the writes to the files, in order
+     */
+    public RouteCache(int memorySize, long ttl, File directory, long maxDiskBytes, int precision,
+                      Executor writer) {
+        this.memory = new ExpiringLruCache<>(memorySize, ttl, null);
+        this.ttl = ttl;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.precision = precision;
+        this.writer = writer;
+    }
+
+    /**
+     * Returns 1 global instance, with its files in the app's cache directory
+     * @param context any context of the app
+     * @return the cache
+     */
+    public static synchronized RouteCache getInstance(Context context) {
+        if (routeCache == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME);
+            routeCache = new RouteCache(DEFAULT_MEMORY_SIZE, DEFAULT_TTL, directory,
+                    DEFAULT_MAX_DISK_BYTES, DEFAULT_PRECISION, Executors.newSingleThreadExecutor());
+        }
+
+        return routeCache;
+    }
+
+    /**
+     * Gets the key of the route between two points
+     * @param origin the start of the route
+     * @param dest the end of the route
+     * @return the geohash cells of both points
+     */
+    public String key(LatLng origin, LatLng dest) {
+        return GeoHash.encode(origin.latitude, origin.longitude, precision)
+                + "_" + GeoHash.encode(dest.latitude, dest.longitude, precision);
+    }
+
+    /**
+     * Gets a route from memory, counting a memory hit. A route not in memory is looked up with
+     * getFromDisk next.
+     * @param key the key of the route
+     * @param now the current time in milliseconds
+     * @return the route, or null if it is not in memory
+     */
+    public Route get(String key, long now) {
+        return memory.get(key, now);
+    }
+
+    /**
+     * Reads a route from its file, counting a disk hit or a miss. Call it on a background thread,
+     * then keep the route in memory with putFromDisk on the main thread.
+     * @param key the key of the route
+     * @param now the current time in milliseconds
+     * @return the route and when it was fetched, or null on a miss
+     */
+    public StoredRoute getFromDisk(String key, long now) {
+        long[] storedAt = new long[1];
+        Route route = readFile(key, storedAt);
+
+        if (route != null && now - storedAt[0] < ttl) {
+            diskHits.incrementAndGet();
+            return new StoredRoute(route, storedAt[0]);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Registers a caller waiting for a route after a miss
+     * @param key the key of the route
+     * @param waiter receives the route once it is fetched, or null if fetching it failed
+     * @return true if the caller should fetch the route, false if it is already being fetched
+     */
+    public boolean beginLoad(String key, Callback<Route> waiter) {
+        return memory.beginLoad(key, waiter);
+    }
+
+    /**
+     * Keeps a fetched route in memory and in its file, and gives it to every waiting caller
+     * @param key the key of the route
+     * @param route the route
+     * @param now the current time in milliseconds
+     */
+    public void put(final String key, final Route route, final long now) {
+        memory.put(key, route, now);
+
+        if (directory == null) {
+            return;
+        }
+
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeFile(key, route, now);
+                trim(now);
+            }
+        });
+    }
+
+    /**
+     * Keeps a route read from its file in memory, and gives it to every waiting caller
+     * @param key the key of the route
+     * @param stored the route read by getFromDisk
+     */
+    public void putFromDisk(String key, StoredRoute stored) {
+        // Keep the time it was fetched, so it expires from memory when the file does
+        memory.put(key, stored.getRoute(), stored.getStoredAt());
+    }
+
+    /**
+     * Gives up fetching a route, every waiting caller gets null
+     * @param key the key of the route
+     */
+    public void failLoad(String key) {
+        memory.failLoad(key, null);
+    }
+
+    public long getMemoryHits() {
+        return memory.getHits();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of lookups that waited on a route already being fetched
+     * @return the coalesced lookups
+     */
+    public long getCoalesced() {
+        return memory.getCoalesced();
+    }
+
+    /**
+     * Gets the share of lookups that did not need the Directions API
+     * @return the hit rate between 0 and 1, 0 before any lookup
+     */
+    public double getHitRate() {
+        long hits = getMemoryHits() + getDiskHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "precision=%d memoryHits=%d diskHits=%d misses=%d coalesced=%d hitRate=%.2f",
+                precision, getMemoryHits(), getDiskHits(), getMisses(), getCoalesced(), getHitRate());
+    }
+
+    private File fileOf(String key) {
+        return new File(directory, key + FILE_SUFFIX);
+    }
+
+    /**
+     * Reads the route of a key from its file
+     * @param storedAt receives when the route was fetched
+     * @return the route, or null if it has no file or the file can't be read
+     */
+    private Route readFile(String key, long[] storedAt) {
+        if (directory == null) {
+            return null;
+        }
+
+        File file = fileOf(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            storedAt[0] = in.readLong();
+            double distance = in.readDouble();
+            int count = in.readInt();
+
+            if (count < 0) {
+                return null;
+            }
+
+            List<LatLng> points = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                points.add(new LatLng(in.readDouble(), in.readDouble()));
+            }
+
+            return new Route(points, distance);
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable route file: " + e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Writes a route to a temporary file and renames it over the old one, so a crash while
+     * writing never leaves a half written file
+     */
+    private void writeFile(String key, Route route, long now) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            System.out.println("Error while creating the route cache directory");
+            return;
+        }
+
+        File file = fileOf(key);
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(now);
+            out.writeDouble(route.getDistanceInMetres());
+            out.writeInt(route.getPoints().size());
+
+            for (LatLng point : route.getPoints()) {
+                out.writeDouble(point.latitude);
+                out.writeDouble(point.longitude);
+            }
+
+            out.close();
+            out = null;
+
+            // Files are trimmed by age, which is when the route was fetched. If the time can't be
+            // set the file keeps the time it was written, a moment later, so it is kept anyway
+            if (!temp.setLastModified(now)) {
+                System.out.println("Could not set the time of route file " + file.getName());
+            }
+            if (!temp.renameTo(file)) {
+                System.out.println("Error while replacing route file");
+            }
+        } catch (IOException e) {
+            System.out.println("Error while writing route file: " + e);
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Deletes the expired route files, then the oldest ones until the rest fit in the size cap
+     */
+    private void trim(long now) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(b.lastModified(), a.lastModified());
+            }
+        });
+
+        // Newest first, so whatever is past the cap is the oldest
+        long kept = 0;
+        for (File file : files) {
+            boolean expired = now - file.lastModified() >= ttl;
+
+            if (expired || kept + file.length() > maxDiskBytes) {
+                if (!file.delete()) {
+                    System.out.println("Error while deleting route file " + file.getName());
+                }
+            } else {
+                kept += file.length();
+            }
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            System.out.println("Error while closing route file: " + e);
+        }
+    }
+}
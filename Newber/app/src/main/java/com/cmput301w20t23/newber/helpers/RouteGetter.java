@@ -1,230 +1,137 @@
 package com.cmput301w20t23.newber.helpers;
 
-import android.os.AsyncTask;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import com.cmput301w20t23.newber.R;
 import com.cmput301w20t23.newber.models.Route;
 import com.google.android.gms.maps.model.LatLng;
-import com.google.maps.android.PolyUtil;
 
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Singleton class for getting route details between two points.
+ * Singleton class for getting route details between two points. Routes are kept in a
+ * RouteCache, so the RouteProvider is only asked for routes that were not fetched recently,
+ * and are fetched through a RoutePipeline, so a new route for an activity cancels its old one.
  *
  * @author Ayushi Patel
  */
 public class RouteGetter {
+    //Two fetches at a time, and a few more waiting, anything past that is dropped
+    private static final int WORKER_THREADS = 2;
+    private static final int WORKER_QUEUE_SIZE = 8;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30;
+
+    //Directions usually answers within a second, a request still waiting after that is sent again
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 10000;
+    private static final long DEADLINE = 20000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long HEDGE_DELAY = 1000;
+
+    //The route_provider configured to use the local stand-in instead of the Directions API
+    private static final String LOCAL_PROVIDER = "local";
+
+    private static RoutePipeline routePipeline = null;
+
+    private static HttpTransport transport = null;
+
+    private static RouteProvider routeProvider = null;
+
     /**
-     * Starts fetcher and parser tasks.
+     * Gets the route from the RouteCache, or fetches and parses it on a worker thread on a miss.
+     * Lookups of a route that is already being fetched wait for it instead of fetching it again,
+     * and the previous route requested by the same context is cancelled.
      *
+     * @param context   the context showing the route, e.g. an activity
      * @param origin    the start location
      * @param dest      the end location
+     * @param provider  where the route is got from on a miss, see getProvider
+     * @param callback  receives the route, or null if it could not be fetched
+     * @return the request, to cancel it with
      */
-    public static void getRoute(LatLng origin, LatLng dest, String apiKey,
-                                final Callback<Route> callback) {
-        String url = getUrl(origin, dest, apiKey);
-
-        FetchUrlTask fetchUrlTask = new FetchUrlTask(new Callback<String>() {
+    public static RoutePipeline.Request getRoute(Context context, final LatLng origin, final LatLng dest,
+                                                 final RouteProvider provider, final Callback<Route> callback) {
+        return getPipeline(context).getRoute(context, origin, dest, new Callable<Route>() {
             @Override
-            public void myResponseCallback(String result) {
-                ParseJsonTask parseJsonTask = new ParseJsonTask(new Callback<Route>() {
-                    @Override
-                    public void myResponseCallback(Route result) {
-                        callback.myResponseCallback(result);
-                    }
-                });
-
-                // Invokes the thread for parsing the JSON data
-                parseJsonTask.execute(result);
+            public Route call() throws Exception {
+                // Download and parse in one go, on the worker thread
+                Route route = provider.getRoute(origin, dest);
+                Log.d("RouteGetter", provider.toString());
+                return route;
             }
-        });
-
-        // Start downloading JSON data from Directions API
-        fetchUrlTask.execute(url);
+        }, callback);
     }
 
     /**
-     * This class fetches data from the provided URL.
+     * Gets the configured route provider, the Directions API unless route_provider is "local".
+     * Routes from either are kept in the same RouteCache, so clear the app's cache after
+     * switching.
+     *
+     * @param context any context of the app, for the configuration
+     * @return the provider
      */
-    public static class FetchUrlTask extends AsyncTask<String, Void, String> {
-        private Callback<String> callback;
-
-        /**
-         * Instantiates a new FetchUrlTask.
-         *
-         * @param callback  the callback to fire when task is done
-         */
-        FetchUrlTask(Callback<String> callback) {
-            this.callback = callback;
-        }
-
-        @Override
-        protected String doInBackground(String... url) {
-            // For storing data from web service
-            String data = "";
-
-            try {
-                // Fetching the data from web service
-                data = downloadUrl(url[0]);
-                Log.d("FetchUrlTask", data);
-            } catch (Exception e) {
-                Log.d("FetchUrlTask", e.toString());
+    public static synchronized RouteProvider getProvider(Context context) {
+        if (routeProvider == null) {
+            if (LOCAL_PROVIDER.equals(context.getString(R.string.route_provider))) {
+                routeProvider = new LocalRouteProvider(
+                        context.getResources().getInteger(R.integer.local_route_latency),
+                        context.getResources().getInteger(R.integer.local_route_jitter), 0);
+            } else {
+                routeProvider = new GoogleRouteProvider(getTransport(),
+                        GoogleRouteProvider.DIRECTIONS_URL, context.getString(R.string.API_KEY));
             }
-
-            return data;
-        }
-
-        @Override
-        protected void onPostExecute(String result) {
-            super.onPostExecute(result);
-            callback.myResponseCallback(result);
         }
 
-        /**
-         * Downloads data from the URL.
-         * @param strUrl    the URL string
-         * @return the downloaded data
-         * @throws IOException thrown if stream not closed
-         */
-        private String downloadUrl(String strUrl) throws IOException {
-            String data = "";
-            InputStream iStream = null;
-            HttpURLConnection urlConnection = null;
-
-            try {
-                URL url = new URL(strUrl);
-
-                // Creating an http connection to communicate with url
-                urlConnection = (HttpURLConnection) url.openConnection();
-
-                // Connecting to url
-                urlConnection.connect();
-
-                // Reading data from url
-                iStream = urlConnection.getInputStream();
-
-                BufferedReader br = new BufferedReader(new InputStreamReader(iStream));
-
-                StringBuilder sb = new StringBuilder();
-
-                String line;
-                while ((line = br.readLine()) != null) {
-                    sb.append(line);
-                }
-
-                data = sb.toString();
-                br.close();
-            } catch (Exception e) {
-                Log.d("downloadUrl", e.toString());
-            } finally {
-                assert iStream != null;
-                iStream.close();
-                urlConnection.disconnect();
-            }
-
-            return data;
-        }
+        return routeProvider;
     }
 
     /**
-     * This class parses the JSON data.
+     * Cancels the route a context requested last, e.g. when the activity is destroyed
+     * @param context the context that requested the route
      */
-    private static class ParseJsonTask extends AsyncTask<String, Integer, Route> {
-        private Callback<Route> callback;
-
-        /**
-         * Instantiates a new ParseJsonTask.
-         *
-         * @param callback  the callback to fire
-         */
-        ParseJsonTask(Callback<Route> callback) {
-            this.callback = callback;
-        }
-
-        @Override
-        protected Route doInBackground(String... jsonData) {
-            Route route = null;
-
-            try {
-                JSONObject jObject = new JSONObject(jsonData[0]);
-                route = parseData(jObject);
-                Log.d("ParserTask", route.getPoints().toString());
-                Log.d("ParserTask", String.valueOf(route.getDistanceInMetres()));
-            } catch (Exception e) {
-                Log.d("ParserTask", e.toString());
-                e.printStackTrace();
-            }
+    public static void cancelRoutes(Context context) {
+        getPipeline(context).cancel(context);
+    }
 
-            return route;
-        }
+    private static synchronized RoutePipeline getPipeline(Context context) {
+        if (routePipeline == null) {
+            ThreadPoolExecutor worker = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS,
+                    WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(WORKER_QUEUE_SIZE));
+            worker.allowCoreThreadTimeOut(true);
+
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            Executor mainThread = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    mainHandler.post(command);
+                }
+            };
 
-        @Override
-        protected void onPostExecute(Route result) {
-            super.onPostExecute(result);
-            callback.myResponseCallback(result);
+            routePipeline = new RoutePipeline(RouteCache.getInstance(context), worker, mainThread);
         }
 
-        /**
-         * Parses the JSON data to produce a list of points.
-         *
-         * @param jObject   the JSON data
-         * @return a list of points along the route
-         */
-        private Route parseData(JSONObject jObject) {
-            Route route = null;
-
-            try {
-                JSONObject jRoute = (JSONObject) jObject.getJSONArray("routes").get(0);
-
-                JSONObject jOverviewPolyline = (JSONObject) jRoute.get("overview_polyline");
-                String points = jOverviewPolyline.getString("points");
-                List<LatLng> routePoints = PolyUtil.decode(points);
-
-                JSONObject jLeg = (JSONObject) jRoute.getJSONArray("legs").get(0);
-                JSONObject jDistance = (JSONObject) jLeg.get("distance");
-                double routeDistance = jDistance.getDouble("value");
-
-                route = new Route(routePoints, routeDistance);
-            } catch (Exception e) {
-                Log.d("ParserTask", e.toString());
-                e.printStackTrace();
-            }
-
-            return route;
-        }
+        return routePipeline;
     }
 
-    /**
-     * Builds the URL string
-     * @param origin    the start location
-     * @param dest      the end location
-     * @return the URL string
-     */
-    private static String getUrl(LatLng origin, LatLng dest, String apiKey) {
-        String url = "https://maps.googleapis.com/maps/api/directions/";
-
-        String str_origin = "origin=" + origin.latitude + "," + origin.longitude;
-        String str_dest = "destination=" + dest.latitude + "," + dest.longitude;
-        String str_key = "key=" + apiKey;
-
-        // Building the parameters to the web service
-        String parameters = str_origin + "&" + str_dest + "&" + str_key;
+    private static synchronized HttpTransport getTransport() {
+        if (transport == null) {
+            // Each of the worker threads may wait on a request and its hedge
+            ThreadPoolExecutor hedgeExecutor = new ThreadPoolExecutor(0, 2 * WORKER_THREADS,
+                    WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
 
-        // Output format
-        String output = "json";
-
-        // Building the url to the web service
-        url = url + output + "?" + parameters;
+            transport = new HttpTransport(CONNECT_TIMEOUT, READ_TIMEOUT, DEADLINE, MAX_ATTEMPTS,
+                    new Backoff(250, 2000), HEDGE_DELAY, hedgeExecutor);
+        }
 
-        return url;
+        return transport;
     }
-}
\ No newline at end of file
+}
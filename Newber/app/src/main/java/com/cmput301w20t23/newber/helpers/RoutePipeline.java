@@ -0,0 +1,227 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.models.Route;
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Gets routes for RouteGetter. A route is looked up in the memory of the RouteCache first. On a
+ * miss, one task on a worker executor reads its file, or fetches and parses it if there is none,
+ * then hands it back on the main thread, so the main thread never waits on the disk.
+ *
+ * Every request can be cancelled, and a new request from a caller, e.g. an activity, supersedes
+ * its previous one, so a route fetched for an endpoint the rider already changed is never drawn.
+ * Requests for the same route share one fetch, which is only stopped once every request waiting
+ * on it is cancelled.
+ *
+ * Requests are made and cancelled on the main thread, like the callbacks.
+ */
+public class RoutePipeline {
+    private final RouteCache routeCache;
+    private final ExecutorService worker;
+    private final Executor mainThread;
+
+    //The latest request of each caller, dropped with the caller
+    private final Map<Object, Request> latestByCaller = new WeakHashMap<>();
+
+    //The fetches in flight by route key
+    private final Map<String, Fetch> fetches = new HashMap<>();
+
+    /**
+     * A fetch of one route and the number of requests still waiting on it
+     */
+    private static class Fetch {
+        Future<?> future;
+        int waiting = 0;
+        boolean cancelled = false;
+    }
+
+    /**
+     * A request for a route, which can be cancelled until its callback is called
+     */
+    public class Request {
+        private final String key;
+        private final Callback<Route> callback;
+        private Fetch fetch;
+        private boolean done = false;
+
+        private Request(String key, Callback<Route> callback) {
+            this.key = key;
+            this.callback = callback;
+        }
+
+        /**
+         * Stops the callback from being called, and stops the fetch if nothing else waits on it
+         */
+        public void cancel() {
+            if (done) {
+                return;
+            }
+            done = true;
+
+            if (fetch != null && --fetch.waiting == 0) {
+                fetch.cancelled = true;
+                fetch.future.cancel(true);
+                fetches.remove(key);
+                routeCache.failLoad(key);
+            }
+        }
+
+        /**
+         * Checks if the request is over, answered or cancelled
+         * @return true if the callback will not be called anymore
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        private void deliver(Route route) {
+            if (done) {
+                return;
+            }
+            done = true;
+
+            if (fetch != null) {
+                fetch.waiting--;
+            }
+            callback.myResponseCallback(route);
+        }
+    }
+
+    /**
+     * Instantiates a new RoutePipeline.
+     *
+     * @param routeCache the cache routes are looked up in and kept in
+     * @param worker     fetches and parses the routes, bounded so a burst of requests can't pile up
+     * @param mainThread runs the callbacks
+     */
+    public RoutePipeline(RouteCache routeCache, ExecutorService worker, Executor mainThread) {
+        this.routeCache = routeCache;
+        this.worker = worker;
+        this.mainThread = mainThread;
+    }
+
+    /**
+     * Gets the route between two points, superseding the caller's previous request
+     * @param caller whoever shows the route, e.g. an activity
+     * @param origin the start of the route
+     * @param dest the end of the route
+     * @param fetch fetches and parses the route on the worker, returns null if it failed
+     * @param callback receives the route, or null if it could not be fetched, unless the request
+     *                 is cancelled or superseded first
+     * @return the request, to cancel it with
+     */
+    public Request getRoute(Object caller, LatLng origin, LatLng dest, Callable<Route> fetch,
+                            Callback<Route> callback) {
+        cancel(caller);
+
+        final String key = routeCache.key(origin, dest);
+        final Request request = new Request(key, callback);
+
+        Route cached = routeCache.get(key, System.currentTimeMillis());
+        if (cached != null) {
+            request.deliver(cached);
+            return request;
+        }
+
+        latestByCaller.put(caller, request);
+
+        boolean first = routeCache.beginLoad(key, new Callback<Route>() {
+            @Override
+            public void myResponseCallback(Route result) {
+                request.deliver(result);
+            }
+        });
+
+        if (!first) {
+            request.fetch = fetches.get(key);
+            request.fetch.waiting++;
+            return request;
+        }
+
+        Fetch started = new Fetch();
+        started.waiting = 1;
+        request.fetch = started;
+
+        try {
+            started.future = worker.submit(fetchTask(key, started, fetch));
+            fetches.put(key, started);
+        } catch (RejectedExecutionException e) {
+            System.out.println("Too many routes being fetched, dropping " + key);
+            routeCache.failLoad(key);
+        }
+
+        return request;
+    }
+
+    /**
+     * Cancels the latest request of a caller, e.g. when it is destroyed
+     * @param caller whoever made the request
+     */
+    public void cancel(Object caller) {
+        Request previous = latestByCaller.remove(caller);
+
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Gets the number of routes being fetched
+     * @return the fetches in flight
+     */
+    public int getFetchCount() {
+        return fetches.size();
+    }
+
+    /**
+     * Reads a route from its file, or fetches and parses it, on the worker, then keeps it in the
+     * cache and hands it to the waiting requests on the main thread
+     */
+    private Runnable fetchTask(final String key, final Fetch started, final Callable<Route> fetch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                final RouteCache.StoredRoute stored = routeCache.getFromDisk(key, System.currentTimeMillis());
+                Route route = null;
+
+                if (stored == null) {
+                    try {
+                        route = fetch.call();
+                    } catch (Exception e) {
+                        System.out.println("Error while fetching route " + key + ": " + e);
+                    }
+                }
+
+                final Route result = route;
+                mainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Every request waiting on it was cancelled, the key may be fetched again
+                        if (started.cancelled) {
+                            return;
+                        }
+
+                        fetches.remove(key);
+                        if (stored != null) {
+                            routeCache.putFromDisk(key, stored);
+                        } else if (result != null) {
+                            routeCache.put(key, result, System.currentTimeMillis());
+                        } else {
+                            routeCache.failLoad(key);
+                        }
+                        System.out.println("Route cache: " + routeCache);
+                    }
+                });
+            }
+        };
+    }
+}
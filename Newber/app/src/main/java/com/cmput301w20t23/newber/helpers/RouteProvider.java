@@ -0,0 +1,21 @@
+package com.cmput301w20t23.newber.helpers;
+
+import com.cmput301w20t23.newber.models.Route;
+import com.google.android.gms.maps.model.LatLng;
+
+import java.io.IOException;
+
+/**
+ * Where RouteGetter gets its routes from, the Directions API or a local stand-in for it.
+ * Routes are got on a worker thread of the RoutePipeline, so implementations may block.
+ */
+public interface RouteProvider {
+    /**
+     * Gets the route between two points
+     * @param origin the start of the route
+     * @param dest the end of the route
+     * @return the route, or null if there is no route between the points
+     * @throws IOException if the route could not be got, or the thread was interrupted
+     */
+    Route getRoute(LatLng origin, LatLng dest) throws IOException;
+}
@@ -0,0 +1,57 @@
+package com.cmput301w20t23.newber.helpers;
+
+/**
+ * Estimates how far Firestore's clock is from this device's, so times written with
+ * FieldValue.serverTimestamp, like the time of a driver's location, can be compared with the time
+ * now even when the device's clock is wrong.
+ *
+ * Each sample is a server timestamp written between two readings of the device's clock. The server
+ * set it somewhere in between, so the sample is taken to be from halfway, and it is off by at most
+ * half its round trip. The sample with the shortest round trip is kept.
+ */
+public class ServerClock {
+    private long offset = 0;
+    private long bestRoundTrip = Long.MAX_VALUE;
+
+    /**
+     * Takes a sample of the server's clock
+     * @param sentAt the device's time before the server timestamp was written, in milliseconds
+     * @param serverTime the time the server wrote, in milliseconds since the epoch
+     * @param receivedAt the device's time once the write was acknowledged, in milliseconds
+     */
+    public void addSample(long sentAt, long serverTime, long receivedAt) {
+        long roundTrip = receivedAt - sentAt;
+
+        if (roundTrip < 0 || roundTrip >= bestRoundTrip) {
+            return;
+        }
+
+        bestRoundTrip = roundTrip;
+        offset = serverTime - (sentAt + roundTrip / 2);
+    }
+
+    /**
+     * Checks whether the clock has a sample, until then the device's clock is used as it is
+     * @return true once a sample was taken
+     */
+    public boolean isSynced() {
+        return bestRoundTrip != Long.MAX_VALUE;
+    }
+
+    /**
+     * Gets how far the server's clock is ahead of the device's
+     * @return the offset in milliseconds, negative if the device's clock is ahead
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the server's time at a time of the device's clock
+     * @param localTime the device's time in milliseconds, e.g. System.currentTimeMillis()
+     * @return the server's time in milliseconds since the epoch
+     */
+    public long toServerTime(long localTime) {
+        return localTime + offset;
+    }
+}
@@ -0,0 +1,263 @@
+package com.cmput301w20t23.newber.helpers;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Delivers values published on a topic, e.g. a ride request's document path, only to the
+ * subscribers of that topic. The first subscriber of a topic opens one connection for it, e.g. a
+ * Firestore snapshot listener, that every later subscriber shares. The connection is closed when
+ * the last subscriber leaves.
+ *
+ * Subscribers are only weakly held, so a subscriber that is never unsubscribed, e.g. an activity
+ * that was destroyed, does not leak. Publishing takes no locks.
+ *
+ * @param <T> the type of the published values
+ */
+public class SubscriptionRegistry<T> {
+    /**
+     * Opens the connection that publishes the values of a topic.
+     */
+    public interface Connector {
+        /**
+         * Starts publishing the values of a topic, called when it gets its first subscriber
+         * @param topic the topic
+         * @return the connection, closed once the topic has no subscribers left
+         */
+        Connection connect(String topic);
+    }
+
+    /**
+     * A connection publishing the values of a topic.
+     */
+    public interface Connection {
+        /**
+         * Stops publishing the values of the topic
+         */
+        void close();
+    }
+
+    /**
+     * A subscriber's registration to a topic. The subscriber is kept as long as the subscription
+     * is, so the subscription should be kept for as long as values are wanted.
+     */
+    public interface Subscription {
+        String getTopic();
+
+        /**
+         * Stops delivering values to the subscriber, calling this again does nothing
+         */
+        void unsubscribe();
+    }
+
+    private final Connector connector;
+    private final ConcurrentMap<String, Topic> topics = new ConcurrentHashMap<>();
+
+    //Subscribers that were collected without unsubscribing
+    private final ReferenceQueue<Callback<T>> collected = new ReferenceQueue<>();
+
+    private final class Topic {
+        final String name;
+        final CopyOnWriteArrayList<SubscriberRef> subscribers = new CopyOnWriteArrayList<>();
+
+        //The number of subscribers, or -1 once the topic is closed and can't be joined anymore
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicReference<Connection> connection = new AtomicReference<>();
+
+        Topic(String name) {
+            this.name = name;
+        }
+
+        boolean retain() {
+            while (true) {
+                int current = count.get();
+
+                if (current < 0) {
+                    return false;
+                }
+                if (count.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return true if this was the last subscriber and the topic is now closed
+         */
+        boolean release() {
+            return count.decrementAndGet() == 0 && count.compareAndSet(0, -1);
+        }
+
+        boolean isClosed() {
+            return count.get() < 0;
+        }
+    }
+
+    private final class Registration implements Subscription {
+        private final SubscriberRef ref;
+
+        //Keeps the subscriber from being collected while the subscription is kept
+        @SuppressWarnings("unused")
+        private final Callback<T> subscriber;
+
+        Registration(SubscriberRef ref, Callback<T> subscriber) {
+            this.ref = ref;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public String getTopic() {
+            return ref.topic.name;
+        }
+
+        @Override
+        public void unsubscribe() {
+            release(ref);
+        }
+    }
+
+    private final class SubscriberRef extends WeakReference<Callback<T>> {
+        final Topic topic;
+        final AtomicBoolean released = new AtomicBoolean();
+
+        SubscriberRef(Callback<T> subscriber, Topic topic) {
+            super(subscriber, collected);
+            this.topic = topic;
+        }
+    }
+
+    /**
+     * Instantiates a new SubscriptionRegistry.
+     *
+     * @param connector opens the connection of a topic when it gets its first subscriber
+     */
+    public SubscriptionRegistry(Connector connector) {
+        this.connector = connector;
+    }
+
+    /**
+     * Subscribes to the values published on a topic
+     * @param topic the topic
+     * @param subscriber receives every value published on the topic from now on
+     * @return the subscription, which keeps the subscriber until it is unsubscribed or dropped
+     */
+    public Subscription subscribe(String topic, Callback<T> subscriber) {
+        pruneCollected();
+
+        while (true) {
+            Topic current = topics.get(topic);
+            boolean created = false;
+
+            if (current == null) {
+                Topic fresh = new Topic(topic);
+                current = topics.putIfAbsent(topic, fresh);
+
+                if (current == null) {
+                    current = fresh;
+                    created = true;
+                }
+            }
+
+            // The topic may have been closed by its last subscriber leaving just now, then retry
+            // with a new one
+            if (!current.retain()) {
+                topics.remove(topic, current);
+                continue;
+            }
+
+            SubscriberRef ref = new SubscriberRef(subscriber, current);
+            current.subscribers.add(ref);
+
+            if (created) {
+                current.connection.set(connector.connect(topic));
+
+                // Every subscriber may have left while connecting
+                if (current.isClosed()) {
+                    closeConnection(current);
+                }
+            }
+
+            return new Registration(ref, subscriber);
+        }
+    }
+
+    /**
+     * Delivers a value to every subscriber of a topic
+     * @param topic the topic
+     * @param value the value, e.g. null if what the topic is about was deleted
+     */
+    public void publish(String topic, T value) {
+        pruneCollected();
+
+        Topic current = topics.get(topic);
+        if (current == null) {
+            return;
+        }
+
+        for (SubscriberRef ref : current.subscribers) {
+            Callback<T> subscriber = ref.get();
+
+            if (subscriber != null && !ref.released.get()) {
+                subscriber.myResponseCallback(value);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a topic has subscribers, and so an open connection
+     * @param topic the topic
+     * @return true if the topic has subscribers
+     */
+    public boolean hasSubscribers(String topic) {
+        pruneCollected();
+
+        Topic current = topics.get(topic);
+        return current != null && !current.isClosed();
+    }
+
+    /**
+     * Gets the number of topics with subscribers, and so open connections
+     * @return the number of topics
+     */
+    public int getTopicCount() {
+        pruneCollected();
+        return topics.size();
+    }
+
+    private void release(SubscriberRef ref) {
+        if (!ref.released.compareAndSet(false, true)) {
+            return;
+        }
+
+        Topic topic = ref.topic;
+        topic.subscribers.remove(ref);
+
+        if (topic.release()) {
+            topics.remove(topic.name, topic);
+            closeConnection(topic);
+        }
+    }
+
+    private void closeConnection(Topic topic) {
+        Connection connection = topic.connection.getAndSet(null);
+
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void pruneCollected() {
+        SubscriberRef ref;
+
+        while ((ref = (SubscriberRef) collected.poll()) != null) {
+            release(ref);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.cmput301w20t23.newber.models;
+
+import com.cmput301w20t23.newber.helpers.GeoHash;
+
+import java.io.Serializable;
+
+/**
+ * Describes where a driver was last seen, and whether they are online. Stored in the
+ * driverLocations collection under the driver's UID.
+ */
+public class DriverLocation implements Serializable {
+    private String uid;
+    private double latitude;
+    private double longitude;
+    private boolean online;
+    private long updatedAt;
+    private String geohash;
+
+    public DriverLocation() { }
+
+    /**
+     * Instantiates a new Driver location.
+     *
+     * @param uid       the UID of the driver
+     * @param latitude  the latitude of the driver
+     * @param longitude the longitude of the driver
+     * @param online    whether the driver is available for rides
+     * @param updatedAt the time of the location fix, in milliseconds since the epoch. Once
+     *                  written, it is replaced by the time Firestore wrote the location.
+     */
+    public DriverLocation(String uid, double latitude, double longitude, boolean online, long updatedAt) {
+        this.uid = uid;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.online = online;
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Gets uid.
+     *
+     * @return the UID of the driver
+     */
+    public String getUid() {
+        return uid;
+    }
+
+    /**
+     * Sets uid.
+     *
+     * @param uid the UID of the driver
+     */
+    public void setUid(String uid) {
+        this.uid = uid;
+    }
+
+    /**
+     * Gets latitude.
+     *
+     * @return the latitude
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Sets latitude.
+     *
+     * @param latitude the latitude
+     */
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    /**
+     * Gets longitude.
+     *
+     * @return the longitude
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Sets longitude.
+     *
+     * @param longitude the longitude
+     */
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * Checks if the driver is online.
+     *
+     * @return true if the driver is available for rides
+     */
+    public boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * Sets online.
+     *
+     * @param online whether the driver is available for rides
+     */
+    public void setOnline(boolean online) {
+        this.online = online;
+    }
+
+    /**
+     * Gets the time of the location fix.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * Sets the time of the location fix.
+     *
+     * @param updatedAt the time in milliseconds since the epoch
+     */
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Gets the geohash of the location, used for finding drivers near a location.
+     *
+     * @return the geohash of the location
+     */
+    public String getGeohash() {
+        return GeoHash.encode(latitude, longitude);
+    }
+
+    /**
+     * Sets the geohash, only used when reading the location back from Firestore.
+     *
+     * @param geohash the geohash of the location
+     */
+    public void setGeohash(String geohash) {
+        this.geohash = geohash;
+    }
+}
@@ -68,6 +68,16 @@ public class Rating {
      */
     public void downvote() { this.downvotes += 1; }
 
+    /**
+     * Add the votes of another rating to this one, e.g. to total a driver's rating shards.
+     *
+     * @param other the rating whose votes are added
+     */
+    public void add(Rating other) {
+        this.upvotes += other.upvotes;
+        this.downvotes += other.downvotes;
+    }
+
     /**
      * Calculate the driver's rating as a percent.
      *
@@ -2,12 +2,23 @@ package com.cmput301w20t23.newber.models;
 
 import androidx.annotation.NonNull;
 
+import com.cmput301w20t23.newber.helpers.GeoHash;
+import com.google.firebase.firestore.Exclude;
+
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
  * Describes a request for a ride.
  *
+ * The request keeps track of which fields were set since it was last read from or written to
+ * Firestore, so an update only sends those fields. Its version goes up with every write, and an
+ * update made from an old version is rejected.
+ *
  * @author Jessica D'Cunha, Gaurav Sekhar, Ibrahim Aly
  */
 public class RideRequest implements Serializable {
@@ -18,6 +29,11 @@ public class RideRequest implements Serializable {
     private String driver;
     private String rider;
     private double cost;
+    private String geohash;
+    private long version;
+
+    //The fields set since the request was last read or written, not stored in Firestore
+    private transient Set<String> changedFields;
 
     public RideRequest() { }
 
@@ -83,6 +99,32 @@ public class RideRequest implements Serializable {
      */
     public void setStartLocation(Location startLocation) {
         this.startLocation = startLocation;
+        markChanged("startLocation");
+        markChanged("geohash");
+    }
+
+    /**
+     * Gets the geohash of the starting location, used for finding requests near a location.
+     * It is always derived from the starting location so it stays current when the request is
+     * created or updated.
+     *
+     * @return the geohash of the starting location
+     */
+    public String getGeohash() {
+        if (startLocation != null) {
+            return GeoHash.encode(startLocation.getLatitude(), startLocation.getLongitude());
+        }
+
+        return geohash;
+    }
+
+    /**
+     * Sets the geohash, only used when reading the request back from Firestore.
+     *
+     * @param geohash the geohash of the starting location
+     */
+    public void setGeohash(String geohash) {
+        this.geohash = geohash;
     }
 
     /**
@@ -101,6 +143,7 @@ public class RideRequest implements Serializable {
      */
     public void setEndLocation(Location endLocation) {
         this.endLocation = endLocation;
+        markChanged("endLocation");
     }
 
     /**
@@ -119,6 +162,7 @@ public class RideRequest implements Serializable {
      */
     public void setStatus(RequestStatus status) {
         this.status = status;
+        markChanged("status");
     }
 
     /**
@@ -137,6 +181,7 @@ public class RideRequest implements Serializable {
      */
     public void setDriver(String driver) {
         this.driver = driver;
+        markChanged("driver");
     }
 
     /**
@@ -155,6 +200,7 @@ public class RideRequest implements Serializable {
      */
     public void setRider(String rider) {
         this.rider = rider;
+        markChanged("rider");
     }
 
     /**
@@ -173,11 +219,118 @@ public class RideRequest implements Serializable {
      */
     public void setCost(double cost) {
         this.cost = cost;
+        markChanged("cost");
+    }
+
+    /**
+     * Gets version, the number of writes made to the request.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets version.
+     *
+     * @param version the version
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Gets the fields set since the request was last read or written, with the values to write.
+     *
+     * @return the changed fields by Firestore field name
+     */
+    @Exclude
+    public Map<String, Object> getChangedFields() {
+        Map<String, Object> fields = new HashMap<>();
+
+        if (changedFields == null) {
+            return fields;
+        }
+
+        for (String field : changedFields) {
+            fields.put(field, fieldValue(field));
+        }
+
+        return fields;
+    }
+
+    /**
+     * Checks whether any field was set since the request was last read or written.
+     *
+     * @return true if there are changes to write
+     */
+    public boolean hasChanges() {
+        return changedFields != null && !changedFields.isEmpty();
+    }
+
+    /**
+     * Forgets every change, e.g. after the request was read from Firestore.
+     */
+    public void clearChanges() {
+        changedFields = null;
+    }
+
+    /**
+     * Forgets the changes that were written, keeping any field that was set again since.
+     *
+     * @param written the fields and values that were written
+     */
+    public void markWritten(Map<String, Object> written) {
+        if (changedFields == null) {
+            return;
+        }
+
+        for (Map.Entry<String, Object> entry : written.entrySet()) {
+            Object current = fieldValue(entry.getKey());
+
+            if (current == null ? entry.getValue() == null : current.equals(entry.getValue())) {
+                changedFields.remove(entry.getKey());
+            }
+        }
+    }
+
+    private void markChanged(String field) {
+        if (changedFields == null) {
+            changedFields = new LinkedHashSet<>();
+        }
+
+        changedFields.add(field);
+    }
+
+    /**
+     * The value of a field as it is stored in Firestore
+     */
+    private Object fieldValue(String field) {
+        switch (field) {
+            case "startLocation":
+                return startLocation;
+            case "geohash":
+                return getGeohash();
+            case "endLocation":
+                return endLocation;
+            case "status":
+                return status != null ? status.name() : null;
+            case "driver":
+                return driver;
+            case "rider":
+                return rider;
+            case "cost":
+                return cost;
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
     }
 
     @NonNull
     @Override
     public String toString() {
-        return "Pick up at: " + startLocation.getName();
+        // The tombstone of a completed request has no locations, see RideArchive
+        return "Pick up at: " + (startLocation != null ? startLocation.getName() : "unknown");
     }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
@@ -12,10 +13,10 @@ import com.cmput301w20t23.newber.R;
 import com.cmput301w20t23.newber.controllers.OnMapAndViewReadyListener;
 import com.cmput301w20t23.newber.controllers.RideController;
 import com.cmput301w20t23.newber.controllers.UserController;
+import com.cmput301w20t23.newber.database.ClaimResult;
 import com.cmput301w20t23.newber.helpers.Callback;
 import com.cmput301w20t23.newber.helpers.RouteGetter;
 import com.cmput301w20t23.newber.models.Driver;
-import com.cmput301w20t23.newber.models.RequestStatus;
 import com.cmput301w20t23.newber.models.RideRequest;
 import com.cmput301w20t23.newber.models.Route;
 import com.cmput301w20t23.newber.models.User;
@@ -66,6 +67,14 @@ public class DriverAcceptRequestActivity extends AppCompatActivity {
         setUpTextViews();
     }
 
+    @Override
+    protected void onDestroy() {
+        // Don't draw a route on a map that is gone
+        RouteGetter.cancelRoutes(this);
+
+        super.onDestroy();
+    }
+
     /**
      * Function that sets the Text Views to the Rider that this (driver) accepted the ride request from
      */
@@ -105,15 +114,33 @@ public class DriverAcceptRequestActivity extends AppCompatActivity {
      * Handler Function when a Rider Request has been accepted by the Driver
      * @param view
      */
-    public void acceptRequest(View view) {
-        setResult(Activity.RESULT_OK, new Intent());
-        request.setDriver(driver.getUid());
-        request.setStatus(RequestStatus.OFFERED);
-        rideController.updateRideRequest(request);
-
-        driver.setCurrentRequestId(request.getRequestId());
-        userController.updateUserCurrentRequestId(driver.getUid(), driver.getCurrentRequestId());
-        finish();
+    public void acceptRequest(final View view) {
+        // Another driver may accept the same request, only one claim wins
+        view.setEnabled(false);
+
+        rideController.claimRideRequest(request, driver.getUid(), new Callback<ClaimResult>() {
+            @Override
+            public void myResponseCallback(ClaimResult result) {
+                switch (result) {
+                    case WON:
+                        driver.setCurrentRequestId(request.getRequestId());
+                        setResult(Activity.RESULT_OK, new Intent());
+                        finish();
+                        break;
+                    case LOST:
+                        Toast.makeText(DriverAcceptRequestActivity.this,
+                                "Another driver has already taken this ride", Toast.LENGTH_LONG).show();
+                        setResult(Activity.RESULT_CANCELED, new Intent());
+                        finish();
+                        break;
+                    default:
+                        Toast.makeText(DriverAcceptRequestActivity.this,
+                                "Could not accept this ride, please try again", Toast.LENGTH_LONG).show();
+                        view.setEnabled(true);
+                        break;
+                }
+            }
+        });
     }
 
     private void configureMap() {
@@ -121,7 +148,7 @@ public class DriverAcceptRequestActivity extends AppCompatActivity {
         LatLng dropOff = request.getEndLocation().toLatLng();
 
         // Draw route between pick up and drop off locations
-        RouteGetter.getRoute(pickUp, dropOff, getString(R.string.API_KEY), new Callback<Route>() {
+        RouteGetter.getRoute(this, pickUp, dropOff, RouteGetter.getProvider(this), new Callback<Route>() {
             @Override
             public void myResponseCallback(Route result) {
                 // Drawing polyline in the Google Map
@@ -5,8 +5,11 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.location.Address;
 import android.location.Geocoder;
+import android.location.Location;
 import android.os.Bundle;
+import android.os.Looper;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
@@ -17,11 +20,20 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.cmput301w20t23.newber.R;
+import com.cmput301w20t23.newber.controllers.DriverLocationPublisher;
 import com.cmput301w20t23.newber.controllers.RideController;
-import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.GeoMath;
+import com.cmput301w20t23.newber.helpers.RequestRanker;
+import com.cmput301w20t23.newber.helpers.RideRequestChangeListener;
+import com.cmput301w20t23.newber.helpers.RideRequestIndex;
 import com.cmput301w20t23.newber.models.Driver;
 import com.cmput301w20t23.newber.models.RideRequest;
 import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
@@ -36,13 +48,11 @@ import com.google.android.libraries.places.api.model.Place;
 import com.google.android.libraries.places.widget.AutocompleteSupportFragment;
 import com.google.android.libraries.places.widget.listener.PlaceSelectionListener;
 import com.google.android.material.snackbar.Snackbar;
-import com.google.maps.android.SphericalUtil;
+import com.google.firebase.firestore.ListenerRegistration;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 
@@ -57,6 +67,16 @@ public class DriverRequestActivity extends AppCompatActivity implements OnMapRea
     private static final int DRIVER_ACCEPT_REQUEST = 1;
     private static final double SEARCH_RADIUS = 5000;
 
+    // In a sparse area, the listener widens until it finds this many requests, and they are shown
+    // even if they are further than SEARCH_RADIUS
+    private static final int MIN_SEARCH_RESULTS = 5;
+
+    // Number of requests added to the list at a time as the driver scrolls
+    private static final int PAGE_SIZE = 20;
+
+    // The largest area listened to for pending requests, when the map is zoomed far out
+    private static final double MAX_LISTEN_RADIUS = 50000;
+
     private GoogleMap googleMap;
     private Marker marker;
     private Geocoder geocoder;
@@ -67,6 +87,25 @@ public class DriverRequestActivity extends AppCompatActivity implements OnMapRea
     private ArrayAdapter<RideRequest> requestListAdapter;
     private ListView requestListView;
 
+    // Local index of the pending requests in the area shown on the map, kept up to date by a
+    // Firestore listener. A listener for a new area replaces it once it has its first update.
+    private RideRequestIndex pendingRequestIndex;
+    private ListenerRegistration pendingRequestsListener;
+    private ListenerRegistration nextRequestsListener;
+    private LatLng listenedCenter;
+    private double listenedRadius;
+
+    // The location the driver last searched around, and its requests ranked by distance. The
+    // ranking is null once the index has changed, and is redone when the next page is needed.
+    private LatLng searchLatLng;
+    private RequestRanker rankedRequests;
+    private boolean moreRequests;
+
+    // Publishes the driver's location while they are looking for requests
+    private DriverLocationPublisher locationPublisher;
+    private FusedLocationProviderClient locationClient;
+    private LocationCallback locationCallback;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -101,6 +140,190 @@ public class DriverRequestActivity extends AppCompatActivity implements OnMapRea
                 startActivityForResult(intent, DRIVER_ACCEPT_REQUEST);
             }
         });
+        requestListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView absListView, int scrollState) { }
+
+            @Override
+            public void onScroll(AbsListView absListView, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                // Load the next page once the end of the list comes into view
+                if (firstVisibleItem + visibleItemCount >= totalItemCount) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        pendingRequestIndex = new RideRequestIndex();
+
+        locationPublisher = new DriverLocationPublisher(driver.getUid());
+        locationClient = LocationServices.getFusedLocationProviderClient(this);
+    }
+
+    @Override
+    protected void onPause() {
+        // Write the newest fix, location updates may stop while the app is in the background
+        locationPublisher.flush();
+
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (pendingRequestsListener != null) {
+            pendingRequestsListener.remove();
+        }
+
+        if (nextRequestsListener != null) {
+            nextRequestsListener.remove();
+        }
+
+        // The driver is no longer looking for requests
+        if (locationCallback != null) {
+            locationClient.removeLocationUpdates(locationCallback);
+        }
+        locationPublisher.goOffline(System.currentTimeMillis());
+
+        super.onDestroy();
+    }
+
+    /**
+     * Listens to the pending requests in the area shown on the map, widened to include the search
+     * circle. Nothing changes if the current listener already covers the area.
+     */
+    private void listenToVisibleArea() {
+        LatLngBounds.Builder builder = LatLngBounds.builder();
+        LatLngBounds visibleBounds = googleMap.getProjection().getVisibleRegion().latLngBounds;
+        builder.include(visibleBounds.northeast).include(visibleBounds.southwest);
+
+        if (searchLatLng != null) {
+            LatLngBounds searchBounds = searchBounds(searchLatLng);
+            builder.include(searchBounds.northeast).include(searchBounds.southwest);
+        }
+
+        LatLngBounds bounds = builder.build();
+        LatLng center = bounds.getCenter();
+        double radius = GeoMath.distance(center.latitude, center.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude);
+
+        if (radius > MAX_LISTEN_RADIUS) {
+            center = searchLatLng != null ? searchLatLng : center;
+            radius = MAX_LISTEN_RADIUS;
+        }
+
+        // Keep the current listener if it covers the area and is not much bigger than it
+        if (listenedCenter != null
+                && GeoMath.distance(listenedCenter.latitude, listenedCenter.longitude,
+                        center.latitude, center.longitude) + radius <= listenedRadius
+                && radius * 2 >= listenedRadius) {
+            return;
+        }
+
+        listenToPendingRequests(center, radius);
+    }
+
+    /**
+     * Fills a new index with the pending requests around a location and keeps it up to date, so
+     * searching does not need a round trip to Firestore. Once the new index has its first update it
+     * replaces the old one, and from then on only the rows of the changed requests are updated.
+     * @param center the centre of the area to listen to
+     * @param radius the radius of the area in metres
+     */
+    private void listenToPendingRequests(LatLng center, double radius) {
+        // A listener that has not had its first update yet is superseded by this one
+        if (nextRequestsListener != null) {
+            nextRequestsListener.remove();
+        }
+
+        listenedCenter = center;
+        listenedRadius = radius;
+
+        final RideRequestIndex index = new RideRequestIndex();
+        nextRequestsListener = rideController.addPendingRideRequestsListener(center, radius,
+                MIN_SEARCH_RESULTS, new RideRequestChangeListener() {
+            @Override
+            public void onRideRequestAdded(RideRequest rideRequest) {
+                index.onRideRequestAdded(rideRequest);
+
+                if (index == pendingRequestIndex) {
+                    addRequestRow(rideRequest);
+                }
+            }
+
+            @Override
+            public void onRideRequestModified(RideRequest rideRequest) {
+                index.onRideRequestModified(rideRequest);
+
+                if (index == pendingRequestIndex) {
+                    removeRequestRow(rideRequest.getRequestId());
+                    addRequestRow(rideRequest);
+                }
+            }
+
+            @Override
+            public void onRideRequestRemoved(RideRequest rideRequest) {
+                index.onRideRequestRemoved(rideRequest);
+
+                if (index == pendingRequestIndex) {
+                    removeRequestRow(rideRequest.getRequestId());
+                }
+            }
+
+            @Override
+            public void onRideRequestsSynced() {
+                index.onRideRequestsSynced();
+
+                if (index == pendingRequestIndex) {
+                    return;
+                }
+
+                // First update of the new area, stop listening to the old one
+                if (pendingRequestsListener != null) {
+                    pendingRequestsListener.remove();
+                }
+
+                pendingRequestsListener = nextRequestsListener;
+                nextRequestsListener = null;
+                pendingRequestIndex = index;
+
+                if (searchLatLng != null) {
+                    queryOpenRequests(searchLatLng);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts receiving location fixes and passes them to the publisher, which decides which ones
+     * are written. Fixes keep coming while the driver stands still, so they stay online.
+     */
+    private void startPublishingLocation() {
+        if (locationCallback != null) {
+            return;
+        }
+
+        LocationRequest locationRequest = LocationRequest.create()
+                .setPriority(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY)
+                .setInterval(DriverLocationPublisher.MIN_INTERVAL)
+                .setFastestInterval(DriverLocationPublisher.MIN_INTERVAL);
+
+        locationCallback = new LocationCallback() {
+            @Override
+            public void onLocationResult(LocationResult locationResult) {
+                Location location = locationResult.getLastLocation();
+
+                if (location != null) {
+                    locationPublisher.onLocationChanged(location.getLatitude(), location.getLongitude(),
+                            location.getTime());
+                }
+            }
+        };
+
+        try {
+            locationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
+        } catch (SecurityException e) {
+            System.out.println("Location permission was revoked: " + e);
+            locationCallback = null;
+        }
     }
 
     /**
@@ -185,6 +408,7 @@ public class DriverRequestActivity extends AppCompatActivity implements OnMapRea
                         .show();
 
                 this.googleMap.setMyLocationEnabled(true);
+                startPublishingLocation();
             } else {
                 // Permission request was denied.
                 Snackbar.make(mainLayout, "Location permission was denied",
@@ -252,49 +476,74 @@ public class DriverRequestActivity extends AppCompatActivity implements OnMapRea
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_COARSE_LOCATION)
                 == PackageManager.PERMISSION_GRANTED) {
             this.googleMap.setMyLocationEnabled(true);
+            startPublishingLocation();
         } else {
             requestLocationPermission();
         }
 
+        // Listen to the requests around wherever the map settles
+        this.googleMap.setOnCameraIdleListener(new GoogleMap.OnCameraIdleListener() {
+            @Override
+            public void onCameraIdle() {
+                listenToVisibleArea();
+            }
+        });
+
         // Move the camera to Edmonton
         LatLng Edmonton = new LatLng(53.5461215,-113.4939365);
         this.googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(Edmonton, 10.0f));
     }
 
     /**
-     * Finds available requests with a 5 Km distance radius from the current pick-up location
+     * Finds available requests with a 5 Km distance radius from the current pick-up location,
+     * from the local index of pending requests, and shows the closest page of them
      * @param latLng
      */
-    private void queryOpenRequests(final LatLng latLng) {
-        rideController.getPendingRideRequests(new Callback<ArrayList<RideRequest>>() {
-            @Override
-            public void myResponseCallback(ArrayList<RideRequest> result) {
-                ArrayList<RideRequest> openRequests = new ArrayList<>();
-
-                for (RideRequest rideRequest : result) {
-                    if (SphericalUtil.computeDistanceBetween(
-                            latLng, rideRequest.getStartLocation().toLatLng()) <= SEARCH_RADIUS) {
-                        System.out.println(rideRequest.toString());
-                        openRequests.add(rideRequest);
-                    }
-                }
+    private void queryOpenRequests(LatLng latLng) {
+        searchLatLng = latLng;
+
+        ArrayList<RideRequest> openRequests = openRequestsNear(latLng);
+        rankedRequests = new RequestRanker(latLng.latitude, latLng.longitude, openRequests);
+
+        updateRequestList(rankedRequests.nextPage(PAGE_SIZE));
+        moreRequests = rankedRequests.hasNextPage();
+    }
+
+    /**
+     * Adds the next page of requests to the end of the list, ranking the requests again first if
+     * the index has changed since they were ranked
+     */
+    private void loadNextPage() {
+        if (searchLatLng == null || !moreRequests) {
+            return;
+        }
 
-                Collections.sort(openRequests, new Comparator<RideRequest>() {
-                    @Override
-                    public int compare(RideRequest o1, RideRequest o2) {
-                        double dist1 = SphericalUtil.computeDistanceBetween(
-                                latLng, o1.getStartLocation().toLatLng());
+        if (rankedRequests == null) {
+            ArrayList<RideRequest> openRequests = openRequestsNear(searchLatLng);
+            rankedRequests = new RequestRanker(searchLatLng.latitude, searchLatLng.longitude, openRequests);
 
-                        double dist2 = SphericalUtil.computeDistanceBetween(
-                                latLng, o2.getStartLocation().toLatLng());
+            // The rows already shown are kept up to date, so they are the closest requests
+            rankedRequests.nextPage(requestListAdapter.getCount());
+        }
 
-                        return (int) (dist1 - dist2);
-                    }
-                });
+        requestListAdapter.addAll(rankedRequests.nextPage(PAGE_SIZE));
+        moreRequests = rankedRequests.hasNextPage();
+    }
 
-                updateRequestList(openRequests);
-            }
-        });
+    /**
+     * Gets the pending requests within the search radius, or the closest ones the listener found
+     * if there are too few of them
+     */
+    private ArrayList<RideRequest> openRequestsNear(LatLng latLng) {
+        ArrayList<RideRequest> openRequests =
+                pendingRequestIndex.withinRadius(latLng.latitude, latLng.longitude, SEARCH_RADIUS);
+
+        if (openRequests.size() < MIN_SEARCH_RESULTS) {
+            openRequests = pendingRequestIndex.nearest(latLng.latitude, latLng.longitude,
+                    MIN_SEARCH_RESULTS, MAX_LISTEN_RADIUS);
+        }
+
+        return openRequests;
     }
 
     private void updateRequestList(ArrayList<RideRequest> openRequests) {
@@ -307,6 +556,71 @@ public class DriverRequestActivity extends AppCompatActivity implements OnMapRea
         requestListAdapter.notifyDataSetChanged();
     }
 
+    /**
+     * Inserts a new or changed request into the list, in order of distance, if it is within the
+     * search radius. A request that belongs after the last shown row is left for a later page.
+     * @param rideRequest the request to insert
+     */
+    private void addRequestRow(RideRequest rideRequest) {
+        if (searchLatLng == null || rideRequest.getStartLocation() == null) {
+            return;
+        }
+
+        double distance = distanceFromSearch(rideRequest);
+        if (distance > SEARCH_RADIUS) {
+            return;
+        }
+
+        // The ranking no longer matches the index
+        rankedRequests = null;
+
+        int count = requestListAdapter.getCount();
+        int position = 0;
+        while (position < count && distanceFromSearch(requestListAdapter.getItem(position)) <= distance) {
+            position++;
+        }
+
+        if (position == count && moreRequests) {
+            return;
+        }
+
+        requestListAdapter.insert(rideRequest, position);
+    }
+
+    /**
+     * Removes a request from the list if it is shown
+     * @param requestId the ID of the request to remove
+     */
+    private void removeRequestRow(String requestId) {
+        for (int position = 0; position < requestListAdapter.getCount(); position++) {
+            RideRequest row = requestListAdapter.getItem(position);
+
+            if (row.getRequestId().equals(requestId)) {
+                rankedRequests = null;
+                requestListAdapter.remove(row);
+                return;
+            }
+        }
+    }
+
+    private double distanceFromSearch(RideRequest rideRequest) {
+        return GeoMath.distance(searchLatLng.latitude, searchLatLng.longitude,
+                rideRequest.getStartLocation().getLatitude(), rideRequest.getStartLocation().getLongitude());
+    }
+
+    /**
+     * Gets the bounds of the search circle around a location
+     */
+    private LatLngBounds searchBounds(LatLng latLng) {
+        double latitudeSpan = GeoMath.latitudeSpan(SEARCH_RADIUS);
+        double longitudeSpan = GeoMath.longitudeSpan(latLng.latitude, SEARCH_RADIUS);
+        LatLng southwestCorner =
+                new LatLng(latLng.latitude - latitudeSpan, latLng.longitude - longitudeSpan);
+        LatLng northeastCorner =
+                new LatLng(latLng.latitude + latitudeSpan, latLng.longitude + longitudeSpan);
+        return new LatLngBounds(southwestCorner, northeastCorner);
+    }
+
     private void setMarker(LatLng latLng) {
         if (marker != null) {
             marker.remove();
@@ -315,12 +629,7 @@ public class DriverRequestActivity extends AppCompatActivity implements OnMapRea
         marker = googleMap.addMarker(new MarkerOptions().position(latLng));
 
         // Set up map bounds
-        double distanceCenterToCorner = SEARCH_RADIUS * Math.sqrt(2.0);
-        LatLng southwestCorner =
-                SphericalUtil.computeOffset(latLng, distanceCenterToCorner, 225.0);
-        LatLng northeastCorner =
-                SphericalUtil.computeOffset(latLng, distanceCenterToCorner, 45.0);
-        final LatLngBounds mapBounds = new LatLngBounds(southwestCorner, northeastCorner);
+        final LatLngBounds mapBounds = searchBounds(latLng);
         googleMap.animateCamera(CameraUpdateFactory.newLatLngBounds(mapBounds, 0));
     }
 
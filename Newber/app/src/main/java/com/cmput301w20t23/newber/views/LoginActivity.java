@@ -13,15 +13,13 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.cmput301w20t23.newber.R;
 import com.cmput301w20t23.newber.controllers.UserController;
-import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.database.LocalStateStore;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.AuthResult;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
-import java.util.Map;
-
 /**
  * The Android Activity that handles user login.
  *
@@ -43,16 +41,12 @@ public class LoginActivity extends AppCompatActivity {
 
         FirebaseUser currentUser = mAuth.getCurrentUser();
         if (currentUser != null) {
-            userController.getUser(new Callback<Map<String, Object>>() {
-                @Override
-                public void myResponseCallback(Map<String, Object> result) {
-                    userController.registerUserToken();
+            // MainActivity reads the user itself, and shows the one kept on the device until then
+            userController.registerUserToken();
 
-                    Intent intent = new Intent(LoginActivity.this, MainActivity.class);
-                    intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TASK | Intent.FLAG_ACTIVITY_NEW_TASK);
-                    startActivity(intent);
-                }
-            });
+            Intent intent = new Intent(LoginActivity.this, MainActivity.class);
+            intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TASK | Intent.FLAG_ACTIVITY_NEW_TASK);
+            startActivity(intent);
         }
 
         else {
@@ -81,6 +75,8 @@ public class LoginActivity extends AppCompatActivity {
                     // if login was successful
                     if (task.isSuccessful()) {
                         Log.d("MYTAG", "signInWithEmail:success");
+                        // Forget whatever a previous user left on the device
+                        LocalStateStore.getInstance(LoginActivity.this).clear();
                         userController.registerUserToken();
                         // transition to main screen after log in
                         Intent mainIntent = new Intent(getBaseContext(), MainActivity.class);
@@ -3,12 +3,16 @@ package com.cmput301w20t23.newber.views;
 import android.content.Intent;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
@@ -17,7 +21,10 @@ import androidx.fragment.app.FragmentTransaction;
 import com.cmput301w20t23.newber.R;
 import com.cmput301w20t23.newber.controllers.RideController;
 import com.cmput301w20t23.newber.controllers.UserController;
+import com.cmput301w20t23.newber.database.LocalStateStore;
 import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.RenderedRideRequest;
+import com.cmput301w20t23.newber.helpers.SubscriptionRegistry;
 import com.cmput301w20t23.newber.models.Driver;
 import com.cmput301w20t23.newber.models.Rating;
 import com.cmput301w20t23.newber.models.RideRequest;
@@ -29,19 +36,18 @@ import com.cmput301w20t23.newber.views.fragments.RequestInProgressFragment;
 import com.cmput301w20t23.newber.views.fragments.RequestOfferedFragment;
 import com.cmput301w20t23.newber.views.fragments.RequestPaymentFragment;
 import com.cmput301w20t23.newber.views.fragments.RequestPendingFragment;
+import com.cmput301w20t23.newber.views.fragments.RideRequestDisplay;
 import com.google.zxing.integration.android.IntentIntegrator;
 import com.google.zxing.integration.android.IntentResult;
 
 import java.util.Map;
-import java.util.Observable;
-import java.util.Observer;
 
 /**
  * The Android Activity that acts as the main user screen of the app.
  *
  * @author Amy Hou
  */
-public class MainActivity extends AppCompatActivity implements Observer {
+public class MainActivity extends AppCompatActivity {
     private final UserController userController = new UserController(this);
     private final RideController rideController = new RideController();
 
@@ -55,10 +61,62 @@ public class MainActivity extends AppCompatActivity implements Observer {
 
     private User user;
 
+    /**
+     * The subscription to live updates of the current ride request, held for as long as they are wanted.
+     */
+    private SubscriptionRegistry.Subscription rideRequestSubscription;
+
+    private final Callback<RideRequest> rideRequestSubscriber = new Callback<RideRequest>() {
+        @Override
+        public void myResponseCallback(RideRequest rideRequest) {
+            onRideRequestChanged(rideRequest);
+        }
+    };
+
+    /**
+     * How long to wait for more ride request updates before showing them, in milliseconds.
+     */
+    private static final long RENDER_DEBOUNCE = 100;
+
+    private final Handler renderHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The ride request shown and the fragment showing it, to tell what an update changed.
+     */
+    private RenderedRideRequest shownRequest;
+    private Fragment shownFragment;
+
+    /**
+     * The latest ride request update that has not been shown yet.
+     */
+    private RideRequest latestRequest;
+
+    private final Runnable renderLatestRequest = new Runnable() {
+        @Override
+        public void run() {
+            renderRideRequest(latestRequest);
+        }
+    };
+
+    /**
+     * The user and ride request kept on the device, shown before Firestore answers.
+     */
+    private LocalStateStore localStateStore;
+
+    /**
+     * When the activity was last resumed and how long it then took to show the main screen, in
+     * milliseconds, -1 until it is shown.
+     */
+    private long resumedAt;
+    private long timeToFirstRender = -1;
+    private boolean renderingLocalState = false;
+    private boolean firstRenderFromLocalState = false;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        localStateStore = LocalStateStore.getInstance(this);
 
         System.out.println("In onCreate");
     }
@@ -74,7 +132,9 @@ public class MainActivity extends AppCompatActivity implements Observer {
                 this.userController.getRating(uId, new Callback<Rating>() {
                     @Override
                     public void myResponseCallback(Rating result) {
-                        Rating rating = result;
+                        if (result != null) {
+                            localStateStore.saveRating(result);
+                        }
                     }
                 });
                 break;
@@ -82,14 +142,18 @@ public class MainActivity extends AppCompatActivity implements Observer {
     }
 
     public void displayFragments() {
+        // onResume may run again without onStop, keep only one subscription
+        this.rideController.removeListeners(rideRequestSubscription);
+        rideRequestSubscription = null;
+
         if (currentRequestId != null && !currentRequestId.isEmpty()) {
-            this.rideController.addListenerToRideRequest(this, currentRequestId);
+            rideRequestSubscription = this.rideController.addListenerToRideRequest(rideRequestSubscriber, currentRequestId);
 
             this.rideController.getRideRequest(currentRequestId, new Callback<RideRequest>() {
                 @Override
                 public void myResponseCallback(RideRequest result) {
-                    currRequest = result;
-                    displayFragment();
+                    // Usually the request kept on the device is still current and stays shown
+                    renderRideRequest(result);
                 }
             });
         } else {
@@ -150,17 +214,65 @@ public class MainActivity extends AppCompatActivity implements Observer {
                     currentRequestId = "";
                     this.userController.removeUserCurrentRequestId(user.getUid());
 
+                    // The ride is over, later snapshots of it must not start another rating
+                    this.rideController.removeListeners(rideRequestSubscription);
+                    rideRequestSubscription = null;
+
+                    // The ride has moved to the ride history, its tombstone is not needed anymore
+                    if (role.equals("Rider")) {
+                        this.rideController.removeTombstone(currRequest);
+                    }
+
                     startRatingActivity();
                     riderFragment = new NoRequestFragment(role, user);
                     break;
             }
         }
 
+        shownRequest = RenderedRideRequest.of(currRequest);
+        shownFragment = riderFragment;
+        localStateStore.saveRideRequest(currRequest);
+        recordFirstRender();
+
         FragmentTransaction ft = getSupportFragmentManager().beginTransaction();
         ft.replace(R.id.rider_request_details, riderFragment);
         ft.commitAllowingStateLoss();
     }
 
+    /**
+     * Shows an updated ride request, doing only as much as what is visible changed: a new status
+     * replaces the fragment, other changes are shown by the fragment in place and a duplicate does
+     * nothing.
+     *
+     * @param rideRequest the updated ride request, or null if there is none anymore
+     */
+    private void renderRideRequest(RideRequest rideRequest) {
+        RenderedRideRequest incoming = RenderedRideRequest.of(rideRequest);
+        currRequest = rideRequest;
+
+        if (shownFragment == null) {
+            displayFragment();
+            return;
+        }
+
+        switch (RenderedRideRequest.changeFrom(shownRequest, incoming)) {
+            case NONE:
+                break;
+            case UPDATE:
+                if (shownFragment instanceof RideRequestDisplay) {
+                    ((RideRequestDisplay) shownFragment).updateRideRequest(rideRequest);
+                    shownRequest = incoming;
+                    localStateStore.saveRideRequest(rideRequest);
+                } else {
+                    displayFragment();
+                }
+                break;
+            case REPLACE:
+                displayFragment();
+                break;
+        }
+    }
+
     public void startRatingActivity() {
         // Start Rating Activity
         Intent ratingIntent = new Intent(this, RatingActivity.class);
@@ -195,22 +307,26 @@ public class MainActivity extends AppCompatActivity implements Observer {
         }
     }
 
-    @Override
-    public void update(Observable o, Object arg) {
+    /**
+     * Shows the current ride request again after it changed in Firestore. Bursts of updates are
+     * shown once, after they settle.
+     *
+     * @param rideRequest the changed ride request, or null if it was deleted
+     */
+    public void onRideRequestChanged(RideRequest rideRequest) {
         System.out.println("In Update: ");
-        if (arg == null) {
-            currRequest = null;
-        } else {
-            currRequest = (RideRequest) arg;
-            System.out.println("In notified observer: " + currRequest.toString() + " " + currRequest.getStatus());
-            System.out.println("driver: " + currRequest.getDriver());
-            if ((currRequest.getDriver() == null || currRequest.getDriver() == "" ) && role.matches("Driver")) {
+        if (rideRequest != null) {
+            System.out.println("In notified observer: " + rideRequest.toString() + " " + rideRequest.getStatus());
+            System.out.println("driver: " + rideRequest.getDriver());
+            if ((rideRequest.getDriver() == null || rideRequest.getDriver() == "" ) && role.matches("Driver")) {
                 System.out.println("setting curr to null");
-                currRequest = null;
+                rideRequest = null;
             }
         }
 
-        displayFragment();
+        latestRequest = rideRequest;
+        renderHandler.removeCallbacks(renderLatestRequest);
+        renderHandler.postDelayed(renderLatestRequest, RENDER_DEBOUNCE);
     }
 
     /**
@@ -228,7 +344,6 @@ public class MainActivity extends AppCompatActivity implements Observer {
                 String scannedRequestId = result.getContents();
 
                 if (scannedRequestId.equals(currRequest.getRequestId())) {
-                    this.userController.transferBalance(currRequest);
                     this.rideController.finishRideRequest(user, currRequest);
                     currRequest = null;
                 }
@@ -243,7 +358,9 @@ public class MainActivity extends AppCompatActivity implements Observer {
 
     @Override
     protected void onStop() {
-        this.rideController.removeListeners(this, currentRequestId);
+        this.rideController.removeListeners(rideRequestSubscription);
+        rideRequestSubscription = null;
+        renderHandler.removeCallbacks(renderLatestRequest);
         super.onStop();
     }
 
@@ -251,25 +368,86 @@ public class MainActivity extends AppCompatActivity implements Observer {
     protected void onResume() {
         super.onResume();
         System.out.println("In onResume");
+        resumedAt = SystemClock.elapsedRealtime();
+        timeToFirstRender = -1;
+
+        // Show the user and ride request kept on the device right away, Firestore brings them up
+        // to date below
+        LocalStateStore.State saved = localStateStore.read();
+        if (saved.getUser() != null && saved.getRole() != null) {
+            showUser(saved.getUser(), saved.getRole());
+
+            RideRequest savedRequest = saved.getRideRequest();
+            boolean current = savedRequest != null && currentRequestId != null
+                    && currentRequestId.equals(savedRequest.getRequestId());
+
+            renderingLocalState = true;
+            renderRideRequest(current ? savedRequest : null);
+            recordFirstRender();
+            renderingLocalState = false;
+        }
 
         // Get User object using User Controller
         this.userController.getUser(new Callback<Map<String, Object>>() {
             @Override
             public void myResponseCallback(Map<String, Object> result) {
                 User responseUser = (User) result.get("user");
-                firstName = responseUser.getFirstName();
-                lastName = responseUser.getLastName();
-                username = responseUser.getUsername();
-                phone = responseUser.getPhone();
-                email = responseUser.getEmail();
-                uId = responseUser.getUid();
-                currentRequestId = responseUser.getCurrentRequestId();
-                balance = responseUser.getBalance();
-
-                role = (String) result.get("role");
-                switchRole();
+                String responseRole = (String) result.get("role");
+
+                localStateStore.saveUser(responseUser, responseRole);
+                showUser(responseUser, responseRole);
                 displayFragments();
             }
         });
     }
+
+    /**
+     * Takes the details of the signed in user, from Firestore or kept on the device.
+     *
+     * @param shownUser the user
+     * @param userRole  the user's role
+     */
+    private void showUser(User shownUser, String userRole) {
+        firstName = shownUser.getFirstName();
+        lastName = shownUser.getLastName();
+        username = shownUser.getUsername();
+        phone = shownUser.getPhone();
+        email = shownUser.getEmail();
+        uId = shownUser.getUid();
+        currentRequestId = shownUser.getCurrentRequestId();
+        balance = shownUser.getBalance();
+
+        role = userRole;
+        switchRole();
+    }
+
+    private void recordFirstRender() {
+        if (timeToFirstRender < 0) {
+            timeToFirstRender = SystemClock.elapsedRealtime() - resumedAt;
+            firstRenderFromLocalState = renderingLocalState;
+            System.out.println("Time to first render: " + timeToFirstRender + " ms"
+                    + (firstRenderFromLocalState ? " from local state" : ""));
+        }
+    }
+
+    /**
+     * Gets how long the last resume took to show the main screen, for instrumentation tests.
+     *
+     * @return the time to first render in milliseconds, or -1 if nothing is shown yet
+     */
+    @VisibleForTesting
+    public long getTimeToFirstRender() {
+        return timeToFirstRender;
+    }
+
+    /**
+     * Checks whether the main screen was first shown from the state kept on the device, for
+     * instrumentation tests.
+     *
+     * @return true if it was shown before Firestore answered
+     */
+    @VisibleForTesting
+    public boolean isFirstRenderFromLocalState() {
+        return firstRenderFromLocalState;
+    }
 }
@@ -18,6 +18,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.cmput301w20t23.newber.R;
 import com.cmput301w20t23.newber.controllers.UserController;
+import com.cmput301w20t23.newber.database.LocalStateStore;
 import com.cmput301w20t23.newber.helpers.Callback;
 import com.cmput301w20t23.newber.models.Rating;
 import com.cmput301w20t23.newber.models.User;
@@ -150,6 +151,16 @@ public class ProfileActivity extends AppCompatActivity {
                 dialog.show();
                 return true;
 
+            case R.id.ride_history:
+                // list the finished rides in this role
+                if (user != null) {
+                    Intent historyIntent = new Intent(this, RideHistoryActivity.class);
+                    historyIntent.putExtra("uid", user.getUid());
+                    historyIntent.putExtra("role", role);
+                    startActivity(historyIntent);
+                }
+                return true;
+
             case R.id.logout:
                 // log out
                 logout();
@@ -164,11 +175,21 @@ public class ProfileActivity extends AppCompatActivity {
      * Retrieves rating information from the database.
      */
     public void loadRatings(String uid) {
+        final LocalStateStore localStateStore = LocalStateStore.getInstance(this);
+
+        // Show the rating kept on the device until Firestore answers
+        Rating saved = localStateStore.read().getRating();
+        if (saved != null) {
+            upvotes.setText(Integer.toString(saved.getUpvotes()));
+            downvotes.setText(Integer.toString(saved.getDownvotes()));
+        }
+
         userController.getRating(uid, new Callback<Rating>() {
             @Override
             public void myResponseCallback(Rating result) {
                 upvotes.setText(Integer.toString(result.getUpvotes()));
                 downvotes.setText(Integer.toString(result.getDownvotes()));
+                localStateStore.saveRating(result);
             }
         });
     }
@@ -233,6 +254,7 @@ public class ProfileActivity extends AppCompatActivity {
      */
     public void logout() {
         userController.logout();
+        LocalStateStore.getInstance(this).clear();
         Intent i = new Intent(this, LoginActivity.class);
         i.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TASK | Intent.FLAG_ACTIVITY_NEW_TASK);
         this.startActivity(i);
@@ -29,6 +29,8 @@ public class RatingActivity extends AppCompatActivity {
 
         // Get Driver UID through Intent
         driverUid = getIntent().getStringExtra("driverUid");
+
+        // Reading the rating now also tells the vote which document to increment
         userController.getRating(driverUid, new Callback<Rating>() {
             @Override
             public void myResponseCallback(Rating rating) {
@@ -45,8 +47,7 @@ public class RatingActivity extends AppCompatActivity {
             public void onClick(View view) {
                 System.out.println("good rating received");
                 // Increase driver's upvotes by 1
-                rating.upvote();
-                userController.updateRating(driverUid, rating);
+                userController.upvote(driverUid);
 
                 // Finish activity
                 finish();
@@ -57,9 +58,8 @@ public class RatingActivity extends AppCompatActivity {
             @Override
             public void onClick(View view) {
                 System.out.println("bad rating received");
-                // Decrease driver's upvotes by 1
-                rating.downvote();
-                userController.updateRating(driverUid, rating);
+                // Increase driver's downvotes by 1
+                userController.downvote(driverUid);
 
                 // Finish activity
                 finish();
@@ -0,0 +1,123 @@
+package com.cmput301w20t23.newber.views;
+
+import android.os.Bundle;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.cmput301w20t23.newber.R;
+import com.cmput301w20t23.newber.controllers.RideController;
+import com.cmput301w20t23.newber.database.RideHistoryPage;
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.RideHistoryPager;
+import com.cmput301w20t23.newber.models.RideRequest;
+
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The Android Activity that lists the finished rides of the user, newest first. Pages are loaded
+ * as the list is scrolled, see RideHistoryPager.
+ */
+public class RideHistoryActivity extends AppCompatActivity {
+    //How many rides are read at a time
+    private static final int PAGE_SIZE = 20;
+
+    //How many rows from the end of the list the next page is shown
+    private static final int PREFETCH_DISTANCE = 5;
+
+    private ArrayAdapter<String> historyListAdapter;
+    private TextView emptyText;
+    private Button retryButton;
+    private RideHistoryPager pager;
+
+    private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT);
+    private final DecimalFormat decFormat = new DecimalFormat("#.00");
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_ride_history);
+        setTitle(getString(R.string.ride_history));
+
+        String uid = getIntent().getStringExtra("uid");
+        String role = getIntent().getStringExtra("role");
+
+        emptyText = findViewById(R.id.ride_history_empty);
+        retryButton = findViewById(R.id.ride_history_retry);
+
+        ListView historyListView = findViewById(R.id.ride_history_list);
+        historyListAdapter = new ArrayAdapter<>(this, R.layout.request_list_content);
+        historyListView.setAdapter(historyListAdapter);
+
+        pager = new RideHistoryPager(new RideController(), uid, role, PAGE_SIZE, PREFETCH_DISTANCE,
+                new Callback<List<RideHistoryPage.Entry>>() {
+                    @Override
+                    public void myResponseCallback(List<RideHistoryPage.Entry> entries) {
+                        showEntries(entries);
+                    }
+                });
+
+        retryButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                retryButton.setVisibility(View.GONE);
+                emptyText.setVisibility(View.GONE);
+                pager.retry();
+            }
+        });
+
+        historyListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView absListView, int scrollState) { }
+
+            @Override
+            public void onScroll(AbsListView absListView, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (totalItemCount > 0) {
+                    pager.onScrolled(firstVisibleItem + visibleItemCount - 1, totalItemCount);
+                }
+            }
+        });
+
+        pager.start();
+    }
+
+    /**
+     * Adds a page of rides to the end of the list, or offers to load it again if it failed
+     */
+    private void showEntries(List<RideHistoryPage.Entry> entries) {
+        if (entries == null) {
+            emptyText.setText(R.string.ride_history_error);
+            emptyText.setVisibility(View.VISIBLE);
+            retryButton.setVisibility(View.VISIBLE);
+            return;
+        }
+
+        for (RideHistoryPage.Entry entry : entries) {
+            historyListAdapter.add(describe(entry));
+        }
+
+        boolean empty = historyListAdapter.getCount() == 0 && pager.isExhausted();
+        emptyText.setText(R.string.no_ride_history);
+        emptyText.setVisibility(empty ? View.VISIBLE : View.GONE);
+    }
+
+    private String describe(RideHistoryPage.Entry entry) {
+        RideRequest rideRequest = entry.getRideRequest();
+        String route = rideRequest.getStartLocation() == null || rideRequest.getEndLocation() == null
+                ? ""
+                : "\n" + rideRequest.getStartLocation().getName() + " to " + rideRequest.getEndLocation().getName();
+
+        return dateFormat.format(new Date(entry.getCompletedAt()))
+                + " - " + rideRequest.getStatus().toString()
+                + route
+                + "\n$" + decFormat.format(rideRequest.getCost());
+    }
+}
@@ -22,10 +22,12 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.cmput301w20t23.newber.R;
+import com.cmput301w20t23.newber.controllers.DriverLocationController;
 import com.cmput301w20t23.newber.controllers.RideController;
 import com.cmput301w20t23.newber.helpers.Callback;
 import com.cmput301w20t23.newber.helpers.CloseKeyboard;
 import com.cmput301w20t23.newber.helpers.RouteGetter;
+import com.cmput301w20t23.newber.helpers.RouteProvider;
 import com.cmput301w20t23.newber.models.Location;
 import com.cmput301w20t23.newber.models.Rider;
 import com.cmput301w20t23.newber.models.Route;
@@ -52,6 +54,7 @@ import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.UUID;
 
 /**
  * The Android Activity that handles the creation of a ride request by a rider.
@@ -88,6 +91,17 @@ public class RiderRequestActivity extends AppCompatActivity implements OnMapRead
 
     private RideController rideController;
 
+    //The ID of the ride request this screen creates, generated once so a repeated confirm does not
+    //create a second request
+    private String newRequestId;
+
+    //For showing how many drivers are near the start location
+    private DriverLocationController driverLocationController;
+    private TextView nearbyDriversText;
+
+    //Where routes come from, picked by the route_provider configuration
+    private RouteProvider routeProvider;
+
     /**
      * Function to get human-readable address from a latitude and longitude
      * @param latLng the Latitude/Longitude object
@@ -118,6 +132,23 @@ public class RiderRequestActivity extends AppCompatActivity implements OnMapRead
 
         startMarker = googleMap.addMarker(new MarkerOptions().position(latLng).title("Start"));
         googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(latLng, 12.0f));
+
+        showNearbyDrivers();
+    }
+
+    /**
+     * Shows the number of online drivers near the start location
+     */
+    private void showNearbyDrivers() {
+        driverLocationController.getNearbyDriverCount(startLocation, DriverLocationController.NEARBY_RADIUS,
+                new Callback<Integer>() {
+                    @Override
+                    public void myResponseCallback(Integer count) {
+                        nearbyDriversText.setText(getResources()
+                                .getQuantityString(R.plurals.nearby_drivers, count, count));
+                        nearbyDriversText.setVisibility(View.VISIBLE);
+                    }
+                });
     }
 
     /**
@@ -163,18 +194,7 @@ public class RiderRequestActivity extends AppCompatActivity implements OnMapRead
                 startLocation.setLocationFromLatLng(place.getLatLng(), name);
                 setStartMarker(place.getLatLng());
 
-                if (startLocation.toString() != null && endLocation.toString() != null) {
-                    RouteGetter.getRoute(startLocation.toLatLng(), endLocation.toLatLng(),
-                            getString(R.string.API_KEY), new Callback<Route>() {
-                                @Override
-                                public void myResponseCallback(Route result) {
-                                    if (result != null) {
-                                        drawRoute(result.getPoints());
-                                        calculateFare(result.getDistanceInMetres());
-                                    }
-                                }
-                            });
-                }
+                updateRoute();
             }
 
             @Override
@@ -206,18 +226,7 @@ public class RiderRequestActivity extends AppCompatActivity implements OnMapRead
                 endLocation.setLocationFromLatLng(place.getLatLng(), name);
                 setEndMarker(place.getLatLng());
 
-                if (startLocation.toString() != null && endLocation.toString() != null) {
-                    RouteGetter.getRoute(startLocation.toLatLng(), endLocation.toLatLng(),
-                            getString(R.string.API_KEY), new Callback<Route>() {
-                                @Override
-                                public void myResponseCallback(Route result) {
-                                    if (result != null) {
-                                        drawRoute(result.getPoints());
-                                        calculateFare(result.getDistanceInMetres());
-                                    }
-                                }
-                            });
-                }
+                updateRoute();
             }
 
             @Override
@@ -262,18 +271,7 @@ public class RiderRequestActivity extends AppCompatActivity implements OnMapRead
 
                         startAutocompleteSupportFragment.setText(startLocation.getName());
 
-                        if (startLocation.toString() != null && endLocation.toString() != null) {
-                            RouteGetter.getRoute(startLocation.toLatLng(), endLocation.toLatLng(),
-                                    getString(R.string.API_KEY), new Callback<Route>() {
-                                        @Override
-                                        public void myResponseCallback(Route result) {
-                                            if (result != null) {
-                                                drawRoute(result.getPoints());
-                                                calculateFare(result.getDistanceInMetres());
-                                            }
-                                        }
-                                    });
-                        }
+                        updateRoute();
                     }
                 });
             }
@@ -300,18 +298,7 @@ public class RiderRequestActivity extends AppCompatActivity implements OnMapRead
 
                         endAutocompleteSupportFragment.setText(endLocation.getName());
 
-                        if (startLocation.toString() != null && endLocation.toString() != null) {
-                            RouteGetter.getRoute(startLocation.toLatLng(), endLocation.toLatLng(),
-                                    getString(R.string.API_KEY), new Callback<Route>() {
-                                        @Override
-                                        public void myResponseCallback(Route result) {
-                                            if (result != null) {
-                                                drawRoute(result.getPoints());
-                                                calculateFare(result.getDistanceInMetres());
-                                            }
-                                        }
-                                    });
-                        }
+                        updateRoute();
                     }
                 });
             }
@@ -407,6 +394,27 @@ public class RiderRequestActivity extends AppCompatActivity implements OnMapRead
         }
     }
 
+    /**
+     * Gets the route between the start and end locations once both are set, and draws it and
+     * calculates its fare
+     */
+    private void updateRoute() {
+        if (startLocation.toString() == null || endLocation.toString() == null) {
+            return;
+        }
+
+        RouteGetter.getRoute(this, startLocation.toLatLng(), endLocation.toLatLng(),
+                routeProvider, new Callback<Route>() {
+                    @Override
+                    public void myResponseCallback(Route result) {
+                        if (result != null) {
+                            drawRoute(result.getPoints());
+                            calculateFare(result.getDistanceInMetres());
+                        }
+                    }
+                });
+    }
+
     /**
      * Draws a polyline based on a list of points along the route
      *
@@ -502,6 +510,10 @@ public class RiderRequestActivity extends AppCompatActivity implements OnMapRead
         // Set up the AutoComplete Fragments
         setUpAutoCompleteFragments();
         rideController = new RideController();
+        newRequestId = UUID.randomUUID().toString();
+        driverLocationController = new DriverLocationController();
+        routeProvider = RouteGetter.getProvider(this);
+        nearbyDriversText = findViewById(R.id.nearby_drivers_text);
 
         // Initialize start and locations
         startLocation = new Location();
@@ -515,6 +527,14 @@ public class RiderRequestActivity extends AppCompatActivity implements OnMapRead
         setUpFareButtons();
     }
 
+    @Override
+    protected void onDestroy() {
+        // Don't draw a route on a map that is gone
+        RouteGetter.cancelRoutes(this);
+
+        super.onDestroy();
+    }
+
     /**
      * Cancel Ride Request Function
      * @param view
@@ -545,7 +565,7 @@ public class RiderRequestActivity extends AppCompatActivity implements OnMapRead
             return;
         }
 
-        rideController.createRideRequest(startLocation, endLocation, fareValue, rider.getUid());
+        rideController.createRideRequest(newRequestId, startLocation, endLocation, fareValue, rider.getUid());
         finish();
     }
 }
@@ -12,6 +12,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.cmput301w20t23.newber.R;
 import com.cmput301w20t23.newber.controllers.UserController;
+import com.cmput301w20t23.newber.helpers.Callback;
 import com.google.firebase.auth.FirebaseAuth;
 
 /**
@@ -43,6 +44,31 @@ public class SignUpActivity extends AppCompatActivity {
         actionBar.hide();
 
         userController = new UserController(this);
+
+        // Tell the user as soon as they leave the field if their username is taken
+        final EditText usernameEditText = findViewById(R.id.username_sign_up);
+        usernameEditText.setOnFocusChangeListener(new View.OnFocusChangeListener() {
+            @Override
+            public void onFocusChange(View v, boolean hasFocus) {
+                final String checkedUsername = usernameEditText.getText().toString();
+
+                if (hasFocus || checkedUsername.trim().length() == 0) {
+                    return;
+                }
+
+                userController.checkUsernameTaken(checkedUsername, new Callback<Boolean>() {
+                    @Override
+                    public void myResponseCallback(Boolean taken) {
+                        // Ignore answers for a username that has been edited since
+                        if (!checkedUsername.equals(usernameEditText.getText().toString())) {
+                            return;
+                        }
+
+                        usernameEditText.setError(taken ? "Username has already been taken" : null);
+                    }
+                });
+            }
+        });
     }
 
     @Override
@@ -4,7 +4,6 @@ import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.graphics.Color;
-import android.graphics.Paint;
 import android.net.Uri;
 import android.os.Bundle;
 import android.view.LayoutInflater;
@@ -13,19 +12,12 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.TextView;
 
-import androidx.core.content.ContextCompat;
-import androidx.fragment.app.Fragment;
-
 import com.cmput301w20t23.newber.R;
-import com.cmput301w20t23.newber.controllers.NameOnClickListener;
-import com.cmput301w20t23.newber.controllers.RideController;
-import com.cmput301w20t23.newber.controllers.UserController;
 import com.cmput301w20t23.newber.helpers.Callback;
 import com.cmput301w20t23.newber.models.RequestStatus;
 import com.cmput301w20t23.newber.models.RideRequest;
 import com.cmput301w20t23.newber.models.User;
 
-import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -33,16 +25,7 @@ import java.util.Map;
  *
  * @author Amy Hou
  */
-public class RequestAcceptedFragment extends Fragment {
-
-    private RideRequest rideRequest;
-    private String role;
-
-    /**
-     * Instantiate User and RideRequest controllers
-     */
-    private final RideController rideController = new RideController();
-    private final UserController userController = new UserController(this.getContext());
+public class RequestAcceptedFragment extends RideDetailsFragment {
 
     /**
      * Instantiates a new RequestAcceptedFragment.
@@ -51,8 +34,7 @@ public class RequestAcceptedFragment extends Fragment {
      * @param role    the user's role
      */
     public RequestAcceptedFragment(RideRequest request, String role) {
-        this.rideRequest = request;
-        this.role = role;
+        super(request, role);
     }
 
     @Override
@@ -63,17 +45,11 @@ public class RequestAcceptedFragment extends Fragment {
         final View view = inflater.inflate(R.layout.accepted_fragment, container, false);
 
         // Get view elements
-        TextView pickupLocationTextView = view.findViewById(R.id.pickup_location);
-        TextView dropoffLocationTextView = view.findViewById(R.id.dropoff_location);
-        TextView fareTextView = view.findViewById(R.id.ride_fare);
         TextView userLabelTextView = view.findViewById(R.id.user_label);
-        final TextView usernameTextView = view.findViewById(R.id.username);
         Button button = view.findViewById(R.id.request_accepted_button);
 
         // Set view elements
-        pickupLocationTextView.setText(rideRequest.getStartLocation().getName());
-        dropoffLocationTextView.setText(rideRequest.getEndLocation().getName());
-        fareTextView.setText(String.format(Locale.US, "$%.2f", rideRequest.getCost()));
+        showRideRequest(view);
 
         // Change UI based on role
         switch(role)
@@ -84,17 +60,6 @@ public class RequestAcceptedFragment extends Fragment {
 
                 userLabelTextView.setText("Driver: ");
 
-                // Set values of info box
-                userController.getUser(rideRequest.getDriver(), new Callback<Map<String, Object>>() {
-                    @Override
-                    public void myResponseCallback(Map<String, Object> result) {
-                        User driver = (User) result.get("user");
-                        usernameTextView.setText(driver.getUsername());
-                        usernameTextView.setPaintFlags(usernameTextView.getPaintFlags() | Paint.UNDERLINE_TEXT_FLAG);
-                        usernameTextView.setOnClickListener(new NameOnClickListener(getActivity(), userController, role, driver));
-                    }
-                });
-
                 setUpContactButtons(view);
 
                 button.setOnClickListener(new View.OnClickListener()
@@ -112,10 +77,7 @@ public class RequestAcceptedFragment extends Fragment {
                             public void onClick(DialogInterface dialogInterface, int i) {
                                 dialogInterface.dismiss();
 
-                                userController.removeUserCurrentRequestId(rideRequest.getDriver());
-                                rideRequest.setDriver(null);
-                                rideRequest.setStatus(RequestStatus.PENDING);
-                                rideController.updateRideRequest(rideRequest);
+                                rideController.releaseRideRequest(rideRequest);
                             }
                         });
 
@@ -138,17 +100,6 @@ public class RequestAcceptedFragment extends Fragment {
 
                 userLabelTextView.setText("Rider: ");
 
-                // Set values of info box
-                userController.getUser(rideRequest.getRider(), new Callback<Map<String, Object>>() {
-                    @Override
-                    public void myResponseCallback(Map<String, Object> result) {
-                        User rider = (User) result.get("user");
-                        usernameTextView.setText(rider.getUsername());
-                        usernameTextView.setPaintFlags(usernameTextView.getPaintFlags() | Paint.UNDERLINE_TEXT_FLAG);
-                        usernameTextView.setOnClickListener(new NameOnClickListener(getActivity(), userController, role, rider));
-                    }
-                });
-
                 button.setOnClickListener(new View.OnClickListener()
                 {
                     @Override
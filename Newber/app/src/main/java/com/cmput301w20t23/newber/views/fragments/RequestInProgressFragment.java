@@ -2,7 +2,6 @@ package com.cmput301w20t23.newber.views.fragments;
 
 import android.app.AlertDialog;
 import android.content.DialogInterface;
-import android.graphics.Paint;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -10,36 +9,16 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.TextView;
 
-import androidx.core.content.ContextCompat;
-import androidx.fragment.app.Fragment;
-
 import com.cmput301w20t23.newber.R;
-import com.cmput301w20t23.newber.controllers.NameOnClickListener;
-import com.cmput301w20t23.newber.controllers.RideController;
-import com.cmput301w20t23.newber.controllers.UserController;
-import com.cmput301w20t23.newber.helpers.Callback;
 import com.cmput301w20t23.newber.models.RequestStatus;
 import com.cmput301w20t23.newber.models.RideRequest;
-import com.cmput301w20t23.newber.models.User;
-
-import java.util.Locale;
-import java.util.Map;
 
 /**
  * The Android Fragment that is shown when the user has an in-progress current ride request.
  *
  * @author Amy Hou
  */
-public class RequestInProgressFragment extends Fragment {
-
-    private RideRequest rideRequest;
-    private String role;
-
-    /**
-     * Instantiate RideRequest controller
-     */
-    private final UserController userController = new UserController(this.getContext());
-    private final RideController rideController = new RideController();
+public class RequestInProgressFragment extends RideDetailsFragment {
 
     /**
      * Instantiates a new RequestInProgressFragment.
@@ -48,8 +27,7 @@ public class RequestInProgressFragment extends Fragment {
      * @param role    the user's role
      */
     public RequestInProgressFragment(RideRequest request, String role) {
-        this.rideRequest = request;
-        this.role = role;
+        super(request, role);
     }
 
     @Override
@@ -60,34 +38,17 @@ public class RequestInProgressFragment extends Fragment {
         View view = inflater.inflate(R.layout.in_progress_fragment, container, false);
 
         // Get view elements
-        TextView pickupLocationTextView = view.findViewById(R.id.pickup_location);
-        TextView dropoffLocationTextView = view.findViewById(R.id.dropoff_location);
-        TextView fareTextView = view.findViewById(R.id.ride_fare);
         TextView userLabelTextView = view.findViewById(R.id.user_label);
-        final TextView usernameTextView = view.findViewById(R.id.username);
         Button completeButton = view.findViewById(R.id.complete_ride_button);
 
         // Set view elements
-        pickupLocationTextView.setText(rideRequest.getStartLocation().getName());
-        dropoffLocationTextView.setText(rideRequest.getEndLocation().getName());
-        fareTextView.setText(String.format(Locale.US, "$%.2f", rideRequest.getCost()));
+        showRideRequest(view);
 
         switch (role)
         {
             case "Rider":
                 userLabelTextView.setText("Driver: ");
 
-                // Set values of info box
-                userController.getUser(rideRequest.getDriver(), new Callback<Map<String, Object>>() {
-                    @Override
-                    public void myResponseCallback(Map<String, Object> result) {
-                        User driver = (User) result.get("user");
-                        usernameTextView.setText(driver.getUsername());
-                        usernameTextView.setPaintFlags(usernameTextView.getPaintFlags() | Paint.UNDERLINE_TEXT_FLAG);
-                        usernameTextView.setOnClickListener(new NameOnClickListener(getActivity(), userController, role, driver));
-                    }
-                });
-                
                 completeButton.setText("Complete");
 
                 completeButton.setOnClickListener(new View.OnClickListener()
@@ -124,17 +85,6 @@ public class RequestInProgressFragment extends Fragment {
 
             case "Driver":
                 userLabelTextView.setText("Rider: ");
-                
-                // Set values of info box
-                userController.getUser(rideRequest.getRider(), new Callback<Map<String, Object>>() {
-                    @Override
-                    public void myResponseCallback(Map<String, Object> result) {
-                        User rider = (User) result.get("user");
-                        usernameTextView.setText(rider.getUsername());
-                        usernameTextView.setPaintFlags(usernameTextView.getPaintFlags() | Paint.UNDERLINE_TEXT_FLAG);
-                        usernameTextView.setOnClickListener(new NameOnClickListener(getActivity(), userController, role, rider));
-                    }
-                });
 
                 // Complete ride button only visible by rider; driver hides it
                 completeButton.setVisibility(View.INVISIBLE);
@@ -24,7 +24,7 @@ import com.google.zxing.integration.android.IntentIntegrator;
  *
  * @author Arthur Nonay, Ibrahim Aly
  */
-public class RequestPaymentFragment extends Fragment {
+public class RequestPaymentFragment extends Fragment implements RideRequestDisplay {
     private RideRequest rideRequest;
     private String role;
     private String requestId;
@@ -131,4 +131,10 @@ public class RequestPaymentFragment extends Fragment {
             }
         });
     }
+
+    @Override
+    public void updateRideRequest(RideRequest request) {
+        // The QR code only shows the request ID, which is the same
+        this.rideRequest = request;
+    }
 }
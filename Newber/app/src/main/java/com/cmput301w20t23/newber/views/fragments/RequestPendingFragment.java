@@ -11,7 +11,6 @@ import androidx.fragment.app.Fragment;
 
 import com.cmput301w20t23.newber.R;
 import com.cmput301w20t23.newber.controllers.RideController;
-import com.cmput301w20t23.newber.controllers.UserController;
 import com.cmput301w20t23.newber.models.RideRequest;
 
 import java.util.Locale;
@@ -21,15 +20,18 @@ import java.util.Locale;
  *
  * @author Amy Hou
  */
-public class RequestPendingFragment extends Fragment {
+public class RequestPendingFragment extends Fragment implements RideRequestDisplay {
 
     private RideRequest rideRequest;
 
+    private TextView pickupLocationTextView;
+    private TextView dropoffLocationTextView;
+    private TextView fareTextView;
+
     /**
-     * Instantiate User and RideRequest controllers
+     * Instantiate RideRequest controller
      */
     private RideController rideController = new RideController();
-    private UserController userController = new UserController(this.getContext());
 
     /**
      * Instantiates a new RequestPendingFragment.
@@ -47,29 +49,39 @@ public class RequestPendingFragment extends Fragment {
         View view = inflater.inflate(R.layout.pending_fragment, container, false);
 
         // Get view elements
-        TextView pickupLocationTextView = view.findViewById(R.id.pickup_location);
-        TextView dropoffLocationTextView = view.findViewById(R.id.dropoff_location);
-        TextView fareTextView = view.findViewById(R.id.ride_fare);
+        pickupLocationTextView = view.findViewById(R.id.pickup_location);
+        dropoffLocationTextView = view.findViewById(R.id.dropoff_location);
+        fareTextView = view.findViewById(R.id.ride_fare);
         Button cancelRequestButton = view.findViewById(R.id.rider_pending_request_button);
 
         // Set view elements
         System.out.println(rideRequest.getStartLocation());
-        pickupLocationTextView.setText(rideRequest.getStartLocation().getName());
-        dropoffLocationTextView.setText(rideRequest.getEndLocation().getName());
-        fareTextView.setText(String.format(Locale.US, "$%.2f", rideRequest.getCost()));
+        showDetails();
 
         cancelRequestButton.setOnClickListener(new View.OnClickListener()
         {
             @Override
             public void onClick(View v)
             {
-                // Remove current request ID from firebase user entry
-                userController.removeUserCurrentRequestId(rideRequest.getRider());
-
-                // Remove ride request entry from firebase
+                // Remove ride request entry and the rider's current request ID from firebase
                 rideController.removeRideRequest(rideRequest);
             }
         });
         return view;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void updateRideRequest(RideRequest request) {
+        this.rideRequest = request;
+
+        if (getView() != null) {
+            showDetails();
+        }
+    }
+
+    private void showDetails() {
+        pickupLocationTextView.setText(rideRequest.getStartLocation().getName());
+        dropoffLocationTextView.setText(rideRequest.getEndLocation().getName());
+        fareTextView.setText(String.format(Locale.US, "$%.2f", rideRequest.getCost()));
+    }
+}
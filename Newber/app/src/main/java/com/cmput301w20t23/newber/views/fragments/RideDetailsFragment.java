@@ -0,0 +1,105 @@
+package com.cmput301w20t23.newber.views.fragments;
+
+import android.graphics.Paint;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.fragment.app.Fragment;
+
+import com.cmput301w20t23.newber.R;
+import com.cmput301w20t23.newber.controllers.NameOnClickListener;
+import com.cmput301w20t23.newber.controllers.RideController;
+import com.cmput301w20t23.newber.controllers.UserController;
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.RenderedRideRequest;
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.cmput301w20t23.newber.models.User;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A fragment showing a ride request that has both a rider and a driver: its locations, its fare
+ * and the user on the other side of the ride. Changes to the request are shown in place, and the
+ * other user is only fetched again if they changed.
+ */
+public abstract class RideDetailsFragment extends Fragment implements RideRequestDisplay {
+
+    protected RideRequest rideRequest;
+    protected final String role;
+
+    /**
+     * Instantiate User and RideRequest controllers
+     */
+    protected final RideController rideController = new RideController();
+    protected final UserController userController = new UserController(this.getContext());
+
+    private TextView pickupLocationTextView;
+    private TextView dropoffLocationTextView;
+    private TextView fareTextView;
+    private TextView usernameTextView;
+
+    //The request as it was last shown
+    private RenderedRideRequest shown;
+
+    /**
+     * Instantiates a new RideDetailsFragment.
+     *
+     * @param request the user's current request
+     * @param role    the user's role
+     */
+    protected RideDetailsFragment(RideRequest request, String role) {
+        this.rideRequest = request;
+        this.role = role;
+    }
+
+    /**
+     * Shows the ride request in the views of this fragment, called from onCreateView
+     *
+     * @param view the view of this fragment, with the pickup, dropoff, fare and username views
+     */
+    protected void showRideRequest(View view) {
+        pickupLocationTextView = view.findViewById(R.id.pickup_location);
+        dropoffLocationTextView = view.findViewById(R.id.dropoff_location);
+        fareTextView = view.findViewById(R.id.ride_fare);
+        usernameTextView = view.findViewById(R.id.username);
+
+        showDetails();
+        showOtherUser();
+    }
+
+    @Override
+    public void updateRideRequest(RideRequest request) {
+        this.rideRequest = request;
+
+        if (getView() != null) {
+            String otherUid = shown.getOtherUid(role);
+            showDetails();
+
+            // Only fetch the other user again if they changed
+            if (otherUid == null ? shown.getOtherUid(role) != null : !otherUid.equals(shown.getOtherUid(role))) {
+                showOtherUser();
+            }
+        }
+    }
+
+    private void showDetails() {
+        shown = RenderedRideRequest.of(rideRequest);
+
+        pickupLocationTextView.setText(rideRequest.getStartLocation().getName());
+        dropoffLocationTextView.setText(rideRequest.getEndLocation().getName());
+        fareTextView.setText(String.format(Locale.US, "$%.2f", rideRequest.getCost()));
+    }
+
+    private void showOtherUser() {
+        userController.getUser(shown.getOtherUid(role), new Callback<Map<String, Object>>() {
+            @Override
+            public void myResponseCallback(Map<String, Object> result) {
+                User otherUser = (User) result.get("user");
+                usernameTextView.setText(otherUser.getUsername());
+                usernameTextView.setPaintFlags(usernameTextView.getPaintFlags() | Paint.UNDERLINE_TEXT_FLAG);
+                usernameTextView.setOnClickListener(new NameOnClickListener(getActivity(), userController, role, otherUser));
+            }
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package com.cmput301w20t23.newber.views.fragments;
+
+import com.cmput301w20t23.newber.models.RideRequest;
+
+/**
+ * A fragment showing the details of a ride request, which can show changes to them without being
+ * replaced.
+ */
+public interface RideRequestDisplay {
+    /**
+     * Show the changed details of the ride request, its status is the same
+     *
+     * @param request the changed ride request
+     */
+    void updateRideRequest(RideRequest request);
+}
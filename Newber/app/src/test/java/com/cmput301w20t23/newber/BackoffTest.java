@@ -0,0 +1,50 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.Backoff;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertTrue;
+
+public class BackoffTest {
+    @Test
+    public void testDelayIsWithinJitterRange() {
+        Backoff backoff = new Backoff(100, 1000, new Random(1));
+
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long ceiling = Math.min(1000, 100L << attempt);
+
+            for (int i = 0; i < 1000; i++) {
+                long delay = backoff.delay(attempt);
+
+                assertTrue(delay >= ceiling / 2);
+                assertTrue(delay <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void testDelayIsCappedForLargeAttempts() {
+        Backoff backoff = new Backoff(100, 1000, new Random(2));
+
+        assertTrue(backoff.delay(100) <= 1000);
+        assertTrue(backoff.delay(Integer.MAX_VALUE) <= 1000);
+    }
+
+    @Test
+    public void testDelaysAreSpreadOut() {
+        Backoff backoff = new Backoff(100, 1000, new Random(3));
+        Set<Long> delays = new HashSet<>();
+
+        for (int i = 0; i < 100; i++) {
+            delays.add(backoff.delay(2));
+        }
+
+        // Clients retrying after the same collision should not all wait the same time
+        assertTrue(delays.size() > 50);
+    }
+}
@@ -0,0 +1,73 @@
+package com.cmput301w20t23.newber;
+
+import org.junit.Assume;
+
+import java.util.Locale;
+
+/**
+ * A small timing harness for the benchmark tests. Each benchmark is run a few times to warm up the
+ * JIT before it is timed, and the average time per run is printed so runs can be compared.
+ *
+ * Timings depend on the machine, so tests should print them rather than assert on them. Benchmarks
+ * are skipped unless the tests are run with -Pbenchmarks=true, so they don't slow down every run.
+ */
+public final class Benchmark {
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 10;
+
+    //Results are written here so the JIT cannot remove the benchmarked work
+    public static volatile Object sink;
+
+    // private constructor to prevent instantiation
+    private Benchmark() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Skips the calling test unless benchmarks were asked for
+     */
+    public static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks are off, run with -Pbenchmarks=true", Boolean.getBoolean("benchmarks"));
+    }
+
+    /**
+     * A piece of work to time, returning its result so it is not optimised away
+     */
+    public interface Task {
+        Object run();
+    }
+
+    /**
+     * Runs the task and prints the average time it takes
+     * @param name the name to print the timing under
+     * @param task the work to time
+     * @return the average time per run in nanoseconds
+     */
+    public static long time(String name, Task task) {
+        return time(name, WARMUP_RUNS, TIMED_RUNS, task);
+    }
+
+    /**
+     * Runs the task and prints the average time it takes, for tasks too slow to run the default
+     * number of times
+     * @param name the name to print the timing under
+     * @param warmupRuns the number of untimed runs
+     * @param timedRuns the number of runs to average over
+     * @param task the work to time
+     * @return the average time per run in nanoseconds
+     */
+    public static long time(String name, int warmupRuns, int timedRuns, Task task) {
+        for (int i = 0; i < warmupRuns; i++) {
+            sink = task.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < timedRuns; i++) {
+            sink = task.run();
+        }
+        long average = (System.nanoTime() - start) / timedRuns;
+
+        System.out.println(String.format(Locale.CANADA, "%-50s %12.3f ms/op", name, average / 1e6));
+        return average;
+    }
+}
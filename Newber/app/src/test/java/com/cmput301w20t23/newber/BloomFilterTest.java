@@ -0,0 +1,61 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.BloomFilter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+    @Test
+    public void testNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+
+        for (int i = 0; i < 1000; i++) {
+            filter.add("user" + i);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+
+        for (int i = 0; i < 1000; i++) {
+            filter.add("user" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // Within twice the rate the filter was sized for
+        assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+    }
+
+    @Test
+    public void testClear() {
+        BloomFilter filter = new BloomFilter(10, 0.01);
+        filter.add("newber");
+        assertTrue(filter.mightContain("newber"));
+
+        filter.clear();
+        assertFalse(filter.mightContain("newber"));
+    }
+
+    @Test
+    public void testSizing() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+
+        // About 9.6 bits and 7 hashes per string for a 1% rate
+        assertTrue(filter.getBitCount() >= 9500 && filter.getBitCount() <= 9700);
+        assertTrue(filter.getHashCount() == 7);
+    }
+}
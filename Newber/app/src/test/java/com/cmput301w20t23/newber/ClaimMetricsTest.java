@@ -0,0 +1,64 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.database.ClaimMetrics;
+import com.cmput301w20t23.newber.database.ClaimResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClaimMetricsTest {
+    @Test
+    public void testRecordResults() {
+        ClaimMetrics metrics = new ClaimMetrics();
+
+        metrics.recordClaim();
+        metrics.recordClaim();
+        metrics.recordClaim();
+        metrics.recordConflicts(3);
+        metrics.recordRetry();
+        metrics.recordResult(ClaimResult.WON);
+        metrics.recordResult(ClaimResult.LOST);
+        metrics.recordResult(ClaimResult.FAILED);
+
+        assertEquals(3, metrics.getClaims());
+        assertEquals(1, metrics.getWins());
+        assertEquals(1, metrics.getLosses());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(3, metrics.getConflicts());
+        assertEquals(1, metrics.getRetries());
+        assertEquals("claims=3 won=1 lost=1 failed=1 conflicts=3 retries=1", metrics.toString());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        final ClaimMetrics metrics = new ClaimMetrics();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        metrics.recordClaim();
+                        metrics.recordConflicts(1);
+                        metrics.recordResult(ClaimResult.LOST);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80000, metrics.getClaims());
+        assertEquals(80000, metrics.getConflicts());
+        assertEquals(80000, metrics.getLosses());
+    }
+}
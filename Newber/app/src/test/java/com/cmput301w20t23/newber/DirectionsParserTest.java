@@ -0,0 +1,135 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.DirectionsParser;
+import com.cmput301w20t23.newber.models.Route;
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DirectionsParserTest {
+    // The fixtures are shaped like Directions API responses, with every step of the route
+    private static final String SHORT = "/directions/short.json";
+    private static final String LONG = "/directions/long.json";
+    private static final String ZERO_RESULTS = "/directions/zero_results.json";
+
+    @Test
+    public void testShortRoute() throws IOException {
+        Route route = DirectionsParser.parse(new ByteArrayInputStream(fixture(SHORT)));
+
+        assertNotNull(route);
+        assertEquals(7573, route.getDistanceInMetres(), 0);
+        assertEquals(17, route.getPoints().size());
+        assertPoint(53.5232, -113.5263, route.getPoints().get(0));
+        assertPoint(53.497606, -113.493654, route.getPoints().get(16));
+    }
+
+    @Test
+    public void testLongRoute() throws IOException {
+        Route route = DirectionsParser.parse(new ByteArrayInputStream(fixture(LONG)));
+
+        // The overview polyline, not the polylines of the 160 steps
+        assertNotNull(route);
+        assertEquals(304746, route.getDistanceInMetres(), 0);
+        assertEquals(641, route.getPoints().size());
+        assertPoint(53.675865, -113.444567, route.getPoints().get(640));
+    }
+
+    @Test
+    public void testNoRoute() throws IOException {
+        assertNull(DirectionsParser.parse(new ByteArrayInputStream(fixture(ZERO_RESULTS))));
+        assertNull(DirectionsParser.parse(new StringReader(
+                "{\"error_message\": \"The provided API key is invalid.\", \"routes\": [], \"status\": \"REQUEST_DENIED\"}")));
+        assertNull(DirectionsParser.parse(new StringReader("{\"routes\": [{\"legs\": []}]}")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotADirectionsResponse() throws IOException {
+        DirectionsParser.parse(new StringReader("{\"routes\": {\"legs\": []}}"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedResponse() throws IOException {
+        byte[] json = fixture(SHORT);
+        DirectionsParser.parse(new ByteArrayInputStream(json, 0, json.length / 2));
+    }
+
+    @Test
+    public void benchmarkParse() throws IOException {
+        Benchmark.assumeEnabled();
+
+        final byte[] shortJson = fixture(SHORT);
+        final byte[] longJson = fixture(LONG);
+
+        // How RouteGetter used to read the response, before the JSON was even parsed
+        Benchmark.time("Read long response into a String", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                try {
+                    BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(longJson)));
+                    StringBuilder sb = new StringBuilder();
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        sb.append(line);
+                    }
+                    return sb.toString();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        Benchmark.time("DirectionsParser, short response", 100, 1000, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                return parse(shortJson);
+            }
+        });
+
+        Benchmark.time("DirectionsParser, long response", 20, 100, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                return parse(longJson);
+            }
+        });
+    }
+
+    private static Route parse(byte[] json) {
+        try {
+            return DirectionsParser.parse(new ByteArrayInputStream(json));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void assertPoint(double latitude, double longitude, LatLng point) {
+        assertEquals(latitude, point.latitude, 1e-5);
+        assertEquals(longitude, point.longitude, 1e-5);
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        InputStream in = DirectionsParserTest.class.getResourceAsStream(name);
+        assertNotNull("Missing fixture " + name, in);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,244 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.dispatch.Assignment;
+import com.cmput301w20t23.newber.dispatch.DispatchEngine;
+import com.cmput301w20t23.newber.dispatch.DispatchPoint;
+import com.cmput301w20t23.newber.helpers.GeoMath;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DispatchEngineTest {
+    private static final double EDMONTON_LAT = 53.5461215;
+    private static final double EDMONTON_LNG = -113.4939365;
+
+    //Roughly 100 metres of longitude along the equator
+    private static final double STEP = 0.0009;
+
+    private DispatchEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new DispatchEngine(new ForkJoinPool(), DispatchEngine.DEFAULT_MAX_PICKUP_DISTANCE);
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    /**
+     * Scatters points over a square roughly 30 Km across, centred on Edmonton
+     */
+    private static List<DispatchPoint> createPoints(String prefix, int count, Random random) {
+        List<DispatchPoint> points = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            points.add(new DispatchPoint(prefix + i,
+                    EDMONTON_LAT + (random.nextDouble() - 0.5) * 0.27,
+                    EDMONTON_LNG + (random.nextDouble() - 0.5) * 0.45));
+        }
+
+        return points;
+    }
+
+    private static double distance(DispatchPoint a, DispatchPoint b) {
+        return GeoMath.distance(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude());
+    }
+
+    private static void assertValid(List<Assignment> assignments, List<DispatchPoint> requests,
+                                    List<DispatchPoint> drivers) {
+        Map<String, DispatchPoint> requestsById = new HashMap<>();
+        for (DispatchPoint request : requests) {
+            requestsById.put(request.getId(), request);
+        }
+
+        Map<String, DispatchPoint> driversById = new HashMap<>();
+        for (DispatchPoint driver : drivers) {
+            driversById.put(driver.getId(), driver);
+        }
+
+        HashSet<String> usedRequests = new HashSet<>();
+        HashSet<String> usedDrivers = new HashSet<>();
+
+        for (Assignment assignment : assignments) {
+            assertTrue(usedRequests.add(assignment.getRequestId()));
+            assertTrue(usedDrivers.add(assignment.getDriverId()));
+
+            double distance = distance(requestsById.get(assignment.getRequestId()),
+                    driversById.get(assignment.getDriverId()));
+            assertEquals(distance, assignment.getDistance(), 1e-6);
+            assertTrue(distance <= DispatchEngine.DEFAULT_MAX_PICKUP_DISTANCE);
+        }
+    }
+
+    @Test
+    public void testSwapImprovesGreedyMatch() {
+        // Greedy takes the closest pair r2-d1 and leaves r1 with the far driver d2
+        List<DispatchPoint> requests = new ArrayList<>();
+        requests.add(new DispatchPoint("r1", 0, 0));
+        requests.add(new DispatchPoint("r2", 0, 19 * STEP));
+
+        List<DispatchPoint> drivers = new ArrayList<>();
+        drivers.add(new DispatchPoint("d1", 0, 10 * STEP));
+        drivers.add(new DispatchPoint("d2", 0, 30 * STEP));
+
+        List<Assignment> assignments = engine.solve(requests, drivers);
+
+        assertEquals(2, assignments.size());
+        for (Assignment assignment : assignments) {
+            if (assignment.getRequestId().equals("r1")) {
+                assertEquals("d1", assignment.getDriverId());
+            } else {
+                assertEquals("d2", assignment.getDriverId());
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesAcrossCellEdges() {
+        // The request and driver are a few metres apart, on either side of a geohash boundary
+        List<DispatchPoint> requests = new ArrayList<>();
+        requests.add(new DispatchPoint("r1", 0.0001, -0.0001));
+
+        List<DispatchPoint> drivers = new ArrayList<>();
+        drivers.add(new DispatchPoint("d1", 0.0001, 0.0001));
+
+        assertEquals(1, engine.solve(requests, drivers).size());
+    }
+
+    @Test
+    public void testNothingFurtherThanMaxPickupDistance() {
+        List<DispatchPoint> requests = new ArrayList<>();
+        requests.add(new DispatchPoint("r1", EDMONTON_LAT, EDMONTON_LNG));
+
+        List<DispatchPoint> drivers = new ArrayList<>();
+        drivers.add(new DispatchPoint("d1", EDMONTON_LAT + 0.2, EDMONTON_LNG));
+
+        assertTrue(engine.solve(requests, drivers).isEmpty());
+    }
+
+    @Test
+    public void testLargePoolIsValid() {
+        Random random = new Random(301);
+        List<DispatchPoint> requests = createPoints("request", 5000, random);
+        List<DispatchPoint> drivers = createPoints("driver", 4000, random);
+
+        List<Assignment> assignments = engine.solve(requests, drivers);
+
+        assertValid(assignments, requests, drivers);
+        // Drivers are dense enough that every one of them should find a request
+        assertEquals(drivers.size(), assignments.size());
+    }
+
+    @Test
+    public void benchmarkSolve() {
+        Benchmark.assumeEnabled();
+
+        for (int count : new int[]{1000, 10000, 100000}) {
+            Random random = new Random(count);
+            final List<DispatchPoint> requests = createPoints("request", count, random);
+            final List<DispatchPoint> drivers = createPoints("driver", count * 4 / 5, random);
+
+            long nanos = Benchmark.time("dispatch, " + count + " requests", 2, 3, new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    return engine.solve(requests, drivers);
+                }
+            });
+
+            List<Assignment> assignments = engine.solve(requests, drivers);
+            assertValid(assignments, requests, drivers);
+
+            double total = 0;
+            for (Assignment assignment : assignments) {
+                total += assignment.getDistance();
+            }
+
+            // No assignment of the same requests can beat each request's own closest driver
+            double lowerBound = nearestDriverTotal(assignments, requests, drivers);
+
+            System.out.println(String.format(Locale.CANADA,
+                    "  matched %d of %d, mean pick-up %.0f m, %.3f x lower bound, %.1f ms",
+                    assignments.size(), count, total / assignments.size(), total / lowerBound, nanos / 1e6));
+        }
+    }
+
+    /**
+     * Sums the distance from each matched request to its closest driver, using a grid of drivers
+     */
+    private static double nearestDriverTotal(List<Assignment> assignments, List<DispatchPoint> requests,
+                                             List<DispatchPoint> drivers) {
+        double cellDegrees = 0.01;
+        Map<Long, List<DispatchPoint>> grid = new HashMap<>();
+
+        for (DispatchPoint driver : drivers) {
+            long key = cellKey(driver.getLatitude(), driver.getLongitude(), cellDegrees, 0, 0);
+            List<DispatchPoint> cell = grid.get(key);
+
+            if (cell == null) {
+                cell = new ArrayList<>();
+                grid.put(key, cell);
+            }
+            cell.add(driver);
+        }
+
+        Map<String, DispatchPoint> requestsById = new HashMap<>();
+        for (DispatchPoint request : requests) {
+            requestsById.put(request.getId(), request);
+        }
+
+        double total = 0;
+        for (Assignment assignment : assignments) {
+            DispatchPoint request = requestsById.get(assignment.getRequestId());
+            double best = Double.MAX_VALUE;
+
+            // Widen until a driver is found, then one more ring in case a closer one is diagonal
+            for (int ring = 0, lastRing = Integer.MAX_VALUE; ring <= lastRing; ring++) {
+                for (int dy = -ring; dy <= ring; dy++) {
+                    for (int dx = -ring; dx <= ring; dx++) {
+                        if (Math.max(Math.abs(dx), Math.abs(dy)) != ring) {
+                            continue;
+                        }
+
+                        List<DispatchPoint> cell = grid.get(cellKey(request.getLatitude(),
+                                request.getLongitude(), cellDegrees, dy, dx));
+
+                        if (cell != null) {
+                            for (DispatchPoint driver : cell) {
+                                best = Math.min(best, distance(request, driver));
+                            }
+                        }
+                    }
+                }
+
+                if (best < Double.MAX_VALUE && lastRing == Integer.MAX_VALUE) {
+                    lastRing = ring + 2;
+                }
+            }
+
+            total += best;
+        }
+
+        return total;
+    }
+
+    private static long cellKey(double latitude, double longitude, double cellDegrees, int dy, int dx) {
+        long row = (long) Math.floor(latitude / cellDegrees) + dy;
+        long column = (long) Math.floor(longitude / cellDegrees) + dx;
+        return row * 100000 + column;
+    }
+}
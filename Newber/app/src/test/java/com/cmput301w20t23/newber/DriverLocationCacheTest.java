@@ -0,0 +1,75 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.DriverLocationCache;
+import com.cmput301w20t23.newber.helpers.GeoHash;
+import com.cmput301w20t23.newber.models.DriverLocation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DriverLocationCacheTest {
+    private static final double EDMONTON_LAT = 53.5461215;
+    private static final double EDMONTON_LNG = -113.4939365;
+    private static final double RADIUS = 3000;
+
+    private DriverLocationCache cache;
+    private List<String> cells;
+
+    @Before
+    public void setUp() {
+        cache = new DriverLocationCache(30000, 120000);
+
+        int precision = GeoHash.precisionForRadius(RADIUS, EDMONTON_LAT);
+        cells = new ArrayList<>(GeoHash.ring(EDMONTON_LAT, EDMONTON_LNG, precision, 0));
+        cells.addAll(GeoHash.ring(EDMONTON_LAT, EDMONTON_LNG, precision, 1));
+    }
+
+    @Test
+    public void testDriverLocationGeohash() {
+        DriverLocation driver = new DriverLocation("driver", EDMONTON_LAT, EDMONTON_LNG, true, 0);
+        assertEquals(GeoHash.encode(EDMONTON_LAT, EDMONTON_LNG), driver.getGeohash());
+    }
+
+    @Test
+    public void testMissingCellsExpire() {
+        assertEquals(cells, cache.missingCells(cells, 0));
+
+        cache.put(cells, new ArrayList<DriverLocation>(), 0);
+        assertTrue(cache.missingCells(cells, 29999).isEmpty());
+        assertEquals(cells, cache.missingCells(cells, 30000));
+    }
+
+    @Test
+    public void testNearbyFiltersByRadiusAndFreshness() {
+        List<DriverLocation> drivers = new ArrayList<>();
+        drivers.add(new DriverLocation("close", EDMONTON_LAT + 0.01, EDMONTON_LNG, true, 1000));
+        drivers.add(new DriverLocation("stale", EDMONTON_LAT, EDMONTON_LNG + 0.01, true, -200000));
+        drivers.add(new DriverLocation("offline", EDMONTON_LAT - 0.01, EDMONTON_LNG, false, 1000));
+        // Inside the searched cells, but further than the radius
+        drivers.add(new DriverLocation("far", EDMONTON_LAT + 0.04, EDMONTON_LNG, true, 1000));
+
+        cache.put(cells, drivers, 1000);
+        List<DriverLocation> nearby = cache.nearby(EDMONTON_LAT, EDMONTON_LNG, RADIUS, cells, 2000);
+
+        assertEquals(1, nearby.size());
+        assertEquals("close", nearby.get(0).getUid());
+    }
+
+    @Test
+    public void testPutReplacesCell() {
+        List<DriverLocation> drivers = new ArrayList<>();
+        drivers.add(new DriverLocation("driver", EDMONTON_LAT, EDMONTON_LNG, true, 0));
+        cache.put(cells, drivers, 0);
+        assertEquals(1, cache.nearby(EDMONTON_LAT, EDMONTON_LNG, RADIUS, cells, 0).size());
+
+        // The driver has gone offline by the time the cell is fetched again
+        cache.put(cells, new ArrayList<DriverLocation>(), 40000);
+        assertEquals(0, cache.nearby(EDMONTON_LAT, EDMONTON_LNG, RADIUS, cells, 40000).size());
+    }
+}
@@ -0,0 +1,109 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.controllers.DriverLocationPublisher;
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.models.DriverLocation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DriverLocationPublisherTest {
+    private static final double EDMONTON_LAT = 53.5461215;
+    private static final double EDMONTON_LNG = -113.4939365;
+
+    //Roughly 100 metres of latitude
+    private static final double HUNDRED_METRES = 0.0009;
+
+    private List<DriverLocation> written;
+    private DriverLocationPublisher publisher;
+
+    @Before
+    public void setUp() {
+        written = new ArrayList<>();
+        publisher = new DriverLocationPublisher("driver", new Callback<DriverLocation>() {
+            @Override
+            public void myResponseCallback(DriverLocation driverLocation) {
+                written.add(driverLocation);
+            }
+        });
+    }
+
+    @Test
+    public void testFirstFixIsWritten() {
+        assertTrue(publisher.onLocationChanged(EDMONTON_LAT, EDMONTON_LNG, 0));
+        assertEquals(1, written.size());
+        assertEquals("driver", written.get(0).getUid());
+        assertTrue(written.get(0).isOnline());
+    }
+
+    @Test
+    public void testSmallMovesAreNotWritten() {
+        publisher.onLocationChanged(EDMONTON_LAT, EDMONTON_LNG, 0);
+
+        // A fix every second, moving 10 m each time
+        for (int second = 1; second < 5; second++) {
+            assertFalse(publisher.onLocationChanged(EDMONTON_LAT + second * HUNDRED_METRES / 10,
+                    EDMONTON_LNG, second * 1000));
+        }
+
+        assertEquals(1, publisher.getWriteCount());
+    }
+
+    @Test
+    public void testFastMovesAreThrottled() {
+        publisher.onLocationChanged(EDMONTON_LAT, EDMONTON_LNG, 0);
+
+        // Moving 100 m every second is only written every MIN_INTERVAL
+        for (int second = 1; second <= 20; second++) {
+            publisher.onLocationChanged(EDMONTON_LAT + second * HUNDRED_METRES, EDMONTON_LNG, second * 1000);
+        }
+
+        assertEquals(1 + 20 * 1000 / DriverLocationPublisher.MIN_INTERVAL, publisher.getWriteCount());
+        assertEquals(EDMONTON_LAT + 20 * HUNDRED_METRES, written.get(written.size() - 1).getLatitude(), 1e-9);
+    }
+
+    @Test
+    public void testStandingStillWritesHeartbeat() {
+        publisher.onLocationChanged(EDMONTON_LAT, EDMONTON_LNG, 0);
+
+        assertFalse(publisher.onLocationChanged(EDMONTON_LAT, EDMONTON_LNG, DriverLocationPublisher.MAX_INTERVAL - 1));
+        assertTrue(publisher.onLocationChanged(EDMONTON_LAT, EDMONTON_LNG, DriverLocationPublisher.MAX_INTERVAL));
+    }
+
+    @Test
+    public void testFlushWritesNewestFix() {
+        publisher.onLocationChanged(EDMONTON_LAT, EDMONTON_LNG, 0);
+        publisher.onLocationChanged(EDMONTON_LAT + HUNDRED_METRES / 10, EDMONTON_LNG, 1000);
+        publisher.onLocationChanged(EDMONTON_LAT + HUNDRED_METRES / 5, EDMONTON_LNG, 2000);
+
+        assertTrue(publisher.flush());
+        assertEquals(2, written.size());
+        assertEquals(2000, written.get(1).getUpdatedAt());
+
+        // Nothing new to write
+        assertFalse(publisher.flush());
+    }
+
+    @Test
+    public void testGoOffline() {
+        publisher.goOffline(0);
+        assertEquals(0, written.size());
+
+        publisher.onLocationChanged(EDMONTON_LAT, EDMONTON_LNG, 0);
+        publisher.goOffline(1000);
+
+        assertEquals(2, written.size());
+        assertFalse(written.get(1).isOnline());
+        assertEquals(EDMONTON_LAT, written.get(1).getLatitude(), 1e-9);
+
+        // Coming back online is written straight away
+        assertTrue(publisher.onLocationChanged(EDMONTON_LAT, EDMONTON_LNG, 1500));
+    }
+}
@@ -0,0 +1,141 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.ExpiringLruCache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiringLruCacheTest {
+    private static final long TTL = 1000;
+
+    private List<String> evicted;
+    private ExpiringLruCache<String> cache;
+
+    private static class Recorder implements Callback<String> {
+        final List<String> values = new ArrayList<>();
+
+        @Override
+        public void myResponseCallback(String value) {
+            values.add(value);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        evicted = new ArrayList<>();
+        cache = new ExpiringLruCache<>(3, TTL, new Callback<String>() {
+            @Override
+            public void myResponseCallback(String key) {
+                evicted.add(key);
+            }
+        });
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        assertNull(cache.get("a", 0));
+
+        cache.put("a", "A", 0);
+        assertEquals("A", cache.get("a", 10));
+        assertEquals("A", cache.get("a", 20));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testExpiry() {
+        cache.put("a", "A", 0);
+
+        assertEquals("A", cache.get("a", TTL - 1));
+        assertNull(cache.get("a", TTL));
+        assertFalse(cache.contains("a"));
+        assertEquals(1, evicted.size());
+    }
+
+    @Test
+    public void testPutRefreshesExpiry() {
+        cache.put("a", "A", 0);
+        cache.put("a", "A2", 900);
+
+        assertEquals("A2", cache.get("a", 1500));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        cache.put("a", "A", 0);
+        cache.put("b", "B", 0);
+        cache.put("c", "C", 0);
+
+        // "a" is used, so "b" is now the least recently used
+        cache.get("a", 1);
+        cache.put("d", "D", 2);
+
+        assertEquals(3, cache.size());
+        assertEquals(1, evicted.size());
+        assertEquals("b", evicted.get(0));
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        Recorder third = new Recorder();
+
+        assertTrue(cache.beginLoad("a", first));
+        assertFalse(cache.beginLoad("a", second));
+        assertFalse(cache.beginLoad("a", third));
+        assertEquals(2, cache.getCoalesced());
+
+        cache.put("a", "A", 0);
+
+        assertEquals(1, first.values.size());
+        assertEquals("A", first.values.get(0));
+        assertEquals("A", second.values.get(0));
+        assertEquals("A", third.values.get(0));
+
+        // Later changes update the cache without calling the waiters again
+        cache.put("a", "A2", 1);
+        assertEquals(1, first.values.size());
+        assertEquals("A2", cache.get("a", 2));
+    }
+
+    @Test
+    public void testFailedLoad() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+
+        cache.beginLoad("a", first);
+        cache.beginLoad("a", second);
+        cache.failLoad("a", null);
+
+        assertNull(first.values.get(0));
+        assertNull(second.values.get(0));
+        assertFalse(cache.contains("a"));
+
+        // The next miss loads again
+        assertTrue(cache.beginLoad("a", new Recorder()));
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put("a", "A", 0);
+        cache.invalidate("a");
+        cache.invalidate("missing");
+
+        assertNull(cache.get("a", 1));
+        assertEquals(1, evicted.size());
+    }
+}
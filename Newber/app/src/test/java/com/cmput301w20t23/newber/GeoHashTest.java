@@ -0,0 +1,100 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.GeoHash;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeoHashTest {
+    private static final double EDMONTON_LAT = 53.5461215;
+    private static final double EDMONTON_LNG = -113.4939365;
+
+    @Test
+    public void testEncode() {
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals("c3x29", GeoHash.encode(EDMONTON_LAT, EDMONTON_LNG, 5));
+        assertEquals(GeoHash.DEFAULT_PRECISION, GeoHash.encode(EDMONTON_LAT, EDMONTON_LNG).length());
+    }
+
+    @Test
+    public void testEncodeIsPrefixOfLongerPrecision() {
+        String full = GeoHash.encode(EDMONTON_LAT, EDMONTON_LNG, GeoHash.MAX_PRECISION);
+
+        for (int precision = 1; precision < GeoHash.MAX_PRECISION; precision++) {
+            assertTrue(full.startsWith(GeoHash.encode(EDMONTON_LAT, EDMONTON_LNG, precision)));
+        }
+    }
+
+    @Test
+    public void testRingSizes() {
+        assertEquals(1, GeoHash.ring(EDMONTON_LAT, EDMONTON_LNG, 6, 0).size());
+        assertEquals(8, GeoHash.ring(EDMONTON_LAT, EDMONTON_LNG, 6, 1).size());
+        assertEquals(16, GeoHash.ring(EDMONTON_LAT, EDMONTON_LNG, 6, 2).size());
+
+        List<String> cells = new ArrayList<>(GeoHash.ring(EDMONTON_LAT, EDMONTON_LNG, 6, 0));
+        cells.addAll(GeoHash.ring(EDMONTON_LAT, EDMONTON_LNG, 6, 1));
+        cells.addAll(GeoHash.ring(EDMONTON_LAT, EDMONTON_LNG, 6, 2));
+        assertEquals(25, new HashSet<>(cells).size());
+    }
+
+    @Test
+    public void testRingAtPoleAndAntimeridian() {
+        // No rows past the pole
+        assertEquals(5, GeoHash.ring(89.99, 0, 4, 1).size());
+
+        // Neighbours across the antimeridian wrap around to the other side
+        List<String> ring = GeoHash.ring(0.01, 179.99, 4, 1);
+        assertEquals(8, ring.size());
+        assertTrue(ring.contains(GeoHash.encode(0.01, -179.99, 4)));
+    }
+
+    @Test
+    public void testCoveringCellsContainEverythingInRadius() {
+        double radius = 5000;
+        int precision = GeoHash.precisionForRadius(radius, EDMONTON_LAT);
+
+        HashSet<String> cells = new HashSet<>(GeoHash.ring(EDMONTON_LAT, EDMONTON_LNG, precision, 0));
+        cells.addAll(GeoHash.ring(EDMONTON_LAT, EDMONTON_LNG, precision, 1));
+
+        LatLng center = new LatLng(EDMONTON_LAT, EDMONTON_LNG);
+        Random random = new Random(301);
+
+        for (int i = 0; i < 1000; i++) {
+            LatLng point = SphericalUtil.computeOffset(center, random.nextDouble() * radius,
+                    random.nextDouble() * 360);
+            assertTrue(cells.contains(GeoHash.encode(point.latitude, point.longitude, precision)));
+        }
+    }
+
+    @Test
+    public void testCoveredRadiusGrowsWithRings() {
+        int precision = GeoHash.precisionForRadius(5000, EDMONTON_LAT);
+
+        assertTrue(GeoHash.coveredRadius(precision, EDMONTON_LAT, 1) >= 5000);
+        assertTrue(GeoHash.coveredRadius(precision, EDMONTON_LAT, 2)
+                > GeoHash.coveredRadius(precision, EDMONTON_LAT, 1));
+        // One more character makes the cells too small to cover the radius with one ring
+        assertTrue(GeoHash.coveredRadius(precision + 1, EDMONTON_LAT, 1) < 5000);
+    }
+
+    @Test
+    public void testToRangesMergesContiguousCells() {
+        List<String[]> ranges = GeoHash.toRanges(Arrays.asList("c3x2d", "c3x29", "c3x2c", "c3x2e", "c3x29"));
+
+        assertEquals(2, ranges.size());
+        assertEquals("c3x29", ranges.get(0)[0]);
+        assertEquals("c3x29~", ranges.get(0)[1]);
+        assertEquals("c3x2c", ranges.get(1)[0]);
+        assertEquals("c3x2e~", ranges.get(1)[1]);
+    }
+}
@@ -0,0 +1,187 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.GeoMath;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeoMathTest {
+    private static final LatLng EDMONTON = new LatLng(53.5461215, -113.4939365);
+
+    private static LatLng randomPoint(Random random, double maxLatitude) {
+        return new LatLng((random.nextDouble() * 2 - 1) * maxLatitude, random.nextDouble() * 360 - 180);
+    }
+
+    private static LatLng randomOffset(Random random, LatLng from, double maxDistance) {
+        return SphericalUtil.computeOffset(from, random.nextDouble() * maxDistance, random.nextDouble() * 360);
+    }
+
+    @Test
+    public void testHaversineMatchesSphericalUtil() {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 100000; i++) {
+            LatLng a = randomPoint(random, 90);
+            LatLng b = randomPoint(random, 90);
+            double expected = SphericalUtil.computeDistanceBetween(a, b);
+
+            assertEquals(expected, GeoMath.haversine(a.latitude, a.longitude, b.latitude, b.longitude),
+                    Math.max(expected * 1e-9, 1e-6));
+        }
+    }
+
+    @Test
+    public void testShortRangeErrorBound() {
+        Random random = new Random(2);
+
+        for (int i = 0; i < 200000; i++) {
+            LatLng a = randomPoint(random, GeoMath.MAX_SHORT_RANGE_LATITUDE);
+            LatLng b = randomOffset(random, a, 40000);
+            double expected = SphericalUtil.computeDistanceBetween(a, b);
+
+            assertEquals(expected, GeoMath.distance(a.latitude, a.longitude, b.latitude, b.longitude),
+                    Math.max(expected * GeoMath.MAX_RELATIVE_ERROR, 1e-6));
+        }
+    }
+
+    @Test
+    public void testLongRangeFallsBackToHaversine() {
+        Random random = new Random(3);
+
+        for (int i = 0; i < 100000; i++) {
+            LatLng a = randomPoint(random, 90);
+            LatLng b = randomPoint(random, 90);
+            double expected = SphericalUtil.computeDistanceBetween(a, b);
+
+            assertEquals(expected, GeoMath.distance(a.latitude, a.longitude, b.latitude, b.longitude),
+                    Math.max(expected * GeoMath.MAX_RELATIVE_ERROR, 1e-6));
+        }
+    }
+
+    @Test
+    public void testAcrossAntimeridian() {
+        LatLng west = new LatLng(10, 179.99);
+        LatLng east = new LatLng(10, -179.99);
+        double expected = SphericalUtil.computeDistanceBetween(west, east);
+
+        assertEquals(expected, GeoMath.distance(west.latitude, west.longitude, east.latitude, east.longitude),
+                expected * GeoMath.MAX_RELATIVE_ERROR);
+        assertTrue(GeoMath.withinDistance(west.latitude, west.longitude, east.latitude, east.longitude, 3000));
+    }
+
+    @Test
+    public void testCircleMatchesSphericalUtil() {
+        Random random = new Random(4);
+
+        for (double latitude : new double[]{0, 53.5, -70, 85, 89.9}) {
+            for (double radius : new double[]{10, 5000, 50000, 2000000}) {
+                LatLng center = new LatLng(latitude, random.nextDouble() * 360 - 180);
+                GeoMath.Circle circle = GeoMath.circle(center.latitude, center.longitude, radius);
+
+                for (int i = 0; i < 20000; i++) {
+                    LatLng point = randomOffset(random, center, radius * 1.5);
+
+                    assertEquals(SphericalUtil.computeDistanceBetween(center, point) <= radius,
+                            circle.contains(point.latitude, point.longitude));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCircleEdge() {
+        GeoMath.Circle circle = GeoMath.circle(EDMONTON.latitude, EDMONTON.longitude, 1000);
+
+        for (double heading = 0; heading < 360; heading += 15) {
+            LatLng inside = SphericalUtil.computeOffset(EDMONTON, 999.99, heading);
+            LatLng outside = SphericalUtil.computeOffset(EDMONTON, 1000.01, heading);
+
+            assertTrue(circle.contains(inside.latitude, inside.longitude));
+            assertFalse(circle.contains(outside.latitude, outside.longitude));
+        }
+    }
+
+    @Test
+    public void testBoundingBoxSpans() {
+        for (double heading : new double[]{0, 90, 180, 270}) {
+            LatLng edge = SphericalUtil.computeOffset(EDMONTON, 5000, heading);
+
+            assertTrue(Math.abs(edge.latitude - EDMONTON.latitude) <= GeoMath.latitudeSpan(5000) + 1e-12);
+            assertTrue(Math.abs(edge.longitude - EDMONTON.longitude)
+                    <= GeoMath.longitudeSpan(EDMONTON.latitude, 5000) + 1e-12);
+        }
+
+        assertEquals(180.0, GeoMath.longitudeSpan(89.99, 5000), 0);
+    }
+
+    @Test
+    public void benchmarkDistance() {
+        Benchmark.assumeEnabled();
+
+        Random random = new Random(5);
+        final int count = 100000;
+        final LatLng[] latLngs = new LatLng[count];
+        final double[] latitudes = new double[count];
+        final double[] longitudes = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            latLngs[i] = randomOffset(random, EDMONTON, 20000);
+            latitudes[i] = latLngs[i].latitude;
+            longitudes[i] = latLngs[i].longitude;
+        }
+
+        Benchmark.time("SphericalUtil.computeDistanceBetween, " + count + " points", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                double sum = 0;
+                for (LatLng latLng : latLngs) {
+                    sum += SphericalUtil.computeDistanceBetween(EDMONTON, latLng);
+                }
+                return sum;
+            }
+        });
+
+        Benchmark.time("GeoMath.haversine, " + count + " points", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                double sum = 0;
+                for (int i = 0; i < count; i++) {
+                    sum += GeoMath.haversine(EDMONTON.latitude, EDMONTON.longitude, latitudes[i], longitudes[i]);
+                }
+                return sum;
+            }
+        });
+
+        Benchmark.time("GeoMath.distance, " + count + " points", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                double sum = 0;
+                for (int i = 0; i < count; i++) {
+                    sum += GeoMath.distance(EDMONTON.latitude, EDMONTON.longitude, latitudes[i], longitudes[i]);
+                }
+                return sum;
+            }
+        });
+
+        Benchmark.time("GeoMath.Circle.contains 3 Km, " + count + " points", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                GeoMath.Circle circle = GeoMath.circle(EDMONTON.latitude, EDMONTON.longitude, 3000);
+                int found = 0;
+                for (int i = 0; i < count; i++) {
+                    if (circle.contains(latitudes[i], longitudes[i])) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+        });
+    }
+}
@@ -0,0 +1,288 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.Backoff;
+import com.cmput301w20t23.newber.helpers.HttpTransport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the transport against a stub server on the loopback interface
+ */
+public class HttpTransportTest {
+    private static final String BODY = "{\"routes\": [], \"status\": \"ZERO_RESULTS\"}";
+
+    private static final HttpTransport.BodyParser<String> READ_ALL = new HttpTransport.BodyParser<String>() {
+        @Override
+        public String parse(InputStream body) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        }
+    };
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private ExecutorService hedgeExecutor;
+
+    //The client ports the server saw, one per connection
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        hedgeExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        hedgeExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws IOException {
+        handle("/route", new Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int request) throws IOException {
+                send(exchange, 200, BODY.getBytes("UTF-8"));
+            }
+        });
+        HttpTransport transport = transport(1, 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(BODY, transport.get(url("/route"), READ_ALL));
+        }
+
+        assertEquals(5, requests.get());
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        handle("/route", new Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int request) throws IOException {
+                assertEquals("gzip", exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+                gzip.write(BODY.getBytes("UTF-8"));
+                gzip.close();
+
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                send(exchange, 200, compressed.toByteArray());
+            }
+        });
+
+        assertEquals(BODY, transport(1, 0).get(url("/route"), READ_ALL));
+    }
+
+    @Test
+    public void testServerErrorsAreRetried() throws IOException {
+        handle("/route", new Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int request) throws IOException {
+                if (request < 3) {
+                    send(exchange, 503, "Unavailable".getBytes("UTF-8"));
+                } else {
+                    send(exchange, 200, BODY.getBytes("UTF-8"));
+                }
+            }
+        });
+        HttpTransport transport = transport(3, 0);
+
+        assertEquals(BODY, transport.get(url("/route"), READ_ALL));
+        assertEquals(3, requests.get());
+        assertEquals(2, transport.getRetries());
+
+        // The error bodies were read, so it was all one connection
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() throws IOException {
+        handle("/route", new Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int request) throws IOException {
+                send(exchange, 403, "Denied".getBytes("UTF-8"));
+            }
+        });
+
+        try {
+            transport(3, 0).get(url("/route"), READ_ALL);
+            fail("Expected a 403");
+        } catch (HttpTransport.HttpStatusException e) {
+            assertEquals(403, e.getStatus());
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testTimeoutsGiveUpAfterTheLastAttempt() throws IOException {
+        final CountDownLatch release = new CountDownLatch(1);
+        handle("/route", new Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int request) throws IOException {
+                await(release);
+                send(exchange, 200, BODY.getBytes("UTF-8"));
+            }
+        });
+        HttpTransport transport = new HttpTransport(1000, 100, 5000, 2, new Backoff(10, 10), 0, null);
+
+        try {
+            transport.get(url("/route"), READ_ALL);
+            fail("Expected a timeout");
+        } catch (SocketTimeoutException e) {
+            // Expected
+        } finally {
+            release.countDown();
+        }
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testDeadlineStopsRetries() throws IOException {
+        final CountDownLatch release = new CountDownLatch(1);
+        handle("/route", new Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int request) throws IOException {
+                await(release);
+                send(exchange, 200, BODY.getBytes("UTF-8"));
+            }
+        });
+        // Ten attempts are allowed, but not the time for them
+        HttpTransport transport = new HttpTransport(1000, 200, 300, 10, new Backoff(10, 10), 0, null);
+
+        long start = System.currentTimeMillis();
+        try {
+            transport.get(url("/route"), READ_ALL);
+            fail("Expected a timeout");
+        } catch (SocketTimeoutException e) {
+            // Expected
+        } finally {
+            release.countDown();
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertTrue(requests.get() <= 3);
+    }
+
+    @Test
+    public void testSlowRequestIsHedged() throws IOException {
+        final CountDownLatch release = new CountDownLatch(1);
+        handle("/route", new Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int request) throws IOException {
+                // The first request is stuck, the hedge is answered right away
+                if (request == 1) {
+                    await(release);
+                }
+                send(exchange, 200, BODY.getBytes("UTF-8"));
+            }
+        });
+        HttpTransport transport = transport(1, 50);
+
+        long start = System.currentTimeMillis();
+        try {
+            assertEquals(BODY, transport.get(url("/route"), READ_ALL));
+        } finally {
+            release.countDown();
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, transport.getHedges());
+        assertEquals(1, transport.getHedgeWins());
+    }
+
+    @Test
+    public void testFastRequestIsNotHedged() throws IOException {
+        handle("/route", new Responder() {
+            @Override
+            public void respond(HttpExchange exchange, int request) throws IOException {
+                send(exchange, 200, BODY.getBytes("UTF-8"));
+            }
+        });
+        HttpTransport transport = transport(1, 1000);
+
+        assertEquals(BODY, transport.get(url("/route"), READ_ALL));
+        assertEquals(0, transport.getHedges());
+        assertEquals(1, requests.get());
+    }
+
+    /**
+     * Answers a request, numbered from 1
+     */
+    private interface Responder {
+        void respond(HttpExchange exchange, int request) throws IOException;
+    }
+
+    private void handle(String path, final Responder responder) {
+        server.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                responder.respond(exchange, requests.incrementAndGet());
+            }
+        });
+    }
+
+    private HttpTransport transport(int maxAttempts, long hedgeDelay) {
+        return new HttpTransport(1000, 5000, 10000, maxAttempts, new Backoff(10, 20), hedgeDelay,
+                hedgeExecutor);
+    }
+
+    private String url(String path) {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":"
+                + server.getAddress().getPort() + path;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.JsonPullParser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonPullParserTest {
+    @Test
+    public void testReadsEveryKindOfValue() throws IOException {
+        JsonPullParser parser = parser("{\"a\": [1, -2.5e3, true, false, null, \"x\"], \"b\": {}, \"c\": []}");
+
+        parser.beginObject();
+        assertEquals("a", parser.nextName());
+        parser.beginArray();
+        assertEquals(1, parser.nextDouble(), 0);
+        assertEquals(-2500, parser.nextDouble(), 0);
+        assertTrue(parser.nextBoolean());
+        assertFalse(parser.nextBoolean());
+        parser.nextNull();
+        assertEquals("x", parser.nextString());
+        assertFalse(parser.hasNext());
+        parser.endArray();
+
+        assertEquals("b", parser.nextName());
+        parser.beginObject();
+        assertFalse(parser.hasNext());
+        parser.endObject();
+
+        assertEquals("c", parser.nextName());
+        parser.beginArray();
+        assertFalse(parser.hasNext());
+        parser.endArray();
+
+        parser.endObject();
+        assertEquals(JsonPullParser.Token.END_DOCUMENT, parser.peek());
+    }
+
+    @Test
+    public void testEscapes() throws IOException {
+        JsonPullParser parser = parser("[\"a\\\"b\\\\c\\/d\\n\\u00e9\\t\"]");
+
+        parser.beginArray();
+        assertEquals("a\"b\\c/d\né\t", parser.nextString());
+        parser.endArray();
+    }
+
+    @Test
+    public void testSkipValue() throws IOException {
+        JsonPullParser parser = parser("{\"skip\": {\"a\": [1, {\"b\": \"]}\\\"\"}], \"c\": null}, \"keep\": 7}");
+
+        parser.beginObject();
+        assertEquals("skip", parser.nextName());
+        parser.skipValue();
+        assertEquals("keep", parser.nextName());
+        assertEquals(7, parser.nextDouble(), 0);
+        parser.endObject();
+    }
+
+    @Test
+    public void testValuesAcrossBufferRefills() throws IOException {
+        // One character at a time, so every token is split across reads
+        final String json = "{\"name\": \"a long enough string\", \"number\": 12345.5}";
+        JsonPullParser parser = new JsonPullParser(new Reader() {
+            private int pos = 0;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (pos == json.length()) {
+                    return -1;
+                }
+                buffer[offset] = json.charAt(pos++);
+                return 1;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        parser.beginObject();
+        assertEquals("name", parser.nextName());
+        assertEquals("a long enough string", parser.nextString());
+        assertEquals("number", parser.nextName());
+        assertEquals(12345.5, parser.nextDouble(), 0);
+        parser.endObject();
+    }
+
+    @Test
+    public void testMalformedJson() {
+        String[] malformed = {"{\"a\" 1}", "[1 2]", "{\"a\": \"unterminated", "[1}", "{a: 1}", "[1,"};
+
+        for (String json : malformed) {
+            try {
+                JsonPullParser parser = parser(json);
+                parser.skipValue();
+                fail("Parsed " + json);
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWrongType() throws IOException {
+        JsonPullParser parser = parser("[\"1\"]");
+        parser.beginArray();
+        parser.nextDouble();
+    }
+
+    private static JsonPullParser parser(String json) {
+        return new JsonPullParser(new StringReader(json));
+    }
+}
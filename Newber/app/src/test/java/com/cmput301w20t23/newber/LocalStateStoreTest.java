@@ -0,0 +1,163 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.database.LocalStateStore;
+import com.cmput301w20t23.newber.models.Driver;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.Rating;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.cmput301w20t23.newber.models.Rider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalStateStoreTest {
+    private File file;
+    private List<Runnable> pendingWrites;
+    private Executor writer;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("local_state", ".bin");
+        file.delete();
+
+        pendingWrites = new ArrayList<>();
+        writer = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pendingWrites.add(command);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void runWrites() {
+        for (Runnable write : pendingWrites) {
+            write.run();
+        }
+        pendingWrites.clear();
+    }
+
+    private static RideRequest testRequest() {
+        Location start = new Location();
+        start.setName("Start");
+        start.setLatitude(53.5232);
+        start.setLongitude(-113.5263);
+        Location end = new Location();
+        end.setName("End");
+        end.setLatitude(53.5461);
+        end.setLongitude(-113.4938);
+
+        RideRequest request = new RideRequest("123", start, end, RequestStatus.ACCEPTED, "riderId", "driverId", 12.5);
+        request.setVersion(4);
+        return request;
+    }
+
+    @Test
+    public void testEmptyStore() {
+        LocalStateStore.State state = new LocalStateStore(file, writer).read();
+
+        assertNull(state.getUser());
+        assertNull(state.getRole());
+        assertNull(state.getRating());
+        assertNull(state.getRideRequest());
+    }
+
+    @Test
+    public void testStateSurvivesRestart() {
+        LocalStateStore store = new LocalStateStore(file, writer);
+        store.saveUser(new Rider("First", "Last", "rider", "7801234567", "rider@example.com", "riderId", "123", 50), "Rider");
+        store.saveRideRequest(testRequest());
+        runWrites();
+
+        LocalStateStore.State state = new LocalStateStore(file, writer).read();
+
+        assertTrue(state.getUser() instanceof Rider);
+        assertEquals("Rider", state.getRole());
+        assertEquals("rider", state.getUser().getUsername());
+        assertEquals("riderId", state.getUser().getUid());
+        assertEquals("123", state.getUser().getCurrentRequestId());
+        assertEquals(50, state.getUser().getBalance(), 0);
+
+        RideRequest request = state.getRideRequest();
+        assertEquals("123", request.getRequestId());
+        assertEquals(RequestStatus.ACCEPTED, request.getStatus());
+        assertEquals("Start", request.getStartLocation().getName());
+        assertEquals(-113.4938, request.getEndLocation().getLongitude(), 0);
+        assertEquals("driverId", request.getDriver());
+        assertEquals(12.5, request.getCost(), 0);
+        assertEquals(4, request.getVersion());
+        assertFalse(request.hasChanges());
+    }
+
+    @Test
+    public void testDriverAndRating() {
+        LocalStateStore store = new LocalStateStore(file, writer);
+        store.saveUser(new Driver("First", "Last", "driver", "7801234567", "driver@example.com", "driverId", "", null, 0), "Driver");
+        store.saveRating(new Rating(7, 3));
+
+        LocalStateStore.State state = store.read();
+        assertTrue(state.getUser() instanceof Driver);
+        assertEquals(7, state.getRating().getUpvotes());
+        assertEquals(3, state.getRating().getDownvotes());
+        assertNull(state.getRideRequest());
+    }
+
+    @Test
+    public void testReadsAreCopies() {
+        LocalStateStore store = new LocalStateStore(file, writer);
+        store.saveRideRequest(testRequest());
+
+        store.read().getRideRequest().setStatus(RequestStatus.COMPLETED);
+
+        assertEquals(RequestStatus.ACCEPTED, store.read().getRideRequest().getStatus());
+    }
+
+    @Test
+    public void testUnchangedStateIsNotWritten() {
+        LocalStateStore store = new LocalStateStore(file, writer);
+        store.saveRideRequest(testRequest());
+        store.saveRideRequest(testRequest());
+
+        assertEquals(1, pendingWrites.size());
+    }
+
+    @Test
+    public void testClear() {
+        LocalStateStore store = new LocalStateStore(file, writer);
+        store.saveRideRequest(testRequest());
+        runWrites();
+        store.clear();
+        runWrites();
+
+        assertNull(store.read().getRideRequest());
+        assertFalse(file.exists());
+        assertNull(new LocalStateStore(file, writer).read().getRideRequest());
+    }
+
+    @Test
+    public void testUnreadableFileIsIgnored() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] {0, 0, 0, 1, 1, 1});
+        out.close();
+
+        assertNull(new LocalStateStore(file, writer).read().getUser());
+    }
+}
@@ -40,4 +40,13 @@ public class RatingTest {
         testRating.setDownvotes(0);
         assertEquals(0, testRating.calculateRating(), 0.01);
     }
+
+    @Test
+    public void testAddShard() {
+        testRating.add(new Rating(3, 2));
+        testRating.add(new Rating(0, 0));
+        assertEquals(8, testRating.getUpvotes());
+        assertEquals(12, testRating.getDownvotes());
+        assertEquals(40, testRating.calculateRating(), 0.01);
+    }
 }
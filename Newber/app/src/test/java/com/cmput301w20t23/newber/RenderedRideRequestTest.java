@@ -0,0 +1,84 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.RenderedRideRequest;
+import com.cmput301w20t23.newber.helpers.RenderedRideRequest.Change;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RenderedRideRequestTest {
+    private RideRequest shown;
+
+    private static RideRequest request(String requestId, RequestStatus status, String driver, double cost) {
+        Location start = new Location();
+        start.setName("Start");
+        Location end = new Location();
+        end.setName("End");
+
+        return new RideRequest(requestId, start, end, status, "rider", driver, cost);
+    }
+
+    @Before
+    public void setUp() {
+        shown = request("123", RequestStatus.OFFERED, "driver", 10);
+    }
+
+    private Change changeTo(RideRequest incoming) {
+        return RenderedRideRequest.changeFrom(RenderedRideRequest.of(shown), RenderedRideRequest.of(incoming));
+    }
+
+    @Test
+    public void testDuplicateIsNoChange() {
+        assertEquals(Change.NONE, changeTo(request("123", RequestStatus.OFFERED, "driver", 10)));
+        assertEquals(Change.NONE, RenderedRideRequest.changeFrom(null, null));
+        assertNull(RenderedRideRequest.of(null));
+    }
+
+    @Test
+    public void testStatusChangeReplaces() {
+        assertEquals(Change.REPLACE, changeTo(request("123", RequestStatus.ACCEPTED, "driver", 10)));
+        assertEquals(Change.REPLACE, changeTo(request("456", RequestStatus.OFFERED, "driver", 10)));
+        assertEquals(Change.REPLACE, changeTo(null));
+        assertEquals(Change.REPLACE,
+                RenderedRideRequest.changeFrom(null, RenderedRideRequest.of(shown)));
+    }
+
+    @Test
+    public void testDataChangeUpdates() {
+        assertEquals(Change.UPDATE, changeTo(request("123", RequestStatus.OFFERED, "driver", 12.5)));
+        assertEquals(Change.UPDATE, changeTo(request("123", RequestStatus.OFFERED, "other", 10)));
+
+        RideRequest moved = request("123", RequestStatus.OFFERED, "driver", 10);
+        moved.getEndLocation().setName("Elsewhere");
+        assertEquals(Change.UPDATE, changeTo(moved));
+
+        // Written by the other user, without a visible change
+        RideRequest written = request("123", RequestStatus.OFFERED, "driver", 10);
+        written.setVersion(shown.getVersion() + 1);
+        assertEquals(Change.UPDATE, changeTo(written));
+    }
+
+    @Test
+    public void testChangesInPlaceAreSeen() {
+        // The shown request is changed and written, then comes back from Firestore
+        RenderedRideRequest rendered = RenderedRideRequest.of(shown);
+        shown.setStatus(RequestStatus.ACCEPTED);
+
+        assertEquals(Change.REPLACE, RenderedRideRequest.changeFrom(rendered, RenderedRideRequest.of(shown)));
+    }
+
+    @Test
+    public void testOtherUid() {
+        RenderedRideRequest rendered = RenderedRideRequest.of(shown);
+
+        assertEquals("driver", rendered.getOtherUid("Rider"));
+        assertEquals("rider", rendered.getOtherUid("Driver"));
+        assertNull(RenderedRideRequest.of(request("123", RequestStatus.PENDING, null, 10)).getOtherUid("Rider"));
+    }
+}
@@ -0,0 +1,145 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.RequestRanker;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestRankerTest {
+    private static final LatLng EDMONTON = new LatLng(53.5461215, -113.4939365);
+
+    private static RideRequest createRequest(String requestId, LatLng latLng) {
+        Location start = new Location();
+        start.setLocationFromLatLng(latLng, requestId);
+
+        return new RideRequest(requestId, start, new Location(), RequestStatus.PENDING, "rider", null, 5.0);
+    }
+
+    /**
+     * Scatters requests up to 5 Km around the centre of Edmonton
+     */
+    private static List<RideRequest> createRequests(int count) {
+        List<RideRequest> requests = new ArrayList<>(count);
+        Random random = new Random(301);
+
+        for (int i = 0; i < count; i++) {
+            LatLng point = SphericalUtil.computeOffset(EDMONTON, random.nextDouble() * 5000,
+                    random.nextDouble() * 360);
+            requests.add(createRequest("request" + i, point));
+        }
+
+        return requests;
+    }
+
+    private static List<RideRequest> sortByDistance(List<RideRequest> requests, final LatLng latLng) {
+        List<RideRequest> sorted = new ArrayList<>(requests);
+        Collections.sort(sorted, new Comparator<RideRequest>() {
+            @Override
+            public int compare(RideRequest o1, RideRequest o2) {
+                return Double.compare(
+                        SphericalUtil.computeDistanceBetween(latLng, o1.getStartLocation().toLatLng()),
+                        SphericalUtil.computeDistanceBetween(latLng, o2.getStartLocation().toLatLng()));
+            }
+        });
+
+        return sorted;
+    }
+
+    @Test
+    public void testPagesMatchFullSort() {
+        List<RideRequest> requests = createRequests(1000);
+        List<RideRequest> sorted = sortByDistance(requests, EDMONTON);
+
+        RequestRanker ranker = new RequestRanker(EDMONTON.latitude, EDMONTON.longitude, requests);
+        List<RideRequest> paged = new ArrayList<>();
+
+        while (ranker.hasNextPage()) {
+            List<RideRequest> page = ranker.nextPage(30);
+            assertTrue(page.size() <= 30);
+            paged.addAll(page);
+        }
+
+        assertEquals(sorted, paged);
+        assertTrue(ranker.nextPage(30).isEmpty());
+    }
+
+    @Test
+    public void testResetStartsFromClosest() {
+        List<RideRequest> requests = createRequests(100);
+        RequestRanker ranker = new RequestRanker(EDMONTON.latitude, EDMONTON.longitude, requests);
+
+        List<RideRequest> first = ranker.nextPage(10);
+        ranker.nextPage(10);
+        ranker.reset();
+
+        assertEquals(first, ranker.nextPage(10));
+    }
+
+    @Test
+    public void testTiesKeepInputOrder() {
+        List<RideRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(createRequest("same" + i, EDMONTON));
+        }
+
+        RequestRanker ranker = new RequestRanker(EDMONTON.latitude, EDMONTON.longitude, requests);
+
+        // Equal distances must not be skipped or repeated across pages
+        List<RideRequest> paged = new ArrayList<>(ranker.nextPage(2));
+        paged.addAll(ranker.nextPage(2));
+        paged.addAll(ranker.nextPage(2));
+
+        assertEquals(requests, paged);
+    }
+
+    @Test
+    public void testSkipsRequestsWithoutStartLocation() {
+        List<RideRequest> requests = createRequests(3);
+        RideRequest noStart = createRequest("noStart", EDMONTON);
+        noStart.setStartLocation(null);
+        requests.add(noStart);
+
+        RequestRanker ranker = new RequestRanker(EDMONTON.latitude, EDMONTON.longitude, requests);
+
+        assertEquals(3, ranker.size());
+        assertEquals(3, ranker.nextPage(10).size());
+        assertFalse(ranker.hasNextPage());
+    }
+
+    @Test
+    public void benchmarkFirstPage() {
+        Benchmark.assumeEnabled();
+
+        for (int count : new int[]{10000, 100000}) {
+            final List<RideRequest> requests = createRequests(count);
+
+            Benchmark.time("sort with comparator, " + count + " requests", new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    return sortByDistance(requests, EDMONTON).subList(0, 20);
+                }
+            });
+
+            Benchmark.time("ranker first page, " + count + " requests", new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    return new RequestRanker(EDMONTON.latitude, EDMONTON.longitude, requests).nextPage(20);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.database.RideArchive;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RideArchiveTest {
+    // 2020-03-31 23:30 UTC, already April in time zones east of UTC
+    private static final long END_OF_MARCH = 1585697400000L;
+
+    @Test
+    public void testPartitionIsMonthInUtc() {
+        assertEquals("2020-03", RideArchive.partition(END_OF_MARCH));
+        assertEquals("2020-04", RideArchive.partition(END_OF_MARCH + 60 * 60 * 1000));
+        assertEquals("1970-01", RideArchive.partition(0));
+    }
+
+    @Test
+    public void testTombstone() {
+        RideRequest rideRequest = new RideRequest("request", new Location(), new Location(),
+                RequestStatus.COMPLETED, "rider", "driver", 12.5);
+        rideRequest.setVersion(4);
+
+        Map<String, Object> tombstone = RideArchive.tombstone(rideRequest, "2020-03", END_OF_MARCH);
+
+        assertEquals("request", tombstone.get("requestId"));
+        assertEquals("COMPLETED", tombstone.get("status"));
+        assertEquals("rider", tombstone.get("rider"));
+        assertEquals("driver", tombstone.get("driver"));
+        assertEquals(12.5, (Double) tombstone.get("cost"), 0);
+        assertEquals(5L, tombstone.get("version"));
+        assertEquals("2020-03", tombstone.get(RideArchive.ARCHIVED_IN));
+        assertEquals(new Date(END_OF_MARCH + RideArchive.TOMBSTONE_TTL), tombstone.get(RideArchive.EXPIRE_AT));
+
+        // Only what ending the ride needs, the locations stay in the history
+        assertFalse(tombstone.containsKey("startLocation"));
+        assertFalse(tombstone.containsKey("geohash"));
+    }
+}
@@ -0,0 +1,163 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.controllers.RideController;
+import com.cmput301w20t23.newber.database.ClaimResult;
+import com.cmput301w20t23.newber.database.InMemoryBackend;
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.GeoHash;
+import com.cmput301w20t23.newber.helpers.RideRequestChangeListener;
+import com.cmput301w20t23.newber.helpers.SubscriptionRegistry;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.cmput301w20t23.newber.models.User;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RideControllerTest {
+    private static final LatLng CENTER = new LatLng(53.5232, -113.5263);
+    private static final double RADIUS = 500;
+
+    private InMemoryBackend backend;
+    private RideController rideController;
+
+    /**
+     * Records what a pending requests listener receives
+     */
+    private static class RecordingListener implements RideRequestChangeListener {
+        final List<String> added = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        int synced = 0;
+
+        @Override
+        public void onRideRequestAdded(RideRequest rideRequest) {
+            added.add(rideRequest.getRequestId());
+        }
+
+        @Override
+        public void onRideRequestModified(RideRequest rideRequest) {
+        }
+
+        @Override
+        public void onRideRequestRemoved(RideRequest rideRequest) {
+            removed.add(rideRequest.getRequestId());
+        }
+
+        @Override
+        public void onRideRequestsSynced() {
+            synced++;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryBackend();
+        rideController = new RideController(backend);
+    }
+
+    @Test
+    public void testNearbyRequestsAreEnough() {
+        createRideRequest("near", 0);
+        createRideRequest("far", 2.5);
+
+        RecordingListener listener = new RecordingListener();
+        rideController.addPendingRideRequestsListener(CENTER, RADIUS, 1, listener);
+
+        // The first two rings had a request, so the listener did not widen
+        assertEquals(1, listener.synced);
+        assertEquals(1, listener.added.size());
+        assertEquals("near", listener.added.get(0));
+    }
+
+    @Test
+    public void testSparseAreaWidens() {
+        createRideRequest("far", 2.5);
+
+        RecordingListener listener = new RecordingListener();
+        rideController.addPendingRideRequestsListener(CENTER, RADIUS, 1, listener);
+
+        // Synced once, after the ring the request is in
+        assertEquals(1, listener.synced);
+        assertEquals(1, listener.added.size());
+        assertEquals("far", listener.added.get(0));
+
+        // Later changes in the outer ring are delivered like the rest
+        createRideRequest("later", 2.5);
+        assertTrue(listener.added.contains("later"));
+    }
+
+    @Test
+    public void testWideningStopsAtTheLastRing() {
+        createRideRequest("tooFar", 10);
+
+        RecordingListener listener = new RecordingListener();
+        rideController.addPendingRideRequestsListener(CENTER, RADIUS, 1, listener);
+
+        assertEquals(1, listener.synced);
+        assertTrue(listener.added.isEmpty());
+    }
+
+    @Test
+    public void testRemovingStopsEveryRing() {
+        RecordingListener listener = new RecordingListener();
+        ListenerRegistration registration = rideController.addPendingRideRequestsListener(CENTER, RADIUS, 1, listener);
+        registration.remove();
+
+        createRideRequest("near", 0);
+        createRideRequest("far", 2.5);
+        assertTrue(listener.added.isEmpty());
+    }
+
+    @Test
+    public void testDeleteOutsideTheAppReachesSubscribers() {
+        createRideRequest("expiring", 0);
+
+        final List<RideRequest> updates = new ArrayList<>();
+        SubscriptionRegistry.Subscription subscription = rideController.addListenerToRideRequest(
+                new Callback<RideRequest>() {
+                    @Override
+                    public void myResponseCallback(RideRequest rideRequest) {
+                        updates.add(rideRequest);
+                    }
+                }, "expiring");
+
+        assertEquals(1, updates.size());
+        assertEquals("expiring", updates.get(0).getRequestId());
+
+        // The server's expiry job deletes the request, the rider is told it is gone
+        backend.deleteRideRequestOutsideApp("expiring");
+        assertEquals(2, updates.size());
+        assertNull(updates.get(1));
+
+        subscription.unsubscribe();
+    }
+
+    /**
+     * Creates a pending request north of the centre
+     * @param cells how far north, in cells of the precision the radius is listened to with
+     */
+    private void createRideRequest(String requestId, double cells) {
+        int precision = GeoHash.precisionForRadius(RADIUS, CENTER.latitude);
+        Location start = new Location();
+        start.setLatitude(CENTER.latitude + cells * GeoHash.cellHeightInMetres(precision) / 111320);
+        start.setLongitude(CENTER.longitude);
+
+        String rider = "rider-" + requestId;
+        backend.createUser(new User("First", "Last", rider, "7800000000", rider + "@example.com", rider),
+                "Rider", new Callback<ClaimResult>() {
+                    @Override
+                    public void myResponseCallback(ClaimResult result) {
+                    }
+                });
+        rideController.createRideRequest(requestId, start, new Location(), 10, rider);
+    }
+}
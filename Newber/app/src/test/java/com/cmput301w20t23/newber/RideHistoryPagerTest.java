@@ -0,0 +1,319 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.controllers.RideController;
+import com.cmput301w20t23.newber.database.ClaimResult;
+import com.cmput301w20t23.newber.database.InMemoryBackend;
+import com.cmput301w20t23.newber.database.RideHistoryPage;
+import com.cmput301w20t23.newber.database.RideTransition;
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.RideHistoryPager;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.cmput301w20t23.newber.models.User;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RideHistoryPagerTest {
+    private static final int RIDES = 45;
+    private static final int PAGE_SIZE = 10;
+    private static final int PREFETCH_DISTANCE = 5;
+
+    private HistoryBackend backend;
+    private RideController rideController;
+    private List<RideHistoryPage.Entry> shown;
+    private int failures;
+    private Callback<List<RideHistoryPage.Entry>> show;
+
+    /**
+     * Counts the history reads, and holds them back until complete() when deferred
+     */
+    private static class HistoryBackend extends InMemoryBackend {
+        int reads = 0;
+        boolean deferred = false;
+        Runnable pending = null;
+        Callback<RideHistoryPage> pendingCallback = null;
+
+        @Override
+        public void getRideHistory(final String uid, final String role, final int pageSize,
+                                   final RideHistoryPage.Cursor cursor,
+                                   final Callback<RideHistoryPage> callback) {
+            reads++;
+            Runnable read = new Runnable() {
+                @Override
+                public void run() {
+                    HistoryBackend.super.getRideHistory(uid, role, pageSize, cursor, callback);
+                }
+            };
+
+            if (deferred) {
+                pending = read;
+                pendingCallback = callback;
+            } else {
+                read.run();
+            }
+        }
+
+        void complete() {
+            Runnable read = pending;
+            pending = null;
+            read.run();
+        }
+
+        // Answers the held read as DatabaseAdapter does when the query fails
+        void fail() {
+            pending = null;
+            pendingCallback.myResponseCallback(null);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        backend = new HistoryBackend();
+        rideController = new RideController(backend);
+        shown = new ArrayList<>();
+        failures = 0;
+        show = new Callback<List<RideHistoryPage.Entry>>() {
+            @Override
+            public void myResponseCallback(List<RideHistoryPage.Entry> entries) {
+                if (entries == null) {
+                    failures++;
+                } else {
+                    shown.addAll(entries);
+                }
+            }
+        };
+
+        createUser("rider0", "Rider");
+        createUser("rider1", "Rider");
+        createUser("driver0", "Driver");
+
+        for (int i = 0; i < RIDES; i++) {
+            finishRide("ride" + i, "rider0", "driver0");
+        }
+        finishRide("other", "rider1", "driver0");
+
+        // A cancelled request is in the rider's history, but had no driver
+        RideRequest cancelled = new RideRequest("cancelled", new Location(), new Location(),
+                RequestStatus.PENDING, "rider0", null, 10);
+        backend.commitRideTransition(RideTransition.create(cancelled), null);
+        backend.commitRideTransition(RideTransition.cancel(cancelled), null);
+
+        backend.reads = 0;
+    }
+
+    @Test
+    public void testPagesDontSkipOrRepeatRides() {
+        List<RideHistoryPage.Entry> entries = readAll("rider0", "Rider");
+
+        assertEquals(RIDES + 1, entries.size());
+        assertEquals(RIDES + 1, ids(entries).size());
+        assertFalse(ids(entries).contains("other"));
+        assertTrue(ids(entries).contains("cancelled"));
+
+        // Newest first, ties in completion time ordered by request ID
+        for (int i = 1; i < entries.size(); i++) {
+            RideHistoryPage.Entry newer = entries.get(i - 1);
+            RideHistoryPage.Entry older = entries.get(i);
+            assertTrue(newer.getCursor().isBefore(older.getCompletedAt(), older.getRideRequest().getRequestId()));
+        }
+    }
+
+    @Test
+    public void testHistoryByRole() {
+        List<RideHistoryPage.Entry> entries = readAll("driver0", "Driver");
+
+        assertEquals(RIDES + 1, entries.size());
+        assertTrue(ids(entries).contains("other"));
+        assertFalse(ids(entries).contains("cancelled"));
+
+        assertEquals(0, readAll("driver0", "Rider").size());
+    }
+
+    @Test
+    public void testLastPageHasNoCursor() {
+        final List<RideHistoryPage> pages = new ArrayList<>();
+        Callback<RideHistoryPage> keep = new Callback<RideHistoryPage>() {
+            @Override
+            public void myResponseCallback(RideHistoryPage page) {
+                pages.add(page);
+            }
+        };
+
+        rideController.getRideHistory("rider1", "Rider", PAGE_SIZE, null, keep);
+        assertEquals(1, pages.get(0).getEntries().size());
+        assertFalse(pages.get(0).hasMore());
+        assertNull(pages.get(0).getNextCursor());
+
+        // A page exactly as big as what is left is the last one
+        rideController.getRideHistory("rider0", "Rider", RIDES + 1, null, keep);
+        assertFalse(pages.get(1).hasMore());
+    }
+
+    @Test
+    public void testPagerPrefetchesNextPage() {
+        RideHistoryPager pager = new RideHistoryPager(rideController, "rider0", "Rider",
+                PAGE_SIZE, PREFETCH_DISTANCE, show);
+
+        pager.start();
+
+        // The first page is shown and the second one is read ahead
+        assertEquals(PAGE_SIZE, shown.size());
+        assertEquals(2, backend.reads);
+
+        // Far from the end nothing changes
+        pager.onScrolled(2, shown.size());
+        assertEquals(PAGE_SIZE, shown.size());
+        assertEquals(2, backend.reads);
+
+        // Near the end the read ahead page is shown right away, and the next one is read
+        pager.onScrolled(6, shown.size());
+        assertEquals(2 * PAGE_SIZE, shown.size());
+        assertEquals(3, backend.reads);
+
+        while (!pager.isExhausted()) {
+            pager.onScrolled(shown.size() - 1, shown.size());
+        }
+
+        assertEquals(RIDES + 1, shown.size());
+        assertEquals(RIDES + 1, ids(shown).size());
+
+        // 10, 10, 10, 10 and 6 rides, with no read past the end
+        assertEquals(5, backend.reads);
+        pager.onScrolled(shown.size() - 1, shown.size());
+        assertEquals(5, backend.reads);
+    }
+
+    @Test
+    public void testPagerShowsSlowPageWhenItArrives() {
+        backend.deferred = true;
+        RideHistoryPager pager = new RideHistoryPager(rideController, "rider0", "Rider",
+                PAGE_SIZE, PREFETCH_DISTANCE, show);
+
+        pager.start();
+        assertEquals(0, shown.size());
+        assertTrue(pager.isLoading());
+
+        backend.complete();
+        assertEquals(PAGE_SIZE, shown.size());
+        assertTrue(pager.isLoading());
+
+        // The end is reached before the second page is read, it is not read twice
+        pager.onScrolled(PAGE_SIZE - 1, shown.size());
+        pager.onScrolled(PAGE_SIZE - 1, shown.size());
+        assertEquals(PAGE_SIZE, shown.size());
+        assertEquals(2, backend.reads);
+
+        backend.complete();
+        assertEquals(2 * PAGE_SIZE, shown.size());
+        assertEquals(3, backend.reads);
+    }
+
+    @Test
+    public void testPagerRetriesFailedPage() {
+        backend.deferred = true;
+        RideHistoryPager pager = new RideHistoryPager(rideController, "rider0", "Rider",
+                PAGE_SIZE, PREFETCH_DISTANCE, show);
+
+        pager.start();
+        backend.fail();
+        assertEquals(0, shown.size());
+        assertEquals(1, failures);
+        assertFalse(pager.isLoading());
+        assertFalse(pager.isExhausted());
+
+        // The empty list is at its end, so the next scroll reads the page again
+        pager.onScrolled(-1, 0);
+        assertEquals(2, backend.reads);
+        backend.complete();
+        assertEquals(PAGE_SIZE, shown.size());
+    }
+
+    @Test
+    public void testPagerRetriesFailedFirstPage() {
+        backend.deferred = true;
+        RideHistoryPager pager = new RideHistoryPager(rideController, "rider0", "Rider",
+                PAGE_SIZE, PREFETCH_DISTANCE, show);
+
+        pager.start();
+        backend.fail();
+        assertEquals(1, failures);
+
+        // A failed read ahead is not reported, only the page that was waited on
+        pager.retry();
+        assertEquals(2, backend.reads);
+        backend.complete();
+        assertEquals(PAGE_SIZE, shown.size());
+
+        backend.fail();
+        assertEquals(1, failures);
+    }
+
+    private List<RideHistoryPage.Entry> readAll(String uid, String role) {
+        final List<RideHistoryPage.Entry> entries = new ArrayList<>();
+        final RideHistoryPage[] page = new RideHistoryPage[1];
+        RideHistoryPage.Cursor cursor = null;
+
+        do {
+            rideController.getRideHistory(uid, role, PAGE_SIZE, cursor, new Callback<RideHistoryPage>() {
+                @Override
+                public void myResponseCallback(RideHistoryPage result) {
+                    page[0] = result;
+                }
+            });
+            assertTrue(page[0].getEntries().size() <= PAGE_SIZE);
+            entries.addAll(page[0].getEntries());
+            cursor = page[0].getNextCursor();
+        } while (cursor != null);
+
+        return entries;
+    }
+
+    private void createUser(String uid, String role) {
+        backend.createUser(new User("First", "Last", uid, "7800000000", uid + "@example.com", uid),
+                role, new Callback<ClaimResult>() {
+                    @Override
+                    public void myResponseCallback(ClaimResult result) {
+                    }
+                });
+    }
+
+    private void finishRide(String requestId, String rider, String driver) {
+        RideRequest rideRequest = new RideRequest(requestId, new Location(), new Location(),
+                RequestStatus.PENDING, rider, null, 10);
+        backend.commitRideTransition(RideTransition.create(rideRequest), null);
+        backend.claimRideRequest(requestId, driver, new Callback<ClaimResult>() {
+            @Override
+            public void myResponseCallback(ClaimResult result) {
+            }
+        });
+
+        final RideRequest[] claimed = new RideRequest[1];
+        backend.getRideRequest(requestId, new Callback<RideRequest>() {
+            @Override
+            public void myResponseCallback(RideRequest result) {
+                claimed[0] = result;
+            }
+        });
+        backend.commitRideTransition(RideTransition.finish(claimed[0]), null);
+    }
+
+    private static Set<String> ids(List<RideHistoryPage.Entry> entries) {
+        Set<String> ids = new HashSet<>();
+        for (RideHistoryPage.Entry entry : entries) {
+            ids.add(entry.getRideRequest().getRequestId());
+        }
+        return ids;
+    }
+}
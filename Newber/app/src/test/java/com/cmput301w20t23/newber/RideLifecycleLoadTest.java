@@ -0,0 +1,412 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.controllers.RideController;
+import com.cmput301w20t23.newber.controllers.UserController;
+import com.cmput301w20t23.newber.database.ClaimResult;
+import com.cmput301w20t23.newber.database.InMemoryBackend;
+import com.cmput301w20t23.newber.database.RideTransition;
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.GeoHash;
+import com.cmput301w20t23.newber.helpers.RideRequestChangeListener;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.Rating;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.cmput301w20t23.newber.models.User;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RideLifecycleLoadTest {
+    private static final int RIDERS = 50;
+    private static final int DRIVERS = 20;
+    private static final int LIFECYCLES = 5000;
+    private static final double FARE = 10;
+
+    private InMemoryBackend backend;
+    private RideController rideController;
+    private UserController userController;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryBackend();
+        rideController = new RideController(backend);
+        userController = new UserController(null, null, backend, backend);
+    }
+
+    @Test
+    public void testThousandsOfLifecycles() throws InterruptedException {
+        createUsers(backend);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < LIFECYCLES; i++) {
+            String requestId = "request" + i;
+            String driverId = "driver" + (i % DRIVERS);
+
+            rideController.createRideRequest(requestId, location(i), location(i + 1), FARE, "rider" + (i % RIDERS));
+            RideRequest rideRequest = getRideRequest(requestId);
+
+            assertEquals(ClaimResult.WON, claim(rideRequest, driverId));
+
+            rideRequest.setStatus(RequestStatus.ACCEPTED);
+            rideController.updateRideRequest(rideRequest);
+            rideRequest.setStatus(RequestStatus.IN_PROGRESS);
+            rideController.updateRideRequest(rideRequest);
+            rideRequest.setStatus(RequestStatus.PAYMENT);
+            rideController.updateRideRequest(rideRequest);
+
+            rideController.finishRideRequest(getUser(driverId), rideRequest);
+            userController.upvote(driverId);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        System.out.println(LIFECYCLES + " lifecycles in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms, "
+                + (long) (LIFECYCLES / (elapsed / 1e9)) + " per second");
+
+        for (int i = 0; i < LIFECYCLES; i += 97) {
+            RideRequest rideRequest = getRideRequest("request" + i);
+            assertEquals(RequestStatus.COMPLETED, rideRequest.getStatus());
+            assertEquals(5, rideRequest.getVersion());
+            assertEquals("Stop " + i, rideRequest.getStartLocation().getName());
+        }
+
+        double ridesEach = LIFECYCLES / RIDERS;
+        assertEquals(User.START_BALANCE - ridesEach * FARE, getUser("rider0").getBalance(), 1e-6);
+        assertEquals("", getUser("driver0").getCurrentRequestId());
+        assertEquals(User.START_BALANCE + LIFECYCLES / DRIVERS * FARE, getUser("driver0").getBalance(), 1e-6);
+        assertEquals(LIFECYCLES / DRIVERS, getRating("driver0").getUpvotes());
+        assertEquals(LIFECYCLES, rideController.getClaimMetrics().getWins());
+    }
+
+    @Test
+    public void testFinishedRidesLeaveTheLiveRequests() throws InterruptedException {
+        createUsers(backend);
+
+        rideController.createRideRequest("cancelled", location(0), location(1), FARE, "rider0");
+        rideController.removeRideRequest(getRideRequest("cancelled"));
+
+        rideController.createRideRequest("completed", location(0), location(1), FARE, "rider1");
+        RideRequest rideRequest = getRideRequest("completed");
+        claim(rideRequest, "driver0");
+
+        final List<RideRequest> published = new ArrayList<>();
+        rideController.addListenerToRideRequest(new Callback<RideRequest>() {
+            @Override
+            public void myResponseCallback(RideRequest result) {
+                published.add(result);
+            }
+        }, "completed");
+        rideController.finishRideRequest(getUser("driver0"), rideRequest);
+
+        // The rider sees the tombstone, which only has what ending the ride needs
+        RideRequest tombstone = published.get(published.size() - 1);
+        assertEquals(RequestStatus.COMPLETED, tombstone.getStatus());
+        assertEquals("driver0", tombstone.getDriver());
+        assertNull(tombstone.getStartLocation());
+        assertEquals(1, backend.getLiveRideRequestCount());
+
+        rideController.removeTombstone(tombstone);
+        assertEquals(0, backend.getLiveRideRequestCount());
+
+        // Both are still found by ID, in the ride history
+        assertEquals(RequestStatus.CANCELLED, getRideRequest("cancelled").getStatus());
+        assertEquals(RequestStatus.COMPLETED, getRideRequest("completed").getStatus());
+        assertEquals("Stop 0", getRideRequest("completed").getStartLocation().getName());
+    }
+
+    @Test
+    public void testConcurrentClaimsHaveOneWinner() throws InterruptedException {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(8);
+        InMemoryBackend concurrentBackend = new InMemoryBackend(executor, 1);
+        createUsers(concurrentBackend);
+
+        int requests = 500;
+        final CountDownLatch created = new CountDownLatch(requests);
+        for (int i = 0; i < requests; i++) {
+            RideRequest rideRequest = new RideRequest("request" + i, location(i), location(i + 1),
+                    RequestStatus.PENDING, "rider" + (i % RIDERS), null, FARE);
+            concurrentBackend.commitRideTransition(RideTransition.create(rideRequest), new Callback<Boolean>() {
+                @Override
+                public void myResponseCallback(Boolean result) {
+                    created.countDown();
+                }
+            });
+        }
+        assertTrue(created.await(30, TimeUnit.SECONDS));
+
+        final Map<String, AtomicInteger> wins = new ConcurrentHashMap<>();
+        final CountDownLatch done = new CountDownLatch(requests * 4);
+
+        for (int i = 0; i < requests; i++) {
+            final String requestId = "request" + i;
+            wins.put(requestId, new AtomicInteger());
+
+            for (int driver = 0; driver < 4; driver++) {
+                concurrentBackend.claimRideRequest(requestId, "driver" + ((i + driver) % DRIVERS), new Callback<ClaimResult>() {
+                    @Override
+                    public void myResponseCallback(ClaimResult result) {
+                        if (result == ClaimResult.WON) {
+                            wins.get(requestId).incrementAndGet();
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        for (AtomicInteger requestWins : wins.values()) {
+            assertEquals(1, requestWins.get());
+        }
+        assertEquals(requests, concurrentBackend.getClaimMetrics().getWins());
+        assertEquals(requests * 3, concurrentBackend.getClaimMetrics().getLosses());
+    }
+
+    @Test
+    public void testInjectedFailures() throws InterruptedException {
+        createUsers(backend);
+        backend.setFailureRate(0.3);
+
+        int failed = 0;
+        for (int i = 0; i < 1000; i++) {
+            rideController.createRideRequest("request" + i, location(i), location(i + 1), FARE, "rider0");
+
+            // A failed create stores nothing, a failed claim leaves the request pending
+            RideRequest rideRequest = getRideRequest("request" + i);
+            if (rideRequest == null) {
+                continue;
+            }
+
+            if (claim(rideRequest, "driver0") == ClaimResult.FAILED) {
+                failed++;
+                assertEquals(RequestStatus.PENDING, getRideRequest("request" + i).getStatus());
+                assertNull(getRideRequest("request" + i).getDriver());
+            }
+        }
+
+        assertTrue(backend.getInjectedFailures() > 0);
+        assertEquals(failed, rideController.getClaimMetrics().getFailures());
+        assertTrue(rideController.getClaimMetrics().getRetries() > 0);
+    }
+
+    @Test
+    public void testStaleUpdateIsRejected() throws InterruptedException {
+        createUsers(backend);
+        rideController.createRideRequest("request", location(0), location(1), FARE, "rider0");
+
+        RideRequest first = getRideRequest("request");
+        RideRequest second = getRideRequest("request");
+        claim(first, "driver0");
+
+        second.setCost(FARE * 2);
+        final Boolean[] updated = new Boolean[1];
+        backend.updateRideRequest(second, new Callback<Boolean>() {
+            @Override
+            public void myResponseCallback(Boolean result) {
+                updated[0] = result;
+            }
+        });
+
+        assertFalse(updated[0]);
+        assertEquals(FARE, getRideRequest("request").getCost(), 0);
+        assertEquals(RequestStatus.OFFERED, getRideRequest("request").getStatus());
+    }
+
+    @Test
+    public void testStaleTransitionIsRejected() throws InterruptedException {
+        createUsers(backend);
+        rideController.createRideRequest("request", location(0), location(1), FARE, "rider0");
+
+        RideRequest first = getRideRequest("request");
+        RideRequest second = getRideRequest("request");
+        claim(first, "driver0");
+
+        // The second copy was read before the claim, releasing it would undo the claim
+        final Boolean[] committed = new Boolean[1];
+        backend.commitRideTransition(RideTransition.release(second), new Callback<Boolean>() {
+            @Override
+            public void myResponseCallback(Boolean result) {
+                committed[0] = result;
+            }
+        });
+
+        assertFalse(committed[0]);
+        assertEquals(RequestStatus.OFFERED, getRideRequest("request").getStatus());
+        assertEquals("driver0", getRideRequest("request").getDriver());
+        assertEquals("request", getUser("driver0").getCurrentRequestId());
+    }
+
+    @Test
+    public void testRepeatedCreateAfterRestartKeepsTheClaim() throws InterruptedException {
+        createUsers(backend);
+        Location start = location(0);
+        Location end = location(1);
+        rideController.createRideRequest("request", start, end, FARE, "rider0");
+        claim(getRideRequest("request"), "driver0");
+
+        // The app restarted before it saw the create succeed, and retries it
+        backend.forgetCommittedTransitions();
+        RideRequest retried = new RideRequest("request", start, end, RequestStatus.PENDING, "rider0", null, FARE);
+        final Boolean[] committed = new Boolean[1];
+        backend.commitRideTransition(RideTransition.create(retried), new Callback<Boolean>() {
+            @Override
+            public void myResponseCallback(Boolean result) {
+                committed[0] = result;
+            }
+        });
+
+        assertTrue(committed[0]);
+        assertEquals(RequestStatus.OFFERED, getRideRequest("request").getStatus());
+        assertEquals("driver0", getRideRequest("request").getDriver());
+        assertEquals(1, getRideRequest("request").getVersion());
+        assertEquals("request", getUser("driver0").getCurrentRequestId());
+    }
+
+    @Test
+    public void testRepeatedReleaseIsCommitted() throws InterruptedException {
+        createUsers(backend);
+        rideController.createRideRequest("request", location(0), location(1), FARE, "rider0");
+        RideRequest rideRequest = getRideRequest("request");
+
+        claim(rideRequest, "driver0");
+        rideController.releaseRideRequest(rideRequest);
+
+        // Offered again after it was released, and released again
+        assertEquals(ClaimResult.WON, claim(rideRequest, "driver1"));
+        rideController.releaseRideRequest(rideRequest);
+
+        assertEquals(RequestStatus.PENDING, getRideRequest("request").getStatus());
+        assertNull(getRideRequest("request").getDriver());
+        assertEquals(4, getRideRequest("request").getVersion());
+        assertEquals("", getUser("driver1").getCurrentRequestId());
+    }
+
+    @Test
+    public void testPendingListenerFollowsRequests() throws InterruptedException {
+        createUsers(backend);
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        List<String[]> ranges = GeoHash.toRanges(Collections.singletonList(
+                GeoHash.encode(53.5, -113.5).substring(0, 5)));
+        backend.addPendingRideRequestsListener(ranges, new RideRequestChangeListener() {
+            @Override
+            public void onRideRequestAdded(RideRequest rideRequest) {
+                events.add("added " + rideRequest.getRequestId());
+            }
+
+            @Override
+            public void onRideRequestModified(RideRequest rideRequest) {
+                events.add("modified " + rideRequest.getRequestId());
+            }
+
+            @Override
+            public void onRideRequestRemoved(RideRequest rideRequest) {
+                events.add("removed " + rideRequest.getRequestId());
+            }
+
+            @Override
+            public void onRideRequestsSynced() {
+            }
+        });
+
+        rideController.createRideRequest("request", location(0), location(1), FARE, "rider0");
+        claim(getRideRequest("request"), "driver0");
+
+        assertEquals(2, events.size());
+        assertEquals("added request", events.get(0));
+        assertEquals("removed request", events.get(1));
+    }
+
+    private void createUsers(InMemoryBackend repository) throws InterruptedException {
+        final CountDownLatch created = new CountDownLatch(RIDERS + DRIVERS);
+        Callback<ClaimResult> countDown = new Callback<ClaimResult>() {
+            @Override
+            public void myResponseCallback(ClaimResult result) {
+                created.countDown();
+            }
+        };
+
+        for (int i = 0; i < RIDERS; i++) {
+            repository.createUser(new User("Rider", "" + i, "rider" + i, "7800000000",
+                    "rider" + i + "@example.com", "rider" + i), "Rider", countDown);
+        }
+        for (int i = 0; i < DRIVERS; i++) {
+            repository.createUser(new User("Driver", "" + i, "driver" + i, "7800000000",
+                    "driver" + i + "@example.com", "driver" + i), "Driver", countDown);
+        }
+
+        assertTrue(created.await(30, TimeUnit.SECONDS));
+    }
+
+    private static Location location(int i) {
+        Location location = new Location();
+        location.setName("Stop " + i);
+        location.setLatitude(53.5 + (i % 10) * 0.0001);
+        location.setLongitude(-113.5 + (i % 10) * 0.0001);
+        return location;
+    }
+
+    // The backend runs every call before it returns, so the results are there right away
+
+    private RideRequest getRideRequest(String requestId) {
+        final RideRequest[] found = new RideRequest[1];
+        rideController.getRideRequest(requestId, new Callback<RideRequest>() {
+            @Override
+            public void myResponseCallback(RideRequest result) {
+                found[0] = result;
+            }
+        });
+        return found[0];
+    }
+
+    private ClaimResult claim(RideRequest rideRequest, String driverId) {
+        final ClaimResult[] claimed = new ClaimResult[1];
+        rideController.claimRideRequest(rideRequest, driverId, new Callback<ClaimResult>() {
+            @Override
+            public void myResponseCallback(ClaimResult result) {
+                claimed[0] = result;
+            }
+        });
+        return claimed[0];
+    }
+
+    private User getUser(String uid) {
+        final User[] found = new User[1];
+        userController.getUser(uid, new Callback<Map<String, Object>>() {
+            @Override
+            public void myResponseCallback(Map<String, Object> result) {
+                found[0] = (User) result.get("user");
+            }
+        });
+        return found[0];
+    }
+
+    private Rating getRating(String uid) {
+        final Rating[] found = new Rating[1];
+        userController.getRating(uid, new Callback<Rating>() {
+            @Override
+            public void myResponseCallback(Rating result) {
+                found[0] = result;
+            }
+        });
+        return found[0];
+    }
+}
@@ -0,0 +1,146 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.RideRequestIndex;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RideRequestIndexTest {
+    private static final LatLng EDMONTON = new LatLng(53.5461215, -113.4939365);
+
+    private RideRequestIndex index;
+    private List<RideRequest> requests;
+
+    @Before
+    public void setUp() {
+        index = new RideRequestIndex();
+        requests = new ArrayList<>();
+        Random random = new Random(301);
+
+        // Scatter requests up to 20 Km around the centre of Edmonton
+        for (int i = 0; i < 2000; i++) {
+            LatLng point = SphericalUtil.computeOffset(EDMONTON, random.nextDouble() * 20000,
+                    random.nextDouble() * 360);
+            RideRequest request = createRequest("request" + i, point);
+
+            requests.add(request);
+            index.put(request);
+        }
+    }
+
+    private static RideRequest createRequest(String requestId, LatLng latLng) {
+        Location start = new Location();
+        start.setLocationFromLatLng(latLng, requestId);
+
+        return new RideRequest(requestId, start, new Location(), RequestStatus.PENDING, "rider", null, 5.0);
+    }
+
+    private static double distance(LatLng latLng, RideRequest request) {
+        return SphericalUtil.computeDistanceBetween(latLng, request.getStartLocation().toLatLng());
+    }
+
+    @Test
+    public void testWithinRadiusMatchesLinearScan() {
+        double radius = 5000;
+        HashSet<String> expected = new HashSet<>();
+
+        for (RideRequest request : requests) {
+            if (distance(EDMONTON, request) <= radius) {
+                expected.add(request.getRequestId());
+            }
+        }
+
+        HashSet<String> found = new HashSet<>();
+        for (RideRequest request : index.withinRadius(EDMONTON.latitude, EDMONTON.longitude, radius)) {
+            found.add(request.getRequestId());
+        }
+
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void testWithinRadiusLargerThanIndex() {
+        assertEquals(requests.size(),
+                index.withinRadius(EDMONTON.latitude, EDMONTON.longitude, 100000).size());
+    }
+
+    @Test
+    public void testNearestMatchesSortedScan() {
+        final LatLng searchLatLng = SphericalUtil.computeOffset(EDMONTON, 3000, 45);
+
+        List<RideRequest> sorted = new ArrayList<>(requests);
+        Collections.sort(sorted, new Comparator<RideRequest>() {
+            @Override
+            public int compare(RideRequest o1, RideRequest o2) {
+                return Double.compare(distance(searchLatLng, o1), distance(searchLatLng, o2));
+            }
+        });
+
+        ArrayList<RideRequest> nearest = index.nearest(searchLatLng.latitude, searchLatLng.longitude, 25,
+                Double.MAX_VALUE);
+
+        assertEquals(25, nearest.size());
+        for (int i = 0; i < nearest.size(); i++) {
+            assertEquals(sorted.get(i).getRequestId(), nearest.get(i).getRequestId());
+        }
+    }
+
+    @Test
+    public void testNearestRespectsMaxRadius() {
+        ArrayList<RideRequest> nearest = index.nearest(EDMONTON.latitude, EDMONTON.longitude,
+                requests.size(), 1000);
+
+        for (RideRequest request : nearest) {
+            assertTrue(distance(EDMONTON, request) <= 1000);
+        }
+        assertEquals(index.withinRadius(EDMONTON.latitude, EDMONTON.longitude, 1000).size(), nearest.size());
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        RideRequest request = createRequest("moving", EDMONTON);
+        index.onRideRequestAdded(request);
+        assertEquals(requests.size() + 1, index.size());
+        assertEquals("moving", index.nearest(EDMONTON.latitude, EDMONTON.longitude, 1, 10).get(0).getRequestId());
+
+        // Moving the request out of range takes it out of the old cell
+        LatLng farAway = SphericalUtil.computeOffset(EDMONTON, 50000, 90);
+        index.onRideRequestModified(createRequest("moving", farAway));
+        assertEquals(requests.size() + 1, index.size());
+        assertTrue(index.nearest(EDMONTON.latitude, EDMONTON.longitude, 1, 10).isEmpty());
+        assertEquals("moving", index.nearest(farAway.latitude, farAway.longitude, 1, 10).get(0).getRequestId());
+
+        index.onRideRequestRemoved(request);
+        assertEquals(requests.size(), index.size());
+        assertNull(index.get("moving"));
+        assertTrue(index.nearest(farAway.latitude, farAway.longitude, 1, 10).isEmpty());
+    }
+
+    @Test
+    public void testSynced() {
+        assertTrue(!index.isSynced());
+        index.onRideRequestsSynced();
+        assertTrue(index.isSynced());
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(!index.isSynced());
+    }
+}
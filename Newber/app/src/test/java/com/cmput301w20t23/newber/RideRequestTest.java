@@ -1,5 +1,6 @@
 package com.cmput301w20t23.newber;
 
+import com.cmput301w20t23.newber.helpers.GeoHash;
 import com.cmput301w20t23.newber.models.Driver;
 import com.cmput301w20t23.newber.models.Location;
 import com.cmput301w20t23.newber.models.Rating;
@@ -10,9 +11,12 @@ import com.cmput301w20t23.newber.models.Rider;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class RideRequestTest {
@@ -120,9 +124,73 @@ public class RideRequestTest {
         assertEquals(15.0, testRequest.getCost(), 0.01);
     }
 
+    @Test
+    public void testGetGeohashFollowsStartLocation() {
+        assertEquals(GeoHash.encode(12.345, 98.765), testRequest.getGeohash());
+
+        Location newStart = new Location();
+        newStart.setLatitude(53.5461215);
+        newStart.setLongitude(-113.4939365);
+        testRequest.setStartLocation(newStart);
+
+        assertEquals(GeoHash.encode(53.5461215, -113.4939365), testRequest.getGeohash());
+    }
+
     @Test
     public void testToString() {
         String expected = "Pick up at: Start";
         assertEquals(expected, testRequest.toString());
     }
+
+    @Test
+    public void testNewRequestHasNoChanges() {
+        assertFalse(testRequest.hasChanges());
+        assertTrue(testRequest.getChangedFields().isEmpty());
+        assertEquals(0, testRequest.getVersion());
+    }
+
+    @Test
+    public void testOnlySetFieldsAreChanged() {
+        testRequest.setStatus(RequestStatus.PAYMENT);
+
+        Map<String, Object> changes = testRequest.getChangedFields();
+        assertEquals(1, changes.size());
+        assertEquals("PAYMENT", changes.get("status"));
+
+        testRequest.setDriver(null);
+        changes = testRequest.getChangedFields();
+        assertEquals(2, changes.size());
+        assertTrue(changes.containsKey("driver"));
+        assertNull(changes.get("driver"));
+    }
+
+    @Test
+    public void testStartLocationChangesGeohash() {
+        Location newStart = new Location();
+        newStart.setLatitude(53.5);
+        newStart.setLongitude(-113.5);
+        testRequest.setStartLocation(newStart);
+
+        Map<String, Object> changes = testRequest.getChangedFields();
+        assertEquals(newStart, changes.get("startLocation"));
+        assertEquals(GeoHash.encode(53.5, -113.5), changes.get("geohash"));
+    }
+
+    @Test
+    public void testMarkWrittenKeepsNewerChanges() {
+        testRequest.setStatus(RequestStatus.ACCEPTED);
+        testRequest.setCost(12.0);
+        Map<String, Object> written = testRequest.getChangedFields();
+
+        // The status is set again while the first write is in flight
+        testRequest.setStatus(RequestStatus.IN_PROGRESS);
+        testRequest.markWritten(written);
+
+        Map<String, Object> changes = testRequest.getChangedFields();
+        assertEquals(1, changes.size());
+        assertEquals("IN_PROGRESS", changes.get("status"));
+
+        testRequest.clearChanges();
+        assertFalse(testRequest.hasChanges());
+    }
 }
@@ -0,0 +1,91 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.database.RideTransition;
+import com.cmput301w20t23.newber.models.Location;
+import com.cmput301w20t23.newber.models.RequestStatus;
+import com.cmput301w20t23.newber.models.RideRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RideTransitionTest {
+    private RideRequest rideRequest;
+
+    @Before
+    public void setUp() {
+        rideRequest = new RideRequest("request", new Location(),
+                new Location(), RequestStatus.PENDING, "rider", null, 12.5);
+    }
+
+    @Test
+    public void testCreate() {
+        RideTransition transition = RideTransition.create(rideRequest);
+
+        assertEquals(RequestStatus.PENDING, rideRequest.getStatus());
+        assertFalse(transition.deletesRideRequest());
+        assertFalse(transition.archivesRideRequest());
+        assertEquals(1, transition.getCurrentRequestIds().size());
+        assertEquals("request", transition.getCurrentRequestIds().get("rider"));
+        assertTrue(transition.getBalanceIncrements().isEmpty());
+    }
+
+    @Test
+    public void testRelease() {
+        rideRequest.setDriver("driver");
+        rideRequest.setStatus(RequestStatus.OFFERED);
+
+        RideTransition release = RideTransition.release(rideRequest);
+
+        assertNull(rideRequest.getDriver());
+        assertEquals(RequestStatus.PENDING, rideRequest.getStatus());
+        assertEquals("", release.getCurrentRequestIds().get("driver"));
+    }
+
+    @Test
+    public void testReleaseWithoutDriver() {
+        RideTransition release = RideTransition.release(rideRequest);
+
+        assertTrue(release.getCurrentRequestIds().isEmpty());
+    }
+
+    @Test
+    public void testCancelDeletesRequest() {
+        RideTransition transition = RideTransition.cancel(rideRequest);
+
+        assertTrue(transition.deletesRideRequest());
+        assertTrue(transition.archivesRideRequest());
+        assertFalse(transition.leavesTombstone());
+        assertEquals("", transition.getCurrentRequestIds().get("rider"));
+    }
+
+    @Test
+    public void testFinishTransfersFare() {
+        rideRequest.setDriver("driver");
+        RideTransition transition = RideTransition.finish(rideRequest);
+
+        assertEquals(RequestStatus.COMPLETED, rideRequest.getStatus());
+        assertEquals("", transition.getCurrentRequestIds().get("driver"));
+        assertEquals(-12.5, transition.getBalanceIncrements().get("rider"), 0);
+        assertEquals(12.5, transition.getBalanceIncrements().get("driver"), 0);
+        assertTrue(transition.archivesRideRequest());
+        assertTrue(transition.leavesTombstone());
+        assertFalse(transition.deletesRideRequest());
+    }
+
+    @Test
+    public void testKeys() {
+        assertEquals(RideTransition.create(rideRequest).getKey(), RideTransition.create(rideRequest).getKey());
+        assertNotEquals(RideTransition.create(rideRequest).getKey(), RideTransition.cancel(rideRequest).getKey());
+
+        // Releasing the same request twice is two steps
+        RideTransition release = RideTransition.release(rideRequest);
+        assertEquals(release.getKey(), release.getKey());
+        assertNotEquals(release.getKey(), RideTransition.release(rideRequest).getKey());
+    }
+}
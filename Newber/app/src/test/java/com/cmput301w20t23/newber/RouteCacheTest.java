@@ -0,0 +1,203 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.RouteCache;
+import com.cmput301w20t23.newber.models.Route;
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RouteCacheTest {
+    private static final long TTL = 60 * 60 * 1000;
+    private static final long NOW = 1585000000000L;
+
+    private static final LatLng ORIGIN = new LatLng(53.5232, -113.5263);
+    private static final LatLng DEST = new LatLng(53.5444, -113.4909);
+
+    // Runs the file writes before put returns
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("routes", "");
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testNearbyPointsShareAKey() {
+        RouteCache cache = newCache(1024 * 1024);
+
+        // A few metres apart is the same cell at precision 8, a few hundred metres is not
+        LatLng nearOrigin = new LatLng(ORIGIN.latitude + 0.00002, ORIGIN.longitude + 0.00002);
+        LatLng farOrigin = new LatLng(ORIGIN.latitude + 0.003, ORIGIN.longitude);
+
+        assertEquals(cache.key(ORIGIN, DEST), cache.key(nearOrigin, DEST));
+        assertNotEquals(cache.key(ORIGIN, DEST), cache.key(farOrigin, DEST));
+
+        // The direction of the route matters
+        assertNotEquals(cache.key(ORIGIN, DEST), cache.key(DEST, ORIGIN));
+    }
+
+    @Test
+    public void testMemoryHit() {
+        RouteCache cache = newCache(1024 * 1024);
+        String key = cache.key(ORIGIN, DEST);
+        Route route = route(10);
+
+        assertNull(cache.get(key, NOW));
+        assertNull(cache.getFromDisk(key, NOW));
+        cache.put(key, route, NOW);
+
+        assertSame(route, cache.get(key, NOW + 1000));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void testDiskTierSurvivesRestart() {
+        RouteCache cache = newCache(1024 * 1024);
+        String key = cache.key(ORIGIN, DEST);
+        cache.put(key, route(25), NOW);
+
+        // A new cache, e.g. after the app was closed, reads the route from its file
+        RouteCache restarted = newCache(1024 * 1024);
+        assertNull(restarted.get(key, NOW + 1000));
+        RouteCache.StoredRoute stored = restarted.getFromDisk(key, NOW + 1000);
+
+        assertNotNull(stored);
+        Route read = stored.getRoute();
+        assertEquals(route(25).getPoints(), read.getPoints());
+        assertEquals(route(25).getDistanceInMetres(), read.getDistanceInMetres(), 0);
+        assertEquals(NOW, stored.getStoredAt());
+        assertEquals(1, restarted.getDiskHits());
+
+        // Then it is in memory
+        restarted.putFromDisk(key, stored);
+        assertSame(read, restarted.get(key, NOW + 2000));
+        assertEquals(1, restarted.getMemoryHits());
+        assertEquals(1, restarted.getDiskHits());
+    }
+
+    @Test
+    public void testRoutesExpire() {
+        RouteCache cache = newCache(1024 * 1024);
+        String key = cache.key(ORIGIN, DEST);
+        cache.put(key, route(10), NOW);
+
+        assertNull(cache.get(key, NOW + TTL));
+        assertNull(newCache(1024 * 1024).getFromDisk(key, NOW + TTL));
+    }
+
+    @Test
+    public void testFilesAreTrimmedOldestFirst() {
+        // Each file of 10 points is 24 + 160 bytes, three fit
+        RouteCache cache = newCache(3 * 184);
+        List<String> keys = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            LatLng dest = new LatLng(DEST.latitude + i * 0.01, DEST.longitude);
+            String key = cache.key(ORIGIN, dest);
+            keys.add(key);
+            cache.put(key, route(10), NOW + i * 1000);
+        }
+
+        assertEquals(3, directory.listFiles().length);
+
+        RouteCache restarted = newCache(3 * 184);
+        assertNull(restarted.getFromDisk(keys.get(0), NOW + 5000));
+        assertNull(restarted.getFromDisk(keys.get(1), NOW + 5000));
+        assertNotNull(restarted.getFromDisk(keys.get(2), NOW + 5000));
+        assertNotNull(restarted.getFromDisk(keys.get(4), NOW + 5000));
+    }
+
+    @Test
+    public void testLookupsWaitOnFetch() {
+        RouteCache cache = newCache(1024 * 1024);
+        String key = cache.key(ORIGIN, DEST);
+        final List<Route> received = new ArrayList<>();
+        Callback<Route> waiter = new Callback<Route>() {
+            @Override
+            public void myResponseCallback(Route result) {
+                received.add(result);
+            }
+        };
+
+        assertTrue(cache.beginLoad(key, waiter));
+        assertEquals(false, cache.beginLoad(key, waiter));
+        assertEquals(1, cache.getCoalesced());
+
+        Route route = route(5);
+        cache.put(key, route, NOW);
+        assertEquals(Arrays.asList(route, route), received);
+
+        // A failed fetch gives every waiter null and can be tried again
+        String other = cache.key(DEST, ORIGIN);
+        assertTrue(cache.beginLoad(other, waiter));
+        cache.failLoad(other);
+        assertNull(received.get(2));
+        assertTrue(cache.beginLoad(other, waiter));
+    }
+
+    @Test
+    public void testUnreadableFileIsAMiss() throws IOException {
+        RouteCache cache = newCache(1024 * 1024);
+        String key = cache.key(ORIGIN, DEST);
+        assertTrue(directory.mkdirs());
+
+        FileOutputStream out = new FileOutputStream(new File(directory, key + ".route"));
+        out.write(new byte[] {0, 0, 0, 1, 7});
+        out.close();
+
+        assertNull(cache.getFromDisk(key, NOW));
+        assertEquals(1, cache.getMisses());
+    }
+
+    private RouteCache newCache(long maxDiskBytes) {
+        return new RouteCache(8, TTL, directory, maxDiskBytes, RouteCache.DEFAULT_PRECISION, DIRECT);
+    }
+
+    private static Route route(int count) {
+        List<LatLng> points = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            points.add(new LatLng(ORIGIN.latitude + i * 0.001, ORIGIN.longitude + i * 0.002));
+        }
+        return new Route(points, count * 150.0);
+    }
+}
@@ -0,0 +1,282 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.RouteCache;
+import com.cmput301w20t23.newber.helpers.RoutePipeline;
+import com.cmput301w20t23.newber.models.Route;
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RoutePipelineTest {
+    private static final LatLng ORIGIN = new LatLng(53.5232, -113.5263);
+    private static final LatLng DEST = new LatLng(53.5444, -113.4909);
+    private static final LatLng OTHER_DEST = new LatLng(53.4500, -113.6000);
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Holds the submitted tasks until the test runs them, and rejects any past its capacity
+     */
+    private static class QueuedExecutor extends AbstractExecutorService {
+        private final Queue<Runnable> tasks = new LinkedList<>();
+        private final int capacity;
+
+        QueuedExecutor(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (tasks.size() >= capacity) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<>(tasks);
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    private QueuedExecutor worker;
+    private RouteCache cache;
+    private RoutePipeline pipeline;
+    private int fetchCalls;
+
+    @Before
+    public void setUp() {
+        worker = new QueuedExecutor(4);
+        cache = new RouteCache(8, 60 * 60 * 1000, null, 0, RouteCache.DEFAULT_PRECISION, DIRECT);
+        pipeline = new RoutePipeline(cache, worker, DIRECT);
+        fetchCalls = 0;
+    }
+
+    @Test
+    public void testFetchIsDeliveredAndCached() {
+        List<Route> received = new ArrayList<>();
+        Route route = route();
+
+        RoutePipeline.Request request = pipeline.getRoute("activity", ORIGIN, DEST, fetch(route), collect(received));
+        assertFalse(request.isDone());
+        assertEquals(1, pipeline.getFetchCount());
+
+        worker.runAll();
+        assertEquals(Arrays.asList(route), received);
+        assertTrue(request.isDone());
+        assertEquals(0, pipeline.getFetchCount());
+
+        // The second time it comes from the cache before getRoute returns
+        request = pipeline.getRoute("activity", ORIGIN, DEST, fetch(route()), collect(received));
+        assertTrue(request.isDone());
+        assertSame(route, received.get(1));
+        assertEquals(1, fetchCalls);
+    }
+
+    @Test
+    public void testFileIsReadOnTheWorker() throws IOException {
+        File directory = File.createTempFile("routes", "");
+        assertTrue(directory.delete());
+
+        try {
+            Route route = route();
+            RouteCache onDisk = new RouteCache(8, 60 * 60 * 1000, directory, 1024 * 1024,
+                    RouteCache.DEFAULT_PRECISION, DIRECT);
+            onDisk.put(onDisk.key(ORIGIN, DEST), route, System.currentTimeMillis());
+
+            // A new cache, e.g. after the app was closed, has the route in its file only
+            RouteCache restarted = new RouteCache(8, 60 * 60 * 1000, directory, 1024 * 1024,
+                    RouteCache.DEFAULT_PRECISION, DIRECT);
+            pipeline = new RoutePipeline(restarted, worker, DIRECT);
+            List<Route> received = new ArrayList<>();
+
+            RoutePipeline.Request request = pipeline.getRoute("activity", ORIGIN, DEST, fetch(route()), collect(received));
+            assertFalse(request.isDone());
+            assertEquals(0, restarted.getDiskHits());
+
+            worker.runAll();
+            assertEquals(1, received.size());
+            assertEquals(route.getPoints(), received.get(0).getPoints());
+            assertEquals(1, restarted.getDiskHits());
+            assertEquals(0, fetchCalls);
+
+            // Then it is in memory
+            assertTrue(pipeline.getRoute("activity", ORIGIN, DEST, fetch(route()), collect(received)).isDone());
+            assertEquals(1, restarted.getMemoryHits());
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testNewRequestSupersedesOld() {
+        List<Route> first = new ArrayList<>();
+        List<Route> second = new ArrayList<>();
+
+        RoutePipeline.Request old = pipeline.getRoute("activity", ORIGIN, DEST, fetch(route()), collect(first));
+        pipeline.getRoute("activity", ORIGIN, OTHER_DEST, fetch(route()), collect(second));
+
+        assertTrue(old.isDone());
+        assertEquals(1, pipeline.getFetchCount());
+
+        worker.runAll();
+
+        // The old fetch never ran, only the new route is drawn
+        assertEquals(1, fetchCalls);
+        assertTrue(first.isEmpty());
+        assertEquals(1, second.size());
+    }
+
+    @Test
+    public void testCallersShareAFetch() {
+        List<Route> rider = new ArrayList<>();
+        List<Route> driver = new ArrayList<>();
+
+        RoutePipeline.Request riderRequest = pipeline.getRoute("rider", ORIGIN, DEST, fetch(route()), collect(rider));
+        pipeline.getRoute("driver", ORIGIN, DEST, fetch(route()), collect(driver));
+        assertEquals(1, pipeline.getFetchCount());
+
+        // One caller leaving does not stop the fetch the other waits on
+        riderRequest.cancel();
+        worker.runAll();
+
+        assertEquals(1, fetchCalls);
+        assertTrue(rider.isEmpty());
+        assertEquals(1, driver.size());
+    }
+
+    @Test
+    public void testCancellingEveryRequestStopsTheFetch() {
+        List<Route> received = new ArrayList<>();
+
+        pipeline.getRoute("rider", ORIGIN, DEST, fetch(route()), collect(received));
+        pipeline.getRoute("driver", ORIGIN, DEST, fetch(route()), collect(received));
+        pipeline.cancel("rider");
+        pipeline.cancel("driver");
+
+        assertEquals(0, pipeline.getFetchCount());
+        worker.runAll();
+        assertEquals(0, fetchCalls);
+        assertTrue(received.isEmpty());
+
+        // The route can be fetched again
+        pipeline.getRoute("rider", ORIGIN, DEST, fetch(route()), collect(received));
+        worker.runAll();
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void testFailedFetchDeliversNull() {
+        List<Route> received = new ArrayList<>();
+
+        pipeline.getRoute("activity", ORIGIN, DEST, new Callable<Route>() {
+            @Override
+            public Route call() throws Exception {
+                throw new Exception("No network");
+            }
+        }, collect(received));
+        worker.runAll();
+
+        assertEquals(1, received.size());
+        assertNull(received.get(0));
+        assertEquals(0, pipeline.getFetchCount());
+    }
+
+    @Test
+    public void testFullWorkerDeliversNull() {
+        List<Route> received = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            LatLng dest = new LatLng(DEST.latitude + i * 0.01, DEST.longitude);
+            pipeline.getRoute("activity" + i, ORIGIN, dest, fetch(route()), collect(received));
+        }
+
+        // The fifth is dropped right away instead of waiting behind the others
+        assertEquals(1, received.size());
+        assertNull(received.get(0));
+        assertEquals(4, pipeline.getFetchCount());
+
+        worker.runAll();
+        assertEquals(5, received.size());
+    }
+
+    private Callable<Route> fetch(final Route route) {
+        return new Callable<Route>() {
+            @Override
+            public Route call() {
+                fetchCalls++;
+                return route;
+            }
+        };
+    }
+
+    private static Callback<Route> collect(final List<Route> received) {
+        return new Callback<Route>() {
+            @Override
+            public void myResponseCallback(Route result) {
+                received.add(result);
+            }
+        };
+    }
+
+    private static Route route() {
+        return new Route(Arrays.asList(ORIGIN, DEST), 3000);
+    }
+}
@@ -0,0 +1,187 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.Backoff;
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.GeoMath;
+import com.cmput301w20t23.newber.helpers.GoogleRouteProvider;
+import com.cmput301w20t23.newber.helpers.HttpTransport;
+import com.cmput301w20t23.newber.helpers.LocalRouteProvider;
+import com.cmput301w20t23.newber.helpers.RouteCache;
+import com.cmput301w20t23.newber.helpers.RoutePipeline;
+import com.cmput301w20t23.newber.models.Route;
+import com.google.android.gms.maps.model.LatLng;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RouteProviderTest {
+    private static final LatLng ORIGIN = new LatLng(53.5232, -113.5263);
+    private static final LatLng DEST = new LatLng(53.5444, -113.4909);
+
+    @Test
+    public void testMadeUpRoutesAreRepeatable() {
+        Route route = LocalRouteProvider.makeRoute(ORIGIN, DEST);
+        Route again = LocalRouteProvider.makeRoute(ORIGIN, DEST);
+
+        assertEquals(route.getPoints(), again.getPoints());
+        assertEquals(ORIGIN, route.getPoints().get(0));
+        assertEquals(DEST.latitude, route.getPoints().get(route.getPoints().size() - 1).latitude, 1e-9);
+        assertEquals(DEST.longitude, route.getPoints().get(route.getPoints().size() - 1).longitude, 1e-9);
+
+        // Around the block is longer than as the crow flies, but not by much
+        double straight = GeoMath.haversine(ORIGIN.latitude, ORIGIN.longitude, DEST.latitude, DEST.longitude);
+        assertTrue(route.getDistanceInMetres() > straight);
+        assertTrue(route.getDistanceInMetres() < straight * 1.5);
+    }
+
+    @Test
+    public void testFixtureIsServed() throws IOException {
+        LocalRouteProvider provider = new LocalRouteProvider(0, 0, 0);
+        InputStream response = getClass().getResourceAsStream("/directions/short.json");
+        provider.addFixture(ORIGIN, DEST, response);
+        response.close();
+
+        Route route = provider.getRoute(ORIGIN, DEST);
+        assertEquals(7573, route.getDistanceInMetres(), 0);
+
+        // Anywhere else is made up
+        assertEquals(LocalRouteProvider.makeRoute(DEST, ORIGIN).getPoints(), provider.getRoute(DEST, ORIGIN).getPoints());
+        assertEquals(2, provider.getServed());
+    }
+
+    @Test
+    public void testLatency() throws IOException {
+        LocalRouteProvider provider = new LocalRouteProvider(50, 20, 1);
+
+        long start = System.nanoTime();
+        provider.getRoute(ORIGIN, DEST);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsed >= 50);
+    }
+
+    @Test
+    public void testGoogleProviderAgainstStubServer() throws IOException {
+        final byte[] fixture = readFixture("/directions/short.json");
+        final String[] query = new String[1];
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/maps/api/directions/json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                query[0] = exchange.getRequestURI().getQuery();
+                exchange.sendResponseHeaders(200, fixture.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(fixture);
+                out.close();
+            }
+        });
+        server.start();
+
+        try {
+            String baseUrl = "http://" + server.getAddress().getAddress().getHostAddress() + ":"
+                    + server.getAddress().getPort() + "/maps/api/directions/";
+            HttpTransport transport = new HttpTransport(1000, 1000, 5000, 1, new Backoff(10, 10), 0, null);
+            GoogleRouteProvider provider = new GoogleRouteProvider(transport, baseUrl, "key");
+
+            Route route = provider.getRoute(ORIGIN, DEST);
+
+            assertNotNull(route);
+            assertEquals(7573, route.getDistanceInMetres(), 0);
+            assertEquals("origin=53.5232,-113.5263&destination=53.5444,-113.4909&key=key", query[0]);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testPipelineLoadOffline() throws InterruptedException {
+        final int lookups = 400;
+        final int places = 20;
+
+        // Like RouteGetter: two workers, and a single thread standing in for the main thread
+        ThreadPoolExecutor worker = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        final ExecutorService mainThread = Executors.newSingleThreadExecutor();
+        final RouteCache cache = new RouteCache(32, 60 * 60 * 1000, null, 0, RouteCache.DEFAULT_PRECISION, mainThread);
+        final RoutePipeline pipeline = new RoutePipeline(cache, worker, mainThread);
+        final LocalRouteProvider provider = new LocalRouteProvider(5, 5, 2);
+
+        final CountDownLatch answered = new CountDownLatch(lookups);
+        final AtomicInteger routes = new AtomicInteger();
+        final Random random = new Random(3);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < lookups; i++) {
+            final LatLng origin = new LatLng(ORIGIN.latitude + random.nextInt(places) * 0.01, ORIGIN.longitude);
+            final LatLng dest = DEST;
+            final String caller = "rider" + i;
+
+            mainThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    pipeline.getRoute(caller, origin, dest, new Callable<Route>() {
+                        @Override
+                        public Route call() throws Exception {
+                            return provider.getRoute(origin, dest);
+                        }
+                    }, new Callback<Route>() {
+                        @Override
+                        public void myResponseCallback(Route result) {
+                            if (result != null) {
+                                routes.incrementAndGet();
+                            }
+                            answered.countDown();
+                        }
+                    });
+                }
+            });
+        }
+
+        assertTrue(answered.await(30, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        System.out.println(lookups + " route lookups in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms, "
+                + provider.getServed() + " fetched, " + cache);
+
+        // Every place is fetched once, every other lookup hits the cache or waits on a fetch
+        assertEquals(lookups, routes.get());
+        assertEquals(places, provider.getServed());
+
+        worker.shutdown();
+        mainThread.shutdown();
+    }
+
+    private static byte[] readFixture(String name) throws IOException {
+        InputStream in = RouteProviderTest.class.getResourceAsStream(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
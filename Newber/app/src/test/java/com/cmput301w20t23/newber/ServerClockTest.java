@@ -0,0 +1,81 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.DriverLocationCache;
+import com.cmput301w20t23.newber.helpers.GeoHash;
+import com.cmput301w20t23.newber.helpers.ServerClock;
+import com.cmput301w20t23.newber.models.DriverLocation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ServerClockTest {
+    private static final long SERVER_NOW = 1585000000000L;
+
+    @Test
+    public void testUnsyncedClockIsTheDevicesClock() {
+        ServerClock clock = new ServerClock();
+
+        assertFalse(clock.isSynced());
+        assertEquals(1234, clock.toServerTime(1234));
+    }
+
+    @Test
+    public void testOffsetIsTakenFromHalfwayThroughTheRoundTrip() {
+        ServerClock clock = new ServerClock();
+
+        // The device is 10 minutes behind, the server wrote the time 100 ms into a 200 ms write
+        long sentAt = SERVER_NOW - 10 * 60 * 1000 - 100;
+        clock.addSample(sentAt, SERVER_NOW, sentAt + 200);
+
+        assertTrue(clock.isSynced());
+        assertEquals(10 * 60 * 1000, clock.getOffset());
+        assertEquals(SERVER_NOW + 5000, clock.toServerTime(sentAt + 100 + 5000));
+    }
+
+    @Test
+    public void testShortestRoundTripIsKept() {
+        ServerClock clock = new ServerClock();
+
+        clock.addSample(0, 5000, 2000);
+        assertEquals(4000, clock.getOffset());
+
+        // A slower sample is less accurate and ignored
+        clock.addSample(10000, 16000, 14000);
+        assertEquals(4000, clock.getOffset());
+
+        clock.addSample(20000, 24100, 20200);
+        assertEquals(4000, clock.getOffset());
+
+        // A backwards round trip, e.g. the device's clock was set in between, is ignored too
+        clock.addSample(30000, 99999, 29000);
+        assertEquals(4000, clock.getOffset());
+    }
+
+    @Test
+    public void testDriversAreFreshOnTheServersClock() {
+        double latitude = 53.5461215;
+        double longitude = -113.4939365;
+        int precision = GeoHash.precisionForRadius(3000, latitude);
+        List<String> cells = new ArrayList<>(GeoHash.ring(latitude, longitude, precision, 0));
+        cells.addAll(GeoHash.ring(latitude, longitude, precision, 1));
+
+        // The rider's clock is an hour ahead, the driver reported a location 10 seconds ago
+        long deviceAhead = 60 * 60 * 1000;
+        ServerClock clock = new ServerClock();
+        clock.addSample(SERVER_NOW + deviceAhead, SERVER_NOW, SERVER_NOW + deviceAhead);
+
+        DriverLocationCache cache = new DriverLocationCache();
+        long localNow = SERVER_NOW + deviceAhead + 10000;
+        cache.put(cells, Arrays.asList(new DriverLocation("driver", latitude, longitude, true, SERVER_NOW)), localNow);
+
+        assertEquals(0, cache.nearby(latitude, longitude, 3000, cells, localNow).size());
+        assertEquals(1, cache.nearby(latitude, longitude, 3000, cells, clock.toServerTime(localNow)).size());
+    }
+}
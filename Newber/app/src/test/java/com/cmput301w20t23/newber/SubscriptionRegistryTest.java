@@ -0,0 +1,144 @@
+package com.cmput301w20t23.newber;
+
+import com.cmput301w20t23.newber.helpers.Callback;
+import com.cmput301w20t23.newber.helpers.SubscriptionRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SubscriptionRegistryTest {
+    private List<String> connected;
+    private List<String> closed;
+    private SubscriptionRegistry<String> registry;
+
+    private static class Recorder implements Callback<String> {
+        final List<String> values = new ArrayList<>();
+
+        @Override
+        public void myResponseCallback(String value) {
+            values.add(value);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        connected = new ArrayList<>();
+        closed = new ArrayList<>();
+        registry = new SubscriptionRegistry<>(new SubscriptionRegistry.Connector() {
+            @Override
+            public SubscriptionRegistry.Connection connect(final String topic) {
+                connected.add(topic);
+                return new SubscriptionRegistry.Connection() {
+                    @Override
+                    public void close() {
+                        closed.add(topic);
+                    }
+                };
+            }
+        });
+    }
+
+    @Test
+    public void testDeliversOnlyToTopicSubscribers() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        SubscriptionRegistry.Subscription firstSubscription = registry.subscribe("request1", first);
+        SubscriptionRegistry.Subscription secondSubscription = registry.subscribe("request2", second);
+
+        registry.publish("request1", "offered");
+        registry.publish("request3", "pending");
+        registry.publish("request2", null);
+
+        assertEquals(1, first.values.size());
+        assertEquals("offered", first.values.get(0));
+        assertEquals(1, second.values.size());
+        assertEquals(null, second.values.get(0));
+        assertEquals("request1", firstSubscription.getTopic());
+        assertEquals("request2", secondSubscription.getTopic());
+    }
+
+    @Test
+    public void testSubscribersShareOneConnection() {
+        SubscriptionRegistry.Subscription first = registry.subscribe("request1", new Recorder());
+        SubscriptionRegistry.Subscription second = registry.subscribe("request1", new Recorder());
+
+        assertEquals(1, connected.size());
+        assertEquals(1, registry.getTopicCount());
+
+        first.unsubscribe();
+        assertTrue(closed.isEmpty());
+        assertTrue(registry.hasSubscribers("request1"));
+
+        second.unsubscribe();
+        assertEquals(1, closed.size());
+        assertFalse(registry.hasSubscribers("request1"));
+        assertEquals(0, registry.getTopicCount());
+    }
+
+    @Test
+    public void testUnsubscribeStopsDelivery() {
+        Recorder recorder = new Recorder();
+        SubscriptionRegistry.Subscription subscription = registry.subscribe("request1", recorder);
+        SubscriptionRegistry.Subscription other = registry.subscribe("request1", new Recorder());
+
+        subscription.unsubscribe();
+        subscription.unsubscribe();
+        registry.publish("request1", "accepted");
+
+        assertTrue(recorder.values.isEmpty());
+        assertTrue(closed.isEmpty());
+        other.unsubscribe();
+        assertEquals(1, closed.size());
+    }
+
+    @Test
+    public void testResubscribeReconnects() {
+        registry.subscribe("request1", new Recorder()).unsubscribe();
+        Recorder recorder = new Recorder();
+        registry.subscribe("request1", recorder);
+        registry.publish("request1", "pending");
+
+        assertEquals(2, connected.size());
+        assertEquals(1, closed.size());
+        assertEquals(1, recorder.values.size());
+    }
+
+    @Test
+    public void testUnsubscribingWhilePublishing() {
+        final Recorder later = new Recorder();
+        final List<SubscriptionRegistry.Subscription> subscriptions = new ArrayList<>();
+
+        subscriptions.add(registry.subscribe("request1", new Callback<String>() {
+            @Override
+            public void myResponseCallback(String value) {
+                subscriptions.get(1).unsubscribe();
+            }
+        }));
+        subscriptions.add(registry.subscribe("request1", later));
+
+        registry.publish("request1", "offered");
+
+        assertTrue(later.values.isEmpty());
+    }
+
+    @Test
+    public void testDroppedSubscriptionsAreReleased() throws InterruptedException {
+        registry.subscribe("request1", new Recorder());
+
+        // The subscription was not kept, so its subscriber can be collected and the topic closed
+        for (int i = 0; i < 50 && registry.hasSubscribers("request1"); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertFalse(registry.hasSubscribers("request1"));
+        assertEquals(1, closed.size());
+    }
+}